@@ -0,0 +1,94 @@
+package com.apitester.config;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+/**
+ * Central runtime configuration for the API Tester backend.
+ * Values are looked up as JVM system properties prefixed with "apitester."
+ * (e.g. -Dapitester.async.enabled=true) and fall back to the optional
+ * apitester.properties file on the classpath, then to the supplied default.
+ */
+public final class AppConfig {
+    
+    private static final Logger logger = Logger.getLogger(AppConfig.class.getName());
+    private static final String PREFIX = "apitester.";
+    private static final String CONFIG_FILE = "/apitester.properties";
+    
+    private static final Properties fileProperties = loadFileProperties();
+    
+    private AppConfig() {}
+    
+    private static Properties loadFileProperties() {
+        Properties properties = new Properties();
+        try (InputStream in = AppConfig.class.getResourceAsStream(CONFIG_FILE)) {
+            if (in != null) {
+                properties.load(in);
+            }
+        } catch (IOException e) {
+            logger.warning("Failed to load " + CONFIG_FILE + ": " + e.getMessage());
+        }
+        return properties;
+    }
+    
+    /**
+     * Get a configuration value, or the default when it is not set
+     */
+    public static String getString(String key, String defaultValue) {
+        String value = System.getProperty(PREFIX + key);
+        if (value == null) {
+            value = fileProperties.getProperty(PREFIX + key);
+        }
+        return value != null && !value.trim().isEmpty() ? value.trim() : defaultValue;
+    }
+    
+    public static int getInt(String key, int defaultValue) {
+        String value = getString(key, null);
+        try {
+            return value != null ? Integer.parseInt(value) : defaultValue;
+        } catch (NumberFormatException e) {
+            logger.warning("Invalid integer for " + PREFIX + key + ": " + value);
+            return defaultValue;
+        }
+    }
+    
+    public static long getLong(String key, long defaultValue) {
+        String value = getString(key, null);
+        try {
+            return value != null ? Long.parseLong(value) : defaultValue;
+        } catch (NumberFormatException e) {
+            logger.warning("Invalid number for " + PREFIX + key + ": " + value);
+            return defaultValue;
+        }
+    }
+    
+    public static boolean getBoolean(String key, boolean defaultValue) {
+        String value = getString(key, null);
+        return value != null ? Boolean.parseBoolean(value) : defaultValue;
+    }
+    
+    /**
+     * Get all values whose key starts with the given prefix, keyed by the
+     * remainder of the key (e.g. "pool.route." -> {"api.example.com": "40"})
+     */
+    public static Map<String, String> getByPrefix(String keyPrefix) {
+        String fullPrefix = PREFIX + keyPrefix;
+        Map<String, String> values = new HashMap<>();
+        for (String name : fileProperties.stringPropertyNames()) {
+            if (name.startsWith(fullPrefix)) {
+                values.put(name.substring(fullPrefix.length()), fileProperties.getProperty(name).trim());
+            }
+        }
+        // System properties override the file
+        for (String name : System.getProperties().stringPropertyNames()) {
+            if (name.startsWith(fullPrefix)) {
+                values.put(name.substring(fullPrefix.length()), System.getProperty(name).trim());
+            }
+        }
+        return values;
+    }
+}
@@ -0,0 +1,44 @@
+package com.apitester.config;
+
+import com.apitester.logging.SessionManager;
+import com.apitester.service.ApiRequestService;
+import com.apitester.service.BatchService;
+import com.apitester.service.CollectionRunner;
+import com.apitester.service.DiffService;
+import com.apitester.service.EventStreamService;
+import com.apitester.service.MonitorService;
+
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+import javax.servlet.annotation.WebListener;
+import java.util.logging.Logger;
+
+/**
+ * Shuts the shared services down when the application is undeployed or redeployed, so
+ * their pools, clients and timer threads do not outlive it and pin its class loader.
+ * The services that send requests go first, then ApiRequestService, whose closing
+ * clients also end any of their requests still in flight. Services that were never
+ * used are not created just to be shut down.
+ */
+@WebListener
+public class ServiceShutdownListener implements ServletContextListener {
+    
+    private static final Logger logger = Logger.getLogger(ServiceShutdownListener.class.getName());
+    
+    @Override
+    public void contextInitialized(ServletContextEvent sce) {
+        // Services start on first use
+    }
+    
+    @Override
+    public void contextDestroyed(ServletContextEvent sce) {
+        logger.info("Shutting down API Tester services");
+        EventStreamService.shutdownInstance();
+        BatchService.shutdownInstance();
+        CollectionRunner.shutdownInstance();
+        DiffService.shutdownInstance();
+        MonitorService.shutdownInstance();
+        ApiRequestService.shutdownInstance();
+        SessionManager.shutdownInstance();
+    }
+}
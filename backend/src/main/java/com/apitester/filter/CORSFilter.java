@@ -11,7 +11,7 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 
-@WebFilter("/api/*")
+@WebFilter(urlPatterns = "/api/*", asyncSupported = true)
 public class CORSFilter implements Filter {
 
     @Override
@@ -30,7 +30,7 @@ public class CORSFilter implements Filter {
         httpResponse.setHeader("Access-Control-Allow-Origin", "*");
         httpResponse.setHeader("Access-Control-Allow-Methods", "GET, POST, PUT, DELETE, OPTIONS");
         httpResponse.setHeader("Access-Control-Allow-Headers", 
-            "Content-Type, Authorization, X-Requested-With, X-Session-ID");
+            "Content-Type, Authorization, X-Requested-With, X-Session-ID, X-Api-Request, X-Execution-Mode, X-Stream-Response");
         httpResponse.setHeader("Access-Control-Expose-Headers", "X-Session-ID");
         httpResponse.setHeader("Access-Control-Max-Age", "3600");
         
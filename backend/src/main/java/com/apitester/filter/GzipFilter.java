@@ -0,0 +1,359 @@
+package com.apitester.filter;
+
+import com.apitester.config.AppConfig;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Gzip-encodes /api/* responses for clients that accept it. The first
+ * apitester.gzip.minSize bytes are held back so that smaller bodies are sent as they
+ * are. A flush before then sends the body as it is, so streamed progress lines are not
+ * delayed. Event streams are never held back or compressed.
+ *
+ * Registered in web.xml only, so it cannot wrap a response twice. Async responses
+ * are finished when their AsyncContext completes.
+ */
+public class GzipFilter implements Filter {
+    
+    private static final boolean ENABLED = AppConfig.getBoolean("gzip.enabled", true);
+    private static final int MIN_SIZE = AppConfig.getInt("gzip.minSize", 1024);
+    
+    @Override
+    public void init(FilterConfig filterConfig) throws ServletException {
+        // Initialization logic if needed
+    }
+    
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+        
+        if (!ENABLED || !(request instanceof HttpServletRequest) || !(response instanceof HttpServletResponse)) {
+            chain.doFilter(request, response);
+            return;
+        }
+        
+        HttpServletRequest httpRequest = (HttpServletRequest) request;
+        HttpServletResponse httpResponse = (HttpServletResponse) response;
+        httpResponse.addHeader("Vary", "Accept-Encoding");
+        
+        if ("HEAD".equalsIgnoreCase(httpRequest.getMethod()) || !acceptsGzip(httpRequest.getHeader("Accept-Encoding"))) {
+            chain.doFilter(request, response);
+            return;
+        }
+        
+        final GzipResponseWrapper wrappedResponse = new GzipResponseWrapper(httpResponse, MIN_SIZE);
+        chain.doFilter(request, wrappedResponse);
+        
+        if (request.isAsyncStarted()) {
+            // The servlet writes later, from another thread; finish once it completes
+            request.getAsyncContext().addListener(new AsyncListener() {
+                @Override
+                public void onComplete(AsyncEvent event) throws IOException {
+                    wrappedResponse.finish();
+                }
+                
+                @Override
+                public void onTimeout(AsyncEvent event) {
+                    // The servlet's own listener answers; onComplete follows
+                }
+                
+                @Override
+                public void onError(AsyncEvent event) {
+                    // onComplete follows
+                }
+                
+                @Override
+                public void onStartAsync(AsyncEvent event) {
+                    // Not re-dispatched
+                }
+            });
+        } else {
+            wrappedResponse.finish();
+        }
+    }
+    
+    /**
+     * Whether an Accept-Encoding header lists gzip with a non-zero quality
+     */
+    static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.split(";");
+            if (!parts[0].trim().equalsIgnoreCase("gzip")) {
+                continue;
+            }
+            for (int i = 1; i < parts.length; i++) {
+                String parameter = parts[i].trim();
+                if (parameter.startsWith("q=")) {
+                    try {
+                        return Double.parseDouble(parameter.substring(2).trim()) > 0;
+                    } catch (NumberFormatException e) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+    
+    /**
+     * Already-compressed media gains nothing from gzip
+     */
+    static boolean isCompressible(String contentType) {
+        if (contentType == null) {
+            return true;
+        }
+        String type = contentType.toLowerCase();
+        if (type.startsWith("image/")) {
+            return type.startsWith("image/svg");
+        }
+        return !(type.startsWith("video/") || type.startsWith("audio/") || type.contains("zip")
+            || type.contains("compressed") || type.startsWith("application/octet-stream"));
+    }
+    
+    @Override
+    public void destroy() {
+        // Cleanup logic if needed
+    }
+    
+    private static class GzipResponseWrapper extends HttpServletResponseWrapper {
+        
+        private final int minSize;
+        private GzipOutputStream stream;
+        private PrintWriter writer;
+        private long contentLength = -1;
+        
+        GzipResponseWrapper(HttpServletResponse response, int minSize) {
+            super(response);
+            this.minSize = minSize;
+        }
+        
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            if (writer != null) {
+                throw new IllegalStateException("getWriter() has already been called for this response");
+            }
+            if (stream == null) {
+                stream = new GzipOutputStream();
+            }
+            return stream;
+        }
+        
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            if (writer == null) {
+                if (stream != null) {
+                    throw new IllegalStateException("getOutputStream() has already been called for this response");
+                }
+                stream = new GzipOutputStream();
+                writer = new PrintWriter(new OutputStreamWriter(stream, getCharacterEncoding()));
+            }
+            return writer;
+        }
+        
+        // The length is only known to be right if the body goes out uncompressed
+        @Override
+        public void setContentLength(int len) {
+            contentLength = len;
+        }
+        
+        @Override
+        public void setContentLengthLong(long len) {
+            contentLength = len;
+        }
+        
+        // Held-back bytes count as committed: a servlet that wrote or flushed must not reset the response
+        @Override
+        public boolean isCommitted() {
+            return super.isCommitted() || (stream != null && stream.used);
+        }
+        
+        @Override
+        public void flushBuffer() throws IOException {
+            if (writer != null) {
+                writer.flush();
+            } else if (stream != null) {
+                stream.flush();
+            } else {
+                super.flushBuffer();
+            }
+        }
+        
+        @Override
+        public void resetBuffer() {
+            super.resetBuffer();
+            if (stream != null) {
+                stream.discardPending();
+            }
+        }
+        
+        @Override
+        public void reset() {
+            super.reset();
+            contentLength = -1;
+            if (stream != null) {
+                stream.discardPending();
+            }
+        }
+        
+        @Override
+        public void sendError(int sc, String msg) throws IOException {
+            resetBuffer();
+            super.sendError(sc, msg);
+        }
+        
+        @Override
+        public void sendError(int sc) throws IOException {
+            resetBuffer();
+            super.sendError(sc);
+        }
+        
+        void finish() throws IOException {
+            if (writer != null) {
+                writer.flush();
+            }
+            if (stream != null) {
+                stream.finish();
+            } else if (contentLength >= 0) {
+                super.setContentLengthLong(contentLength);
+            }
+        }
+        
+        /**
+         * Holds back up to minSize bytes, then commits to gzip or to a plain body
+         */
+        private class GzipOutputStream extends ServletOutputStream {
+            
+            private final ByteArrayOutputStream pending = new ByteArrayOutputStream(Math.min(minSize, 8192));
+            private OutputStream out;
+            private GZIPOutputStream gzip;
+            private boolean finished;
+            private boolean used;
+            
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[]{(byte) b}, 0, 1);
+            }
+            
+            @Override
+            public void write(byte[] buffer, int offset, int length) throws IOException {
+                if (finished) {
+                    throw new IOException("Response already finished");
+                }
+                used = true;
+                if (out == null) {
+                    if (isEventStream()) {
+                        start(false);
+                    } else if (pending.size() + length < minSize) {
+                        pending.write(buffer, offset, length);
+                        return;
+                    } else {
+                        start(true);
+                    }
+                }
+                out.write(buffer, offset, length);
+            }
+            
+            /**
+             * A servlet that flushes held-back bytes wants them delivered now, so they go out
+             * uncompressed, as a body under the threshold would; once compressing, the gzip
+             * stream is sync-flushed
+             */
+            @Override
+            public void flush() throws IOException {
+                used = true;
+                if (out == null) {
+                    if (pending.size() == 0 && !isEventStream()) {
+                        // Nothing to deliver yet; the encoding is still open
+                        return;
+                    }
+                    start(false);
+                }
+                out.flush();
+            }
+            
+            @Override
+            public void close() throws IOException {
+                finish();
+            }
+            
+            void finish() throws IOException {
+                if (finished) {
+                    return;
+                }
+                if (out == null && pending.size() > 0) {
+                    start(false);
+                }
+                if (gzip != null) {
+                    gzip.finish();
+                } else if (out == null && contentLength >= 0) {
+                    GzipResponseWrapper.super.setContentLengthLong(contentLength);
+                }
+                finished = true;
+            }
+            
+            private boolean isEventStream() {
+                return getContentType() != null && getContentType().toLowerCase().startsWith("text/event-stream");
+            }
+            
+            void discardPending() {
+                pending.reset();
+            }
+            
+            private void start(boolean compress) throws IOException {
+                ServletOutputStream raw = GzipResponseWrapper.super.getOutputStream();
+                if (compress && !containsHeader("Content-Encoding") && isCompressible(getContentType())) {
+                    setHeader("Content-Encoding", "gzip");
+                    gzip = new GZIPOutputStream(raw, 8192, true);  // Sync flush, so flush() pushes out what was written
+                    out = gzip;
+                } else {
+                    if (contentLength >= 0) {
+                        GzipResponseWrapper.super.setContentLengthLong(contentLength);
+                    }
+                    out = raw;
+                }
+                pending.writeTo(out);
+                pending.reset();
+            }
+            
+            @Override
+            public boolean isReady() {
+                try {
+                    return GzipResponseWrapper.super.getOutputStream().isReady();
+                } catch (IOException e) {
+                    return false;
+                }
+            }
+            
+            @Override
+            public void setWriteListener(WriteListener writeListener) {
+                try {
+                    GzipResponseWrapper.super.getOutputStream().setWriteListener(writeListener);
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package com.apitester.logging;
 
+import com.apitester.model.AttemptTiming;
+import com.apitester.model.PhaseTimings;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 
@@ -112,10 +114,35 @@ public class SecurityLogger {
                              Map<String, String> headers, String requestBody, 
                              int responseStatus, String responseBody, 
                              Map<String, String> responseHeaders, long responseTime) {
+        logApiRequest(sessionId, method, url, headers, requestBody, responseStatus,
+                      responseBody, responseHeaders, responseTime, null);
+    }
+    
+    /**
+     * Log an API request together with the phase breakdown of its upstream exchange
+     */
+    public void logApiRequest(String sessionId, String method, String url, 
+                             Map<String, String> headers, String requestBody, 
+                             int responseStatus, String responseBody, 
+                             Map<String, String> responseHeaders, long responseTime,
+                             PhaseTimings timings) {
+        logApiRequest(sessionId, method, url, headers, requestBody, responseStatus,
+                      responseBody, responseHeaders, responseTime, timings, null);
+    }
+    
+    /**
+     * Log an API request with its phase breakdown and the upstream attempts (retries
+     * and hedges) it took
+     */
+    public void logApiRequest(String sessionId, String method, String url, 
+                             Map<String, String> headers, String requestBody, 
+                             int responseStatus, String responseBody, 
+                             Map<String, String> responseHeaders, long responseTime,
+                             PhaseTimings timings, List<AttemptTiming> attempts) {
         
         try {
             LogEntry logEntry = new LogEntry();
-            logEntry.timestamp = dateFormat.format(new Date());
+            logEntry.timestamp = formatTimestamp();
             logEntry.sessionId = sessionId;
             logEntry.method = method;
             logEntry.url = maskSensitiveUrl(url);
@@ -125,6 +152,8 @@ public class SecurityLogger {
             logEntry.responseBody = maskSensitiveData(responseBody);
             logEntry.responseHeaders = maskSensitiveHeaders(responseHeaders);
             logEntry.responseTime = responseTime;
+            logEntry.timings = timings;
+            logEntry.attempts = attempts;
             logEntry.logLevel = determineLogLevel(responseStatus);
             
             // Write to both regular and encrypted logs
@@ -182,7 +211,15 @@ public class SecurityLogger {
         return "INFO";
     }
     
-    private void writeToRegularLog(LogEntry logEntry) throws IOException {
+    /**
+     * SimpleDateFormat is not thread-safe and requests are logged concurrently
+     */
+    private synchronized String formatTimestamp() {
+        return dateFormat.format(new Date());
+    }
+    
+    // Writes are synchronized so concurrent entries never interleave within a file
+    private synchronized void writeToRegularLog(LogEntry logEntry) throws IOException {
         File logFile = new File(LOG_DIR, API_LOG_FILE);
         try (FileWriter writer = new FileWriter(logFile, true)) {
             writer.write(objectMapper.writeValueAsString(logEntry) + "\n");
@@ -190,7 +227,7 @@ public class SecurityLogger {
         }
     }
     
-    private void writeToEncryptedLog(LogEntry logEntry) throws Exception {
+    private synchronized void writeToEncryptedLog(LogEntry logEntry) throws Exception {
         String jsonData = objectMapper.writeValueAsString(logEntry);
         String encryptedData = encrypt(jsonData);
         
@@ -221,17 +258,20 @@ public class SecurityLogger {
     public void logError(String sessionId, String operation, String error, Exception exception) {
         try {
             ErrorLogEntry errorEntry = new ErrorLogEntry();
-            errorEntry.timestamp = dateFormat.format(new Date());
+            errorEntry.timestamp = formatTimestamp();
             errorEntry.sessionId = sessionId;
             errorEntry.operation = operation;
             errorEntry.error = error;
             errorEntry.exceptionClass = exception != null ? exception.getClass().getSimpleName() : "Unknown";
             errorEntry.stackTrace = exception != null ? getStackTrace(exception) : "No stack trace available";
             
-            File errorLogFile = new File(LOG_DIR, "error.log");
-            try (FileWriter writer = new FileWriter(errorLogFile, true)) {
-                writer.write(objectMapper.writeValueAsString(errorEntry) + "\n");
-                writer.flush();
+            String json = objectMapper.writeValueAsString(errorEntry);
+            synchronized (this) {
+                File errorLogFile = new File(LOG_DIR, "error.log");
+                try (FileWriter writer = new FileWriter(errorLogFile, true)) {
+                    writer.write(json + "\n");
+                    writer.flush();
+                }
             }
         } catch (Exception e) {
             System.err.println("Failed to log error: " + e.getMessage());
@@ -261,6 +301,8 @@ public class SecurityLogger {
         public String responseBody;
         public Map<String, String> responseHeaders;
         public long responseTime;
+        public PhaseTimings timings;
+        public List<AttemptTiming> attempts;
         public String logLevel;
     }
     
@@ -13,6 +13,7 @@ public class SessionManager {
     private static final long SESSION_TIMEOUT = 30 * 60 * 1000; // 30 minutes
     
     private static SessionManager instance;
+    private Thread cleanupThread;
     private final SecureRandom random;
     private final ConcurrentHashMap<String, SessionInfo> sessions;
     
@@ -31,6 +32,16 @@ public class SessionManager {
         return instance;
     }
     
+    /**
+     * Stop the shared instance's cleanup thread, if it was ever created
+     */
+    public static synchronized void shutdownInstance() {
+        if (instance != null) {
+            instance.cleanupThread.interrupt();
+            instance = null;
+        }
+    }
+    
     /**
      * Generate a new session ID
      */
@@ -80,7 +91,7 @@ public class SessionManager {
      * Start cleanup thread to remove expired sessions
      */
     private void startCleanupThread() {
-        Thread cleanupThread = new Thread(() -> {
+        cleanupThread = new Thread(() -> {
             while (true) {
                 try {
                     Thread.sleep(5 * 60 * 1000); // Check every 5 minutes
@@ -0,0 +1,74 @@
+package com.apitester.model;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A collection of requests run as a dependency graph: steps wait for the steps whose
+ * variables they use, and steps that do not depend on each other run in parallel.
+ */
+public class ApiCollection {
+    private String name;
+    private List<CollectionStep> steps;
+    private Map<String, String> variables;
+    private int concurrency;
+    
+    // Default constructor
+    public ApiCollection() {}
+    
+    // Constructor with parameters
+    public ApiCollection(String name, List<CollectionStep> steps, Map<String, String> variables) {
+        this.name = name;
+        this.steps = steps;
+        this.variables = variables;
+    }
+    
+    // Getters and Setters
+    public String getName() {
+        return name;
+    }
+    
+    public void setName(String name) {
+        this.name = name;
+    }
+    
+    public List<CollectionStep> getSteps() {
+        return steps;
+    }
+    
+    public void setSteps(List<CollectionStep> steps) {
+        this.steps = steps;
+    }
+    
+    /**
+     * Initial variables, e.g. a base URL or credentials
+     */
+    public Map<String, String> getVariables() {
+        return variables;
+    }
+    
+    public void setVariables(Map<String, String> variables) {
+        this.variables = variables;
+    }
+    
+    /**
+     * Steps in flight at most; 0 means the configured default
+     */
+    public int getConcurrency() {
+        return concurrency;
+    }
+    
+    public void setConcurrency(int concurrency) {
+        this.concurrency = concurrency;
+    }
+    
+    @Override
+    public String toString() {
+        return "ApiCollection{" +
+                "name='" + name + '\'' +
+                ", steps=" + steps +
+                ", variables=" + variables +
+                ", concurrency=" + concurrency +
+                '}';
+    }
+}
@@ -1,5 +1,6 @@
 package com.apitester.model;
 
+import java.util.List;
 import java.util.Map;
 
 public class ApiRequest {
@@ -7,6 +8,13 @@ public class ApiRequest {
     private String method;
     private Map<String, String> headers;
     private String body;
+    private boolean bypassCache;
+    private Boolean coalesce;
+    private String protocol;
+    private RetryPolicy retry;
+    private HedgePolicy hedge;
+    private TimeoutPolicy timeouts;
+    private List<Assertion> assertions;
     
     // Default constructor
     public ApiRequest() {}
@@ -52,6 +60,86 @@ public class ApiRequest {
         this.body = body;
     }
     
+    /**
+     * Skip the response cache for this request (neither read nor stored)
+     */
+    public boolean isBypassCache() {
+        return bypassCache;
+    }
+    
+    public void setBypassCache(boolean bypassCache) {
+        this.bypassCache = bypassCache;
+    }
+    
+    /**
+     * Share one upstream execution with identical in-flight GET/HEAD requests;
+     * null uses the configured default
+     */
+    public Boolean getCoalesce() {
+        return coalesce;
+    }
+    
+    public void setCoalesce(Boolean coalesce) {
+        this.coalesce = coalesce;
+    }
+    
+    /**
+     * Upstream protocol: "http2" for the HTTP/2 engine (falls back to HTTP/1.1 when the
+     * server does not offer HTTP/2), "http1" for the HTTP/1.1 client; null uses the
+     * configured default
+     */
+    public String getProtocol() {
+        return protocol;
+    }
+    
+    public void setProtocol(String protocol) {
+        this.protocol = protocol;
+    }
+    
+    /**
+     * Retries for failed attempts and retryable statuses; null uses the configured default
+     */
+    public RetryPolicy getRetry() {
+        return retry;
+    }
+    
+    public void setRetry(RetryPolicy retry) {
+        this.retry = retry;
+    }
+    
+    /**
+     * Hedged duplicate for slow GET/HEAD requests; null uses the configured default
+     */
+    public HedgePolicy getHedge() {
+        return hedge;
+    }
+    
+    public void setHedge(HedgePolicy hedge) {
+        this.hedge = hedge;
+    }
+    
+    /**
+     * Connect, read and end-to-end timeouts; null uses the configured defaults
+     */
+    public TimeoutPolicy getTimeouts() {
+        return timeouts;
+    }
+    
+    public void setTimeouts(TimeoutPolicy timeouts) {
+        this.timeouts = timeouts;
+    }
+    
+    /**
+     * Checks run on the response as it streams in; results are in ApiResponse.assertions
+     */
+    public List<Assertion> getAssertions() {
+        return assertions;
+    }
+    
+    public void setAssertions(List<Assertion> assertions) {
+        this.assertions = assertions;
+    }
+    
     @Override
     public String toString() {
         return "ApiRequest{" +
@@ -59,6 +147,13 @@ public class ApiRequest {
                 ", method='" + method + '\'' +
                 ", headers=" + headers +
                 ", body='" + body + '\'' +
+                ", bypassCache=" + bypassCache +
+                ", coalesce=" + coalesce +
+                ", protocol='" + protocol + '\'' +
+                ", retry=" + retry +
+                ", hedge=" + hedge +
+                ", timeouts=" + timeouts +
+                ", assertions=" + assertions +
                 '}';
     }
 }
@@ -1,5 +1,6 @@
 package com.apitester.model;
 
+import java.util.List;
 import java.util.Map;
 
 public class ApiResponse {
@@ -9,6 +10,18 @@ public class ApiResponse {
     private String body;
     private long responseTime;
     private int size;
+    private long compressedSize;
+    private long requestSize;
+    private boolean bodyTruncated;
+    private String cacheStatus;
+    private boolean coalesced;
+    private PhaseTimings timings;
+    private String protocol;
+    private int attempts;
+    private List<AttemptTiming> attemptTimings;
+    private String timeoutPhase;
+    private List<AssertionResult> assertions;
+    private Boolean assertionsPassed;
     
     // Default constructor
     public ApiResponse() {}
@@ -73,6 +86,145 @@ public class ApiResponse {
         this.size = size;
     }
     
+    /**
+     * Body bytes as received from the upstream, before a gzip or deflate Content-Encoding
+     * was removed; equal to size when the body was not compressed, 0 when nothing was
+     * received (cache hits, failures)
+     */
+    public long getCompressedSize() {
+        return compressedSize;
+    }
+    
+    public void setCompressedSize(long compressedSize) {
+        this.compressedSize = compressedSize;
+    }
+    
+    /**
+     * Bytes of a streamed upload that were sent upstream; 0 for other requests
+     */
+    public long getRequestSize() {
+        return requestSize;
+    }
+    
+    public void setRequestSize(long requestSize) {
+        this.requestSize = requestSize;
+    }
+    
+    /**
+     * True when the body holds only a bounded prefix of a streamed response
+     */
+    public boolean isBodyTruncated() {
+        return bodyTruncated;
+    }
+    
+    public void setBodyTruncated(boolean bodyTruncated) {
+        this.bodyTruncated = bodyTruncated;
+    }
+    
+    /**
+     * HIT, MISS, REVALIDATED or BYPASS when the response cache handled the request; null otherwise
+     */
+    public String getCacheStatus() {
+        return cacheStatus;
+    }
+    
+    public void setCacheStatus(String cacheStatus) {
+        this.cacheStatus = cacheStatus;
+    }
+    
+    /**
+     * True when this response was shared from an identical request already in flight
+     */
+    public boolean isCoalesced() {
+        return coalesced;
+    }
+    
+    public void setCoalesced(boolean coalesced) {
+        this.coalesced = coalesced;
+    }
+    
+    /**
+     * Phase breakdown of the upstream exchange; null when no exchange was timed
+     * (cache hits, async execution, failures)
+     */
+    public PhaseTimings getTimings() {
+        return timings;
+    }
+    
+    public void setTimings(PhaseTimings timings) {
+        this.timings = timings;
+    }
+    
+    /**
+     * Protocol the upstream response arrived over, e.g. "HTTP/1.1" or "HTTP/2";
+     * null when there was no exchange (cache hits, failures)
+     */
+    public String getProtocol() {
+        return protocol;
+    }
+    
+    public void setProtocol(String protocol) {
+        this.protocol = protocol;
+    }
+    
+    /**
+     * Upstream requests sent for this response, retries and hedges included;
+     * 0 when attempts were not tracked (cache hits, async execution, load tests)
+     */
+    public int getAttempts() {
+        return attempts;
+    }
+    
+    public void setAttempts(int attempts) {
+        this.attempts = attempts;
+    }
+    
+    /**
+     * Timing and outcome of each upstream attempt, in the order they were sent;
+     * null when attempts were not tracked
+     */
+    public List<AttemptTiming> getAttemptTimings() {
+        return attemptTimings;
+    }
+    
+    public void setAttemptTimings(List<AttemptTiming> attemptTimings) {
+        this.attemptTimings = attemptTimings;
+    }
+    
+    /**
+     * For a request that timed out, the limit it hit: pool, connect, tls, read or
+     * deadline (the request's end-to-end deadline); null otherwise
+     */
+    public String getTimeoutPhase() {
+        return timeoutPhase;
+    }
+    
+    public void setTimeoutPhase(String timeoutPhase) {
+        this.timeoutPhase = timeoutPhase;
+    }
+    
+    /**
+     * Results of the request's assertions; null when it had none
+     */
+    public List<AssertionResult> getAssertions() {
+        return assertions;
+    }
+    
+    public void setAssertions(List<AssertionResult> assertions) {
+        this.assertions = assertions;
+    }
+    
+    /**
+     * Whether every assertion passed; null when the request had none
+     */
+    public Boolean getAssertionsPassed() {
+        return assertionsPassed;
+    }
+    
+    public void setAssertionsPassed(Boolean assertionsPassed) {
+        this.assertionsPassed = assertionsPassed;
+    }
+    
     @Override
     public String toString() {
         return "ApiResponse{" +
@@ -82,6 +234,17 @@ public class ApiResponse {
                 ", body='" + body + '\'' +
                 ", responseTime=" + responseTime +
                 ", size=" + size +
+                ", compressedSize=" + compressedSize +
+                ", requestSize=" + requestSize +
+                ", bodyTruncated=" + bodyTruncated +
+                ", cacheStatus='" + cacheStatus + '\'' +
+                ", coalesced=" + coalesced +
+                ", timings=" + timings +
+                ", protocol='" + protocol + '\'' +
+                ", attempts=" + attempts +
+                ", attemptTimings=" + attemptTimings +
+                ", timeoutPhase='" + timeoutPhase + '\'' +
+                ", assertionsPassed=" + assertionsPassed +
                 '}';
     }
 }
@@ -0,0 +1,132 @@
+package com.apitester.model;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.List;
+
+/**
+ * A check the backend runs on a response while its body streams in. The type decides
+ * which fields apply:
+ * status (one of "in", else equal to "equals", else any 2xx/3xx),
+ * header (header "name" matches the regex "matches", else equals "equals", else exists),
+ * json (the value at the JSON pointer "path" equals "equals", else exists),
+ * body (the regex "matches" is found in the body) and
+ * latency (the whole response, body included, took at most maxMs).
+ * "exists": false turns a header or json existence check into an absence check.
+ */
+public class Assertion {
+    public static final String STATUS = "status";
+    public static final String HEADER = "header";
+    public static final String JSON = "json";
+    public static final String BODY = "body";
+    public static final String LATENCY = "latency";
+    
+    private String type;
+    private String name;
+    private String path;
+    private JsonNode equals;
+    private Boolean exists;
+    private String matches;
+    private List<Integer> in;
+    private Long maxMs;
+    
+    // Default constructor
+    public Assertion() {}
+    
+    // Constructor with parameters
+    public Assertion(String type) {
+        this.type = type;
+    }
+    
+    // Getters and Setters
+    public String getType() {
+        return type;
+    }
+    
+    public void setType(String type) {
+        this.type = type;
+    }
+    
+    /**
+     * Header name, matched case-insensitively
+     */
+    public String getName() {
+        return name;
+    }
+    
+    public void setName(String name) {
+        this.name = name;
+    }
+    
+    /**
+     * JSON pointer into the body, e.g. /data/0/id
+     */
+    public String getPath() {
+        return path;
+    }
+    
+    public void setPath(String path) {
+        this.path = path;
+    }
+    
+    /**
+     * Expected value: any JSON value for json (numbers compare by value), a string for
+     * header, a number for status
+     */
+    public JsonNode getEquals() {
+        return equals;
+    }
+    
+    public void setEquals(JsonNode equals) {
+        this.equals = equals;
+    }
+    
+    public Boolean getExists() {
+        return exists;
+    }
+    
+    public void setExists(Boolean exists) {
+        this.exists = exists;
+    }
+    
+    /**
+     * Regular expression, found anywhere in the header value or body
+     */
+    public String getMatches() {
+        return matches;
+    }
+    
+    public void setMatches(String matches) {
+        this.matches = matches;
+    }
+    
+    public List<Integer> getIn() {
+        return in;
+    }
+    
+    public void setIn(List<Integer> in) {
+        this.in = in;
+    }
+    
+    public Long getMaxMs() {
+        return maxMs;
+    }
+    
+    public void setMaxMs(Long maxMs) {
+        this.maxMs = maxMs;
+    }
+    
+    @Override
+    public String toString() {
+        return "Assertion{" +
+                "type='" + type + '\'' +
+                ", name='" + name + '\'' +
+                ", path='" + path + '\'' +
+                ", equals=" + equals +
+                ", exists=" + exists +
+                ", matches='" + matches + '\'' +
+                ", in=" + in +
+                ", maxMs=" + maxMs +
+                '}';
+    }
+}
@@ -0,0 +1,74 @@
+package com.apitester.model;
+
+/**
+ * Outcome of one Assertion, in the order the request listed them
+ */
+public class AssertionResult {
+    private String type;
+    private String description;
+    private boolean passed;
+    private String actual;
+    private String error;
+    
+    // Default constructor
+    public AssertionResult() {}
+    
+    // Constructor with parameters
+    public AssertionResult(String type, String description, boolean passed, String actual) {
+        this.type = type;
+        this.description = description;
+        this.passed = passed;
+        this.actual = actual;
+    }
+    
+    // Getters and Setters
+    public String getType() {
+        return type;
+    }
+    
+    public void setType(String type) {
+        this.type = type;
+    }
+    
+    /**
+     * The check in words, e.g. "json /data/id == 42"
+     */
+    public String getDescription() {
+        return description;
+    }
+    
+    public void setDescription(String description) {
+        this.description = description;
+    }
+    
+    public boolean isPassed() {
+        return passed;
+    }
+    
+    public void setPassed(boolean passed) {
+        this.passed = passed;
+    }
+    
+    /**
+     * What the response had (status, header value, JSON value, matched text or latency),
+     * cut to a short prefix; null when it had nothing to compare
+     */
+    public String getActual() {
+        return actual;
+    }
+    
+    public void setActual(String actual) {
+        this.actual = actual;
+    }
+    
+    /**
+     * Why the check could not be made, e.g. no response or a body that is not JSON
+     */
+    public String getError() {
+        return error;
+    }
+    
+    public void setError(String error) {
+        this.error = error;
+    }
+}
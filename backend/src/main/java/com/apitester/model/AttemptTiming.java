@@ -0,0 +1,119 @@
+package com.apitester.model;
+
+/**
+ * One upstream attempt of a request: a first try, a retry or a hedge
+ */
+public class AttemptTiming {
+    
+    /** The response of this attempt was returned */
+    public static final String USED = "USED";
+    /** The attempt failed or returned a retryable status, and was retried */
+    public static final String RETRIED = "RETRIED";
+    /** The attempt failed and no retry followed */
+    public static final String FAILED = "FAILED";
+    /** The other attempt of a hedged pair answered first; this one was cancelled or its answer discarded */
+    public static final String CANCELLED = "CANCELLED";
+    
+    private int attempt;
+    private boolean hedge;
+    private long startOffsetMs;
+    private long durationMs;
+    private int status;
+    private String error;
+    private String outcome;
+    
+    // Default constructor
+    public AttemptTiming() {}
+    
+    // Constructor with parameters
+    public AttemptTiming(int attempt, boolean hedge, long startOffsetMs) {
+        this.attempt = attempt;
+        this.hedge = hedge;
+        this.startOffsetMs = startOffsetMs;
+    }
+    
+    // Getters and Setters
+    /**
+     * 1-based number of the attempt, in the order attempts were sent
+     */
+    public int getAttempt() {
+        return attempt;
+    }
+    
+    public void setAttempt(int attempt) {
+        this.attempt = attempt;
+    }
+    
+    /**
+     * True when this attempt was sent as a hedge alongside a slower one
+     */
+    public boolean isHedge() {
+        return hedge;
+    }
+    
+    public void setHedge(boolean hedge) {
+        this.hedge = hedge;
+    }
+    
+    /**
+     * When the attempt was sent, relative to the start of the request
+     */
+    public long getStartOffsetMs() {
+        return startOffsetMs;
+    }
+    
+    public void setStartOffsetMs(long startOffsetMs) {
+        this.startOffsetMs = startOffsetMs;
+    }
+    
+    public long getDurationMs() {
+        return durationMs;
+    }
+    
+    public void setDurationMs(long durationMs) {
+        this.durationMs = durationMs;
+    }
+    
+    /**
+     * Response status, 0 when the attempt failed or was cancelled before a response
+     */
+    public int getStatus() {
+        return status;
+    }
+    
+    public void setStatus(int status) {
+        this.status = status;
+    }
+    
+    public String getError() {
+        return error;
+    }
+    
+    public void setError(String error) {
+        this.error = error;
+    }
+    
+    /**
+     * USED, RETRIED, FAILED or CANCELLED
+     */
+    public String getOutcome() {
+        return outcome;
+    }
+    
+    public void setOutcome(String outcome) {
+        this.outcome = outcome;
+    }
+    
+    @Override
+    public String toString() {
+        return "AttemptTiming{" +
+                "attempt=" + attempt +
+                ", hedge=" + hedge +
+                ", startOffsetMs=" + startOffsetMs +
+                ", durationMs=" + durationMs +
+                ", status=" + status +
+                ", error='" + error + '\'' +
+                ", outcome='" + outcome + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,70 @@
+package com.apitester.model;
+
+/**
+ * One completed item of a batch run, streamed back as a single NDJSON line
+ */
+public class BatchItemResult {
+    private String type = "item";
+    private int index;
+    private long startOffsetMs;
+    private long durationMs;
+    private ApiResponse response;
+    
+    // Default constructor
+    public BatchItemResult() {}
+    
+    // Constructor with parameters
+    public BatchItemResult(int index, long startOffsetMs, long durationMs, ApiResponse response) {
+        this.index = index;
+        this.startOffsetMs = startOffsetMs;
+        this.durationMs = durationMs;
+        this.response = response;
+    }
+    
+    // Getters and Setters
+    public String getType() {
+        return type;
+    }
+    
+    public void setType(String type) {
+        this.type = type;
+    }
+    
+    /**
+     * Position of the request in the submitted array
+     */
+    public int getIndex() {
+        return index;
+    }
+    
+    public void setIndex(int index) {
+        this.index = index;
+    }
+    
+    /**
+     * Milliseconds between the start of the batch and the start of this item
+     */
+    public long getStartOffsetMs() {
+        return startOffsetMs;
+    }
+    
+    public void setStartOffsetMs(long startOffsetMs) {
+        this.startOffsetMs = startOffsetMs;
+    }
+    
+    public long getDurationMs() {
+        return durationMs;
+    }
+    
+    public void setDurationMs(long durationMs) {
+        this.durationMs = durationMs;
+    }
+    
+    public ApiResponse getResponse() {
+        return response;
+    }
+    
+    public void setResponse(ApiResponse response) {
+        this.response = response;
+    }
+}
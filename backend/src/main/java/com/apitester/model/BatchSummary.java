@@ -0,0 +1,92 @@
+package com.apitester.model;
+
+/**
+ * Final NDJSON line of a batch run
+ */
+public class BatchSummary {
+    private String type = "summary";
+    private int total;
+    private int succeeded;
+    private int failed;
+    private int concurrency;
+    private long wallClockMs;
+    private long totalItemMs;
+    private boolean aborted;
+    
+    // Default constructor
+    public BatchSummary() {}
+    
+    // Getters and Setters
+    public String getType() {
+        return type;
+    }
+    
+    public void setType(String type) {
+        this.type = type;
+    }
+    
+    public int getTotal() {
+        return total;
+    }
+    
+    public void setTotal(int total) {
+        this.total = total;
+    }
+    
+    /**
+     * Items that received an upstream response with a status below 400
+     */
+    public int getSucceeded() {
+        return succeeded;
+    }
+    
+    public void setSucceeded(int succeeded) {
+        this.succeeded = succeeded;
+    }
+    
+    public int getFailed() {
+        return failed;
+    }
+    
+    public void setFailed(int failed) {
+        this.failed = failed;
+    }
+    
+    public int getConcurrency() {
+        return concurrency;
+    }
+    
+    public void setConcurrency(int concurrency) {
+        this.concurrency = concurrency;
+    }
+    
+    public long getWallClockMs() {
+        return wallClockMs;
+    }
+    
+    public void setWallClockMs(long wallClockMs) {
+        this.wallClockMs = wallClockMs;
+    }
+    
+    /**
+     * Sum of item durations; compared with wallClockMs it shows the parallel speed-up
+     */
+    public long getTotalItemMs() {
+        return totalItemMs;
+    }
+    
+    public void setTotalItemMs(long totalItemMs) {
+        this.totalItemMs = totalItemMs;
+    }
+    
+    /**
+     * True when the run stopped early, e.g. because the client disconnected
+     */
+    public boolean isAborted() {
+        return aborted;
+    }
+    
+    public void setAborted(boolean aborted) {
+        this.aborted = aborted;
+    }
+}
@@ -0,0 +1,91 @@
+package com.apitester.model;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One request of a collection. Its url, header names and values and body may refer to
+ * variables as {{name}}; the step then runs after the step that extracts the variable.
+ */
+public class CollectionStep {
+    private String id;
+    private ApiRequest request;
+    private Map<String, String> extract;
+    private List<String> dependsOn;
+    private List<Integer> expectedStatus;
+    
+    // Default constructor
+    public CollectionStep() {}
+    
+    // Constructor with parameters
+    public CollectionStep(String id, ApiRequest request, Map<String, String> extract) {
+        this.id = id;
+        this.request = request;
+        this.extract = extract;
+    }
+    
+    // Getters and Setters
+    /**
+     * Name other steps use in dependsOn; "step" + position (from 1) when not set
+     */
+    public String getId() {
+        return id;
+    }
+    
+    public void setId(String id) {
+        this.id = id;
+    }
+    
+    public ApiRequest getRequest() {
+        return request;
+    }
+    
+    public void setRequest(ApiRequest request) {
+        this.request = request;
+    }
+    
+    /**
+     * Variables to take from the response, by name: "status", "header:Name",
+     * "body" (the whole body) or "body:/json/pointer" (or just "/json/pointer")
+     */
+    public Map<String, String> getExtract() {
+        return extract;
+    }
+    
+    public void setExtract(Map<String, String> extract) {
+        this.extract = extract;
+    }
+    
+    /**
+     * Steps to wait for besides those whose variables this step uses
+     */
+    public List<String> getDependsOn() {
+        return dependsOn;
+    }
+    
+    public void setDependsOn(List<String> dependsOn) {
+        this.dependsOn = dependsOn;
+    }
+    
+    /**
+     * Statuses that count as passed; any 2xx/3xx when empty
+     */
+    public List<Integer> getExpectedStatus() {
+        return expectedStatus;
+    }
+    
+    public void setExpectedStatus(List<Integer> expectedStatus) {
+        this.expectedStatus = expectedStatus;
+    }
+    
+    @Override
+    public String toString() {
+        return "CollectionStep{" +
+                "id='" + id + '\'' +
+                ", request=" + request +
+                ", extract=" + extract +
+                ", dependsOn=" + dependsOn +
+                ", expectedStatus=" + expectedStatus +
+                '}';
+    }
+}
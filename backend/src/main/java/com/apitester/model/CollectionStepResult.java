@@ -0,0 +1,128 @@
+package com.apitester.model;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One finished (or skipped) step of a collection run, streamed back as a single NDJSON line
+ */
+public class CollectionStepResult {
+    public static final String PASSED = "passed";
+    public static final String FAILED = "failed";
+    public static final String SKIPPED = "skipped";
+    
+    private String type = "step";
+    private String id;
+    private int index;
+    private String result;
+    private String error;
+    private List<String> dependsOn;
+    private long startOffsetMs;
+    private long durationMs;
+    private Map<String, String> extracted;
+    private ApiResponse response;
+    
+    // Default constructor
+    public CollectionStepResult() {}
+    
+    // Constructor with parameters
+    public CollectionStepResult(String id, int index, List<String> dependsOn) {
+        this.id = id;
+        this.index = index;
+        this.dependsOn = dependsOn;
+    }
+    
+    // Getters and Setters
+    public String getType() {
+        return type;
+    }
+    
+    public void setType(String type) {
+        this.type = type;
+    }
+    
+    public String getId() {
+        return id;
+    }
+    
+    public void setId(String id) {
+        this.id = id;
+    }
+    
+    /**
+     * Position of the step in the collection
+     */
+    public int getIndex() {
+        return index;
+    }
+    
+    public void setIndex(int index) {
+        this.index = index;
+    }
+    
+    /**
+     * passed, failed (unexpected status, a failed assertion or a variable that could not be extracted), or
+     * skipped because a step it depends on did not pass
+     */
+    public String getResult() {
+        return result;
+    }
+    
+    public void setResult(String result) {
+        this.result = result;
+    }
+    
+    public String getError() {
+        return error;
+    }
+    
+    public void setError(String error) {
+        this.error = error;
+    }
+    
+    /**
+     * Steps this one waited for
+     */
+    public List<String> getDependsOn() {
+        return dependsOn;
+    }
+    
+    public void setDependsOn(List<String> dependsOn) {
+        this.dependsOn = dependsOn;
+    }
+    
+    /**
+     * Milliseconds between the start of the run and the start of this step
+     */
+    public long getStartOffsetMs() {
+        return startOffsetMs;
+    }
+    
+    public void setStartOffsetMs(long startOffsetMs) {
+        this.startOffsetMs = startOffsetMs;
+    }
+    
+    public long getDurationMs() {
+        return durationMs;
+    }
+    
+    public void setDurationMs(long durationMs) {
+        this.durationMs = durationMs;
+    }
+    
+    public Map<String, String> getExtracted() {
+        return extracted;
+    }
+    
+    public void setExtracted(Map<String, String> extracted) {
+        this.extracted = extracted;
+    }
+    
+    public ApiResponse getResponse() {
+        return response;
+    }
+    
+    public void setResponse(ApiResponse response) {
+        this.response = response;
+    }
+}
@@ -0,0 +1,147 @@
+package com.apitester.model;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Final NDJSON line of a collection run
+ */
+public class CollectionSummary {
+    private String type = "summary";
+    private String name;
+    private int total;
+    private int passed;
+    private int failed;
+    private int skipped;
+    private int concurrency;
+    private long wallClockMs;
+    private long totalStepMs;
+    private long criticalPathMs;
+    private List<String> criticalPath;
+    private Map<String, String> variables;
+    private boolean aborted;
+    
+    // Default constructor
+    public CollectionSummary() {}
+    
+    // Getters and Setters
+    public String getType() {
+        return type;
+    }
+    
+    public void setType(String type) {
+        this.type = type;
+    }
+    
+    public String getName() {
+        return name;
+    }
+    
+    public void setName(String name) {
+        this.name = name;
+    }
+    
+    public int getTotal() {
+        return total;
+    }
+    
+    public void setTotal(int total) {
+        this.total = total;
+    }
+    
+    public int getPassed() {
+        return passed;
+    }
+    
+    public void setPassed(int passed) {
+        this.passed = passed;
+    }
+    
+    public int getFailed() {
+        return failed;
+    }
+    
+    public void setFailed(int failed) {
+        this.failed = failed;
+    }
+    
+    public int getSkipped() {
+        return skipped;
+    }
+    
+    public void setSkipped(int skipped) {
+        this.skipped = skipped;
+    }
+    
+    public int getConcurrency() {
+        return concurrency;
+    }
+    
+    public void setConcurrency(int concurrency) {
+        this.concurrency = concurrency;
+    }
+    
+    public long getWallClockMs() {
+        return wallClockMs;
+    }
+    
+    public void setWallClockMs(long wallClockMs) {
+        this.wallClockMs = wallClockMs;
+    }
+    
+    /**
+     * Sum of all step durations: how long the steps would take one after another
+     */
+    public long getTotalStepMs() {
+        return totalStepMs;
+    }
+    
+    public void setTotalStepMs(long totalStepMs) {
+        this.totalStepMs = totalStepMs;
+    }
+    
+    /**
+     * Duration of the longest chain of dependent steps, the least the run could take
+     * with unlimited concurrency; wallClockMs above it is time steps waited for a worker
+     */
+    public long getCriticalPathMs() {
+        return criticalPathMs;
+    }
+    
+    public void setCriticalPathMs(long criticalPathMs) {
+        this.criticalPathMs = criticalPathMs;
+    }
+    
+    /**
+     * Step ids of that chain, first to last
+     */
+    public List<String> getCriticalPath() {
+        return criticalPath;
+    }
+    
+    public void setCriticalPath(List<String> criticalPath) {
+        this.criticalPath = criticalPath;
+    }
+    
+    /**
+     * Variables at the end of the run, initial and extracted
+     */
+    public Map<String, String> getVariables() {
+        return variables;
+    }
+    
+    public void setVariables(Map<String, String> variables) {
+        this.variables = variables;
+    }
+    
+    /**
+     * True when the client disconnected and the remaining steps were cancelled
+     */
+    public boolean isAborted() {
+        return aborted;
+    }
+    
+    public void setAborted(boolean aborted) {
+        this.aborted = aborted;
+    }
+}
@@ -0,0 +1,90 @@
+package com.apitester.model;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * One difference between two responses. Body paths are JSON pointers (line indexes for
+ * bodies that are not JSON); header paths are /Header-Name.
+ */
+public class DiffChange {
+    public static final String ADDED = "added";
+    public static final String REMOVED = "removed";
+    public static final String CHANGED = "changed";
+    
+    private String op;
+    private String path;
+    private String fromPath;
+    private JsonNode left;
+    private JsonNode right;
+    private boolean truncated;
+    
+    // Default constructor
+    public DiffChange() {}
+    
+    // Constructor with parameters
+    public DiffChange(String op, String path, JsonNode left, JsonNode right) {
+        this.op = op;
+        this.path = path;
+        this.left = left;
+        this.right = right;
+    }
+    
+    // Getters and Setters
+    public String getOp() {
+        return op;
+    }
+    
+    public void setOp(String op) {
+        this.op = op;
+    }
+    
+    /**
+     * Where the change is in the right response (in the left one for removals)
+     */
+    public String getPath() {
+        return path;
+    }
+    
+    public void setPath(String path) {
+        this.path = path;
+    }
+    
+    /**
+     * Path in the left response when it differs from path, i.e. when array alignment
+     * matched elements at different positions
+     */
+    public String getFromPath() {
+        return fromPath;
+    }
+    
+    public void setFromPath(String fromPath) {
+        this.fromPath = fromPath;
+    }
+    
+    public JsonNode getLeft() {
+        return left;
+    }
+    
+    public void setLeft(JsonNode left) {
+        this.left = left;
+    }
+    
+    public JsonNode getRight() {
+        return right;
+    }
+    
+    public void setRight(JsonNode right) {
+        this.right = right;
+    }
+    
+    /**
+     * A value was too long (apitester.diff.maxValueChars) and is shown as the start of its JSON text
+     */
+    public boolean isTruncated() {
+        return truncated;
+    }
+    
+    public void setTruncated(boolean truncated) {
+        this.truncated = truncated;
+    }
+}
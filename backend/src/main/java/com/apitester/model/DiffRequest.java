@@ -0,0 +1,96 @@
+package com.apitester.model;
+
+import com.apitester.logging.SecurityLogger;
+
+import java.util.List;
+
+/**
+ * Two responses to compare. Each side is either a request to run now (left, right) or an
+ * entry as returned by /api/logs (leftEntry, rightEntry), so a live response can also be
+ * compared with one recorded earlier. Requests on both sides run concurrently.
+ */
+public class DiffRequest {
+    private ApiRequest left;
+    private ApiRequest right;
+    private SecurityLogger.LogEntry leftEntry;
+    private SecurityLogger.LogEntry rightEntry;
+    private List<String> ignorePaths;
+    private List<String> ignoreHeaders;
+    private List<String> arrayKeys;
+    
+    // Default constructor
+    public DiffRequest() {}
+    
+    // Constructor with parameters
+    public DiffRequest(ApiRequest left, ApiRequest right) {
+        this.left = left;
+        this.right = right;
+    }
+    
+    // Getters and Setters
+    public ApiRequest getLeft() {
+        return left;
+    }
+    
+    public void setLeft(ApiRequest left) {
+        this.left = left;
+    }
+    
+    public ApiRequest getRight() {
+        return right;
+    }
+    
+    public void setRight(ApiRequest right) {
+        this.right = right;
+    }
+    
+    public SecurityLogger.LogEntry getLeftEntry() {
+        return leftEntry;
+    }
+    
+    public void setLeftEntry(SecurityLogger.LogEntry leftEntry) {
+        this.leftEntry = leftEntry;
+    }
+    
+    public SecurityLogger.LogEntry getRightEntry() {
+        return rightEntry;
+    }
+    
+    public void setRightEntry(SecurityLogger.LogEntry rightEntry) {
+        this.rightEntry = rightEntry;
+    }
+    
+    /**
+     * JSON pointers left out of the body comparison, with their children; a * segment
+     * matches any field or index, e.g. /items/*&#47;updatedAt
+     */
+    public List<String> getIgnorePaths() {
+        return ignorePaths;
+    }
+    
+    public void setIgnorePaths(List<String> ignorePaths) {
+        this.ignorePaths = ignorePaths;
+    }
+    
+    /**
+     * Headers left out in addition to apitester.diff.ignoreHeaders
+     */
+    public List<String> getIgnoreHeaders() {
+        return ignoreHeaders;
+    }
+    
+    public void setIgnoreHeaders(List<String> ignoreHeaders) {
+        this.ignoreHeaders = ignoreHeaders;
+    }
+    
+    /**
+     * Fields that identify array elements, tried in order, instead of apitester.diff.arrayKeys
+     */
+    public List<String> getArrayKeys() {
+        return arrayKeys;
+    }
+    
+    public void setArrayKeys(List<String> arrayKeys) {
+        this.arrayKeys = arrayKeys;
+    }
+}
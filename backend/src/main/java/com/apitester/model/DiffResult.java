@@ -0,0 +1,137 @@
+package com.apitester.model;
+
+import java.util.List;
+
+/**
+ * Structural comparison of two responses: status, headers, body and timings. Counts
+ * cover every difference found; the change lists stop at apitester.diff.maxChanges.
+ */
+public class DiffResult {
+    public static final String JSON = "json";
+    public static final String TEXT = "text";
+    
+    private boolean identical;
+    private int leftStatus;
+    private int rightStatus;
+    private List<DiffChange> headers;
+    private String bodyFormat;
+    private List<DiffChange> body;
+    private int added;
+    private int removed;
+    private int changed;
+    private boolean truncated;
+    private List<TimingDelta> timings;
+    private long diffMs;
+    
+    // Default constructor
+    public DiffResult() {}
+    
+    // Getters and Setters
+    /**
+     * Same status, no header differences and no body differences (timings aside)
+     */
+    public boolean isIdentical() {
+        return identical;
+    }
+    
+    public void setIdentical(boolean identical) {
+        this.identical = identical;
+    }
+    
+    public int getLeftStatus() {
+        return leftStatus;
+    }
+    
+    public void setLeftStatus(int leftStatus) {
+        this.leftStatus = leftStatus;
+    }
+    
+    public int getRightStatus() {
+        return rightStatus;
+    }
+    
+    public void setRightStatus(int rightStatus) {
+        this.rightStatus = rightStatus;
+    }
+    
+    public List<DiffChange> getHeaders() {
+        return headers;
+    }
+    
+    public void setHeaders(List<DiffChange> headers) {
+        this.headers = headers;
+    }
+    
+    /**
+     * json when both bodies parsed as JSON, otherwise text (compared line by line)
+     */
+    public String getBodyFormat() {
+        return bodyFormat;
+    }
+    
+    public void setBodyFormat(String bodyFormat) {
+        this.bodyFormat = bodyFormat;
+    }
+    
+    public List<DiffChange> getBody() {
+        return body;
+    }
+    
+    public void setBody(List<DiffChange> body) {
+        this.body = body;
+    }
+    
+    public int getAdded() {
+        return added;
+    }
+    
+    public void setAdded(int added) {
+        this.added = added;
+    }
+    
+    public int getRemoved() {
+        return removed;
+    }
+    
+    public void setRemoved(int removed) {
+        this.removed = removed;
+    }
+    
+    public int getChanged() {
+        return changed;
+    }
+    
+    public void setChanged(int changed) {
+        this.changed = changed;
+    }
+    
+    /**
+     * More body differences were found than the body list holds
+     */
+    public boolean isTruncated() {
+        return truncated;
+    }
+    
+    public void setTruncated(boolean truncated) {
+        this.truncated = truncated;
+    }
+    
+    public List<TimingDelta> getTimings() {
+        return timings;
+    }
+    
+    public void setTimings(List<TimingDelta> timings) {
+        this.timings = timings;
+    }
+    
+    /**
+     * Time spent comparing, excluding the requests
+     */
+    public long getDiffMs() {
+        return diffMs;
+    }
+    
+    public void setDiffMs(long diffMs) {
+        this.diffMs = diffMs;
+    }
+}
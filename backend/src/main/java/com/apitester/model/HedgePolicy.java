@@ -0,0 +1,63 @@
+package com.apitester.model;
+
+/**
+ * Hedging policy of one GET or HEAD request: when no response has arrived after the
+ * hedge delay, a second identical request is sent and whichever answers first is used.
+ * The delay is delayMs when set, else the given latency percentile of recent responses
+ * from the same host. Null fields use the configured hedge.* defaults.
+ */
+public class HedgePolicy {
+    private Boolean enabled;
+    private Long delayMs;
+    private Double percentile;
+    
+    // Default constructor
+    public HedgePolicy() {}
+    
+    // Constructor with parameters
+    public HedgePolicy(Boolean enabled, Long delayMs, Double percentile) {
+        this.enabled = enabled;
+        this.delayMs = delayMs;
+        this.percentile = percentile;
+    }
+    
+    // Getters and Setters
+    public Boolean getEnabled() {
+        return enabled;
+    }
+    
+    public void setEnabled(Boolean enabled) {
+        this.enabled = enabled;
+    }
+    
+    /**
+     * Fixed hedge delay, overriding the host's observed latency
+     */
+    public Long getDelayMs() {
+        return delayMs;
+    }
+    
+    public void setDelayMs(Long delayMs) {
+        this.delayMs = delayMs;
+    }
+    
+    /**
+     * Percentile of the host's recent latency used as the delay, e.g. 95
+     */
+    public Double getPercentile() {
+        return percentile;
+    }
+    
+    public void setPercentile(Double percentile) {
+        this.percentile = percentile;
+    }
+    
+    @Override
+    public String toString() {
+        return "HedgePolicy{" +
+                "enabled=" + enabled +
+                ", delayMs=" + delayMs +
+                ", percentile=" + percentile +
+                '}';
+    }
+}
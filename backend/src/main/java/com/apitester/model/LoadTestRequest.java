@@ -0,0 +1,90 @@
+package com.apitester.model;
+
+/**
+ * Load-test definition: one ApiRequest run repeatedly, either a fixed number of
+ * times or for a duration, at a target concurrency and optionally a fixed rate.
+ */
+public class LoadTestRequest {
+    private ApiRequest request;
+    private long iterations;
+    private int durationSeconds;
+    private int concurrency;
+    private double ratePerSecond;
+    
+    // Default constructor
+    public LoadTestRequest() {}
+    
+    // Constructor with parameters
+    public LoadTestRequest(ApiRequest request, long iterations, int durationSeconds,
+                           int concurrency, double ratePerSecond) {
+        this.request = request;
+        this.iterations = iterations;
+        this.durationSeconds = durationSeconds;
+        this.concurrency = concurrency;
+        this.ratePerSecond = ratePerSecond;
+    }
+    
+    // Getters and Setters
+    public ApiRequest getRequest() {
+        return request;
+    }
+    
+    public void setRequest(ApiRequest request) {
+        this.request = request;
+    }
+    
+    /**
+     * Number of requests to send; 0 means run for durationSeconds instead
+     */
+    public long getIterations() {
+        return iterations;
+    }
+    
+    public void setIterations(long iterations) {
+        this.iterations = iterations;
+    }
+    
+    /**
+     * Maximum run time in seconds; 0 means run until iterations are done
+     */
+    public int getDurationSeconds() {
+        return durationSeconds;
+    }
+    
+    public void setDurationSeconds(int durationSeconds) {
+        this.durationSeconds = durationSeconds;
+    }
+    
+    /**
+     * Number of concurrent workers
+     */
+    public int getConcurrency() {
+        return concurrency;
+    }
+    
+    public void setConcurrency(int concurrency) {
+        this.concurrency = concurrency;
+    }
+    
+    /**
+     * Target request rate; 0 means each worker sends back-to-back (closed model)
+     */
+    public double getRatePerSecond() {
+        return ratePerSecond;
+    }
+    
+    public void setRatePerSecond(double ratePerSecond) {
+        this.ratePerSecond = ratePerSecond;
+    }
+    
+    @Override
+    public String toString() {
+        return "LoadTestRequest{" +
+                "request=" + request +
+                ", iterations=" + iterations +
+                ", durationSeconds=" + durationSeconds +
+                ", concurrency=" + concurrency +
+                ", ratePerSecond=" + ratePerSecond +
+                '}';
+    }
+}
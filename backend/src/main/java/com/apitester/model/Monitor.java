@@ -0,0 +1,108 @@
+package com.apitester.model;
+
+import java.util.List;
+
+/**
+ * Synthetic monitor: a saved ApiRequest the backend sends on a schedule, either every
+ * intervalSeconds or at the times of a cron expression. A run succeeds when the status
+ * is one of expectedStatus, or any 2xx/3xx status when none are listed.
+ */
+public class Monitor {
+    private String id;
+    private String name;
+    private ApiRequest request;
+    private Integer intervalSeconds;
+    private String cron;
+    private List<Integer> expectedStatus;
+    private long createdAt;
+    
+    // Default constructor
+    public Monitor() {}
+    
+    // Constructor with parameters
+    public Monitor(String name, ApiRequest request, Integer intervalSeconds, String cron) {
+        this.name = name;
+        this.request = request;
+        this.intervalSeconds = intervalSeconds;
+        this.cron = cron;
+    }
+    
+    // Getters and Setters
+    /**
+     * Assigned when the monitor is created
+     */
+    public String getId() {
+        return id;
+    }
+    
+    public void setId(String id) {
+        this.id = id;
+    }
+    
+    public String getName() {
+        return name;
+    }
+    
+    public void setName(String name) {
+        this.name = name;
+    }
+    
+    public ApiRequest getRequest() {
+        return request;
+    }
+    
+    public void setRequest(ApiRequest request) {
+        this.request = request;
+    }
+    
+    /**
+     * Fixed interval between runs; set either this or cron
+     */
+    public Integer getIntervalSeconds() {
+        return intervalSeconds;
+    }
+    
+    public void setIntervalSeconds(Integer intervalSeconds) {
+        this.intervalSeconds = intervalSeconds;
+    }
+    
+    /**
+     * Five-field cron expression (minute hour day month weekday) in the server's time zone
+     */
+    public String getCron() {
+        return cron;
+    }
+    
+    public void setCron(String cron) {
+        this.cron = cron;
+    }
+    
+    public List<Integer> getExpectedStatus() {
+        return expectedStatus;
+    }
+    
+    public void setExpectedStatus(List<Integer> expectedStatus) {
+        this.expectedStatus = expectedStatus;
+    }
+    
+    public long getCreatedAt() {
+        return createdAt;
+    }
+    
+    public void setCreatedAt(long createdAt) {
+        this.createdAt = createdAt;
+    }
+    
+    @Override
+    public String toString() {
+        return "Monitor{" +
+                "id='" + id + '\'' +
+                ", name='" + name + '\'' +
+                ", request=" + request +
+                ", intervalSeconds=" + intervalSeconds +
+                ", cron='" + cron + '\'' +
+                ", expectedStatus=" + expectedStatus +
+                ", createdAt=" + createdAt +
+                '}';
+    }
+}
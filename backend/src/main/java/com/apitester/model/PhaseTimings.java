@@ -0,0 +1,139 @@
+package com.apitester.model;
+
+/**
+ * Where the time of one upstream exchange went, in nanoseconds. Connection phases
+ * (DNS, connect, TLS) are zero when a pooled connection was reused.
+ */
+public class PhaseTimings {
+    private long poolWaitNanos;
+    private long dnsNanos;
+    private long connectNanos;
+    private long tlsNanos;
+    private long requestWriteNanos;
+    private long ttfbNanos;
+    private long downloadNanos;
+    private long totalNanos;
+    private boolean connectionReused = true;
+    private boolean tlsResumed;
+    
+    // Default constructor
+    public PhaseTimings() {}
+    
+    // Getters and Setters
+    /**
+     * Time spent waiting to lease a connection from the pool
+     */
+    public long getPoolWaitNanos() {
+        return poolWaitNanos;
+    }
+    
+    public void setPoolWaitNanos(long poolWaitNanos) {
+        this.poolWaitNanos = poolWaitNanos;
+    }
+    
+    public long getDnsNanos() {
+        return dnsNanos;
+    }
+    
+    public void setDnsNanos(long dnsNanos) {
+        this.dnsNanos = dnsNanos;
+    }
+    
+    /**
+     * TCP connect, excluding the TLS handshake
+     */
+    public long getConnectNanos() {
+        return connectNanos;
+    }
+    
+    public void setConnectNanos(long connectNanos) {
+        this.connectNanos = connectNanos;
+    }
+    
+    public long getTlsNanos() {
+        return tlsNanos;
+    }
+    
+    public void setTlsNanos(long tlsNanos) {
+        this.tlsNanos = tlsNanos;
+    }
+    
+    /**
+     * Whether the TLS handshake of a new connection resumed a cached session
+     */
+    public boolean isTlsResumed() {
+        return tlsResumed;
+    }
+    
+    public void setTlsResumed(boolean tlsResumed) {
+        this.tlsResumed = tlsResumed;
+    }
+    
+    /**
+     * Writing the request line, headers and body
+     */
+    public long getRequestWriteNanos() {
+        return requestWriteNanos;
+    }
+    
+    public void setRequestWriteNanos(long requestWriteNanos) {
+        this.requestWriteNanos = requestWriteNanos;
+    }
+    
+    /**
+     * From the request being written to the response head being received
+     */
+    public long getTtfbNanos() {
+        return ttfbNanos;
+    }
+    
+    public void setTtfbNanos(long ttfbNanos) {
+        this.ttfbNanos = ttfbNanos;
+    }
+    
+    /**
+     * Reading the response body off the connection
+     */
+    public long getDownloadNanos() {
+        return downloadNanos;
+    }
+    
+    public void setDownloadNanos(long downloadNanos) {
+        this.downloadNanos = downloadNanos;
+    }
+    
+    /**
+     * The whole exchange, from asking for a connection to the last body byte
+     */
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+    
+    public void setTotalNanos(long totalNanos) {
+        this.totalNanos = totalNanos;
+    }
+    
+    public boolean isConnectionReused() {
+        return connectionReused;
+    }
+    
+    public void setConnectionReused(boolean connectionReused) {
+        this.connectionReused = connectionReused;
+    }
+    
+    @Override
+    public String toString() {
+        return "PhaseTimings{" +
+                "poolWaitNanos=" + poolWaitNanos +
+                ", dnsNanos=" + dnsNanos +
+                ", connectNanos=" + connectNanos +
+                ", tlsNanos=" + tlsNanos +
+                ", tlsResumed=" + tlsResumed +
+                ", requestWriteNanos=" + requestWriteNanos +
+                ", ttfbNanos=" + ttfbNanos +
+                ", downloadNanos=" + downloadNanos +
+                ", totalNanos=" + totalNanos +
+                ", connectionReused=" + connectionReused +
+                '}';
+    }
+}
@@ -0,0 +1,79 @@
+package com.apitester.model;
+
+import java.util.List;
+
+/**
+ * Retry policy of one request. Only idempotent methods are retried: after an I/O
+ * failure, or when the response status is one of retryOnStatus. The wait before
+ * retry n is a random time up to min(maxBackoffMs, initialBackoffMs * 2^(n-1)).
+ * Null fields use the configured retry.* defaults.
+ */
+public class RetryPolicy {
+    private Integer maxAttempts;
+    private Long initialBackoffMs;
+    private Long maxBackoffMs;
+    private List<Integer> retryOnStatus;
+    
+    // Default constructor
+    public RetryPolicy() {}
+    
+    // Constructor with parameters
+    public RetryPolicy(Integer maxAttempts, Long initialBackoffMs, Long maxBackoffMs, List<Integer> retryOnStatus) {
+        this.maxAttempts = maxAttempts;
+        this.initialBackoffMs = initialBackoffMs;
+        this.maxBackoffMs = maxBackoffMs;
+        this.retryOnStatus = retryOnStatus;
+    }
+    
+    // Getters and Setters
+    /**
+     * Upper bound on attempts, including the first one; 1 disables retries
+     */
+    public Integer getMaxAttempts() {
+        return maxAttempts;
+    }
+    
+    public void setMaxAttempts(Integer maxAttempts) {
+        this.maxAttempts = maxAttempts;
+    }
+    
+    public Long getInitialBackoffMs() {
+        return initialBackoffMs;
+    }
+    
+    public void setInitialBackoffMs(Long initialBackoffMs) {
+        this.initialBackoffMs = initialBackoffMs;
+    }
+    
+    /**
+     * Cap on a single wait, also applied to a Retry-After header
+     */
+    public Long getMaxBackoffMs() {
+        return maxBackoffMs;
+    }
+    
+    public void setMaxBackoffMs(Long maxBackoffMs) {
+        this.maxBackoffMs = maxBackoffMs;
+    }
+    
+    /**
+     * Response statuses that are retried, e.g. [429, 503]
+     */
+    public List<Integer> getRetryOnStatus() {
+        return retryOnStatus;
+    }
+    
+    public void setRetryOnStatus(List<Integer> retryOnStatus) {
+        this.retryOnStatus = retryOnStatus;
+    }
+    
+    @Override
+    public String toString() {
+        return "RetryPolicy{" +
+                "maxAttempts=" + maxAttempts +
+                ", initialBackoffMs=" + initialBackoffMs +
+                ", maxBackoffMs=" + maxBackoffMs +
+                ", retryOnStatus=" + retryOnStatus +
+                '}';
+    }
+}
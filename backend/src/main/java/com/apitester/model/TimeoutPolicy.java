@@ -0,0 +1,64 @@
+package com.apitester.model;
+
+/**
+ * Timeouts of one request, each capped by the server's timeout.max* settings.
+ * connectMs bounds establishing a connection (TCP connect and TLS handshake),
+ * readMs bounds each wait for data from the upstream, and totalMs is the
+ * end-to-end deadline across redirects, retries and hedges.
+ * Null fields use the configured timeout.* defaults.
+ */
+public class TimeoutPolicy {
+    private Long connectMs;
+    private Long readMs;
+    private Long totalMs;
+    
+    // Default constructor
+    public TimeoutPolicy() {}
+    
+    // Constructor with parameters
+    public TimeoutPolicy(Long connectMs, Long readMs, Long totalMs) {
+        this.connectMs = connectMs;
+        this.readMs = readMs;
+        this.totalMs = totalMs;
+    }
+    
+    // Getters and Setters
+    public Long getConnectMs() {
+        return connectMs;
+    }
+    
+    public void setConnectMs(Long connectMs) {
+        this.connectMs = connectMs;
+    }
+    
+    /**
+     * Longest silence while waiting for the response, not the time to receive all of it
+     */
+    public Long getReadMs() {
+        return readMs;
+    }
+    
+    public void setReadMs(Long readMs) {
+        this.readMs = readMs;
+    }
+    
+    /**
+     * Deadline for the whole request, from the start of the first attempt
+     */
+    public Long getTotalMs() {
+        return totalMs;
+    }
+    
+    public void setTotalMs(Long totalMs) {
+        this.totalMs = totalMs;
+    }
+    
+    @Override
+    public String toString() {
+        return "TimeoutPolicy{" +
+                "connectMs=" + connectMs +
+                ", readMs=" + readMs +
+                ", totalMs=" + totalMs +
+                '}';
+    }
+}
@@ -0,0 +1,55 @@
+package com.apitester.model;
+
+/**
+ * One timing or size of the two responses side by side
+ */
+public class TimingDelta {
+    private String name;
+    private double left;
+    private double right;
+    
+    // Default constructor
+    public TimingDelta() {}
+    
+    // Constructor with parameters
+    public TimingDelta(String name, double left, double right) {
+        this.name = name;
+        this.left = left;
+        this.right = right;
+    }
+    
+    // Getters and Setters
+    /**
+     * responseTimeMs, sizeBytes, or a phase such as ttfbMs (from the phase timings)
+     */
+    public String getName() {
+        return name;
+    }
+    
+    public void setName(String name) {
+        this.name = name;
+    }
+    
+    public double getLeft() {
+        return left;
+    }
+    
+    public void setLeft(double left) {
+        this.left = left;
+    }
+    
+    public double getRight() {
+        return right;
+    }
+    
+    public void setRight(double right) {
+        this.right = right;
+    }
+    
+    /**
+     * right - left, to the microsecond for timings
+     */
+    public double getDelta() {
+        return Math.round((right - left) * 1000) / 1000.0;
+    }
+}
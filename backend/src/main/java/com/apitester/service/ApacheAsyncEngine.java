@@ -0,0 +1,85 @@
+package com.apitester.service;
+
+import com.apitester.model.ApiResponse;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+
+import java.io.IOException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+
+/**
+ * Engine on the non-blocking HttpClient 4 client. Blocking callers wait on the future;
+ * the async servlet path uses {@link #executeAsync} and never holds a thread.
+ */
+public class ApacheAsyncEngine implements HttpEngine {
+    
+    private final CloseableHttpAsyncClient asyncHttpClient;
+    
+    public ApacheAsyncEngine(CloseableHttpAsyncClient asyncHttpClient) {
+        this.asyncHttpClient = asyncHttpClient;
+    }
+    
+    @Override
+    public String getName() {
+        return "apache-async";
+    }
+    
+    @Override
+    public ApiResponse execute(HttpRequestBase httpRequest, long startTime) throws IOException {
+        return HttpEngine.await(executeAsync(httpRequest, startTime));
+    }
+    
+    @Override
+    public boolean isNonBlocking() {
+        return true;
+    }
+    
+    /**
+     * The future completes on an I/O reactor thread; the client has already buffered
+     * the body by then, so building the ApiResponse does not block it. Cancelling
+     * the future cancels the exchange.
+     */
+    @Override
+    public CompletableFuture<ApiResponse> executeAsync(HttpRequestBase httpRequest, final long startTime) {
+        final CompletableFuture<ApiResponse> execution = new CompletableFuture<>();
+        final Future<HttpResponse> exchange = asyncHttpClient.execute(httpRequest, new FutureCallback<HttpResponse>() {
+            @Override
+            public void completed(final HttpResponse response) {
+                try {
+                    execution.complete(ApacheResponses.toApiResponse(response, System.currentTimeMillis() - startTime));
+                } catch (Exception e) {
+                    execution.completeExceptionally(e);
+                }
+            }
+            
+            @Override
+            public void failed(final Exception e) {
+                execution.completeExceptionally(e);
+            }
+            
+            @Override
+            public void cancelled() {
+                execution.completeExceptionally(new CancellationException("Request cancelled"));
+            }
+        });
+        execution.whenComplete((response, failure) -> {
+            if (execution.isCancelled()) {
+                exchange.cancel(true);
+            }
+        });
+        return execution;
+    }
+    
+    @Override
+    public void shutdown() {
+        try {
+            asyncHttpClient.close();
+        } catch (IOException e) {
+            // Ignore
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.apitester.service;
+
+import com.apitester.model.ApiResponse;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.entity.ContentType;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Conversions from HttpClient 4 responses, shared by the Apache engines and the streaming path
+ */
+final class ApacheResponses {
+    
+    private ApacheResponses() {}
+    
+    static ApiResponse toApiResponse(HttpResponse response, long responseTime) throws IOException {
+        int responseCode = response.getStatusLine().getStatusCode();
+        String responseMessage = response.getStatusLine().getReasonPhrase();
+        
+        // Get response headers
+        Map<String, String> responseHeaders = copyHeaders(response);
+        
+        // Get response body, removing its Content-Encoding
+        byte[] bytes = new byte[0];
+        long compressedSize = 0;
+        HttpEntity entity = response.getEntity();
+        if (entity != null) {
+            DecodingInputStream body = new DecodingInputStream(entity.getContent(), contentEncoding(response));
+            bytes = body.readAll();
+            compressedSize = body.getEncodedCount();
+        }
+        
+        // Create response object
+        ApiResponse apiResponse = new ApiResponse();
+        apiResponse.setStatus(responseCode);
+        apiResponse.setStatusText(responseMessage);
+        apiResponse.setHeaders(responseHeaders);
+        apiResponse.setBody(new String(bytes, charset(entity)));
+        apiResponse.setResponseTime(responseTime);
+        apiResponse.setSize(bytes.length);
+        apiResponse.setCompressedSize(compressedSize);
+        apiResponse.setProtocol(response.getStatusLine().getProtocolVersion().toString());
+        return apiResponse;
+    }
+    
+    static String contentEncoding(HttpResponse response) {
+        Header header = response.getFirstHeader("Content-Encoding");
+        return header != null ? header.getValue() : null;
+    }
+    
+    static Map<String, String> copyHeaders(HttpResponse response) {
+        Map<String, String> responseHeaders = new HashMap<>();
+        for (Header header : response.getAllHeaders()) {
+            responseHeaders.put(header.getName(), header.getValue());
+        }
+        return responseHeaders;
+    }
+    
+    static Charset charset(HttpEntity entity) {
+        // Declared charset, else UTF-8
+        ContentType contentType = entity != null ? ContentType.get(entity) : null;
+        if (contentType != null && contentType.getCharset() != null) {
+            return contentType.getCharset();
+        }
+        return StandardCharsets.UTF_8;
+    }
+}
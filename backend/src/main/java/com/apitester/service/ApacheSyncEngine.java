@@ -0,0 +1,62 @@
+package com.apitester.service;
+
+import com.apitester.model.ApiResponse;
+import com.apitester.model.PhaseTimings;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.entity.BufferedHttpEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+
+import java.io.IOException;
+
+/**
+ * Engine on the blocking HttpClient 4 client. The only engine that records per-phase
+ * timings, as its pool, resolver and socket factory hooks run on the calling thread.
+ */
+public class ApacheSyncEngine implements HttpEngine {
+    
+    private final CloseableHttpClient httpClient;
+    
+    public ApacheSyncEngine(CloseableHttpClient httpClient) {
+        this.httpClient = httpClient;
+    }
+    
+    @Override
+    public String getName() {
+        return "apache";
+    }
+    
+    @Override
+    public ApiResponse execute(HttpRequestBase httpRequest, long startTime) throws IOException {
+        PhaseTimings timings = PhaseTimer.begin();
+        long exchangeStart = System.nanoTime();
+        
+        // Execute request
+        try (CloseableHttpResponse response = httpClient.execute(httpRequest)) {
+            // Buffer the body here so transfer time is measured apart from decoding it
+            long downloadStart = System.nanoTime();
+            if (response.getEntity() != null) {
+                response.setEntity(new BufferedHttpEntity(response.getEntity()));
+            }
+            long exchangeEnd = System.nanoTime();
+            timings.setDownloadNanos(exchangeEnd - downloadStart);
+            timings.setTotalNanos(exchangeEnd - exchangeStart);
+            
+            long responseTime = System.currentTimeMillis() - startTime;
+            ApiResponse apiResponse = ApacheResponses.toApiResponse(response, responseTime);
+            apiResponse.setTimings(timings);
+            return apiResponse;
+        } finally {
+            PhaseTimer.end();
+        }
+    }
+    
+    @Override
+    public void shutdown() {
+        try {
+            httpClient.close();
+        } catch (IOException e) {
+            // Ignore
+        }
+    }
+}
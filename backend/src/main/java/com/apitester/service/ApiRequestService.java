@@ -2,12 +2,18 @@ package com.apitester.service;
 
 import com.apitester.model.ApiRequest;
 import com.apitester.model.ApiResponse;
+import com.apitester.model.AttemptTiming;
+import com.apitester.model.PhaseTimings;
 import com.apitester.logging.SecurityLogger;
 import com.apitester.logging.SessionManager;
+import com.apitester.config.AppConfig;
+import org.apache.hc.core5.http2.HttpVersionPolicy;
+import org.apache.http.Header;
 import org.apache.http.HttpEntity;
 import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpDelete;
+import org.apache.http.client.methods.HttpEntityEnclosingRequestBase;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpHead;
 import org.apache.http.client.methods.HttpOptions;
@@ -15,29 +21,81 @@ import org.apache.http.client.methods.HttpPatch;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpPut;
 import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.DnsResolver;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
 import org.apache.http.conn.ssl.NoopHostnameVerifier;
 import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.InputStreamEntity;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.SystemDefaultDnsResolver;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.conn.NoopIOSessionStrategy;
+import org.apache.http.nio.conn.SchemeIOSessionStrategy;
+import org.apache.http.nio.conn.ssl.SSLIOSessionStrategy;
+import org.apache.http.nio.reactor.IOReactorException;
 import org.apache.http.ssl.SSLContextBuilder;
-import org.apache.http.util.EntityUtils;
+import org.apache.http.ssl.SSLContexts;
 
 import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.UnknownHostException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.security.KeyManagementException;
 import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
 public class ApiRequestService {
     
     private static final Logger logger = Logger.getLogger(ApiRequestService.class.getName());
-    private static final int CONNECTION_TIMEOUT = 30000; // 30 seconds
-    private static final int READ_TIMEOUT = 30000; // 30 seconds
+    // Defaults for requests without their own timeouts; see RequestTimeouts
+    private static final int CONNECTION_TIMEOUT = AppConfig.getInt("timeout.connectMs", 30000);
+    private static final int READ_TIMEOUT = AppConfig.getInt("timeout.readMs", 30000);
+    private static final int POOL_LEASE_TIMEOUT = AppConfig.getInt("timeout.poolLeaseMs", 30000);
+    private static final int STREAM_PREFIX_LIMIT = AppConfig.getInt("stream.prefixBytes", 64 * 1024);
+    // Reads a body to the end for its assertions; only the logged prefix is kept
+    private static final StreamingResponseHandler DISCARD = new StreamingResponseHandler() {
+        @Override
+        public void onHead(ApiResponse head) {
+        }
+        
+        @Override
+        public void onBody(InputStream body, Charset charset) throws IOException {
+            byte[] buffer = new byte[8192];
+            while (body.read(buffer) >= 0) {
+                // Drained through the assertions and the prefix capture
+            }
+        }
+    };
+    private static final String DEFAULT_PROTOCOL = AppConfig.getString("protocol.default", "http1");
+    private static final boolean UPSTREAM_COMPRESSION = AppConfig.getBoolean("upstream.compression", true);
     
     // Configure TLS for Java 8 compatibility with TLS versions below 1.3
     static {
@@ -74,230 +132,1081 @@ public class ApiRequestService {
     
     private final SecurityLogger securityLogger;
     private final SessionManager sessionManager;
+    private final CachingDnsResolver dnsResolver;
+    private final SSLContext sslContext;
+    private final TlsSessionMetrics tlsMetrics;
+    private final InstrumentedConnectionManager connectionManager;
     private final CloseableHttpClient httpClient;
+    private final ApacheAsyncEngine asyncEngine;
+    private final Http2Engine http2Engine;
+    private final RateLimiter rateLimiter;
+    private final CircuitBreaker circuitBreaker;
+    private final HttpEngine engine;
+    private final HttpEngine protectedAsyncEngine;
+    private final HttpEngine protectedHttp2Engine;
+    private final HttpEngine measuredEngine;
+    private final HttpEngine measuredHttp2Engine;
+    private final HttpEngine uploadEngine;
+    private final ResponseCache responseCache;
+    private final RequestCoalescer requestCoalescer;
+    private final RequestTimeouts requestTimeouts;
+    private final AttemptExecutor attemptExecutor;
+    
+    private static ApiRequestService instance;
+    private Thread warmupThread;
+    private boolean closed;
     
     public ApiRequestService() {
         this.securityLogger = SecurityLogger.getInstance();
         this.sessionManager = SessionManager.getInstance();
+        this.dnsResolver = createDnsResolver();
+        this.sslContext = createSharedSslContext();
+        this.tlsMetrics = new TlsSessionMetrics(sslContext != null ? sslContext.getClientSessionContext() : null);
+        this.connectionManager = createConnectionManager();
         this.httpClient = createSecureHttpClient();
+        this.asyncEngine = new ApacheAsyncEngine(createAsyncHttpClient());
+        this.http2Engine = createHttp2Engine();
+        this.rateLimiter = createRateLimiter();
+        this.circuitBreaker = new CircuitBreaker();
+        // The breaker goes outside the limiter, so an open circuit does not use up permits
+        this.measuredEngine = rateLimiter.limit(createEngine());
+        this.measuredHttp2Engine = rateLimiter.limit(http2Engine);
+        this.engine = circuitBreaker.protect(measuredEngine);
+        this.protectedAsyncEngine = circuitBreaker.protect(rateLimiter.limit(asyncEngine));
+        this.protectedHttp2Engine = circuitBreaker.protect(measuredHttp2Engine);
+        // Uploads are read from the caller's stream as they are sent, which only the blocking client does
+        this.uploadEngine = circuitBreaker.protect(rateLimiter.limit(new ApacheSyncEngine(httpClient)));
+        this.responseCache = new ResponseCache();
+        this.requestCoalescer = new RequestCoalescer();
+        this.requestTimeouts = new RequestTimeouts(createRequestConfig());
+        this.attemptExecutor = new AttemptExecutor(requestTimeouts);
+        startConnectionWarmup();
     }
     
-    private CloseableHttpClient createSecureHttpClient() {
+    /**
+     * Shared instance, so every servlet uses the same connection pools
+     */
+    public static synchronized ApiRequestService getInstance() {
+        if (instance == null) {
+            instance = new ApiRequestService();
+        }
+        return instance;
+    }
+    
+    /**
+     * Shut the shared instance down, if it was ever created
+     */
+    public static synchronized void shutdownInstance() {
+        if (instance != null) {
+            instance.shutdown();
+            instance = null;
+        }
+    }
+    
+    private SSLContext createSslContext() throws NoSuchAlgorithmException, KeyManagementException {
+        // Create SSL context compatible with Java 8 - using TLSv1.2 which is well supported
+        SSLContext sslContext = SSLContext.getInstance("TLSv1.2");
+        
+        // For production, you might want to use proper certificate validation
+        // For development/testing with various APIs, we'll use a permissive trust manager
+        javax.net.ssl.TrustManager[] trustAllCerts = new javax.net.ssl.TrustManager[] {
+            new javax.net.ssl.X509TrustManager() {
+                public java.security.cert.X509Certificate[] getAcceptedIssuers() {
+                    return new java.security.cert.X509Certificate[0];
+                }
+                public void checkClientTrusted(java.security.cert.X509Certificate[] certs, String authType) {
+                    // Accept all client certificates for testing
+                }
+                public void checkServerTrusted(java.security.cert.X509Certificate[] certs, String authType) {
+                    // Accept all server certificates for testing (allows connection to all APIs)
+                }
+            }
+        };
+        
+        // Initialize SSL context with the permissive trust manager
+        sslContext.init(null, trustAllCerts, new SecureRandom());
+        return sslContext;
+    }
+    
+    /**
+     * One SSL context for both clients, so that they share its TLS session cache and a
+     * session negotiated by either can be resumed by the other. Returns null when the
+     * context cannot be created; the clients then fall back to the JSSE defaults.
+     */
+    private SSLContext createSharedSslContext() {
         try {
-            // Create SSL context compatible with Java 8 - using TLSv1.2 which is well supported
-            SSLContext sslContext = SSLContext.getInstance("TLSv1.2");
-            
-            // For production, you might want to use proper certificate validation
-            // For development/testing with various APIs, we'll use a permissive trust manager
-            javax.net.ssl.TrustManager[] trustAllCerts = new javax.net.ssl.TrustManager[] {
-                new javax.net.ssl.X509TrustManager() {
-                    public java.security.cert.X509Certificate[] getAcceptedIssuers() {
-                        return new java.security.cert.X509Certificate[0];
-                    }
-                    public void checkClientTrusted(java.security.cert.X509Certificate[] certs, String authType) {
-                        // Accept all client certificates for testing
-                    }
-                    public void checkServerTrusted(java.security.cert.X509Certificate[] certs, String authType) {
-                        // Accept all server certificates for testing (allows connection to all APIs)
-                    }
+            SSLContext context = createSslContext();
+            SSLSessionContext sessions = context.getClientSessionContext();
+            int cacheSize = AppConfig.getInt("tls.sessionCacheSize", 0);
+            if (cacheSize > 0) {
+                sessions.setSessionCacheSize(cacheSize);
+            }
+            int timeoutSeconds = AppConfig.getInt("tls.sessionTimeoutSeconds", 0);
+            if (timeoutSeconds > 0) {
+                sessions.setSessionTimeout(timeoutSeconds);
+            }
+            return context;
+        } catch (NoSuchAlgorithmException | KeyManagementException e) {
+            logger.warning("Failed to create secure SSL context, falling back to default: " + e.getMessage());
+            return null;
+        }
+    }
+    
+    private RequestConfig createRequestConfig() {
+        return RequestConfig.custom()
+            .setConnectionRequestTimeout(POOL_LEASE_TIMEOUT)
+            .setConnectTimeout(CONNECTION_TIMEOUT)
+            .setSocketTimeout(READ_TIMEOUT)
+            .setRedirectsEnabled(true)
+            .setMaxRedirects(5)  // Increased for some APIs that might redirect
+            .setCircularRedirectsAllowed(false)
+            .build();
+    }
+    
+    /**
+     * Resolver shared by both clients: the system resolver, optionally behind static
+     * dns.hosts.* mappings, behind the in-process DNS cache
+     */
+    private CachingDnsResolver createDnsResolver() {
+        DnsResolver resolver = SystemDefaultDnsResolver.INSTANCE;
+        
+        Map<String, String> staticHosts = AppConfig.getByPrefix("dns.hosts.");
+        if (!staticHosts.isEmpty()) {
+            StaticDnsResolver staticResolver = new StaticDnsResolver(resolver);
+            for (Map.Entry<String, String> entry : staticHosts.entrySet()) {
+                try {
+                    staticResolver.add(entry.getKey(), entry.getValue().split(","));
+                } catch (UnknownHostException e) {
+                    logger.warning("Ignoring invalid DNS mapping for " + entry.getKey() + ": " + entry.getValue());
                 }
-            };
-            
-            // Initialize SSL context with the permissive trust manager
-            sslContext.init(null, trustAllCerts, new SecureRandom());
-            
+            }
+            resolver = staticResolver;
+        }
+        
+        Map<String, Long> hostTtls = new HashMap<>();
+        for (Map.Entry<String, String> entry : AppConfig.getByPrefix("dns.ttl.").entrySet()) {
+            try {
+                hostTtls.put(entry.getKey(), Long.parseLong(entry.getValue()));
+            } catch (NumberFormatException e) {
+                logger.warning("Ignoring invalid DNS TTL for " + entry.getKey() + ": " + entry.getValue());
+            }
+        }
+        
+        CachingDnsResolver cachingResolver = new CachingDnsResolver(
+            resolver,
+            AppConfig.getBoolean("dns.cache.enabled", true),
+            AppConfig.getLong("dns.ttlSeconds", 60),
+            AppConfig.getLong("dns.negativeTtlSeconds", 10),
+            hostTtls,
+            AppConfig.getInt("dns.refreshAheadPercent", 80) / 100.0,
+            AppConfig.getInt("dns.maxEntries", 1000)
+        );
+        
+        String prewarm = AppConfig.getString("dns.prewarm", "");
+        if (!prewarm.trim().isEmpty()) {
+            cachingResolver.prewarm(Arrays.asList(prewarm.split(",")));
+        }
+        return cachingResolver;
+    }
+    
+    /**
+     * Create the pooling connection manager shared by all blocking requests. Limits come
+     * from configuration: pool.maxTotal, pool.maxPerRoute and per-host pool.route.<host>.
+     */
+    private InstrumentedConnectionManager createConnectionManager() {
+        SSLConnectionSocketFactory sslSocketFactory;
+        if (sslContext != null) {
             // Create SSL socket factory with Java 8 compatible TLS versions (< 1.3)
             // This configuration supports apis like postalpincode.in and weatherapi.com
-            SSLConnectionSocketFactory sslSocketFactory = new SSLConnectionSocketFactory(
+            sslSocketFactory = new TimingSSLSocketFactory(
                 sslContext, 
                 new String[]{"TLSv1.2", "TLSv1.1", "TLSv1"},  // Java 8 compatible versions < 1.3
                 null,  // Use default cipher suites
-                NoopHostnameVerifier.INSTANCE  // Disable hostname verification for testing
+                NoopHostnameVerifier.INSTANCE,  // Disable hostname verification for testing
+                tlsMetrics
             );
-            
-            // Configure request timeouts and behavior
-            RequestConfig requestConfig = RequestConfig.custom()
-                .setConnectionRequestTimeout(CONNECTION_TIMEOUT)
-                .setConnectTimeout(CONNECTION_TIMEOUT)
-                .setSocketTimeout(READ_TIMEOUT)
-                .setRedirectsEnabled(true)
-                .setMaxRedirects(5)  // Increased for some APIs that might redirect
-                .setCircularRedirectsAllowed(false)
+        } else {
+            // Fallback to the default socket factory for Java 8
+            sslSocketFactory = new TimingSSLSocketFactory(SSLContexts.createDefault(), null, null,
+                SSLConnectionSocketFactory.getDefaultHostnameVerifier(), tlsMetrics);
+        }
+        
+        Registry<ConnectionSocketFactory> registry = RegistryBuilder.<ConnectionSocketFactory>create()
+            .register("http", new TimingSocketFactory(PlainConnectionSocketFactory.getSocketFactory()))
+            .register("https", sslSocketFactory)
+            .build();
+        
+        Map<String, Integer> hostLimits = new HashMap<>();
+        for (Map.Entry<String, String> entry : AppConfig.getByPrefix("pool.route.").entrySet()) {
+            try {
+                hostLimits.put(entry.getKey().toLowerCase(), Integer.parseInt(entry.getValue()));
+            } catch (NumberFormatException e) {
+                logger.warning("Ignoring invalid pool limit for " + entry.getKey() + ": " + entry.getValue());
+            }
+        }
+        
+        InstrumentedConnectionManager manager = new InstrumentedConnectionManager(registry,
+            new TimingDnsResolver(dnsResolver), hostLimits);
+        manager.setMaxTotal(AppConfig.getInt("pool.maxTotal", 100));
+        manager.setDefaultMaxPerRoute(AppConfig.getInt("pool.maxPerRoute", 20));
+        // Re-check connections that sat idle before reuse, to avoid writing to half-closed sockets
+        manager.setValidateAfterInactivity(AppConfig.getInt("pool.validateAfterInactivityMs", 2000));
+        return manager;
+    }
+    
+    /**
+     * Keep connections alive for as long as the server allows (Keep-Alive: timeout=N),
+     * capped at pool.keepAliveSeconds, which also applies when the server sends nothing.
+     */
+    private ConnectionKeepAliveStrategy createKeepAliveStrategy() {
+        final long maxKeepAliveMs = AppConfig.getLong("pool.keepAliveSeconds", 30) * 1000;
+        return (response, context) -> {
+            long serverKeepAliveMs = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+            return serverKeepAliveMs > 0 ? Math.min(serverKeepAliveMs, maxKeepAliveMs) : maxKeepAliveMs;
+        };
+    }
+    
+    private CloseableHttpClient createSecureHttpClient() {
+        // Configure request timeouts and behavior
+        RequestConfig requestConfig = createRequestConfig();
+        
+        // Build HTTP client with enhanced configuration for Java 8 and various APIs.
+        // The client owns the connection manager, so it also runs the background
+        // evictor that closes expired and idle connections.
+        return HttpClients.custom()
+            .setConnectionManager(connectionManager)
+            .setKeepAliveStrategy(createKeepAliveStrategy())
+            .setRequestExecutor(new TimingRequestExecutor())
+            .disableContentCompression()  // Bodies are decoded by the engines, which also count the compressed bytes
+            .evictExpiredConnections()
+            .evictIdleConnections(AppConfig.getLong("pool.maxIdleSeconds", 60), TimeUnit.SECONDS)
+            .setDefaultRequestConfig(requestConfig)
+            .setUserAgent("API-Tester/1.0 (Java/1.8; Tomcat/8.5)")
+            .build();
+    }
+    
+    /**
+     * Live statistics of the blocking client's connection pool
+     */
+    public InstrumentedConnectionManager.PoolStatistics getPoolStatistics() {
+        return connectionManager.getStatistics();
+    }
+    
+    /**
+     * Full versus resumed TLS handshakes per host and the state of the session cache
+     */
+    public TlsSessionMetrics.TlsStatistics getTlsStatistics() {
+        return tlsMetrics.getStatistics();
+    }
+    
+    /**
+     * DNS cache hit/miss counters and lookup latency
+     */
+    public CachingDnsResolver.DnsStatistics getDnsStatistics() {
+        return dnsResolver.getStatistics();
+    }
+    
+    /**
+     * Counters and size of the response cache
+     */
+    public ResponseCache.CacheStatistics getCacheStatistics() {
+        return responseCache.getStatistics();
+    }
+    
+    /**
+     * Counters of requests executed versus served from an identical in-flight request
+     */
+    public RequestCoalescer.CoalescingStatistics getCoalescingStatistics() {
+        return requestCoalescer.getStatistics();
+    }
+    
+    /**
+     * Open and park pooled connections to the tls.warmup.hosts in the background, so
+     * the first user requests to them skip the TCP and TLS handshakes. Hosts are
+     * given as host or host:port; warmed connections stay parked for pool.keepAliveSeconds.
+     */
+    private void startConnectionWarmup() {
+        String hosts = AppConfig.getString("tls.warmup.hosts", "");
+        if (hosts.trim().isEmpty()) {
+            return;
+        }
+        final String[] targets = hosts.split(",");
+        final int connections = AppConfig.getInt("tls.warmup.connectionsPerHost", 1);
+        final long keepAliveMs = AppConfig.getLong("pool.keepAliveSeconds", 30) * 1000;
+        
+        Thread warmup = new Thread(() -> {
+            for (String target : targets) {
+                target = target.trim();
+                if (Thread.currentThread().isInterrupted()) {
+                    return;  // Shutting down
+                }
+                if (target.isEmpty()) {
+                    continue;
+                }
+                int colon = target.lastIndexOf(':');
+                String host = colon > 0 ? target.substring(0, colon) : target;
+                int port = 443;
+                if (colon > 0) {
+                    try {
+                        port = Integer.parseInt(target.substring(colon + 1));
+                    } catch (NumberFormatException e) {
+                        logger.warning("Ignoring invalid warm-up host: " + target);
+                        continue;
+                    }
+                }
+                int opened = connectionManager.warmUp(host, port, connections, CONNECTION_TIMEOUT, keepAliveMs);
+                tlsMetrics.recordWarmup(opened, connections - opened);
+                logger.info("Warmed up " + opened + " connection(s) to " + host + ":" + port);
+            }
+        }, "ConnectionWarmup");
+        warmup.setDaemon(true);
+        warmupThread = warmup;
+        warmup.start();
+    }
+    
+    /**
+     * Create the non-blocking client used for async execution. Its connection
+     * limits, not the container thread pool, bound the number of in-flight requests.
+     * It resolves host names through the same DNS cache as the blocking client.
+     */
+    private CloseableHttpAsyncClient createAsyncHttpClient() {
+        int ioThreads = AppConfig.getInt("async.ioThreads", 0);
+        IOReactorConfig ioReactorConfig = IOReactorConfig.custom()
+            .setIoThreadCount(ioThreads > 0 ? ioThreads : Runtime.getRuntime().availableProcessors())
+            .setConnectTimeout(CONNECTION_TIMEOUT)
+            .setSoTimeout(READ_TIMEOUT)
+            // Timeouts are checked once per select interval (1 s by default); per-request ones can be shorter
+            .setSelectInterval(100)
+            .build();
+        
+        SchemeIOSessionStrategy sslStrategy;
+        if (sslContext != null) {
+            sslStrategy = new InstrumentedSSLIOSessionStrategy(
+                sslContext,
+                new String[]{"TLSv1.2", "TLSv1.1", "TLSv1"},  // Same protocol set as the blocking client
+                null,
+                NoopHostnameVerifier.INSTANCE,
+                tlsMetrics
+            );
+        } else {
+            sslStrategy = SSLIOSessionStrategy.getDefaultStrategy();
+        }
+        
+        CloseableHttpAsyncClient client;
+        try {
+            Registry<SchemeIOSessionStrategy> registry = RegistryBuilder.<SchemeIOSessionStrategy>create()
+                .register("http", NoopIOSessionStrategy.INSTANCE)
+                .register("https", sslStrategy)
                 .build();
+            PoolingNHttpClientConnectionManager asyncConnectionManager = new PoolingNHttpClientConnectionManager(
+                new DefaultConnectingIOReactor(ioReactorConfig), null, registry, dnsResolver);
+            asyncConnectionManager.setMaxTotal(AppConfig.getInt("async.maxConnTotal", 400));
+            asyncConnectionManager.setDefaultMaxPerRoute(AppConfig.getInt("async.maxConnPerRoute", 100));
             
-            // Build HTTP client with enhanced configuration for Java 8 and various APIs
-            return HttpClients.custom()
-                .setSSLSocketFactory(sslSocketFactory)
-                .setDefaultRequestConfig(requestConfig)
+            client = HttpAsyncClients.custom()
+                .setConnectionManager(asyncConnectionManager)
+                .setDefaultRequestConfig(createRequestConfig())
                 .setUserAgent("API-Tester/1.0 (Java/1.8; Tomcat/8.5)")
-                .setMaxConnTotal(100)  // Pool connections for better performance
-                .setMaxConnPerRoute(20)
                 .build();
-                
-        } catch (NoSuchAlgorithmException | KeyManagementException e) {
-            // Fallback to default client with basic configuration for Java 8
-            logger.warning("Failed to create secure HTTP client, falling back to default: " + e.getMessage());
+        } catch (IOReactorException e) {
+            logger.warning("Failed to create async connection manager, falling back to default: " + e.getMessage());
+            client = HttpAsyncClients.custom()
+                .setDefaultIOReactorConfig(ioReactorConfig)
+                .setDefaultRequestConfig(createRequestConfig())
+                .setUserAgent("API-Tester/1.0 (Java/1.8; Tomcat/8.5)")
+                .build();
+        }
+        
+        client.start();
+        return client;
+    }
+    
+    /**
+     * Create the engine for requests with protocol "http2". It shares the SSL context
+     * and DNS cache of the other clients; http2.versionPolicy picks between ALPN
+     * negotiation (NEGOTIATE), HTTP/2 also over plain connections (FORCE_HTTP_2)
+     * and HTTP/1.1 only (FORCE_HTTP_1).
+     */
+    private Http2Engine createHttp2Engine() {
+        HttpVersionPolicy versionPolicy;
+        String configuredPolicy = AppConfig.getString("http2.versionPolicy", "NEGOTIATE");
+        try {
+            versionPolicy = HttpVersionPolicy.valueOf(configuredPolicy.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            logger.warning("Unknown HTTP/2 version policy " + configuredPolicy + ", using NEGOTIATE");
+            versionPolicy = HttpVersionPolicy.NEGOTIATE;
+        }
+        
+        return new Http2Engine(
+            sslContext,
+            dnsResolver,
+            versionPolicy,
+            AppConfig.getInt("http2.maxConnTotal", 100),
+            AppConfig.getInt("http2.maxConnPerRoute", 20),  // Only used by hosts that fall back to HTTP/1.1
+            CONNECTION_TIMEOUT,
+            READ_TIMEOUT,
+            "API-Tester/1.0 (Java/1.8; Tomcat/8.5)"
+        );
+    }
+    
+    /**
+     * Create the engine blocking requests are sent on, from the "engine" setting:
+     * apache (blocking HttpClient 4, the only one with per-phase timings), apache-async
+     * (non-blocking HttpClient 4, waited for on the calling thread), urlconnection
+     * (JDK HttpURLConnection) or http2. Requests with protocol "http2" always use the HTTP/2 engine.
+     */
+    private HttpEngine createEngine() {
+        String name = AppConfig.getString("engine", "apache");
+        switch (name.toLowerCase()) {
+            case "apache":
+                return new ApacheSyncEngine(httpClient);
+            case "apache-async":
+                return asyncEngine;
+            case "urlconnection":
+                return new UrlConnectionEngine(sslContext, CONNECTION_TIMEOUT, READ_TIMEOUT,
+                    "API-Tester/1.0 (Java/1.8; Tomcat/8.5)");
+            case "http2":
+                return http2Engine;
+            default:
+                logger.warning("Unknown engine " + name + ", using apache");
+                return new ApacheSyncEngine(httpClient);
+        }
+    }
+    
+    /**
+     * Create the client-side rate limiter from ratelimit.host.<host>[/<path prefix>] = <permits per
+     * second>[,<burst>] rules; requests that would wait longer than ratelimit.maxWaitMs fail
+     */
+    private RateLimiter createRateLimiter() {
+        RateLimiter limiter = new RateLimiter(AppConfig.getLong("ratelimit.maxWaitMs", 1000));
+        for (Map.Entry<String, String> entry : AppConfig.getByPrefix("ratelimit.host.").entrySet()) {
+            String[] parts = entry.getValue().split(",");
             try {
-                RequestConfig requestConfig = RequestConfig.custom()
-                    .setConnectionRequestTimeout(CONNECTION_TIMEOUT)
-                    .setConnectTimeout(CONNECTION_TIMEOUT)
-                    .setSocketTimeout(READ_TIMEOUT)
-                    .setRedirectsEnabled(true)
-                    .setMaxRedirects(5)
-                    .setCircularRedirectsAllowed(false)
-                    .build();
-                
-                return HttpClients.custom()
-                    .setDefaultRequestConfig(requestConfig)
-                    .setUserAgent("API-Tester/1.0 (Java/1.8; Tomcat/8.5)")
-                    .setMaxConnTotal(50)
-                    .setMaxConnPerRoute(10)
-                    .build();
-            } catch (Exception fallbackException) {
-                logger.warning("Fallback HTTP client creation failed, using system default: " + fallbackException.getMessage());
-                return HttpClients.createDefault();
+                double permitsPerSecond = Double.parseDouble(parts[0].trim());
+                int burst = parts.length > 1 ? Integer.parseInt(parts[1].trim()) : 1;
+                if (permitsPerSecond <= 0) {
+                    throw new NumberFormatException("rate must be positive");
+                }
+                limiter.addRule(entry.getKey(), permitsPerSecond, burst);
+            } catch (NumberFormatException e) {
+                logger.warning("Ignoring invalid rate limit for " + entry.getKey() + ": " + entry.getValue());
             }
         }
+        return limiter;
+    }
+    
+    /**
+     * Name of the engine blocking requests without a protocol are sent on
+     */
+    public String getEngineName() {
+        return engine.getName();
+    }
+    
+    /**
+     * Permitted, delayed and throttled requests per rate limit rule
+     */
+    public RateLimiter.RateLimitStatistics getRateLimitStatistics() {
+        return rateLimiter.getStatistics();
+    }
+    
+    /**
+     * State and recent failure and slow-call rates of each host's circuit
+     */
+    public CircuitBreaker.BreakerStatistics getCircuitBreakerStatistics() {
+        return circuitBreaker.getStatistics();
+    }
+    
+    /**
+     * Timeout defaults and caps, and timeouts per phase
+     */
+    public RequestTimeouts.TimeoutStatistics getTimeoutStatistics() {
+        return requestTimeouts.getStatistics();
+    }
+    
+    /**
+     * Retry and hedging counters of blocking requests
+     */
+    public AttemptExecutor.RetryStatistics getRetryStatistics() {
+        return attemptExecutor.getStatistics();
+    }
+    
+    /**
+     * Exchange and connection counters of the HTTP/2 engine
+     */
+    public Http2Engine.EngineStatistics getHttp2Statistics() {
+        return http2Engine.getStatistics();
+    }
+    
+    /**
+     * Whether a request goes to the HTTP/2 engine: its protocol field, else protocol.default
+     */
+    private static boolean useHttp2(ApiRequest apiRequest) {
+        String protocol = apiRequest.getProtocol() != null ? apiRequest.getProtocol() : DEFAULT_PROTOCOL;
+        return "http2".equalsIgnoreCase(protocol) || "h2".equalsIgnoreCase(protocol);
+    }
+    
+    /**
+     * Engine for a blocking execution of the request
+     */
+    private HttpEngine engineFor(ApiRequest apiRequest) {
+        return useHttp2(apiRequest) ? protectedHttp2Engine : engine;
     }
     
     public ApiResponse processRequest(ApiRequest apiRequest) {
         return processRequest(apiRequest, null);
     }
     
+    /**
+     * Process a request on the blocking engine, through the cache, coalescing and the
+     * request's retry policy, and return the whole body. Assertions are checked on the
+     * buffered response, as on the async path.
+     */
     public ApiResponse processRequest(ApiRequest apiRequest, String sessionId) {
         long startTime = System.currentTimeMillis();
         
         // Generate or get session ID
-        if (sessionId == null) {
-            sessionId = sessionManager.generateSessionId();
-        } else {
-            sessionId = sessionManager.getOrCreateSessionId(sessionId);
-        }
+        sessionId = resolveSessionId(sessionId);
+        AssertionEvaluator evaluator = null;
         
         try {
-            // Use the URL directly as provided by the user
-            String url = apiRequest.getUrl();
-            logger.info("Processing API request for URL: " + url);
-            
-            // Validate URL format
-            if (url != null && !url.toLowerCase().startsWith("http://") && !url.toLowerCase().startsWith("https://")) {
-                // Assume https if no protocol specified (for better security)
-                url = "https://" + url;
-                logger.info("Added HTTPS protocol to URL: " + url);
+            String url = normalizeUrl(apiRequest.getUrl());
+            evaluator = AssertionEvaluator.forRequest(apiRequest);
+            ApiResponse apiResponse = executeCoalesced(apiRequest, url, startTime);
+            if (evaluator != null) {
+                evaluator.evaluate(apiResponse);
             }
+            logApiRequest(apiRequest, sessionId, url, apiResponse);
+            return apiResponse;
             
-            HttpRequestBase httpRequest = createHttpRequest(apiRequest.getMethod(), url);
-            
-            // Set headers
-            if (apiRequest.getHeaders() != null) {
-                for (Map.Entry<String, String> header : apiRequest.getHeaders().entrySet()) {
-                    if (header.getKey() != null && !header.getKey().trim().isEmpty() && 
-                        header.getValue() != null && !header.getValue().trim().isEmpty()) {
-                        httpRequest.setHeader(header.getKey().trim(), header.getValue().trim());
-                    }
-                }
+        } catch (Exception e) {
+            ApiResponse errorResponse = handleFailure(apiRequest, sessionId, e, System.currentTimeMillis() - startTime);
+            if (evaluator != null) {
+                evaluator.evaluate(errorResponse);
             }
-            
-            // Set request body for POST, PUT, PATCH
-            if (httpRequest instanceof HttpPost || httpRequest instanceof HttpPut || httpRequest instanceof HttpPatch) {
-                String body = apiRequest.getBody();
-                if (body != null && !body.trim().isEmpty()) {
-                    StringEntity entity = new StringEntity(body, "UTF-8");
-                    entity.setContentType("application/json");
-                    
-                    if (httpRequest instanceof HttpPost) {
-                        ((HttpPost) httpRequest).setEntity(entity);
-                    } else if (httpRequest instanceof HttpPut) {
-                        ((HttpPut) httpRequest).setEntity(entity);
-                    } else if (httpRequest instanceof HttpPatch) {
-                        ((HttpPatch) httpRequest).setEntity(entity);
-                    }
-                }
+            return errorResponse;
+        }
+    }
+    
+    /**
+     * Execute a request on the shared client without logging it or touching sessions.
+     * For bulk tools such as the load tester, which log one aggregate summary instead
+     * of paying per-request log I/O. The response cache is not consulted, so every
+     * call reaches the upstream. Nor is the circuit breaker: a load test or monitor is
+     * there to measure a failing host, not to be answered by an open circuit in 0 ms.
+     * Requests with assertions are streamed: the body is not returned to these callers
+     * anyway, so it is checked as it arrives and never held whole.
+     */
+    public ApiResponse executeUnlogged(ApiRequest apiRequest) {
+        long startTime = System.currentTimeMillis();
+        AssertionEvaluator evaluator = null;
+        try {
+            String url = toAbsoluteUrl(apiRequest.getUrl());
+            evaluator = AssertionEvaluator.forRequest(apiRequest);
+            if (evaluator != null) {
+                return executeStreaming(apiRequest, url, DISCARD, evaluator, false, startTime);
+            }
+            return execute(apiRequest, url, startTime);
+        } catch (Exception e) {
+            ApiResponse errorResponse = buildErrorResponse(e, System.currentTimeMillis() - startTime);
+            if (evaluator != null) {
+                evaluator.finish(errorResponse, errorResponse.getResponseTime());
+            }
+            return errorResponse;
+        }
+    }
+    
+    /**
+     * Execute on the engine the request selects, outside the circuit breaker, and buffer
+     * the response; no logging
+     */
+    private ApiResponse execute(ApiRequest apiRequest, String url, long startTime) throws IOException {
+        HttpEngine measured = useHttp2(apiRequest) ? measuredHttp2Engine : measuredEngine;
+        return requestTimeouts.execute(measured, buildHttpRequest(apiRequest, url),
+            requestTimeouts.start(apiRequest), startTime);
+    }
+    
+    /**
+     * Execute on the request's engine through the response cache: fresh entries are
+     * served without a round trip, stale ones are revalidated with a conditional request.
+     * Misses go upstream with the request's retry and hedge policies.
+     */
+    private ApiResponse executeWithCache(final ApiRequest apiRequest, final String url, long startTime)
+            throws IOException {
+        final ResponseCache.Lookup lookup = responseCache.lookup(apiRequest, url);
+        if (lookup.isFresh()) {
+            return responseCache.hit(lookup, System.currentTimeMillis() - startTime);
+        }
+        
+        long requestTime = System.currentTimeMillis();
+        ApiResponse apiResponse = attemptExecutor.execute(apiRequest, engineFor(apiRequest), () -> {
+            HttpRequestBase httpRequest = buildHttpRequest(apiRequest, url);
+            responseCache.addConditionalHeaders(lookup, httpRequest);
+            return httpRequest;
+        }, requestTimeouts.start(apiRequest), startTime);
+        return responseCache.update(lookup, apiResponse, requestTime, System.currentTimeMillis());
+    }
+    
+    /**
+     * Execute through the coalescer when the request allows it, so identical GET/HEAD
+     * requests already in flight share one upstream execution
+     */
+    private ApiResponse executeCoalesced(final ApiRequest apiRequest, final String url, final long startTime)
+            throws IOException {
+        if (!requestCoalescer.shouldCoalesce(apiRequest)) {
+            return executeWithCache(apiRequest, url, startTime);
+        }
+        
+        CompletableFuture<ApiResponse> shared = requestCoalescer.join(RequestCoalescer.key(apiRequest, url), () -> {
+            CompletableFuture<ApiResponse> execution = new CompletableFuture<>();
+            try {
+                execution.complete(executeWithCache(apiRequest, url, startTime));
+            } catch (IOException | RuntimeException e) {
+                execution.completeExceptionally(e);
             }
+            return execution;
+        });
+        
+        return withCallerTiming(HttpEngine.await(shared), startTime);
+    }
+    
+    /**
+     * A coalesced copy carries the original execution's timing; report the time this caller waited
+     */
+    private ApiResponse withCallerTiming(ApiResponse apiResponse, long startTime) {
+        if (apiResponse.isCoalesced()) {
+            apiResponse.setResponseTime(System.currentTimeMillis() - startTime);
+        }
+        return apiResponse;
+    }
+    
+    /**
+     * Process a request on the non-blocking client. The calling thread is released
+     * as soon as the request has been handed to the I/O reactor; logging runs on the
+     * supplied completion executor so that file I/O never blocks the reactor threads.
+     * This path buffers the body, so assertions are run on the buffered response.
+     */
+    public CompletableFuture<ApiResponse> processRequestAsync(final ApiRequest apiRequest, String sessionId,
+                                                             final Executor completionExecutor) {
+        final long startTime = System.currentTimeMillis();
+        final String resolvedSessionId = resolveSessionId(sessionId);
+        final CompletableFuture<ApiResponse> result = new CompletableFuture<>();
+        
+        try {
+            final String url = normalizeUrl(apiRequest.getUrl());
+            final AssertionEvaluator evaluator = AssertionEvaluator.forRequest(apiRequest);
+            CompletableFuture<ApiResponse> execution = requestCoalescer.shouldCoalesce(apiRequest)
+                ? requestCoalescer.join(RequestCoalescer.key(apiRequest, url),
+                    () -> executeAsync(apiRequest, url, startTime))
+                : executeAsync(apiRequest, url, startTime);
             
-            // Execute request
-            try (CloseableHttpResponse response = httpClient.execute(httpRequest)) {
-                long responseTime = System.currentTimeMillis() - startTime;
-                
-                int responseCode = response.getStatusLine().getStatusCode();
-                String responseMessage = response.getStatusLine().getReasonPhrase();
-                
-                // Get response headers
-                Map<String, String> responseHeaders = new HashMap<>();
-                for (org.apache.http.Header header : response.getAllHeaders()) {
-                    responseHeaders.put(header.getName(), header.getValue());
-                }
-                
-                // Get response body
-                String responseBody = "";
-                HttpEntity entity = response.getEntity();
-                if (entity != null) {
-                    responseBody = EntityUtils.toString(entity, "UTF-8");
+            execution.whenComplete((apiResponse, failure) -> {
+                final long responseTime = System.currentTimeMillis() - startTime;
+                try {
+                    completionExecutor.execute(() -> {
+                        ApiResponse callerResponse = failure != null
+                            ? handleFailure(apiRequest, resolvedSessionId, asException(failure), responseTime)
+                            : withCallerTiming(apiResponse, startTime);
+                        if (evaluator != null) {
+                            evaluator.evaluate(callerResponse);
+                        }
+                        if (failure == null) {
+                            logApiRequest(apiRequest, resolvedSessionId, url, callerResponse);
+                        }
+                        result.complete(callerResponse);
+                    });
+                } catch (RuntimeException e) {
+                    // The caller is gone (e.g. the async context already timed out)
+                    logger.warning("Dropping async result for " + url + ": " + e.getMessage());
+                    result.completeExceptionally(e);
                 }
-                
-                // Calculate response size
-                int responseSize = responseBody.getBytes("UTF-8").length;
-                
-                // Create response object
-                ApiResponse apiResponse = new ApiResponse();
-                apiResponse.setStatus(responseCode);
-                apiResponse.setStatusText(responseMessage);
-                apiResponse.setHeaders(responseHeaders);
-                apiResponse.setBody(responseBody);
-                apiResponse.setResponseTime(responseTime);
-                apiResponse.setSize(responseSize);
-                
-                // Log the API request
-                securityLogger.logApiRequest(
-                    sessionId,
-                    apiRequest.getMethod(),
-                    url,
-                    apiRequest.getHeaders(),
-                    apiRequest.getBody(),
-                    responseCode,
-                    responseBody,
-                    responseHeaders,
-                    responseTime
-                );
-                
-                return apiResponse;
-            }
+            });
+            
+        } catch (Exception e) {
+            result.complete(handleFailure(apiRequest, resolvedSessionId, e, System.currentTimeMillis() - startTime));
+        }
+        
+        return result;
+    }
+    
+    /**
+     * Execute on the non-blocking client (or the HTTP/2 engine) through the response cache,
+     * without logging, whatever the "engine" setting. The future completes on an I/O reactor thread.
+     */
+    private CompletableFuture<ApiResponse> executeAsync(final ApiRequest apiRequest, String url, final long startTime) {
+        final ResponseCache.Lookup lookup = responseCache.lookup(apiRequest, url);
+        if (lookup.isFresh()) {
+            return CompletableFuture.completedFuture(responseCache.hit(lookup, System.currentTimeMillis() - startTime));
+        }
+        
+        HttpRequestBase httpRequest = buildHttpRequest(apiRequest, url);
+        responseCache.addConditionalHeaders(lookup, httpRequest);
+        final long requestTime = System.currentTimeMillis();
+        
+        HttpEngine nonBlockingEngine = useHttp2(apiRequest) ? protectedHttp2Engine : protectedAsyncEngine;
+        return requestTimeouts.executeAsync(nonBlockingEngine, httpRequest, requestTimeouts.start(apiRequest), startTime)
+            .thenApply(apiResponse ->
+            responseCache.update(lookup, apiResponse, requestTime, System.currentTimeMillis()));
+    }
+    
+    private static Exception asException(Throwable failure) {
+        if (failure instanceof CompletionException && failure.getCause() != null) {
+            failure = failure.getCause();
+        }
+        return failure instanceof Exception ? (Exception) failure : new ExecutionException(failure);
+    }
+    
+    /**
+     * Process a request and hand the upstream body to the handler as a stream instead
+     * of buffering it. Only a bounded prefix is kept; the returned ApiResponse carries
+     * that prefix as its body, the full byte count as its size, and is what gets logged.
+     * The request's assertions run on the body as the handler reads it.
+     * If the request fails before the handler has seen the response head, the handler
+     * is not called and the usual error response is returned.
+     */
+    public ApiResponse processRequestStreaming(ApiRequest apiRequest, String sessionId,
+                                               StreamingResponseHandler handler) {
+        long startTime = System.currentTimeMillis();
+        sessionId = resolveSessionId(sessionId);
+        AssertionEvaluator evaluator = null;
+        
+        try {
+            String url = normalizeUrl(apiRequest.getUrl());
+            evaluator = AssertionEvaluator.forRequest(apiRequest);
+            ApiResponse apiResponse = executeStreaming(apiRequest, url, handler, evaluator, true, startTime);
+            
+            // Log the API request with the captured prefix only
+            logApiRequest(apiRequest, sessionId, url, apiResponse);
+            
+            return apiResponse;
             
         } catch (Exception e) {
-            // Handle errors
+            ApiResponse errorResponse = handleFailure(apiRequest, sessionId, e, System.currentTimeMillis() - startTime);
+            if (evaluator != null) {
+                evaluator.finish(errorResponse, errorResponse.getResponseTime());
+            }
+            return errorResponse;
+        }
+    }
+    
+    /**
+     * Execute on the blocking HTTP/1.1 client and hand the body to the handler as it
+     * arrives; no logging. Streamed bodies are never cached, coalesced or retried.
+     *
+     * @param evaluator assertions to feed the body to as the handler reads it, or null
+     * @param guarded whether the host's circuit breaker applies
+     */
+    private ApiResponse executeStreaming(ApiRequest apiRequest, String url, StreamingResponseHandler handler,
+                                         AssertionEvaluator evaluator, boolean guarded, long startTime)
+            throws IOException {
+        HttpRequestBase httpRequest = buildHttpRequest(apiRequest, url);
+        // The deadline covers the exchange up to the response head; the body is paced by our own client
+        RequestTimeouts.Deadline deadline = requestTimeouts.start(apiRequest);
+        
+        // Streamed bodies are never cached, but writes still invalidate stored GETs
+        responseCache.invalidateIfUnsafe(apiRequest.getMethod(), url);
+        
+        CircuitBreaker.Circuit circuit = guarded ? circuitBreaker.circuitFor(httpRequest.getURI()) : null;
+        long permit = circuit != null ? circuit.acquire() : 0;
+        ScheduledFuture<?> abort;
+        try {
+            rateLimiter.acquire(httpRequest.getURI());
+            // Throws when the rate limiter's wait has already used up the deadline
+            deadline.apply(httpRequest);
+            abort = deadline.isBounded() ? requestTimeouts.onExpiry(deadline, httpRequest::abort) : null;
+        } catch (IOException | RuntimeException e) {
+            // Never reached the host: a probe permit kept here would hold the circuit half-open
+            if (circuit != null) {
+                circuit.release(permit);
+            }
+            throw e;
+        }
+        PhaseTimings timings = PhaseTimer.begin();
+        long exchangeStart = System.nanoTime();
+        boolean headReceived = false;
+        try (CloseableHttpResponse response = httpClient.execute(httpRequest)) {
             long responseTime = System.currentTimeMillis() - startTime;
+            // The circuit judges the host by the response head, too
+            headReceived = true;
+            if (abort != null) {
+                abort.cancel(false);
+            }
+            if (circuit != null) {
+                circuit.record(permit, System.nanoTime() - exchangeStart,
+                    circuitBreaker.isFailure(response.getStatusLine().getStatusCode()));
+            }
             
-            // Log the error
-            securityLogger.logError(sessionId, "API_REQUEST", e.getMessage(), e);
+            ApiResponse apiResponse = new ApiResponse();
+            apiResponse.setStatus(response.getStatusLine().getStatusCode());
+            apiResponse.setStatusText(response.getStatusLine().getReasonPhrase());
+            apiResponse.setHeaders(ApacheResponses.copyHeaders(response));
+            apiResponse.setResponseTime(responseTime);
+            apiResponse.setProtocol(response.getStatusLine().getProtocolVersion().toString());
+            handler.onHead(apiResponse);
             
-            ApiResponse errorResponse = new ApiResponse();
-            errorResponse.setStatus(0);
-            errorResponse.setStatusText("Request Failed");
-            errorResponse.setBody("{ \"error\": \"" + e.getMessage() + "\", \"type\": \"" + e.getClass().getSimpleName() + "\" }");
-            errorResponse.setResponseTime(responseTime);
-            errorResponse.setSize(0);
+            HttpEntity entity = response.getEntity();
+            Charset charset = ApacheResponses.charset(entity);
+            // Decompress as the bytes arrive; the handler and the prefix see the decoded body
+            DecodingInputStream decoded = new DecodingInputStream(
+                entity != null ? entity.getContent() : new ByteArrayInputStream(new byte[0]),
+                ApacheResponses.contentEncoding(response));
+            BoundedCaptureInputStream body = new BoundedCaptureInputStream(decoded, STREAM_PREFIX_LIMIT);
+            if (evaluator != null) {
+                evaluator.head(apiResponse.getStatus(), apiResponse.getHeaders(), charset);
+            }
+            long downloadStart = System.nanoTime();
+            handler.onBody(evaluator != null ? evaluator.watch(body) : body, charset);
             
-            Map<String, String> errorHeaders = new HashMap<>();
-            errorHeaders.put("Content-Type", "application/json");
-            errorResponse.setHeaders(errorHeaders);
+            // Download here includes writing to our own client, as the two are interleaved
+            long exchangeEnd = System.nanoTime();
+            timings.setDownloadNanos(exchangeEnd - downloadStart);
+            timings.setTotalNanos(exchangeEnd - exchangeStart);
+            apiResponse.setTimings(timings);
+            apiResponse.setBody(body.getCapturedText(charset));
+            apiResponse.setSize((int) Math.min(body.getCount(), Integer.MAX_VALUE));
+            apiResponse.setCompressedSize(decoded.getEncodedCount());
+            apiResponse.setBodyTruncated(body.isTruncated());
+            if (evaluator != null) {
+                evaluator.finish(apiResponse, System.currentTimeMillis() - startTime);
+            }
+            return apiResponse;
+        } catch (IOException e) {
+            if (headReceived) {
+                throw e;
+            }
+            IOException failure = requestTimeouts.classify(e, deadline);
+            if (circuit != null) {
+                if (failure instanceof RequestTimeoutException) {
+                    circuit.recordTimeout(permit, System.nanoTime() - exchangeStart);
+                } else {
+                    circuit.record(permit, System.nanoTime() - exchangeStart, true);
+                }
+            }
+            throw failure;
+        } catch (RuntimeException e) {
+            if (circuit != null && !headReceived) {
+                circuit.release(permit);
+            }
+            throw e;
+        } finally {
+            if (abort != null) {
+                abort.cancel(false);
+            }
+            PhaseTimer.end();
+        }
+    }
+    
+    /**
+     * Process a request whose body is streamed from the caller instead of held in
+     * ApiRequest.body: bytes are copied from the stream into the upstream request as it
+     * is sent, and only a bounded prefix is kept for the log. The body can be read once
+     * only, so the request is never retried, hedged, coalesced or cached, and always
+     * goes out on the blocking HTTP/1.1 client.
+     *
+     * @param contentLength body length, or -1 to send it chunked
+     * @param contentType Content-Type of the body, sent upstream in place of any in the request's headers
+     */
+    public ApiResponse processUpload(ApiRequest apiRequest, InputStream body, long contentLength,
+                                     String contentType, String sessionId) {
+        long startTime = System.currentTimeMillis();
+        sessionId = resolveSessionId(sessionId);
+        BoundedCaptureInputStream upload = new BoundedCaptureInputStream(body, STREAM_PREFIX_LIMIT);
+        
+        try {
+            String url = normalizeUrl(apiRequest.getUrl());
+            apiRequest.setBody(null);
+            HttpRequestBase httpRequest = buildHttpRequest(apiRequest, url);
+            if (!(httpRequest instanceof HttpEntityEnclosingRequestBase)) {
+                throw new IllegalArgumentException("A " + httpRequest.getMethod() + " request cannot carry a body");
+            }
+            // The client frames the body itself
+            httpRequest.removeHeaders("Content-Length");
+            httpRequest.removeHeaders("Transfer-Encoding");
+            if (contentType != null) {
+                httpRequest.removeHeaders("Content-Type");
+            }
+            InputStreamEntity entity = new InputStreamEntity(upload, contentLength);
+            entity.setContentType(contentType);
+            ((HttpEntityEnclosingRequestBase) httpRequest).setEntity(entity);
             
-            // Log the failed API request
-            securityLogger.logApiRequest(
-                sessionId,
-                apiRequest.getMethod(),
-                apiRequest.getUrl(),
-                apiRequest.getHeaders(),
-                apiRequest.getBody(),
-                0,
-                errorResponse.getBody(),
-                errorHeaders,
-                responseTime
-            );
+            responseCache.invalidateIfUnsafe(apiRequest.getMethod(), url);
+            ApiResponse apiResponse;
+            try {
+                apiResponse = requestTimeouts.execute(uploadEngine, httpRequest, requestTimeouts.start(apiRequest),
+                    startTime);
+            } finally {
+                apiRequest.setBody(describeUpload(upload, contentType));
+            }
+            apiResponse.setRequestSize(upload.getCount());
+            logApiRequest(apiRequest, sessionId, url, apiResponse);
+            return apiResponse;
             
+        } catch (Exception e) {
+            ApiResponse errorResponse = handleFailure(apiRequest, sessionId, e, System.currentTimeMillis() - startTime);
+            errorResponse.setRequestSize(upload.getCount());
             return errorResponse;
         }
     }
     
+    /**
+     * What the log shows as the body of an upload: the captured prefix of a text body,
+     * or the size and type of anything else
+     */
+    private static String describeUpload(BoundedCaptureInputStream upload, String contentType) {
+        String mimeType = contentType != null ? contentType.split(";")[0].trim().toLowerCase() : "";
+        boolean text = mimeType.startsWith("text/") || mimeType.endsWith("json") || mimeType.endsWith("xml")
+            || mimeType.equals("application/x-www-form-urlencoded");
+        if (!text) {
+            return "[" + upload.getCount() + " bytes" + (mimeType.isEmpty() ? "" : " of " + mimeType) + "]";
+        }
+        Charset charset = StandardCharsets.UTF_8;
+        try {
+            ContentType parsed = ContentType.parse(contentType);
+            if (parsed.getCharset() != null) {
+                charset = parsed.getCharset();
+            }
+        } catch (RuntimeException e) {
+            // Unparseable parameters: keep UTF-8
+        }
+        String prefix = upload.getCapturedText(charset);
+        return upload.isTruncated() ? prefix + "... [" + upload.getCount() + " bytes]" : prefix;
+    }
+    
+    private String resolveSessionId(String sessionId) {
+        if (sessionId == null) {
+            return sessionManager.generateSessionId();
+        }
+        return sessionManager.getOrCreateSessionId(sessionId);
+    }
+    
+    private String normalizeUrl(String url) {
+        // Use the URL directly as provided by the user
+        logger.info("Processing API request for URL: " + url);
+        
+        String absoluteUrl = toAbsoluteUrl(url);
+        if (absoluteUrl != null && !absoluteUrl.equals(url)) {
+            logger.info("Added HTTPS protocol to URL: " + absoluteUrl);
+        }
+        return absoluteUrl;
+    }
+    
+    private static String toAbsoluteUrl(String url) {
+        // Validate URL format
+        if (url != null && !url.toLowerCase().startsWith("http://") && !url.toLowerCase().startsWith("https://")) {
+            // Assume https if no protocol specified (for better security)
+            return "https://" + url;
+        }
+        return url;
+    }
+    
+    private HttpRequestBase buildHttpRequest(ApiRequest apiRequest, String url) {
+        HttpRequestBase httpRequest = createHttpRequest(apiRequest.getMethod(), url);
+        
+        // Set headers
+        if (apiRequest.getHeaders() != null) {
+            for (Map.Entry<String, String> header : apiRequest.getHeaders().entrySet()) {
+                if (header.getKey() != null && !header.getKey().trim().isEmpty() && 
+                    header.getValue() != null && !header.getValue().trim().isEmpty()) {
+                    httpRequest.setHeader(header.getKey().trim(), header.getValue().trim());
+                }
+            }
+        }
+        
+        // Ask for a compressed body unless the caller chose an encoding; every engine decodes it
+        if (UPSTREAM_COMPRESSION && !httpRequest.containsHeader("Accept-Encoding")) {
+            httpRequest.setHeader("Accept-Encoding", DecodingInputStream.ACCEPT_ENCODING);
+        }
+        
+        // Set request body for POST, PUT, PATCH
+        if (httpRequest instanceof HttpPost || httpRequest instanceof HttpPut || httpRequest instanceof HttpPatch) {
+            String body = apiRequest.getBody();
+            if (body != null && !body.trim().isEmpty()) {
+                // JSON unless the caller's headers say otherwise
+                StringEntity entity = new StringEntity(body, "UTF-8");
+                Header contentType = httpRequest.getFirstHeader("Content-Type");
+                entity.setContentType(contentType != null ? contentType.getValue() : "application/json");
+                
+                if (httpRequest instanceof HttpPost) {
+                    ((HttpPost) httpRequest).setEntity(entity);
+                } else if (httpRequest instanceof HttpPut) {
+                    ((HttpPut) httpRequest).setEntity(entity);
+                } else if (httpRequest instanceof HttpPatch) {
+                    ((HttpPatch) httpRequest).setEntity(entity);
+                }
+            }
+        }
+        
+        return httpRequest;
+    }
+    
+    private void logApiRequest(ApiRequest apiRequest, String sessionId, String url, ApiResponse apiResponse) {
+        // Log the API request
+        securityLogger.logApiRequest(
+            sessionId,
+            apiRequest.getMethod(),
+            url,
+            apiRequest.getHeaders(),
+            apiRequest.getBody(),
+            apiResponse.getStatus(),
+            apiResponse.getBody(),
+            apiResponse.getHeaders(),
+            apiResponse.getResponseTime(),
+            apiResponse.getTimings(),
+            apiResponse.getAttemptTimings()
+        );
+    }
+    
+    private ApiResponse handleFailure(ApiRequest apiRequest, String sessionId, Exception e, long responseTime) {
+        // Log the error
+        securityLogger.logError(sessionId, "API_REQUEST", e.getMessage(), e);
+        
+        ApiResponse errorResponse = buildErrorResponse(e, responseTime);
+        
+        // Log the failed API request
+        securityLogger.logApiRequest(
+            sessionId,
+            apiRequest.getMethod(),
+            apiRequest.getUrl(),
+            apiRequest.getHeaders(),
+            apiRequest.getBody(),
+            0,
+            errorResponse.getBody(),
+            errorResponse.getHeaders(),
+            responseTime,
+            null,
+            errorResponse.getAttemptTimings()
+        );
+        
+        return errorResponse;
+    }
+    
+    private ApiResponse buildErrorResponse(Exception e, long responseTime) {
+        ApiResponse errorResponse = new ApiResponse();
+        if (e instanceof AttemptsFailedException) {
+            // Report the last attempt's failure, with every attempt that led to it
+            List<AttemptTiming> attempts = ((AttemptsFailedException) e).getAttempts();
+            errorResponse.setAttempts(attempts.size());
+            errorResponse.setAttemptTimings(attempts);
+            e = (Exception) e.getCause();
+        }
+        errorResponse.setStatus(0);
+        errorResponse.setStatusText("Request Failed");
+        if (e instanceof RequestTimeoutException) {
+            String phase = ((RequestTimeoutException) e).getPhase();
+            errorResponse.setTimeoutPhase(phase);
+            errorResponse.setBody("{ \"error\": \"" + e.getMessage() + "\", \"type\": \"" + e.getClass().getSimpleName()
+                + "\", \"phase\": \"" + phase + "\" }");
+        } else {
+            errorResponse.setBody("{ \"error\": \"" + e.getMessage() + "\", \"type\": \"" + e.getClass().getSimpleName() + "\" }");
+        }
+        errorResponse.setResponseTime(responseTime);
+        errorResponse.setSize(0);
+        
+        Map<String, String> errorHeaders = new HashMap<>();
+        errorHeaders.put("Content-Type", "application/json");
+        errorResponse.setHeaders(errorHeaders);
+        return errorResponse;
+    }
+    
     private HttpRequestBase createHttpRequest(String method, String url) {
         switch (method.toUpperCase()) {
             case "GET":
@@ -319,13 +1228,30 @@ public class ApiRequestService {
         }
     }
     
-    public void shutdown() {
+    /**
+     * Stop the background threads, then close each client once: the blocking client (with
+     * its pool and evictor), the async client and the HTTP/2 client. The configured engine
+     * and the upload engine run on one of these, but for the URLConnection engine, which
+     * has no client of its own, so they are not shut down separately.
+     */
+    public synchronized void shutdown() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (warmupThread != null) {
+            warmupThread.interrupt();
+        }
+        attemptExecutor.shutdown();
+        requestTimeouts.shutdown();
+        rateLimiter.shutdown();
+        dnsResolver.shutdown();
         try {
-            if (httpClient != null) {
-                httpClient.close();
-            }
+            httpClient.close();
         } catch (IOException e) {
             // Ignore
         }
+        asyncEngine.shutdown();
+        http2Engine.shutdown();
     }
 }
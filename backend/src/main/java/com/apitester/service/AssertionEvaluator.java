@@ -0,0 +1,580 @@
+package com.apitester.service;
+
+import com.apitester.config.AppConfig;
+import com.apitester.model.ApiRequest;
+import com.apitester.model.ApiResponse;
+import com.apitester.model.Assertion;
+import com.apitester.model.AssertionResult;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonPointer;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteArrayFeeder;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Runs a request's assertions on its response as the body is read, without keeping
+ * the body. JSON checks follow the token stream of Jackson's non-blocking parser and
+ * hold on to nothing but the value they compare (never larger than the expected value);
+ * body regexes scan a sliding window of the decoded text. Bytes are pushed in through
+ * the stream returned by {@link #watch}, or all at once for a response that was
+ * buffered anyway.
+ *
+ * One evaluator serves one response and is not thread-safe.
+ */
+final class AssertionEvaluator {
+    
+    private static final int MAX_ASSERTIONS = AppConfig.getInt("assertion.max", 50);
+    // A body regex is found when its match fits in this many characters
+    private static final int REGEX_WINDOW = AppConfig.getInt("assertion.regexWindowChars", 64 * 1024);
+    private static final int ACTUAL_LIMIT = 200;
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    
+    // Numbers are equal by value, so 42 matches 42.0; everything else compares as usual
+    private static final Comparator<JsonNode> JSON_EQUALITY = (expected, actual) -> {
+        if (expected.isNumber() && actual.isNumber()) {
+            return expected.decimalValue().compareTo(actual.decimalValue());
+        }
+        return expected.equals(actual) ? 0 : 1;
+    };
+    
+    private final List<Check> checks = new ArrayList<>();
+    private boolean headReceived;
+    
+    // JSON checks
+    private JsonParser parser;
+    private int pendingJson;
+    private String jsonError;
+    private final List<Frame> frames = new ArrayList<>();
+    private final List<Check> capturing = new ArrayList<>();
+    
+    // Body regex checks
+    private int pendingBody;
+    private CharsetDecoder decoder;
+    private ByteBuffer undecoded;
+    private final CharBuffer decoded = CharBuffer.allocate(8192);
+    private final StringBuilder window = new StringBuilder();
+    
+    private AssertionEvaluator(List<Assertion> assertions) {
+        if (assertions.size() > MAX_ASSERTIONS) {
+            throw new IllegalArgumentException("A request can have at most " + MAX_ASSERTIONS + " assertions");
+        }
+        for (int i = 0; i < assertions.size(); i++) {
+            Check check = new Check(assertions.get(i), i + 1);
+            checks.add(check);
+            if (check.type.equals(Assertion.JSON)) {
+                pendingJson++;
+            } else if (check.type.equals(Assertion.BODY)) {
+                pendingBody++;
+            }
+        }
+    }
+    
+    /**
+     * Evaluator for the request's assertions, or null when it has none
+     *
+     * @throws IllegalArgumentException when an assertion is incomplete or has a bad regex or pointer
+     */
+    static AssertionEvaluator forRequest(ApiRequest apiRequest) {
+        List<Assertion> assertions = apiRequest.getAssertions();
+        return assertions != null && !assertions.isEmpty() ? new AssertionEvaluator(assertions) : null;
+    }
+    
+    /**
+     * Check the status and headers, and get ready for the body
+     */
+    void head(int status, Map<String, String> headers, Charset charset) {
+        headReceived = true;
+        for (Check check : checks) {
+            if (check.type.equals(Assertion.STATUS)) {
+                checkStatus(check, status);
+            } else if (check.type.equals(Assertion.HEADER)) {
+                checkHeader(check, headers);
+            }
+        }
+        if (pendingJson > 0) {
+            try {
+                parser = JSON_FACTORY.createNonBlockingByteArrayParser();
+            } catch (IOException e) {
+                jsonError = e.getMessage();
+            }
+        }
+        if (pendingBody > 0) {
+            decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        }
+    }
+    
+    /**
+     * Feed the next bytes of the body
+     */
+    void update(byte[] bytes, int offset, int length) {
+        if (length <= 0) {
+            return;
+        }
+        if (pendingJson > 0 && jsonError == null && parser != null) {
+            try {
+                ((ByteArrayFeeder) parser.getNonBlockingInputFeeder()).feedInput(bytes, offset, offset + length);
+                readTokens();
+            } catch (IOException e) {
+                jsonError = "Body is not valid JSON: " + originalMessage(e);
+            }
+        }
+        if (pendingBody > 0 && decoder != null) {
+            decode(ByteBuffer.wrap(bytes, offset, length), false);
+        }
+    }
+    
+    /**
+     * Wrap a body stream so that every byte read through it is fed to this evaluator
+     */
+    InputStream watch(InputStream body) {
+        return new FilterInputStream(body) {
+            private final byte[] single = new byte[1];
+            
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b >= 0) {
+                    single[0] = (byte) b;
+                    update(single, 0, 1);
+                }
+                return b;
+            }
+            
+            @Override
+            public int read(byte[] buffer, int offset, int length) throws IOException {
+                int read = super.read(buffer, offset, length);
+                if (read > 0) {
+                    update(buffer, offset, read);
+                }
+                return read;
+            }
+            
+            @Override
+            public long skip(long n) throws IOException {
+                // Skipped bytes must still be seen
+                byte[] buffer = new byte[(int) Math.min(n, 8192)];
+                long skipped = 0;
+                while (skipped < n) {
+                    int read = read(buffer, 0, (int) Math.min(buffer.length, n - skipped));
+                    if (read < 0) {
+                        break;
+                    }
+                    skipped += read;
+                }
+                return skipped;
+            }
+            
+            @Override
+            public boolean markSupported() {
+                return false;
+            }
+        };
+    }
+    
+    /**
+     * Settle every check once the body has ended (or the request failed) and put the
+     * results on the response
+     *
+     * @param elapsedMs time from the start of the request to the end of the body
+     */
+    void finish(ApiResponse apiResponse, long elapsedMs) {
+        if (headReceived) {
+            if (pendingJson > 0 && jsonError == null && parser != null) {
+                try {
+                    ((ByteArrayFeeder) parser.getNonBlockingInputFeeder()).endOfInput();
+                    readTokens();
+                } catch (IOException e) {
+                    jsonError = "Body is not valid JSON: " + originalMessage(e);
+                }
+            }
+            if (pendingBody > 0 && decoder != null) {
+                decode(ByteBuffer.allocate(0), true);
+            }
+        }
+        
+        List<AssertionResult> results = new ArrayList<>(checks.size());
+        boolean allPassed = true;
+        for (Check check : checks) {
+            if (!check.resolved) {
+                if (!headReceived) {
+                    check.error = "No response";
+                } else if (check.type.equals(Assertion.LATENCY)) {
+                    check.passed = elapsedMs <= check.assertion.getMaxMs();
+                    check.actual = elapsedMs + " ms";
+                } else if (check.type.equals(Assertion.JSON)) {
+                    if (jsonError != null) {
+                        check.error = jsonError;
+                    } else {
+                        // Never found: only an absence check passes
+                        check.passed = check.assertion.getEquals() == null && Boolean.FALSE.equals(check.assertion.getExists());
+                    }
+                }
+            }
+            AssertionResult result = new AssertionResult(check.type, check.description, check.passed, check.actual);
+            result.setError(check.error);
+            results.add(result);
+            allPassed &= check.passed;
+        }
+        apiResponse.setAssertions(results);
+        apiResponse.setAssertionsPassed(allPassed);
+    }
+    
+    /**
+     * Evaluate against a response that was buffered anyway (or failed)
+     */
+    void evaluate(ApiResponse apiResponse) {
+        if (apiResponse.getStatus() > 0) {
+            head(apiResponse.getStatus(), apiResponse.getHeaders(), StandardCharsets.UTF_8);
+            byte[] body = apiResponse.getBody() != null ? apiResponse.getBody().getBytes(StandardCharsets.UTF_8) : new byte[0];
+            update(body, 0, body.length);
+        }
+        finish(apiResponse, apiResponse.getResponseTime());
+    }
+    
+    private void checkStatus(Check check, int status) {
+        Assertion assertion = check.assertion;
+        boolean passed;
+        if (assertion.getIn() != null && !assertion.getIn().isEmpty()) {
+            passed = assertion.getIn().contains(status);
+        } else if (assertion.getEquals() != null) {
+            passed = assertion.getEquals().asInt() == status;
+        } else {
+            passed = status >= 200 && status < 400;
+        }
+        resolve(check, passed, String.valueOf(status));
+    }
+    
+    private void checkHeader(Check check, Map<String, String> headers) {
+        Assertion assertion = check.assertion;
+        String value = null;
+        if (headers != null) {
+            for (Map.Entry<String, String> header : headers.entrySet()) {
+                if (header.getKey() != null && header.getKey().equalsIgnoreCase(assertion.getName().trim())) {
+                    value = header.getValue();
+                    break;
+                }
+            }
+        }
+        boolean passed;
+        if (check.pattern != null) {
+            passed = value != null && check.pattern.matcher(value).find();
+        } else if (assertion.getEquals() != null) {
+            passed = value != null && value.equals(assertion.getEquals().asText());
+        } else {
+            passed = (value != null) != Boolean.FALSE.equals(assertion.getExists());
+        }
+        resolve(check, passed, value);
+    }
+    
+    private void readTokens() throws IOException {
+        JsonToken token;
+        while (pendingJson > 0 && (token = parser.nextToken()) != null && token != JsonToken.NOT_AVAILABLE) {
+            if (token == JsonToken.FIELD_NAME) {
+                frames.get(frames.size() - 1).field = parser.getCurrentName();
+                copyToCaptures(token);
+                continue;
+            }
+            if (token.isStructEnd()) {
+                copyToCaptures(token);
+                frames.remove(frames.size() - 1);
+                continue;
+            }
+            
+            // A value starts here, a scalar or a container
+            if (!frames.isEmpty()) {
+                Frame top = frames.get(frames.size() - 1);
+                if (top.array) {
+                    top.index++;
+                }
+            }
+            for (Check check : checks) {
+                if (check.segments != null && !check.resolved && check.capture == null && isAtPath(check)) {
+                    onMatch(check, token);
+                }
+            }
+            copyToCaptures(token);
+            if (token.isStructStart()) {
+                frames.add(new Frame(token == JsonToken.START_ARRAY));
+            }
+        }
+    }
+    
+    private boolean isAtPath(Check check) {
+        if (check.segments.length != frames.size()) {
+            return false;
+        }
+        for (int i = 0; i < frames.size(); i++) {
+            Frame frame = frames.get(i);
+            if (frame.array ? frame.index != check.indexes[i] : !check.segments[i].equals(frame.field)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private void onMatch(Check check, JsonToken token) throws IOException {
+        if (check.assertion.getEquals() == null) {
+            String actual = token == JsonToken.START_OBJECT ? "{...}" : token == JsonToken.START_ARRAY ? "[...]" : parser.getText();
+            resolve(check, !Boolean.FALSE.equals(check.assertion.getExists()), actual);
+        } else {
+            // Keep the value to compare; copyToCaptures adds this token
+            check.capture = new TokenBuffer(MAPPER, false);
+            check.captureDepth = 0;
+            check.capturedTokens = 0;
+            capturing.add(check);
+        }
+    }
+    
+    private void copyToCaptures(JsonToken token) throws IOException {
+        for (Iterator<Check> it = capturing.iterator(); it.hasNext(); ) {
+            Check check = it.next();
+            check.capture.copyCurrentEvent(parser);
+            check.capturedTokens++;
+            if (token.isStructStart()) {
+                check.captureDepth++;
+            } else if (token.isStructEnd()) {
+                check.captureDepth--;
+            }
+            
+            if (check.capturedTokens > check.expectedTokens) {
+                // More tokens than the expected value has: it cannot be equal, stop holding it
+                it.remove();
+                check.capture = null;
+                resolve(check, false, "(a larger value)");
+            } else if (check.captureDepth == 0) {
+                it.remove();
+                JsonNode actual = MAPPER.readTree(check.capture.asParser());
+                check.capture = null;
+                resolve(check, check.assertion.getEquals().equals(JSON_EQUALITY, actual),
+                    actual.isValueNode() ? actual.asText() : actual.toString());
+            }
+        }
+    }
+    
+    private void decode(ByteBuffer input, boolean end) {
+        if (undecoded != null) {
+            // Bytes of a character split across reads
+            ByteBuffer joined = ByteBuffer.allocate(undecoded.remaining() + input.remaining());
+            joined.put(undecoded);
+            joined.put(input);
+            joined.flip();
+            input = joined;
+            undecoded = null;
+        }
+        CoderResult result;
+        do {
+            result = decoder.decode(input, decoded, end);
+            drainDecoded();
+        } while (result.isOverflow());
+        if (end) {
+            while (decoder.flush(decoded).isOverflow()) {
+                drainDecoded();
+            }
+            drainDecoded();
+        } else if (input.hasRemaining()) {
+            // The caller reuses its buffer, so keep a copy
+            undecoded = ByteBuffer.allocate(input.remaining());
+            undecoded.put(input);
+            undecoded.flip();
+        }
+        
+        // Scan twice the window at a time and keep the last window, so every match of up
+        // to REGEX_WINDOW characters lies wholly inside some scan
+        if (window.length() >= 2 * REGEX_WINDOW || end) {
+            for (Check check : checks) {
+                if (check.type.equals(Assertion.BODY) && !check.resolved) {
+                    Matcher matcher = check.pattern.matcher(window);
+                    if (matcher.find()) {
+                        resolve(check, true, matcher.group());
+                    } else if (end) {
+                        resolve(check, false, null);
+                    }
+                }
+            }
+            if (window.length() > REGEX_WINDOW) {
+                window.delete(0, window.length() - REGEX_WINDOW);
+            }
+        }
+    }
+    
+    private void drainDecoded() {
+        decoded.flip();
+        window.append(decoded);
+        decoded.clear();
+    }
+    
+    private void resolve(Check check, boolean passed, String actual) {
+        check.resolved = true;
+        check.passed = passed;
+        check.actual = actual != null && actual.length() > ACTUAL_LIMIT ? actual.substring(0, ACTUAL_LIMIT) + "..." : actual;
+        if (check.type.equals(Assertion.JSON)) {
+            pendingJson--;
+        } else if (check.type.equals(Assertion.BODY)) {
+            pendingBody--;
+        }
+    }
+    
+    private static String originalMessage(IOException e) {
+        return e instanceof JsonProcessingException ? ((JsonProcessingException) e).getOriginalMessage() : e.getMessage();
+    }
+    
+    /**
+     * One assertion with what is needed to run it, and its outcome
+     */
+    private static final class Check {
+        final Assertion assertion;
+        final String type;
+        final String description;
+        Pattern pattern;
+        // JSON pointer, one entry per level: the property name, and the array index it stands for (or -1)
+        String[] segments;
+        int[] indexes;
+        int expectedTokens;
+        
+        boolean resolved;
+        boolean passed;
+        String actual;
+        String error;
+        TokenBuffer capture;
+        int captureDepth;
+        int capturedTokens;
+        
+        Check(Assertion assertion, int position) {
+            if (assertion == null) {
+                throw new IllegalArgumentException("Assertion " + position + " is empty");
+            }
+            this.assertion = assertion;
+            this.type = assertion.getType() != null ? assertion.getType().trim().toLowerCase() : "";
+            String prefix = "Assertion " + position + " (" + type + ")";
+            
+            switch (type) {
+                case Assertion.STATUS:
+                    description = assertion.getIn() != null && !assertion.getIn().isEmpty() ? "status in " + assertion.getIn()
+                        : assertion.getEquals() != null ? "status == " + assertion.getEquals().asText() : "status is 2xx/3xx";
+                    break;
+                case Assertion.HEADER:
+                    if (assertion.getName() == null || assertion.getName().trim().isEmpty()) {
+                        throw new IllegalArgumentException(prefix + " needs a header name");
+                    }
+                    String name = assertion.getName().trim();
+                    if (assertion.getMatches() != null) {
+                        pattern = compile(prefix, assertion.getMatches());
+                        description = "header " + name + " matches " + assertion.getMatches();
+                    } else if (assertion.getEquals() != null) {
+                        description = "header " + name + " == " + assertion.getEquals().asText();
+                    } else {
+                        description = "header " + name + (Boolean.FALSE.equals(assertion.getExists()) ? " is absent" : " exists");
+                    }
+                    break;
+                case Assertion.JSON:
+                    if (assertion.getPath() == null) {
+                        throw new IllegalArgumentException(prefix + " needs a JSON pointer path");
+                    }
+                    compilePointer(prefix, assertion.getPath().trim());
+                    if (assertion.getEquals() != null) {
+                        expectedTokens = countTokens(assertion.getEquals());
+                        description = "json " + assertion.getPath().trim() + " == " + assertion.getEquals();
+                    } else {
+                        description = "json " + assertion.getPath().trim()
+                            + (Boolean.FALSE.equals(assertion.getExists()) ? " is absent" : " exists");
+                    }
+                    break;
+                case Assertion.BODY:
+                    if (assertion.getMatches() == null) {
+                        throw new IllegalArgumentException(prefix + " needs a regex in matches");
+                    }
+                    pattern = compile(prefix, assertion.getMatches());
+                    description = "body matches " + assertion.getMatches();
+                    break;
+                case Assertion.LATENCY:
+                    if (assertion.getMaxMs() == null) {
+                        throw new IllegalArgumentException(prefix + " needs maxMs");
+                    }
+                    description = "latency <= " + assertion.getMaxMs() + " ms";
+                    break;
+                default:
+                    throw new IllegalArgumentException("Assertion " + position + " has type " + assertion.getType()
+                        + "; expected status, header, json, body or latency");
+            }
+        }
+        
+        private static Pattern compile(String prefix, String regex) {
+            try {
+                return Pattern.compile(regex);
+            } catch (PatternSyntaxException e) {
+                throw new IllegalArgumentException(prefix + " has an invalid regex: " + e.getDescription());
+            }
+        }
+        
+        private void compilePointer(String prefix, String path) {
+            JsonPointer pointer;
+            try {
+                pointer = JsonPointer.compile(path);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException(prefix + " has an invalid JSON pointer " + path + ": " + e.getMessage());
+            }
+            List<String> names = new ArrayList<>();
+            List<Integer> numbers = new ArrayList<>();
+            for (JsonPointer segment = pointer; !segment.matches(); segment = segment.tail()) {
+                names.add(segment.getMatchingProperty());
+                numbers.add(segment.getMatchingIndex());
+            }
+            segments = names.toArray(new String[0]);
+            indexes = new int[numbers.size()];
+            for (int i = 0; i < indexes.length; i++) {
+                indexes[i] = numbers.get(i);
+            }
+        }
+        
+        private static int countTokens(JsonNode node) {
+            int count = 0;
+            try (JsonParser tokens = node.traverse()) {
+                while (tokens.nextToken() != null) {
+                    count++;
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            return count;
+        }
+    }
+    
+    /**
+     * An open object or array on the way down to the current token
+     */
+    private static final class Frame {
+        final boolean array;
+        int index = -1;
+        String field;
+        
+        Frame(boolean array) {
+            this.array = array;
+        }
+    }
+}
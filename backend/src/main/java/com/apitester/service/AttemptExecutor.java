@@ -0,0 +1,545 @@
+package com.apitester.service;
+
+import com.apitester.config.AppConfig;
+import com.apitester.model.ApiRequest;
+import com.apitester.model.ApiResponse;
+import com.apitester.model.AttemptTiming;
+import com.apitester.model.HedgePolicy;
+import com.apitester.model.RetryPolicy;
+import org.apache.http.client.ClientProtocolException;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.utils.DateUtils;
+
+import javax.net.ssl.SSLException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Sends a request upstream as one or more attempts, following its retry and hedge
+ * policies (or the configured defaults):
+ *
+ * - Retries: idempotent methods are sent again after an I/O failure or a retryable
+ *   status, waiting a random time up to an exponentially growing bound ("full jitter"),
+ *   or as long as a Retry-After header asks, capped at maxBackoffMs.
+ * - Hedging: a GET or HEAD that has not been answered within the hedge delay is sent
+ *   a second time, and the first response to arrive is used; the other attempt is
+ *   cancelled. The delay defaults to the host's recent p95 latency, so about one
+ *   request in twenty is hedged. hedge.maxInFlight bounds the hedged requests in
+ *   flight, so a slow upstream does not get twice the load.
+ * - Deadline: attempts run within the request's end-to-end deadline (see
+ *   {@link RequestTimeouts}); a retry whose backoff would end past it, or a hedge
+ *   that could not be sent before it, is not made.
+ *
+ * Every attempt is recorded with its timing and outcome on the returned ApiResponse,
+ * or on the AttemptsFailedException when the last attempt failed.
+ */
+public class AttemptExecutor {
+    
+    private static final Set<String> IDEMPOTENT_METHODS = new HashSet<>(Arrays.asList(
+        "GET", "HEAD", "OPTIONS", "PUT", "DELETE"));
+    
+    private final int defaultMaxAttempts = AppConfig.getInt("retry.maxAttempts", 1);
+    private final long defaultInitialBackoffMs = AppConfig.getLong("retry.initialBackoffMs", 100);
+    private final long defaultMaxBackoffMs = AppConfig.getLong("retry.maxBackoffMs", 2000);
+    private final List<Integer> defaultRetryStatuses = parseStatuses(AppConfig.getString("retry.statuses", "429,502,503,504"));
+    private final boolean hedgeByDefault = AppConfig.getBoolean("hedge.enabled", false);
+    private final int defaultHedgePercentile = AppConfig.getInt("hedge.percentile", 95);
+    private final long initialHedgeDelayMs = AppConfig.getLong("hedge.initialDelayMs", 250);
+    private final long minHedgeDelayMs = AppConfig.getLong("hedge.minDelayMs", 10);
+    
+    private final HostLatencyTracker latencies = new HostLatencyTracker(
+        AppConfig.getLong("hedge.windowSeconds", 60) * 1000,
+        AppConfig.getInt("hedge.minSamples", 20),
+        AppConfig.getInt("hedge.maxHosts", 1000));
+    private final Semaphore hedgePermits = new Semaphore(AppConfig.getInt("hedge.maxInFlight", 50));
+    private final ExecutorService attemptPool;
+    private final RequestTimeouts timeouts;
+    
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong attempts = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong retriesExhausted = new AtomicLong();
+    private final AtomicLong hedges = new AtomicLong();
+    private final AtomicLong hedgeWins = new AtomicLong();
+    private final AtomicLong hedgesSkipped = new AtomicLong();
+    
+    public AttemptExecutor(RequestTimeouts timeouts) {
+        this.timeouts = timeouts;
+        // Runs both attempts of a hedged pair on blocking engines; bounded by hedge.maxInFlight
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.attemptPool = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "HedgedAttempt-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+    
+    /**
+     * Execute the request on the engine, retrying and hedging as its policies allow
+     *
+     * @param newRequest builds a fresh upstream request for each attempt
+     * @param deadline timeouts of the request; no attempt or backoff goes past its deadline
+     * @param startTime wall-clock time the caller started the request
+     */
+    public ApiResponse execute(ApiRequest apiRequest, HttpEngine engine, Supplier<HttpRequestBase> newRequest,
+                               RequestTimeouts.Deadline deadline, long startTime) throws IOException {
+        requests.incrementAndGet();
+        String method = apiRequest.getMethod() != null ? apiRequest.getMethod().toUpperCase() : "GET";
+        RetryPolicy retry = apiRequest.getRetry();
+        int maxAttempts = IDEMPOTENT_METHODS.contains(method)
+            ? Math.max(1, retry != null && retry.getMaxAttempts() != null ? retry.getMaxAttempts() : defaultMaxAttempts)
+            : 1;
+        List<Integer> retryStatuses = retry != null && retry.getRetryOnStatus() != null
+            ? retry.getRetryOnStatus() : defaultRetryStatuses;
+        
+        List<AttemptTiming> timings = new ArrayList<>(maxAttempts);
+        for (int round = 1; ; round++) {
+            HttpRequestBase httpRequest = newRequest.get();
+            String host = hostKey(httpRequest.getURI());
+            long hedgeDelay = hedgeDelay(apiRequest, method, host);
+            if (hedgeDelay >= deadline.remainingMillis()) {
+                hedgeDelay = -1;  // The hedge could not be sent before the deadline
+            }
+            
+            Attempt winner;
+            try {
+                winner = hedgeDelay >= 0
+                    ? executeHedged(engine, httpRequest, newRequest, host, hedgeDelay, deadline, startTime, timings)
+                    : executeOnce(engine, httpRequest, host, deadline, startTime, timings);
+            } catch (IOException e) {
+                e = timeouts.classify(e, deadline);
+                long backoff = round < maxAttempts && isRetryable(e) ? backoffMillis(round, retry, null) : -1;
+                boolean retrying = backoff >= 0 && backoff < deadline.remainingMillis();
+                settle(timings, null, retrying ? AttemptTiming.RETRIED : AttemptTiming.FAILED);
+                if (!retrying) {
+                    if (timings.size() > 1) {
+                        retriesExhausted.incrementAndGet();
+                        throw new AttemptsFailedException(timings, e);
+                    }
+                    throw e;
+                }
+                sleep(backoff);
+                continue;
+            }
+            
+            ApiResponse response = winner.response;
+            if (round < maxAttempts && retryStatuses.contains(response.getStatus())) {
+                long backoff = backoffMillis(round, retry, retryAfterMillis(response));
+                if (backoff < deadline.remainingMillis()) {
+                    settle(timings, null, AttemptTiming.RETRIED);
+                    sleep(backoff);
+                    continue;
+                }
+            }
+            settle(timings, winner.timing, AttemptTiming.FAILED);
+            response.setAttempts(timings.size());
+            response.setAttemptTimings(timings);
+            return response;
+        }
+    }
+    
+    /**
+     * Single attempt on the calling thread
+     */
+    private Attempt executeOnce(HttpEngine engine, HttpRequestBase httpRequest, String host,
+                                RequestTimeouts.Deadline deadline, long startTime, List<AttemptTiming> timings)
+            throws IOException {
+        Attempt attempt = new Attempt(begin(timings, false, startTime), httpRequest);
+        attempts.incrementAndGet();
+        try {
+            attempt.response = timeouts.execute(engine, httpRequest, deadline, startTime);
+        } catch (IOException | RuntimeException e) {
+            attempt.finish(null, e);
+            throw e;
+        }
+        attempt.finish(attempt.response, null);
+        latencies.record(host, attempt.timing.getDurationMs());
+        return attempt;
+    }
+    
+    /**
+     * Send the first attempt, wait up to the hedge delay for it, then send a second
+     * one and use whichever response arrives first. Fails only when both attempts fail.
+     */
+    private Attempt executeHedged(HttpEngine engine, HttpRequestBase httpRequest, Supplier<HttpRequestBase> newRequest,
+                                  String host, long hedgeDelay, RequestTimeouts.Deadline deadline, long startTime,
+                                  List<AttemptTiming> timings) throws IOException {
+        if (!hedgePermits.tryAcquire()) {
+            hedgesSkipped.incrementAndGet();
+            return executeOnce(engine, httpRequest, host, deadline, startTime, timings);
+        }
+        
+        Attempt primary = null;
+        Attempt hedge = null;
+        try {
+            deadline.apply(httpRequest);
+            primary = launch(engine, httpRequest, startTime, begin(timings, false, startTime));
+            try {
+                primary.response = primary.future.get(hedgeDelay, TimeUnit.MILLISECONDS);
+                primary.finish(primary.response, null);
+                latencies.record(host, primary.timing.getDurationMs());
+                return primary;
+            } catch (TimeoutException e) {
+                // No answer within the delay: hedge
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                primary.abandon();
+                throw new InterruptedIOException("Interrupted while waiting for the upstream response");
+            } catch (ExecutionException e) {
+                IOException failure = asIOException(e.getCause());
+                primary.finish(null, failure);
+                throw failure;
+            }
+            
+            hedges.incrementAndGet();
+            HttpRequestBase hedgeRequest = newRequest.get();
+            deadline.apply(hedgeRequest);
+            hedge = launch(engine, hedgeRequest, startTime, begin(timings, true, startTime));
+            Attempt winner = awaitFirstResponse(primary, hedge, deadline);
+            Attempt loser = winner == primary ? hedge : primary;
+            loser.abandon();
+            if (winner == hedge) {
+                hedgeWins.incrementAndGet();
+            }
+            latencies.record(host, winner.timing.getDurationMs());
+            return winner;
+        } finally {
+            releaseWhenDone(primary, hedge);
+        }
+    }
+    
+    /**
+     * Start an attempt without waiting for it: on the engine's own I/O threads when it
+     * is non-blocking, else on the attempt pool
+     */
+    private Attempt launch(final HttpEngine engine, final HttpRequestBase httpRequest, final long startTime,
+                           AttemptTiming timing) {
+        Attempt attempt = new Attempt(timing, httpRequest);
+        attempts.incrementAndGet();
+        if (engine.isNonBlocking()) {
+            attempt.future = engine.executeAsync(httpRequest, startTime);
+            return attempt;
+        }
+        
+        final CompletableFuture<ApiResponse> execution = new CompletableFuture<>();
+        attempt.future = execution;
+        try {
+            attemptPool.execute(() -> {
+                try {
+                    execution.complete(engine.execute(httpRequest, startTime));
+                } catch (IOException | RuntimeException e) {
+                    execution.completeExceptionally(e);
+                }
+            });
+        } catch (RuntimeException e) {
+            execution.completeExceptionally(e);
+        }
+        return attempt;
+    }
+    
+    /**
+     * Wait for the first of two attempts to produce a response, cancelling both at the
+     * deadline. Both attempts are finished (timed) once this returns or throws.
+     */
+    private static Attempt awaitFirstResponse(final Attempt primary, final Attempt hedge,
+                                              RequestTimeouts.Deadline deadline) throws IOException {
+        final CompletableFuture<Attempt> first = new CompletableFuture<>();
+        final AtomicInteger failed = new AtomicInteger();
+        for (final Attempt attempt : Arrays.asList(primary, hedge)) {
+            attempt.future.whenComplete((response, failure) -> {
+                attempt.endNanos = System.nanoTime();
+                if (failure == null) {
+                    first.complete(attempt);
+                } else if (failed.incrementAndGet() == 2) {
+                    first.completeExceptionally(failure);
+                }
+            });
+        }
+        
+        try {
+            Attempt winner = first.get(deadline.remainingNanos(), TimeUnit.NANOSECONDS);
+            winner.response = winner.future.getNow(null);
+            winner.finish(winner.response, null);
+            return winner;
+        } catch (TimeoutException e) {
+            primary.cancel();
+            hedge.cancel();
+            throw deadline.exceeded(null);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            primary.abandon();
+            hedge.abandon();
+            throw new InterruptedIOException("Interrupted while waiting for the upstream response");
+        } catch (ExecutionException e) {
+            primary.finish(null, failureOf(primary.future));
+            hedge.finish(null, failureOf(hedge.future));
+            throw asIOException(e.getCause());
+        }
+    }
+    
+    /**
+     * Give the hedge permit back once both attempts have really ended, so abandoned
+     * attempts still count against hedge.maxInFlight while they run
+     */
+    private void releaseWhenDone(Attempt primary, Attempt hedge) {
+        if (primary == null) {
+            hedgePermits.release();
+            return;
+        }
+        CompletableFuture<?> done = hedge != null
+            ? CompletableFuture.allOf(primary.future, hedge.future)
+            : primary.future;
+        done.whenComplete((result, failure) -> hedgePermits.release());
+    }
+    
+    /**
+     * Hedge delay for the request, or -1 when it is not hedged
+     */
+    private long hedgeDelay(ApiRequest apiRequest, String method, String host) {
+        if (!method.equals("GET") && !method.equals("HEAD")) {
+            return -1;
+        }
+        HedgePolicy hedge = apiRequest.getHedge();
+        boolean enabled = hedge != null ? hedge.getEnabled() == null || hedge.getEnabled() : hedgeByDefault;
+        if (!enabled) {
+            return -1;
+        }
+        
+        long delay;
+        if (hedge != null && hedge.getDelayMs() != null) {
+            delay = hedge.getDelayMs();
+        } else {
+            double percentile = hedge != null && hedge.getPercentile() != null ? hedge.getPercentile() : defaultHedgePercentile;
+            long observed = latencies.percentile(host, percentile);
+            delay = observed >= 0 ? observed : initialHedgeDelayMs;
+        }
+        return Math.max(delay, minHedgeDelayMs);
+    }
+    
+    /**
+     * Wait before retry number {@code round}: a server-requested wait when there is one,
+     * else a random time up to min(maxBackoff, initialBackoff * 2^(round-1))
+     */
+    private long backoffMillis(int round, RetryPolicy retry, Long retryAfterMillis) {
+        long initial = retry != null && retry.getInitialBackoffMs() != null ? retry.getInitialBackoffMs() : defaultInitialBackoffMs;
+        long max = retry != null && retry.getMaxBackoffMs() != null ? retry.getMaxBackoffMs() : defaultMaxBackoffMs;
+        long wait;
+        if (retryAfterMillis != null) {
+            wait = Math.min(retryAfterMillis, max);
+        } else {
+            long bound = Math.min(max, initial << Math.min(round - 1, 30));
+            wait = bound > 0 ? ThreadLocalRandom.current().nextLong(bound + 1) : 0;
+        }
+        return Math.max(0, wait);
+    }
+    
+    private void sleep(long wait) throws IOException {
+        retries.incrementAndGet();
+        try {
+            Thread.sleep(wait);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to retry");
+        }
+    }
+    
+    /**
+     * Failures that another attempt cannot fix: unknown hosts, TLS and protocol errors,
+     * our own rate limit and circuit breaker, the request's deadline, and interruption
+     * of the calling thread
+     */
+    private static boolean isRetryable(IOException e) {
+        if (e instanceof UnknownHostException || e instanceof SSLException || e instanceof ClientProtocolException
+                || e instanceof RateLimitExceededException || e instanceof CircuitOpenException) {
+            return false;
+        }
+        if (e instanceof RequestTimeoutException
+                && RequestTimeoutException.DEADLINE.equals(((RequestTimeoutException) e).getPhase())) {
+            return false;
+        }
+        return !Thread.currentThread().isInterrupted();
+    }
+    
+    /**
+     * Retry-After in milliseconds, from delta-seconds or an HTTP date; null when absent or invalid
+     */
+    private static Long retryAfterMillis(ApiResponse response) {
+        if (response.getHeaders() == null) {
+            return null;
+        }
+        for (Map.Entry<String, String> header : response.getHeaders().entrySet()) {
+            if (!header.getKey().equalsIgnoreCase("Retry-After") || header.getValue() == null) {
+                continue;
+            }
+            String value = header.getValue().trim();
+            try {
+                return Math.max(0, Long.parseLong(value) * 1000);
+            } catch (NumberFormatException e) {
+                Date date = DateUtils.parseDate(value);
+                return date != null ? Math.max(0, date.getTime() - System.currentTimeMillis()) : null;
+            }
+        }
+        return null;
+    }
+    
+    private static AttemptTiming begin(List<AttemptTiming> timings, boolean hedge, long startTime) {
+        AttemptTiming timing = new AttemptTiming(timings.size() + 1, hedge, System.currentTimeMillis() - startTime);
+        timings.add(timing);
+        return timing;
+    }
+    
+    /**
+     * Give every attempt that has no outcome yet its outcome: USED for the winner,
+     * the given outcome for the rest
+     */
+    private static void settle(List<AttemptTiming> timings, AttemptTiming used, String otherwise) {
+        for (AttemptTiming timing : timings) {
+            if (timing.getOutcome() == null) {
+                timing.setOutcome(timing == used ? AttemptTiming.USED : otherwise);
+            }
+        }
+    }
+    
+    private static String hostKey(URI uri) {
+        return uri.getHost() + ":" + uri.getPort();
+    }
+    
+    private static List<Integer> parseStatuses(String statuses) {
+        List<Integer> parsed = new ArrayList<>();
+        for (String status : statuses.split(",")) {
+            if (!status.trim().isEmpty()) {
+                parsed.add(Integer.parseInt(status.trim()));
+            }
+        }
+        return parsed;
+    }
+    
+    private static Throwable failureOf(CompletableFuture<ApiResponse> future) {
+        try {
+            future.getNow(null);
+            return null;
+        } catch (CompletionException | CancellationException e) {
+            return e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        }
+    }
+    
+    private static IOException asIOException(Throwable failure) {
+        if (failure instanceof CompletionException && failure.getCause() != null) {
+            failure = failure.getCause();
+        }
+        if (failure instanceof IOException) {
+            return (IOException) failure;
+        }
+        if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        }
+        return new IOException(failure);
+    }
+    
+    public RetryStatistics getStatistics() {
+        RetryStatistics statistics = new RetryStatistics();
+        statistics.requests = requests.get();
+        statistics.attempts = attempts.get();
+        statistics.retries = retries.get();
+        statistics.retriesExhausted = retriesExhausted.get();
+        statistics.hedges = hedges.get();
+        statistics.hedgeWins = hedgeWins.get();
+        statistics.hedgesSkipped = hedgesSkipped.get();
+        statistics.hedgeRatio = statistics.requests > 0 ? statistics.hedges / (double) statistics.requests : 0;
+        statistics.trackedHosts = latencies.getTrackedHosts();
+        return statistics;
+    }
+    
+    public void shutdown() {
+        attemptPool.shutdownNow();
+    }
+    
+    /**
+     * One upstream attempt in progress
+     */
+    private static class Attempt {
+        final AttemptTiming timing;
+        final HttpRequestBase httpRequest;
+        final long startNanos = System.nanoTime();
+        volatile long endNanos;
+        CompletableFuture<ApiResponse> future;
+        ApiResponse response;
+        
+        Attempt(AttemptTiming timing, HttpRequestBase httpRequest) {
+            this.timing = timing;
+            this.httpRequest = httpRequest;
+        }
+        
+        void finish(ApiResponse response, Throwable failure) {
+            long end = endNanos != 0 ? endNanos : System.nanoTime();
+            timing.setDurationMs(TimeUnit.NANOSECONDS.toMillis(end - startNanos));
+            if (response != null) {
+                timing.setStatus(response.getStatus());
+            }
+            if (failure != null) {
+                timing.setError(failure.getClass().getSimpleName() + ": " + failure.getMessage());
+            }
+        }
+        
+        /**
+         * Cancel the attempt because it is no longer wanted (a hedge loser, an interrupted
+         * caller) rather than because its deadline passed: its circuit does not count it
+         */
+        void abandon() {
+            CircuitBreakingEngine.abandon(httpRequest);
+            cancel();
+        }
+        
+        /**
+         * Stop the attempt; an answer that arrives anyway is discarded. An attempt
+         * that had already failed keeps its failure.
+         */
+        void cancel() {
+            if (future.isCompletedExceptionally()) {
+                finish(null, failureOf(future));
+                return;
+            }
+            timing.setDurationMs(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+            timing.setOutcome(AttemptTiming.CANCELLED);
+            future.cancel(true);
+            httpRequest.abort();
+        }
+    }
+    
+    /**
+     * Retry and hedging statistics structure
+     */
+    public static class RetryStatistics {
+        public long requests;
+        public long attempts;
+        public long retries;
+        public long retriesExhausted;
+        public long hedges;
+        public long hedgeWins;
+        public long hedgesSkipped;
+        public double hedgeRatio;
+        public int trackedHosts;
+    }
+}
@@ -0,0 +1,24 @@
+package com.apitester.service;
+
+import com.apitester.model.AttemptTiming;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Every attempt of a retried or hedged request failed. The cause is the failure of
+ * the last attempt; the attempts are kept for the error response and the log.
+ */
+public class AttemptsFailedException extends IOException {
+    
+    private final List<AttemptTiming> attempts;
+    
+    public AttemptsFailedException(List<AttemptTiming> attempts, IOException lastFailure) {
+        super(lastFailure.getMessage(), lastFailure);
+        this.attempts = attempts;
+    }
+    
+    public List<AttemptTiming> getAttempts() {
+        return attempts;
+    }
+}
@@ -0,0 +1,154 @@
+package com.apitester.service;
+
+import com.apitester.config.AppConfig;
+import com.apitester.model.ApiRequest;
+import com.apitester.model.ApiResponse;
+import com.apitester.model.BatchItemResult;
+import com.apitester.model.BatchSummary;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs many ApiRequests in parallel on the shared ApiRequestService client,
+ * reporting each result as soon as it completes.
+ */
+public class BatchService {
+    
+    private static final int MAX_CONCURRENCY = AppConfig.getInt("batch.maxConcurrency", 32);
+    private static final int DEFAULT_CONCURRENCY = AppConfig.getInt("batch.defaultConcurrency", 8);
+    private static final int MAX_ITEMS = AppConfig.getInt("batch.maxItems", 500);
+    
+    private static BatchService instance;
+    private final ApiRequestService apiRequestService;
+    private final ExecutorService executor;
+    
+    private BatchService() {
+        this.apiRequestService = ApiRequestService.getInstance();
+        
+        // Shared by all batches; each batch limits itself to its own concurrency
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(MAX_CONCURRENCY, runnable -> {
+            Thread thread = new Thread(runnable, "BatchWorker-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+    
+    public static synchronized BatchService getInstance() {
+        if (instance == null) {
+            instance = new BatchService();
+        }
+        return instance;
+    }
+    
+    /**
+     * Stop the shared instance's workers, if it was ever created
+     */
+    public static synchronized void shutdownInstance() {
+        if (instance != null) {
+            instance.executor.shutdownNow();
+            instance = null;
+        }
+    }
+    
+    /**
+     * Receives batch items in completion order, on the thread that called execute()
+     */
+    public interface BatchItemListener {
+        void onItem(BatchItemResult item) throws IOException;
+    }
+    
+    public int getMaxItems() {
+        return MAX_ITEMS;
+    }
+    
+    /**
+     * Clamp a requested concurrency to the configured bounds (0 or less means default)
+     */
+    public int effectiveConcurrency(int requested) {
+        int concurrency = requested > 0 ? requested : DEFAULT_CONCURRENCY;
+        return Math.max(1, Math.min(concurrency, MAX_CONCURRENCY));
+    }
+    
+    /**
+     * Execute the requests with at most {@code concurrency} in flight. New items are
+     * only submitted as earlier ones complete, so one large batch cannot occupy every
+     * worker ahead of other batches. If the listener fails (e.g. the client went away)
+     * the remaining items are cancelled and the summary is marked aborted.
+     */
+    public BatchSummary execute(final List<ApiRequest> requests, int concurrency, final String sessionId,
+                                BatchItemListener listener) throws InterruptedException {
+        final long batchStart = System.nanoTime();
+        concurrency = effectiveConcurrency(concurrency);
+        
+        CompletionService<BatchItemResult> completionService = new ExecutorCompletionService<>(executor);
+        List<Future<BatchItemResult>> futures = new ArrayList<>(requests.size());
+        
+        BatchSummary summary = new BatchSummary();
+        summary.setTotal(requests.size());
+        summary.setConcurrency(concurrency);
+        
+        int next = 0;
+        int running = 0;
+        try {
+            while (next < requests.size() && running < concurrency) {
+                futures.add(submit(completionService, requests.get(next), next, sessionId, batchStart));
+                next++;
+                running++;
+            }
+            
+            while (running > 0) {
+                BatchItemResult item = completionService.take().get();
+                running--;
+                
+                ApiResponse response = item.getResponse();
+                if (response.getStatus() > 0 && response.getStatus() < 400
+                        && !Boolean.FALSE.equals(response.getAssertionsPassed())) {
+                    summary.setSucceeded(summary.getSucceeded() + 1);
+                } else {
+                    summary.setFailed(summary.getFailed() + 1);
+                }
+                summary.setTotalItemMs(summary.getTotalItemMs() + item.getDurationMs());
+                listener.onItem(item);
+                
+                if (next < requests.size()) {
+                    futures.add(submit(completionService, requests.get(next), next, sessionId, batchStart));
+                    next++;
+                    running++;
+                }
+            }
+        } catch (IOException | ExecutionException e) {
+            summary.setAborted(true);
+            for (Future<BatchItemResult> future : futures) {
+                future.cancel(true);
+            }
+        }
+        
+        summary.setWallClockMs(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - batchStart));
+        return summary;
+    }
+    
+    private Future<BatchItemResult> submit(CompletionService<BatchItemResult> completionService,
+                                           final ApiRequest apiRequest, final int index,
+                                           final String sessionId, final long batchStart) {
+        return completionService.submit(() -> {
+            long start = System.nanoTime();
+            ApiResponse response = apiRequestService.processRequest(apiRequest, sessionId);
+            long end = System.nanoTime();
+            return new BatchItemResult(index,
+                TimeUnit.NANOSECONDS.toMillis(start - batchStart),
+                TimeUnit.NANOSECONDS.toMillis(end - start),
+                response);
+        });
+    }
+}
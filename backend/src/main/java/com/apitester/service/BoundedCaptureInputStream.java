@@ -0,0 +1,102 @@
+package com.apitester.service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+
+/**
+ * Input stream wrapper that counts every byte read through it and keeps
+ * only the first {@code captureLimit} bytes, so large bodies can be streamed
+ * while a bounded prefix remains available for logging and display.
+ */
+public class BoundedCaptureInputStream extends FilterInputStream {
+    
+    private final int captureLimit;
+    private final ByteArrayOutputStream captured;
+    private long count;
+    private boolean truncated;
+    
+    public BoundedCaptureInputStream(InputStream in, int captureLimit) {
+        super(in);
+        this.captureLimit = captureLimit;
+        this.captured = new ByteArrayOutputStream(Math.min(captureLimit, 8192));
+    }
+    
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if (b >= 0) {
+            count++;
+            if (captured.size() < captureLimit) {
+                captured.write(b);
+            } else {
+                truncated = true;
+            }
+        }
+        return b;
+    }
+    
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        int read = super.read(buffer, offset, length);
+        if (read > 0) {
+            record(buffer, offset, read);
+        }
+        return read;
+    }
+    
+    @Override
+    public long skip(long n) throws IOException {
+        // Route skips through read() so the count and prefix stay accurate
+        byte[] buffer = new byte[(int) Math.min(n, 8192)];
+        long skipped = 0;
+        while (skipped < n) {
+            int read = read(buffer, 0, (int) Math.min(buffer.length, n - skipped));
+            if (read < 0) {
+                break;
+            }
+            skipped += read;
+        }
+        return skipped;
+    }
+    
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+    
+    private void record(byte[] buffer, int offset, int length) {
+        count += length;
+        int room = captureLimit - captured.size();
+        if (room > 0) {
+            captured.write(buffer, offset, Math.min(room, length));
+        }
+        if (length > room) {
+            truncated = true;
+        }
+    }
+    
+    /**
+     * Total number of bytes read so far
+     */
+    public long getCount() {
+        return count;
+    }
+    
+    /**
+     * Whether more bytes were read than the capture limit
+     */
+    public boolean isTruncated() {
+        return truncated;
+    }
+    
+    public byte[] getCapturedBytes() {
+        return captured.toByteArray();
+    }
+    
+    public String getCapturedText(Charset charset) {
+        return new String(captured.toByteArray(), charset);
+    }
+}
@@ -0,0 +1,257 @@
+package com.apitester.service;
+
+import org.apache.http.conn.DnsResolver;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * DNS resolver for the HTTP clients that caches successful and failed lookups in
+ * process, with a TTL that can be set per host. Entries that are used after most of
+ * their TTL has passed are refreshed in the background, so busy hosts never wait on
+ * a lookup once warm.
+ *
+ * The JDK resolver does not expose record TTLs, so TTLs come from configuration.
+ */
+public class CachingDnsResolver implements DnsResolver {
+    
+    private static final Logger logger = Logger.getLogger(CachingDnsResolver.class.getName());
+    
+    private final DnsResolver delegate;
+    private final boolean enabled;
+    private final long ttlNanos;
+    private final long negativeTtlNanos;
+    private final Map<String, Long> hostTtlNanos;
+    private final double refreshAheadFraction;
+    private final int maxEntries;
+    
+    private final ConcurrentHashMap<String, Entry> cache = new ConcurrentHashMap<>();
+    private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
+    private final ExecutorService refresher;
+    
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong negativeHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong refreshes = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong lookups = new AtomicLong();
+    private final AtomicLong lookupNanos = new AtomicLong();
+    private final AtomicLong maxLookupNanos = new AtomicLong();
+    
+    /**
+     * @param delegate resolver that performs the actual lookups
+     * @param enabled when false every call goes to the delegate; only timing is recorded
+     * @param ttlSeconds lifetime of successful lookups
+     * @param negativeTtlSeconds lifetime of failed lookups
+     * @param hostTtlSeconds per-host lifetime overrides, keyed by lower-case host name
+     * @param refreshAheadFraction fraction of the TTL after which a used entry is refreshed
+     * @param maxEntries upper bound on cached host names
+     */
+    public CachingDnsResolver(DnsResolver delegate, boolean enabled, long ttlSeconds, long negativeTtlSeconds,
+                              Map<String, Long> hostTtlSeconds, double refreshAheadFraction, int maxEntries) {
+        this.delegate = delegate;
+        this.enabled = enabled;
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+        this.negativeTtlNanos = TimeUnit.SECONDS.toNanos(negativeTtlSeconds);
+        this.hostTtlNanos = new ConcurrentHashMap<>();
+        for (Map.Entry<String, Long> entry : hostTtlSeconds.entrySet()) {
+            this.hostTtlNanos.put(entry.getKey().toLowerCase(), TimeUnit.SECONDS.toNanos(entry.getValue()));
+        }
+        this.refreshAheadFraction = refreshAheadFraction;
+        this.maxEntries = maxEntries;
+        this.refresher = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "DnsRefresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+    
+    @Override
+    public InetAddress[] resolve(String host) throws UnknownHostException {
+        if (!enabled) {
+            return lookup(host);
+        }
+        
+        String key = host.toLowerCase();
+        long now = System.nanoTime();
+        Entry entry = cache.get(key);
+        if (entry != null && now - entry.expiresAt < 0) {
+            if (entry.addresses == null) {
+                negativeHits.incrementAndGet();
+                throw new UnknownHostException(host);
+            }
+            hits.incrementAndGet();
+            if (now - entry.refreshAt >= 0) {
+                scheduleRefresh(key);
+            }
+            return entry.addresses.clone();
+        }
+        
+        misses.incrementAndGet();
+        try {
+            InetAddress[] addresses = lookup(host);
+            store(key, addresses);
+            return addresses.clone();
+        } catch (UnknownHostException e) {
+            store(key, null);
+            throw e;
+        }
+    }
+    
+    /**
+     * Resolve the hosts in the background so the first requests to them find a warm cache
+     */
+    public void prewarm(List<String> hosts) {
+        for (final String host : hosts) {
+            if (host.trim().isEmpty()) {
+                continue;
+            }
+            submit(() -> {
+                try {
+                    resolve(host.trim());
+                } catch (UnknownHostException e) {
+                    logger.warning("DNS prewarm failed for " + host.trim());
+                }
+            });
+        }
+    }
+    
+    private void scheduleRefresh(final String key) {
+        if (!refreshing.add(key)) {
+            return;
+        }
+        boolean submitted = submit(() -> {
+            try {
+                store(key, lookup(key));
+                refreshes.incrementAndGet();
+            } catch (UnknownHostException e) {
+                // Keep serving the current addresses until they expire
+                logger.warning("DNS refresh failed for " + key + ": " + e.getMessage());
+            } finally {
+                refreshing.remove(key);
+            }
+        });
+        if (!submitted) {
+            refreshing.remove(key);
+        }
+    }
+    
+    private boolean submit(Runnable task) {
+        try {
+            refresher.execute(task);
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+    }
+    
+    private InetAddress[] lookup(String host) throws UnknownHostException {
+        long start = System.nanoTime();
+        try {
+            return delegate.resolve(host);
+        } catch (UnknownHostException e) {
+            failures.incrementAndGet();
+            throw e;
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            lookups.incrementAndGet();
+            lookupNanos.addAndGet(elapsed);
+            maxLookupNanos.accumulateAndGet(elapsed, Math::max);
+        }
+    }
+    
+    private void store(String key, InetAddress[] addresses) {
+        if (!enabled) {
+            return;
+        }
+        if (cache.size() >= maxEntries && !cache.containsKey(key)) {
+            evict();
+        }
+        
+        long now = System.nanoTime();
+        long ttl = addresses == null ? negativeTtlNanos : hostTtlNanos.getOrDefault(key, ttlNanos);
+        if (ttl <= 0) {
+            cache.remove(key);
+            return;
+        }
+        cache.put(key, new Entry(addresses, now + ttl, now + (long) (ttl * refreshAheadFraction)));
+    }
+    
+    /**
+     * Drop expired entries; if none had expired, drop one arbitrary entry to make room
+     */
+    private void evict() {
+        long now = System.nanoTime();
+        boolean removed = cache.values().removeIf(entry -> now - entry.expiresAt >= 0);
+        if (!removed) {
+            Iterator<String> keys = cache.keySet().iterator();
+            if (keys.hasNext()) {
+                keys.next();
+                keys.remove();
+            }
+        }
+    }
+    
+    public void shutdown() {
+        refresher.shutdownNow();
+    }
+    
+    public DnsStatistics getStatistics() {
+        DnsStatistics statistics = new DnsStatistics();
+        statistics.enabled = enabled;
+        statistics.entries = cache.size();
+        statistics.hits = hits.get();
+        statistics.negativeHits = negativeHits.get();
+        statistics.misses = misses.get();
+        statistics.refreshes = refreshes.get();
+        statistics.failures = failures.get();
+        statistics.lookups = lookups.get();
+        statistics.lookupAvgMs = statistics.lookups > 0
+            ? lookupNanos.get() / (double) statistics.lookups / 1_000_000.0 : 0;
+        statistics.lookupMaxMs = maxLookupNanos.get() / 1_000_000.0;
+        long served = statistics.hits + statistics.negativeHits + statistics.misses;
+        statistics.hitRatio = served > 0 ? (statistics.hits + statistics.negativeHits) / (double) served : 0;
+        return statistics;
+    }
+    
+    private static class Entry {
+        // null for a cached failure
+        final InetAddress[] addresses;
+        final long expiresAt;
+        final long refreshAt;
+        
+        Entry(InetAddress[] addresses, long expiresAt, long refreshAt) {
+            this.addresses = addresses;
+            this.expiresAt = expiresAt;
+            this.refreshAt = refreshAt;
+        }
+    }
+    
+    /**
+     * DNS cache statistics structure
+     */
+    public static class DnsStatistics {
+        public boolean enabled;
+        public int entries;
+        public long hits;
+        public long negativeHits;
+        public long misses;
+        public long refreshes;
+        public long failures;
+        public long lookups;
+        public double lookupAvgMs;
+        public double lookupMaxMs;
+        public double hitRatio;
+    }
+}
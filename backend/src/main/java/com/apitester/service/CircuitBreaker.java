@@ -0,0 +1,352 @@
+package com.apitester.service;
+
+import com.apitester.config.AppConfig;
+
+import java.net.URI;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Per-host circuit breakers, so a failing upstream fails fast instead of holding
+ * threads and pooled connections for the full connect and read timeouts.
+ * Off unless breaker.enabled is set: a testing tool is often pointed at a failing host
+ * on purpose. Load tests and monitors bypass it even then.
+ *
+ * Each host (host:port) has a circuit that counts calls, failures (I/O errors and the
+ * statuses in breaker.failureStatuses) and slow calls (breaker.slowCallMs or longer)
+ * over a rolling window of breaker.windowSeconds one-second buckets:
+ *
+ * - CLOSED: calls pass. Once the window holds breaker.minCalls calls and the failure
+ *   rate or the slow-call rate reaches its threshold, the circuit opens.
+ * - OPEN: calls fail at once with {@link CircuitOpenException} for breaker.openMs.
+ * - HALF_OPEN: up to breaker.halfOpenProbes calls go through as probes; the circuit
+ *   closes when they all succeed in time, and opens again on the first failed or slow one.
+ */
+public class CircuitBreaker {
+    
+    private static final Logger logger = Logger.getLogger(CircuitBreaker.class.getName());
+    
+    public static final String CLOSED = "CLOSED";
+    public static final String OPEN = "OPEN";
+    public static final String HALF_OPEN = "HALF_OPEN";
+    
+    /** Permit of a call made while the circuit was closed */
+    static final long NOT_A_PROBE = 0;
+    
+    private final boolean enabled = AppConfig.getBoolean("breaker.enabled", false);
+    private final int failureRateThreshold = AppConfig.getInt("breaker.failureRatePercent", 50);
+    private final int slowCallRateThreshold = AppConfig.getInt("breaker.slowCallRatePercent", 80);
+    private final long slowCallNanos = TimeUnit.MILLISECONDS.toNanos(AppConfig.getLong("breaker.slowCallMs", 10000));
+    private final int windowSeconds = Math.max(1, AppConfig.getInt("breaker.windowSeconds", 10));
+    private final int minCalls = Math.max(1, AppConfig.getInt("breaker.minCalls", 20));
+    private final long openNanos = TimeUnit.MILLISECONDS.toNanos(AppConfig.getLong("breaker.openMs", 30000));
+    private final int halfOpenProbes = Math.max(1, AppConfig.getInt("breaker.halfOpenProbes", 3));
+    private final int maxHosts = AppConfig.getInt("breaker.maxHosts", 1000);
+    private final Set<Integer> failureStatuses = parseStatuses(AppConfig.getString("breaker.failureStatuses", "502,503,504"));
+    
+    private final ConcurrentHashMap<String, Circuit> circuits = new ConcurrentHashMap<>();
+    private final AtomicLong rejected = new AtomicLong();
+    
+    public boolean isEnabled() {
+        return enabled;
+    }
+    
+    /**
+     * Circuit of the request's host; null when breakers are disabled, or for new hosts
+     * once breaker.maxHosts are tracked
+     */
+    public Circuit circuitFor(URI uri) {
+        if (!enabled || uri.getHost() == null) {
+            return null;
+        }
+        int port = uri.getPort() >= 0 ? uri.getPort() : ("https".equalsIgnoreCase(uri.getScheme()) ? 443 : 80);
+        String host = uri.getHost().toLowerCase() + ":" + port;
+        Circuit circuit = circuits.get(host);
+        if (circuit == null) {
+            if (circuits.size() >= maxHosts) {
+                return null;
+            }
+            circuit = circuits.computeIfAbsent(host, Circuit::new);
+        }
+        return circuit;
+    }
+    
+    /**
+     * Wrap an engine so its requests go through their host's circuit; engines are
+     * returned as they are when breakers are disabled
+     */
+    public HttpEngine protect(HttpEngine engine) {
+        return enabled ? new CircuitBreakingEngine(engine, this) : engine;
+    }
+    
+    /**
+     * Whether a response status counts as a failure of the upstream
+     */
+    public boolean isFailure(int status) {
+        return failureStatuses.contains(status);
+    }
+    
+    public BreakerStatistics getStatistics() {
+        BreakerStatistics statistics = new BreakerStatistics();
+        statistics.enabled = enabled;
+        statistics.failureRatePercent = failureRateThreshold;
+        statistics.slowCallRatePercent = slowCallRateThreshold;
+        statistics.slowCallMs = TimeUnit.NANOSECONDS.toMillis(slowCallNanos);
+        statistics.windowSeconds = windowSeconds;
+        statistics.minCalls = minCalls;
+        statistics.openMs = TimeUnit.NANOSECONDS.toMillis(openNanos);
+        statistics.rejected = rejected.get();
+        for (Circuit circuit : circuits.values()) {
+            CircuitStatistics circuitStatistics = circuit.getStatistics();
+            statistics.hosts.put(circuit.host, circuitStatistics);
+            if (OPEN.equals(circuitStatistics.state)) {
+                statistics.open++;
+            } else if (HALF_OPEN.equals(circuitStatistics.state)) {
+                statistics.halfOpen++;
+            }
+        }
+        return statistics;
+    }
+    
+    private static Set<Integer> parseStatuses(String statuses) {
+        Set<Integer> parsed = new HashSet<>();
+        for (String status : statuses.split(",")) {
+            try {
+                if (!status.trim().isEmpty()) {
+                    parsed.add(Integer.parseInt(status.trim()));
+                }
+            } catch (NumberFormatException e) {
+                logger.warning("Ignoring invalid breaker failure status: " + status);
+            }
+        }
+        return parsed;
+    }
+    
+    /**
+     * Circuit of one host. Calls take a permit with {@link #acquire}, then report how
+     * they went with {@link #record}, or {@link #release} when they were abandoned
+     * (cancelled, or refused by the client's own rate limit) and say nothing about the host.
+     */
+    public class Circuit {
+        
+        private final String host;
+        private final long[] bucketSeconds = new long[windowSeconds];
+        private final int[] bucketCalls = new int[windowSeconds];
+        private final int[] bucketFailures = new int[windowSeconds];
+        private final int[] bucketSlowCalls = new int[windowSeconds];
+        
+        private String state = CLOSED;
+        private long openedAtNanos;
+        private String openReason;
+        private long generation;
+        private int probesStarted;
+        private int probesSucceeded;
+        private long opened;
+        private long rejectedCalls;
+        private long lastTransitionMillis = System.currentTimeMillis();
+        
+        Circuit(String host) {
+            this.host = host;
+        }
+        
+        /**
+         * Take a permit for a call; the returned value is handed back to record or release
+         */
+        public synchronized long acquire() throws CircuitOpenException {
+            if (state.equals(OPEN)) {
+                long waitedNanos = System.nanoTime() - openedAtNanos;
+                if (waitedNanos < openNanos) {
+                    reject();
+                    throw new CircuitOpenException(host, openReason, TimeUnit.NANOSECONDS.toMillis(openNanos - waitedNanos));
+                }
+                transition(HALF_OPEN);
+                generation++;
+                probesStarted = 0;
+                probesSucceeded = 0;
+            }
+            if (state.equals(HALF_OPEN)) {
+                if (probesStarted >= halfOpenProbes) {
+                    reject();
+                    throw new CircuitOpenException(host, "waiting for " + halfOpenProbes + " probe requests", 0);
+                }
+                probesStarted++;
+                return generation;
+            }
+            return NOT_A_PROBE;
+        }
+        
+        /**
+         * Report a finished call
+         *
+         * @param failed an I/O failure or a failure status
+         */
+        public synchronized void record(long permit, long durationNanos, boolean failed) {
+            record(permit, durationNanos, failed, durationNanos >= slowCallNanos);
+        }
+        
+        /**
+         * Report a call that its deadline cut off: it failed, and it was slow however short
+         * the deadline was
+         */
+        public synchronized void recordTimeout(long permit, long durationNanos) {
+            record(permit, durationNanos, true, true);
+        }
+        
+        private void record(long permit, long durationNanos, boolean failed, boolean slow) {
+            if (permit != NOT_A_PROBE) {
+                if (!state.equals(HALF_OPEN) || permit != generation) {
+                    return;  // A probe of an earlier half-open period
+                }
+                if (failed || slow) {
+                    open((failed ? "probe request failed" : "probe request took "
+                        + TimeUnit.NANOSECONDS.toMillis(durationNanos) + " ms"));
+                } else if (++probesSucceeded >= halfOpenProbes) {
+                    transition(CLOSED);
+                    clearWindow();
+                }
+                return;
+            }
+            if (!state.equals(CLOSED)) {
+                return;  // Started before the circuit opened
+            }
+            
+            long second = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime());
+            int index = (int) (second % windowSeconds);
+            if (bucketSeconds[index] != second) {
+                bucketSeconds[index] = second;
+                bucketCalls[index] = 0;
+                bucketFailures[index] = 0;
+                bucketSlowCalls[index] = 0;
+            }
+            bucketCalls[index]++;
+            if (failed) {
+                bucketFailures[index]++;
+            }
+            if (slow) {
+                bucketSlowCalls[index]++;
+            }
+            
+            int[] totals = totals(second);
+            if (totals[0] < minCalls) {
+                return;
+            }
+            int failureRate = totals[1] * 100 / totals[0];
+            int slowCallRate = totals[2] * 100 / totals[0];
+            if (failureRate >= failureRateThreshold) {
+                open("failure rate " + failureRate + "% over the last " + windowSeconds + " s");
+            } else if (slowCallRate >= slowCallRateThreshold) {
+                open("slow-call rate " + slowCallRate + "% over the last " + windowSeconds + " s");
+            }
+        }
+        
+        /**
+         * Give back the permit of a call that was abandoned
+         */
+        public synchronized void release(long permit) {
+            if (permit != NOT_A_PROBE && state.equals(HALF_OPEN) && permit == generation && probesStarted > 0) {
+                probesStarted--;
+            }
+        }
+        
+        /**
+         * Calls, failures and slow calls in the window ending at the given second
+         */
+        private int[] totals(long second) {
+            int[] totals = new int[3];
+            for (int i = 0; i < windowSeconds; i++) {
+                if (second - bucketSeconds[i] < windowSeconds) {
+                    totals[0] += bucketCalls[i];
+                    totals[1] += bucketFailures[i];
+                    totals[2] += bucketSlowCalls[i];
+                }
+            }
+            return totals;
+        }
+        
+        private void open(String reason) {
+            logger.warning("Circuit for " + host + " opened: " + reason);
+            transition(OPEN);
+            openedAtNanos = System.nanoTime();
+            openReason = reason;
+            opened++;
+            clearWindow();
+        }
+        
+        private void transition(String newState) {
+            state = newState;
+            lastTransitionMillis = System.currentTimeMillis();
+        }
+        
+        private void reject() {
+            rejectedCalls++;
+            rejected.incrementAndGet();
+        }
+        
+        private void clearWindow() {
+            for (int i = 0; i < windowSeconds; i++) {
+                bucketCalls[i] = 0;
+                bucketFailures[i] = 0;
+                bucketSlowCalls[i] = 0;
+            }
+        }
+        
+        synchronized CircuitStatistics getStatistics() {
+            CircuitStatistics statistics = new CircuitStatistics();
+            int[] totals = totals(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime()));
+            statistics.state = state;
+            statistics.calls = totals[0];
+            statistics.failures = totals[1];
+            statistics.slowCalls = totals[2];
+            statistics.failureRate = totals[0] > 0 ? totals[1] / (double) totals[0] : 0;
+            statistics.slowCallRate = totals[0] > 0 ? totals[2] / (double) totals[0] : 0;
+            statistics.opened = opened;
+            statistics.rejected = rejectedCalls;
+            statistics.lastTransition = lastTransitionMillis;
+            if (state.equals(OPEN)) {
+                statistics.openReason = openReason;
+                statistics.retryInMs = Math.max(0, TimeUnit.NANOSECONDS.toMillis(openNanos - (System.nanoTime() - openedAtNanos)));
+            }
+            return statistics;
+        }
+    }
+    
+    /**
+     * Circuit breaker statistics structure
+     */
+    public static class BreakerStatistics {
+        public boolean enabled;
+        public int failureRatePercent;
+        public int slowCallRatePercent;
+        public long slowCallMs;
+        public int windowSeconds;
+        public int minCalls;
+        public long openMs;
+        public long rejected;
+        public int open;
+        public int halfOpen;
+        public Map<String, CircuitStatistics> hosts = new TreeMap<>();
+    }
+    
+    /**
+     * Per-host circuit statistics structure; counts cover the current window
+     */
+    public static class CircuitStatistics {
+        public String state;
+        public int calls;
+        public int failures;
+        public int slowCalls;
+        public double failureRate;
+        public double slowCallRate;
+        public long opened;
+        public long rejected;
+        public long lastTransition;
+        public String openReason;
+        public long retryInMs;
+    }
+}
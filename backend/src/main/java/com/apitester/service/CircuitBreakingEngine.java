@@ -0,0 +1,125 @@
+package com.apitester.service;
+
+import com.apitester.model.ApiResponse;
+import org.apache.http.client.ClientProtocolException;
+import org.apache.http.client.methods.HttpRequestBase;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Engine decorator that sends each request through its host's {@link CircuitBreaker}
+ * circuit: requests to an open circuit fail before reaching the wrapped engine, and
+ * every other request reports its status or failure and its duration back to the circuit.
+ * Requests that were abandoned (hedge losers, interrupted callers), refused by the client
+ * rate limit, or rejected as malformed say nothing about the host and are not counted.
+ * Any other abort or cancellation is a deadline passing, and counts as a failed, slow call.
+ */
+class CircuitBreakingEngine implements HttpEngine {
+    
+    // Requests cancelled for reasons of our own; weak keys, so an entry goes with its request
+    private static final Map<HttpRequestBase, Boolean> ABANDONED = Collections.synchronizedMap(new WeakHashMap<>());
+    
+    private final HttpEngine engine;
+    private final CircuitBreaker breaker;
+    
+    CircuitBreakingEngine(HttpEngine engine, CircuitBreaker breaker) {
+        this.engine = engine;
+        this.breaker = breaker;
+    }
+    
+    @Override
+    public String getName() {
+        return engine.getName();
+    }
+    
+    @Override
+    public ApiResponse execute(HttpRequestBase httpRequest, long startTime) throws IOException {
+        CircuitBreaker.Circuit circuit = breaker.circuitFor(httpRequest.getURI());
+        if (circuit == null) {
+            return engine.execute(httpRequest, startTime);
+        }
+        long permit = circuit.acquire();
+        long start = System.nanoTime();
+        try {
+            ApiResponse response = engine.execute(httpRequest, startTime);
+            circuit.record(permit, System.nanoTime() - start, breaker.isFailure(response.getStatus()));
+            return response;
+        } catch (IOException | RuntimeException e) {
+            settle(circuit, permit, httpRequest, e, start);
+            throw e;
+        }
+    }
+    
+    @Override
+    public CompletableFuture<ApiResponse> executeAsync(final HttpRequestBase httpRequest, final long startTime) {
+        if (!engine.isNonBlocking()) {
+            return HttpEngine.super.executeAsync(httpRequest, startTime);
+        }
+        final CircuitBreaker.Circuit circuit = breaker.circuitFor(httpRequest.getURI());
+        if (circuit == null) {
+            return engine.executeAsync(httpRequest, startTime);
+        }
+        final long permit;
+        try {
+            permit = circuit.acquire();
+        } catch (CircuitOpenException e) {
+            CompletableFuture<ApiResponse> rejected = new CompletableFuture<>();
+            rejected.completeExceptionally(e);
+            return rejected;
+        }
+        final long start = System.nanoTime();
+        // Return the wrapped engine's future itself, so cancelling it still cancels the exchange
+        CompletableFuture<ApiResponse> execution = engine.executeAsync(httpRequest, startTime);
+        execution.whenComplete((response, failure) -> {
+            if (failure == null) {
+                circuit.record(permit, System.nanoTime() - start, breaker.isFailure(response.getStatus()));
+            } else {
+                settle(circuit, permit, httpRequest, failure, start);
+            }
+        });
+        return execution;
+    }
+    
+    /**
+     * Mark a request that is about to be cancelled or aborted although the host did
+     * nothing wrong, so its circuit gives the permit back instead of counting a failure
+     */
+    static void abandon(HttpRequestBase httpRequest) {
+        ABANDONED.put(httpRequest, Boolean.TRUE);
+    }
+    
+    /**
+     * Report a failed request, or give its permit back when the failure was not the host's
+     */
+    private void settle(CircuitBreaker.Circuit circuit, long permit, HttpRequestBase httpRequest, Throwable failure,
+                        long start) {
+        Throwable cause = failure instanceof CompletionException && failure.getCause() != null
+            ? failure.getCause() : failure;
+        if (ABANDONED.remove(httpRequest) != null
+                || cause instanceof RateLimitExceededException || cause instanceof ClientProtocolException
+                || Thread.currentThread().isInterrupted()) {
+            circuit.release(permit);
+        } else if (httpRequest.isAborted() || cause instanceof CancellationException
+                || cause instanceof RequestTimeoutException) {
+            circuit.recordTimeout(permit, System.nanoTime() - start);
+        } else {
+            circuit.record(permit, System.nanoTime() - start, true);
+        }
+    }
+    
+    @Override
+    public boolean isNonBlocking() {
+        return engine.isNonBlocking();
+    }
+    
+    @Override
+    public void shutdown() {
+        engine.shutdown();
+    }
+}
@@ -0,0 +1,33 @@
+package com.apitester.service;
+
+import java.io.IOException;
+
+/**
+ * A request was not sent because the circuit breaker for its host is open
+ */
+public class CircuitOpenException extends IOException {
+    
+    private final String host;
+    private final long retryAfterMs;
+    
+    public CircuitOpenException(String host, String reason, long retryAfterMs) {
+        super("Circuit breaker for " + host + " is open (" + reason + ")"
+            + (retryAfterMs > 0 ? ": next probe in " + retryAfterMs + " ms" : ""));
+        this.host = host;
+        this.retryAfterMs = retryAfterMs;
+    }
+    
+    /**
+     * The host:port whose circuit refused the request
+     */
+    public String getHost() {
+        return host;
+    }
+    
+    /**
+     * How long until the circuit lets probe requests through; 0 while probes are under way
+     */
+    public long getRetryAfterMs() {
+        return retryAfterMs;
+    }
+}
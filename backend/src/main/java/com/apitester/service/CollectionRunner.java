@@ -0,0 +1,554 @@
+package com.apitester.service;
+
+import com.apitester.config.AppConfig;
+import com.apitester.model.ApiCollection;
+import com.apitester.model.ApiRequest;
+import com.apitester.model.ApiResponse;
+import com.apitester.model.AssertionResult;
+import com.apitester.model.CollectionStep;
+import com.apitester.model.CollectionStepResult;
+import com.apitester.model.CollectionSummary;
+import com.fasterxml.jackson.core.JsonPointer;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Runs collections of requests on a shared, bounded pool over the shared ApiRequestService
+ * client. A collection is first planned into a dependency graph: a step depends on the
+ * steps that extract the {{variables}} it uses, and on those it names in dependsOn. Steps
+ * whose dependencies have passed run in parallel, up to the collection's concurrency;
+ * the dependents of a step that did not pass are skipped. Each result is reported as
+ * soon as the step finishes, and the summary gives the critical path through the graph.
+ */
+public class CollectionRunner {
+    
+    private static final int MAX_CONCURRENCY = AppConfig.getInt("collection.maxConcurrency", 32);
+    private static final int DEFAULT_CONCURRENCY = AppConfig.getInt("collection.defaultConcurrency", 4);
+    private static final int MAX_STEPS = AppConfig.getInt("collection.maxSteps", 200);
+    private static final Pattern VARIABLE = Pattern.compile("\\{\\{\\s*([A-Za-z0-9_.-]+)\\s*}}");
+    
+    private static CollectionRunner instance;
+    private final ApiRequestService apiRequestService;
+    private final ExecutorService executor;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    
+    private CollectionRunner() {
+        this.apiRequestService = ApiRequestService.getInstance();
+        
+        // Shared by all runs; each run limits itself to its own concurrency
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(MAX_CONCURRENCY, runnable -> {
+            Thread thread = new Thread(runnable, "CollectionWorker-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+    
+    public static synchronized CollectionRunner getInstance() {
+        if (instance == null) {
+            instance = new CollectionRunner();
+        }
+        return instance;
+    }
+    
+    /**
+     * Stop the shared instance's workers, if it was ever created
+     */
+    public static synchronized void shutdownInstance() {
+        if (instance != null) {
+            instance.executor.shutdownNow();
+            instance = null;
+        }
+    }
+    
+    /**
+     * Receives step results in completion order, on the thread that called run()
+     */
+    public interface StepListener {
+        void onStep(CollectionStepResult step) throws IOException;
+    }
+    
+    /**
+     * Clamp a requested concurrency to the configured bounds (0 or less means default)
+     */
+    public int effectiveConcurrency(int requested) {
+        int concurrency = requested > 0 ? requested : DEFAULT_CONCURRENCY;
+        return Math.max(1, Math.min(concurrency, MAX_CONCURRENCY));
+    }
+    
+    /**
+     * Check a collection and build its dependency graph
+     *
+     * @throws IllegalArgumentException when a step has no url, ids or extracted variables
+     *         clash, a variable is never set, or the steps depend on each other in a cycle
+     */
+    public Plan plan(ApiCollection collection) {
+        List<CollectionStep> steps = collection.getSteps();
+        if (steps == null || steps.isEmpty()) {
+            throw new IllegalArgumentException("A collection needs at least one step");
+        }
+        if (steps.size() > MAX_STEPS) {
+            throw new IllegalArgumentException("A collection can have at most " + MAX_STEPS + " steps");
+        }
+        
+        Plan plan = new Plan(collection);
+        Map<String, Integer> indexById = new HashMap<>();
+        Map<String, Integer> producers = new HashMap<>();
+        for (int i = 0; i < steps.size(); i++) {
+            CollectionStep step = steps.get(i);
+            if (step == null || step.getRequest() == null || step.getRequest().getUrl() == null
+                    || step.getRequest().getUrl().trim().isEmpty()) {
+                throw new IllegalArgumentException("Step " + (i + 1) + " has no request url");
+            }
+            String id = step.getId() != null && !step.getId().trim().isEmpty() ? step.getId().trim() : "step" + (i + 1);
+            if (indexById.put(id, i) != null) {
+                throw new IllegalArgumentException("Two steps have the id " + id);
+            }
+            plan.ids.add(id);
+            if (step.getExtract() != null) {
+                for (Map.Entry<String, String> extraction : step.getExtract().entrySet()) {
+                    checkExpression(id, extraction.getKey(), extraction.getValue());
+                    Integer previous = producers.put(extraction.getKey(), i);
+                    if (previous != null) {
+                        throw new IllegalArgumentException("Steps " + plan.ids.get(previous) + " and " + id
+                            + " both extract " + extraction.getKey());
+                    }
+                }
+            }
+        }
+        
+        for (int i = 0; i < steps.size(); i++) {
+            CollectionStep step = steps.get(i);
+            String id = plan.ids.get(i);
+            Set<Integer> dependencies = new TreeSet<>();
+            for (String variable : references(step.getRequest())) {
+                Integer producer = producers.get(variable);
+                if (producer != null) {
+                    if (producer == i) {
+                        throw new IllegalArgumentException("Step " + id + " uses {{" + variable + "}}, which it extracts itself");
+                    }
+                    dependencies.add(producer);
+                } else if (!plan.variables.containsKey(variable)) {
+                    throw new IllegalArgumentException("Step " + id + " uses {{" + variable
+                        + "}}, which no step extracts and the collection's variables do not set");
+                }
+            }
+            if (step.getDependsOn() != null) {
+                for (String dependency : step.getDependsOn()) {
+                    Integer index = indexById.get(dependency);
+                    if (index == null || index == i) {
+                        throw new IllegalArgumentException("Step " + id + " depends on " + dependency
+                            + (index == null ? ", which is not a step" : ", itself"));
+                    }
+                    dependencies.add(index);
+                }
+            }
+            plan.dependencies.add(new ArrayList<>(dependencies));
+            plan.dependents.add(new ArrayList<>());
+        }
+        for (int i = 0; i < steps.size(); i++) {
+            for (int dependency : plan.dependencies.get(i)) {
+                plan.dependents.get(dependency).add(i);
+            }
+        }
+        
+        // Kahn's algorithm: a topological order exists only when there is no cycle
+        int[] remaining = new int[steps.size()];
+        Deque<Integer> ready = new ArrayDeque<>();
+        for (int i = 0; i < steps.size(); i++) {
+            remaining[i] = plan.dependencies.get(i).size();
+            if (remaining[i] == 0) {
+                ready.add(i);
+            }
+        }
+        while (!ready.isEmpty()) {
+            int index = ready.poll();
+            plan.order.add(index);
+            for (int dependent : plan.dependents.get(index)) {
+                if (--remaining[dependent] == 0) {
+                    ready.add(dependent);
+                }
+            }
+        }
+        if (plan.order.size() < steps.size()) {
+            List<String> cycle = new ArrayList<>();
+            for (int i = 0; i < steps.size(); i++) {
+                if (remaining[i] > 0) {
+                    cycle.add(plan.ids.get(i));
+                }
+            }
+            throw new IllegalArgumentException("Steps depend on each other in a cycle: " + cycle);
+        }
+        return plan;
+    }
+    
+    /**
+     * Run a planned collection. Steps are submitted as their dependencies pass, with at
+     * most the collection's concurrency in flight. If the listener fails (e.g. the client
+     * went away) the steps in flight are cancelled and the summary is marked aborted.
+     */
+    public CollectionSummary run(Plan plan, final String sessionId, StepListener listener) throws InterruptedException {
+        final long runStart = System.nanoTime();
+        int concurrency = effectiveConcurrency(plan.collection.getConcurrency());
+        List<CollectionStep> steps = plan.collection.getSteps();
+        int count = steps.size();
+        
+        CollectionSummary summary = new CollectionSummary();
+        summary.setName(plan.collection.getName());
+        summary.setTotal(count);
+        summary.setConcurrency(concurrency);
+        
+        // Only this thread reads and writes the variables: requests are resolved before they are submitted
+        Map<String, String> variables = new LinkedHashMap<>(plan.variables);
+        CompletionService<CollectionStepResult> completionService = new ExecutorCompletionService<>(executor);
+        List<Future<CollectionStepResult>> futures = new ArrayList<>(count);
+        CollectionStepResult[] results = new CollectionStepResult[count];
+        int[] remaining = new int[count];
+        Deque<Integer> ready = new ArrayDeque<>();
+        for (int i = 0; i < count; i++) {
+            remaining[i] = plan.dependencies.get(i).size();
+            if (remaining[i] == 0) {
+                ready.add(i);
+            }
+        }
+        
+        int running = 0;
+        try {
+            while (true) {
+                while (!ready.isEmpty() && running < concurrency) {
+                    int index = ready.poll();
+                    futures.add(submit(completionService, plan, index, resolve(steps.get(index).getRequest(), variables),
+                        sessionId, runStart));
+                    running++;
+                }
+                if (running == 0) {
+                    break;
+                }
+                
+                CollectionStepResult result = completionService.take().get();
+                running--;
+                results[result.getIndex()] = result;
+                summary.setTotalStepMs(summary.getTotalStepMs() + result.getDurationMs());
+                if (CollectionStepResult.PASSED.equals(result.getResult())) {
+                    summary.setPassed(summary.getPassed() + 1);
+                    variables.putAll(result.getExtracted());
+                } else {
+                    summary.setFailed(summary.getFailed() + 1);
+                }
+                listener.onStep(result);
+                
+                for (int dependent : plan.dependents.get(result.getIndex())) {
+                    if (!CollectionStepResult.PASSED.equals(result.getResult())) {
+                        skip(plan, dependent, result.getId(), results, summary, listener);
+                    } else if (--remaining[dependent] == 0 && results[dependent] == null) {
+                        ready.add(dependent);
+                    }
+                }
+            }
+        } catch (IOException | ExecutionException e) {
+            summary.setAborted(true);
+            for (Future<CollectionStepResult> future : futures) {
+                future.cancel(true);
+            }
+        }
+        
+        summary.setWallClockMs(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - runStart));
+        setCriticalPath(plan, results, summary);
+        summary.setVariables(variables);
+        return summary;
+    }
+    
+    private Future<CollectionStepResult> submit(CompletionService<CollectionStepResult> completionService,
+                                                final Plan plan, final int index, final ApiRequest apiRequest,
+                                                final String sessionId, final long runStart) {
+        final CollectionStep step = plan.collection.getSteps().get(index);
+        final List<String> dependsOn = plan.idsOf(plan.dependencies.get(index));
+        return completionService.submit(() -> {
+            long start = System.nanoTime();
+            ApiResponse response = apiRequestService.processRequest(apiRequest, sessionId);
+            long end = System.nanoTime();
+            
+            CollectionStepResult result = new CollectionStepResult(plan.ids.get(index), index, dependsOn);
+            result.setStartOffsetMs(TimeUnit.NANOSECONDS.toMillis(start - runStart));
+            result.setDurationMs(TimeUnit.NANOSECONDS.toMillis(end - start));
+            result.setResponse(response);
+            evaluate(step, response, result);
+            return result;
+        });
+    }
+    
+    /**
+     * Mark a step and everything that depends on it as skipped, once
+     */
+    private void skip(Plan plan, int index, String cause, CollectionStepResult[] results, CollectionSummary summary,
+                      StepListener listener) throws IOException {
+        if (results[index] != null) {
+            return;
+        }
+        CollectionStepResult result = new CollectionStepResult(plan.ids.get(index), index,
+            plan.idsOf(plan.dependencies.get(index)));
+        result.setResult(CollectionStepResult.SKIPPED);
+        result.setError("Step " + cause + " did not pass");
+        results[index] = result;
+        summary.setSkipped(summary.getSkipped() + 1);
+        listener.onStep(result);
+        for (int dependent : plan.dependents.get(index)) {
+            skip(plan, dependent, plan.ids.get(index), results, summary, listener);
+        }
+    }
+    
+    /**
+     * Decide whether a step passed, and take its variables from the response
+     */
+    private void evaluate(CollectionStep step, ApiResponse response, CollectionStepResult result) {
+        List<Integer> expected = step.getExpectedStatus();
+        boolean statusOk = expected == null || expected.isEmpty()
+            ? response.getStatus() >= 200 && response.getStatus() < 400
+            : expected.contains(response.getStatus());
+        if (!statusOk) {
+            result.setResult(CollectionStepResult.FAILED);
+            result.setError(response.getStatus() == 0 ? "Request failed" : "Unexpected status " + response.getStatus());
+            return;
+        }
+        
+        if (Boolean.FALSE.equals(response.getAssertionsPassed())) {
+            result.setResult(CollectionStepResult.FAILED);
+            for (AssertionResult assertion : response.getAssertions()) {
+                if (!assertion.isPassed()) {
+                    result.setError("Assertion failed: " + assertion.getDescription());
+                    break;
+                }
+            }
+            return;
+        }
+        
+        Map<String, String> extracted = new LinkedHashMap<>();
+        if (step.getExtract() != null) {
+            JsonNode[] body = new JsonNode[1];
+            for (Map.Entry<String, String> extraction : step.getExtract().entrySet()) {
+                String value;
+                try {
+                    value = extract(extraction.getValue().trim(), response, body);
+                } catch (IOException e) {
+                    value = null;
+                }
+                if (value == null) {
+                    result.setResult(CollectionStepResult.FAILED);
+                    result.setError("Could not extract " + extraction.getKey() + " from " + extraction.getValue());
+                    result.setExtracted(extracted);
+                    return;
+                }
+                extracted.put(extraction.getKey(), value);
+            }
+        }
+        result.setResult(CollectionStepResult.PASSED);
+        result.setExtracted(extracted);
+    }
+    
+    /**
+     * Value of an extraction expression, or null when the response has none
+     *
+     * @param body the parsed body, filled in on first use
+     */
+    private String extract(String expression, ApiResponse response, JsonNode[] body) throws IOException {
+        if (expression.equals("status")) {
+            return String.valueOf(response.getStatus());
+        }
+        if (expression.startsWith("header:")) {
+            String name = expression.substring("header:".length()).trim();
+            if (response.getHeaders() != null) {
+                for (Map.Entry<String, String> header : response.getHeaders().entrySet()) {
+                    if (header.getKey() != null && header.getKey().equalsIgnoreCase(name)) {
+                        return header.getValue();
+                    }
+                }
+            }
+            return null;
+        }
+        if (expression.equals("body")) {
+            return response.getBody();
+        }
+        
+        String pointer = expression.startsWith("body:") ? expression.substring("body:".length()) : expression;
+        if (body[0] == null) {
+            body[0] = objectMapper.readTree(response.getBody() != null ? response.getBody() : "");
+        }
+        JsonNode node = body[0] != null ? body[0].at(pointer) : null;
+        if (node == null || node.isMissingNode() || node.isNull()) {
+            return null;
+        }
+        return node.isValueNode() ? node.asText() : node.toString();
+    }
+    
+    private static void checkExpression(String stepId, String variable, String expression) {
+        if (expression == null) {
+            throw new IllegalArgumentException("Step " + stepId + " has no expression for " + variable);
+        }
+        String trimmed = expression.trim();
+        if (trimmed.equals("status") || trimmed.equals("body")
+                || (trimmed.startsWith("header:") && trimmed.length() > "header:".length())) {
+            return;
+        }
+        String pointer = trimmed.startsWith("body:") ? trimmed.substring("body:".length()) : trimmed;
+        if (!pointer.startsWith("/")) {
+            throw new IllegalArgumentException("Step " + stepId + " extracts " + variable + " with " + expression
+                + "; expected status, header:Name, body, body:/json/pointer or /json/pointer");
+        }
+        try {
+            JsonPointer.compile(pointer);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Step " + stepId + " has an invalid JSON pointer " + pointer + ": " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Find the longest chain of dependent steps that ran, by duration
+     */
+    private static void setCriticalPath(Plan plan, CollectionStepResult[] results, CollectionSummary summary) {
+        int count = results.length;
+        long[] finish = new long[count];
+        int[] previous = new int[count];
+        int last = -1;
+        for (int index : plan.order) {
+            previous[index] = -1;
+            if (results[index] == null || CollectionStepResult.SKIPPED.equals(results[index].getResult())) {
+                continue;
+            }
+            // A step only ran when all its dependencies passed, so each has a finish time
+            long start = 0;
+            for (int dependency : plan.dependencies.get(index)) {
+                if (previous[index] < 0 || finish[dependency] > start) {
+                    start = finish[dependency];
+                    previous[index] = dependency;
+                }
+            }
+            finish[index] = start + results[index].getDurationMs();
+            if (last < 0 || finish[index] > finish[last]) {
+                last = index;
+            }
+        }
+        
+        List<String> path = new ArrayList<>();
+        for (int index = last; index >= 0; index = previous[index]) {
+            path.add(plan.ids.get(index));
+        }
+        Collections.reverse(path);
+        summary.setCriticalPath(path);
+        summary.setCriticalPathMs(last >= 0 ? finish[last] : 0);
+    }
+    
+    /**
+     * Variable names a request refers to, in its url, headers and body
+     */
+    private static Set<String> references(ApiRequest apiRequest) {
+        Set<String> names = new LinkedHashSet<>();
+        addReferences(apiRequest.getUrl(), names);
+        if (apiRequest.getHeaders() != null) {
+            for (Map.Entry<String, String> header : apiRequest.getHeaders().entrySet()) {
+                addReferences(header.getKey(), names);
+                addReferences(header.getValue(), names);
+            }
+        }
+        addReferences(apiRequest.getBody(), names);
+        return names;
+    }
+    
+    private static void addReferences(String text, Set<String> names) {
+        if (text != null && text.contains("{{")) {
+            Matcher matcher = VARIABLE.matcher(text);
+            while (matcher.find()) {
+                names.add(matcher.group(1));
+            }
+        }
+    }
+    
+    /**
+     * Copy of the request with its variables substituted
+     */
+    private static ApiRequest resolve(ApiRequest template, Map<String, String> variables) {
+        Map<String, String> headers = null;
+        if (template.getHeaders() != null) {
+            headers = new LinkedHashMap<>();
+            for (Map.Entry<String, String> header : template.getHeaders().entrySet()) {
+                headers.put(substitute(header.getKey(), variables), substitute(header.getValue(), variables));
+            }
+        }
+        ApiRequest resolved = new ApiRequest(substitute(template.getUrl(), variables), template.getMethod(), headers,
+            substitute(template.getBody(), variables));
+        resolved.setBypassCache(template.isBypassCache());
+        resolved.setCoalesce(template.getCoalesce());
+        resolved.setProtocol(template.getProtocol());
+        resolved.setRetry(template.getRetry());
+        resolved.setHedge(template.getHedge());
+        resolved.setTimeouts(template.getTimeouts());
+        resolved.setAssertions(template.getAssertions());
+        return resolved;
+    }
+    
+    private static String substitute(String text, Map<String, String> variables) {
+        if (text == null || !text.contains("{{")) {
+            return text;
+        }
+        Matcher matcher = VARIABLE.matcher(text);
+        StringBuffer substituted = new StringBuffer();
+        while (matcher.find()) {
+            String value = variables.get(matcher.group(1));
+            matcher.appendReplacement(substituted, Matcher.quoteReplacement(value != null ? value : matcher.group()));
+        }
+        matcher.appendTail(substituted);
+        return substituted.toString();
+    }
+    
+    /**
+     * A checked collection with its dependency graph
+     */
+    public static class Plan {
+        final ApiCollection collection;
+        final Map<String, String> variables = new LinkedHashMap<>();
+        final List<String> ids = new ArrayList<>();
+        final List<List<Integer>> dependencies = new ArrayList<>();
+        final List<List<Integer>> dependents = new ArrayList<>();
+        /** Steps in an order where each comes after its dependencies */
+        final List<Integer> order = new ArrayList<>();
+        
+        Plan(ApiCollection collection) {
+            this.collection = collection;
+            if (collection.getVariables() != null) {
+                for (Map.Entry<String, String> variable : collection.getVariables().entrySet()) {
+                    variables.put(variable.getKey(), variable.getValue() != null ? variable.getValue() : "");
+                }
+            }
+        }
+        
+        List<String> idsOf(List<Integer> indexes) {
+            List<String> stepIds = new ArrayList<>(indexes.size());
+            for (int index : indexes) {
+                stepIds.add(ids.get(index));
+            }
+            return stepIds;
+        }
+    }
+}
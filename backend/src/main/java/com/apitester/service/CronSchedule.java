@@ -0,0 +1,165 @@
+package com.apitester.service;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.BitSet;
+import java.util.Locale;
+
+/**
+ * A five-field cron expression (minute hour day-of-month month day-of-week) evaluated
+ * in a time zone. Fields take "*", numbers, ranges ("1-5"), lists ("0,30") and steps
+ * ("*&#47;15", "10-50/20"); months and days of the week also take three-letter names, and
+ * day of week 7 is Sunday like 0. As in Vixie cron, when both day fields are restricted
+ * a day matching either one is due. The macros @hourly, @daily, @weekly, @monthly and
+ * @yearly are accepted too.
+ */
+public class CronSchedule {
+    
+    private static final String[] MONTHS = {"JAN", "FEB", "MAR", "APR", "MAY", "JUN", "JUL", "AUG", "SEP", "OCT", "NOV", "DEC"};
+    private static final String[] DAYS = {"SUN", "MON", "TUE", "WED", "THU", "FRI", "SAT"};
+    
+    /** Searching further than this means the expression never matches (e.g. 30 February) */
+    private static final int MAX_YEARS = 5;
+    
+    private final String expression;
+    private final ZoneId zone;
+    private final BitSet minutes;
+    private final BitSet hours;
+    private final BitSet daysOfMonth;
+    private final BitSet months;
+    private final BitSet daysOfWeek;
+    private final boolean anyDayOfMonth;
+    private final boolean anyDayOfWeek;
+    
+    public CronSchedule(String expression, ZoneId zone) {
+        this.expression = expression;
+        this.zone = zone;
+        String[] fields = expand(expression.trim()).split("\\s+");
+        if (fields.length != 5) {
+            throw new IllegalArgumentException("Cron expression needs 5 fields (minute hour day month weekday): " + expression);
+        }
+        this.minutes = parseField(fields[0], 0, 59, null, 0);
+        this.hours = parseField(fields[1], 0, 23, null, 0);
+        this.daysOfMonth = parseField(fields[2], 1, 31, null, 0);
+        this.months = parseField(fields[3], 1, 12, MONTHS, 1);
+        this.daysOfWeek = parseField(fields[4], 0, 7, DAYS, 0);
+        if (daysOfWeek.get(7)) {
+            daysOfWeek.set(0);
+        }
+        this.anyDayOfMonth = fields[2].equals("*") || fields[2].equals("?");
+        this.anyDayOfWeek = fields[4].equals("*") || fields[4].equals("?");
+    }
+    
+    public String getExpression() {
+        return expression;
+    }
+    
+    /**
+     * First time after the given one (epoch milliseconds) the schedule is due
+     */
+    public long next(long afterMillis) {
+        ZonedDateTime time = Instant.ofEpochMilli(afterMillis).atZone(zone)
+            .truncatedTo(ChronoUnit.MINUTES).plusMinutes(1);
+        int lastYear = time.getYear() + MAX_YEARS;
+        
+        while (time.getYear() <= lastYear) {
+            if (!months.get(time.getMonthValue())) {
+                time = time.withDayOfMonth(1).truncatedTo(ChronoUnit.DAYS).plusMonths(1);
+            } else if (!dayMatches(time)) {
+                time = time.truncatedTo(ChronoUnit.DAYS).plusDays(1);
+            } else if (!hours.get(time.getHour())) {
+                time = time.truncatedTo(ChronoUnit.HOURS).plusHours(1);
+            } else if (!minutes.get(time.getMinute())) {
+                time = time.plusMinutes(1);
+            } else {
+                return time.toInstant().toEpochMilli();
+            }
+        }
+        throw new IllegalArgumentException("Cron expression never matches: " + expression);
+    }
+    
+    private boolean dayMatches(ZonedDateTime time) {
+        boolean dayOfMonth = daysOfMonth.get(time.getDayOfMonth());
+        boolean dayOfWeek = daysOfWeek.get(time.getDayOfWeek().getValue() % 7);
+        if (anyDayOfMonth || anyDayOfWeek) {
+            return dayOfMonth && dayOfWeek;
+        }
+        return dayOfMonth || dayOfWeek;
+    }
+    
+    private static String expand(String expression) {
+        switch (expression.toLowerCase(Locale.ROOT)) {
+            case "@hourly":
+                return "0 * * * *";
+            case "@daily":
+            case "@midnight":
+                return "0 0 * * *";
+            case "@weekly":
+                return "0 0 * * 0";
+            case "@monthly":
+                return "0 0 1 * *";
+            case "@yearly":
+            case "@annually":
+                return "0 0 1 1 *";
+            default:
+                return expression;
+        }
+    }
+    
+    private static BitSet parseField(String field, int min, int max, String[] names, int firstName) {
+        BitSet values = new BitSet(max + 1);
+        for (String part : field.split(",")) {
+            int step = 1;
+            int slash = part.indexOf('/');
+            if (slash >= 0) {
+                step = parseValue(part.substring(slash + 1), 1, max, null, 0);
+                part = part.substring(0, slash);
+            }
+            int from;
+            int to;
+            if (part.equals("*") || part.equals("?")) {
+                from = min;
+                to = max;
+            } else {
+                int dash = part.indexOf('-');
+                from = parseValue(dash >= 0 ? part.substring(0, dash) : part, min, max, names, firstName);
+                // "5/15" runs from 5 to the end of the range
+                to = dash >= 0 ? parseValue(part.substring(dash + 1), min, max, names, firstName) : (slash >= 0 ? max : from);
+                if (to < from) {
+                    throw new IllegalArgumentException("Invalid cron range: " + part);
+                }
+            }
+            for (int value = from; value <= to; value += step) {
+                values.set(value);
+            }
+        }
+        return values;
+    }
+    
+    private static int parseValue(String value, int min, int max, String[] names, int firstName) {
+        if (names != null) {
+            for (int i = 0; i < names.length; i++) {
+                if (names[i].equalsIgnoreCase(value)) {
+                    return i + firstName;
+                }
+            }
+        }
+        int parsed;
+        try {
+            parsed = Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid cron value: " + value);
+        }
+        if (parsed < min || parsed > max) {
+            throw new IllegalArgumentException("Cron value " + parsed + " is outside " + min + "-" + max);
+        }
+        return parsed;
+    }
+    
+    @Override
+    public String toString() {
+        return expression;
+    }
+}
@@ -0,0 +1,151 @@
+package com.apitester.service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Input stream that removes a gzip or deflate Content-Encoding while the body is read,
+ * and counts the bytes received before decoding. Other encodings, and none, pass
+ * through unchanged.
+ *
+ * The decoder is created on the first read, so wrapping a body does not block on it.
+ */
+public class DecodingInputStream extends InputStream {
+    
+    /**
+     * Accept-Encoding sent upstream when the caller did not set one
+     */
+    public static final String ACCEPT_ENCODING = "gzip, deflate";
+    
+    private final CountingInputStream encoded;
+    private final String contentEncoding;
+    private InputStream decoded;
+    
+    /**
+     * @param contentEncoding the response's Content-Encoding header, or null
+     */
+    public DecodingInputStream(InputStream in, String contentEncoding) {
+        this.encoded = new CountingInputStream(in);
+        this.contentEncoding = contentEncoding != null ? contentEncoding.trim().toLowerCase() : "";
+    }
+    
+    /**
+     * Bytes read from the underlying stream so far, before decoding
+     */
+    public long getEncodedCount() {
+        return encoded.count;
+    }
+    
+    /**
+     * Read the rest of the body, decoded, and close the stream
+     */
+    public byte[] readAll() throws IOException {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(8192);
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = read(buffer, 0, buffer.length)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } finally {
+            close();
+        }
+    }
+    
+    private InputStream decoded() throws IOException {
+        if (decoded == null) {
+            boolean gzip = contentEncoding.equals("gzip") || contentEncoding.equals("x-gzip");
+            if (!gzip && !contentEncoding.equals("deflate")) {
+                decoded = encoded;
+                return decoded;
+            }
+            
+            // Peek at the first two bytes: HEAD and 304 responses carry the header but no body,
+            // and "deflate" is meant to be zlib-wrapped but some servers send raw deflate data
+            PushbackInputStream pushback = new PushbackInputStream(encoded, 2);
+            int first = pushback.read();
+            int second = first >= 0 ? pushback.read() : -1;
+            if (second >= 0) {
+                pushback.unread(second);
+            }
+            if (first >= 0) {
+                pushback.unread(first);
+            }
+            
+            if (first < 0) {
+                decoded = pushback;
+            } else if (gzip) {
+                decoded = new GZIPInputStream(pushback, 8192);
+            } else {
+                boolean zlib = second >= 0 && (first & 0x0F) == 8 && ((first << 8) | second) % 31 == 0;
+                decoded = new InflaterInputStream(pushback, new Inflater(!zlib), 8192);
+            }
+        }
+        return decoded;
+    }
+    
+    @Override
+    public int read() throws IOException {
+        return decoded().read();
+    }
+    
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        return decoded().read(buffer, offset, length);
+    }
+    
+    @Override
+    public int available() throws IOException {
+        return decoded != null ? decoded.available() : 0;
+    }
+    
+    @Override
+    public void close() throws IOException {
+        if (decoded != null) {
+            decoded.close();
+        } else {
+            encoded.close();
+        }
+    }
+    
+    private static class CountingInputStream extends FilterInputStream {
+        
+        long count;
+        
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+        
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+        
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+        
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+}
@@ -0,0 +1,267 @@
+package com.apitester.service;
+
+import com.apitester.config.AppConfig;
+import com.apitester.logging.SecurityLogger;
+import com.apitester.model.ApiRequest;
+import com.apitester.model.ApiResponse;
+import com.apitester.model.DiffChange;
+import com.apitester.model.DiffRequest;
+import com.apitester.model.DiffResult;
+import com.apitester.model.PhaseTimings;
+import com.apitester.model.TimingDelta;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.TextNode;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Compares two responses, e.g. staging against production or before and after a deploy.
+ * The requests of both sides run at the same time on a shared pool, so neither side
+ * sees a warmer cache or a later deploy than the other merely for having run second.
+ * Bodies are diffed structurally by JsonDiff; headers by name, ignoring those that
+ * differ on every response (apitester.diff.ignoreHeaders); timings side by side.
+ */
+public class DiffService {
+    
+    private static final int THREADS = AppConfig.getInt("diff.threads", 8);
+    private static final int MAX_CHANGES = AppConfig.getInt("diff.maxChanges", 1000);
+    private static final int MAX_VALUE_CHARS = AppConfig.getInt("diff.maxValueChars", 200);
+    private static final List<String> ARRAY_KEYS = split(AppConfig.getString("diff.arrayKeys", "id,uuid,key"));
+    private static final List<String> IGNORE_HEADERS = split(AppConfig.getString("diff.ignoreHeaders",
+        "Date,Age,Expires,Set-Cookie,X-Request-Id,X-Amzn-Trace-Id,CF-Ray,Server-Timing"));
+    
+    private static DiffService instance;
+    private final ApiRequestService apiRequestService;
+    private final ExecutorService executor;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    
+    private DiffService() {
+        this.apiRequestService = ApiRequestService.getInstance();
+        
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(THREADS, runnable -> {
+            Thread thread = new Thread(runnable, "DiffWorker-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+    
+    public static synchronized DiffService getInstance() {
+        if (instance == null) {
+            instance = new DiffService();
+        }
+        return instance;
+    }
+    
+    /**
+     * Stop the shared instance's workers, if it was ever created
+     */
+    public static synchronized void shutdownInstance() {
+        if (instance != null) {
+            instance.executor.shutdownNow();
+            instance = null;
+        }
+    }
+    
+    /**
+     * Obtain both responses, running the requests among them concurrently, and compare them
+     *
+     * @throws IllegalArgumentException when a side has neither or both of a request and a log entry
+     */
+    public DiffResult diff(DiffRequest request, String sessionId) throws InterruptedException, ExecutionException {
+        Future<ApiResponse> left = obtain("left", request.getLeft(), request.getLeftEntry(), sessionId);
+        Future<ApiResponse> right;
+        try {
+            right = obtain("right", request.getRight(), request.getRightEntry(), sessionId);
+        } catch (IllegalArgumentException e) {
+            left.cancel(true);
+            throw e;
+        }
+        return compare(left.get(), right.get(), request);
+    }
+    
+    private Future<ApiResponse> obtain(String side, final ApiRequest apiRequest, SecurityLogger.LogEntry entry,
+                                       final String sessionId) {
+        if ((apiRequest == null) == (entry == null)) {
+            throw new IllegalArgumentException("Give the " + side + " side as either a request or a logged entry");
+        }
+        if (entry != null) {
+            return CompletableFuture.completedFuture(toResponse(entry));
+        }
+        if (apiRequest.getUrl() == null || apiRequest.getUrl().trim().isEmpty()) {
+            throw new IllegalArgumentException("The " + side + " request has no url");
+        }
+        return executor.submit(() -> apiRequestService.processRequest(apiRequest, sessionId));
+    }
+    
+    /**
+     * Compare two responses already at hand; options supplies ignorePaths, ignoreHeaders
+     * and arrayKeys and may be null
+     */
+    public DiffResult compare(ApiResponse left, ApiResponse right, DiffRequest options) {
+        long start = System.nanoTime();
+        DiffResult result = new DiffResult();
+        result.setLeftStatus(left.getStatus());
+        result.setRightStatus(right.getStatus());
+        
+        List<String> ignoreHeaders = new ArrayList<>(IGNORE_HEADERS);
+        List<String> ignorePaths = null;
+        List<String> arrayKeys = ARRAY_KEYS;
+        if (options != null) {
+            if (options.getIgnoreHeaders() != null) {
+                ignoreHeaders.addAll(options.getIgnoreHeaders());
+            }
+            ignorePaths = options.getIgnorePaths();
+            if (options.getArrayKeys() != null) {
+                arrayKeys = options.getArrayKeys();
+            }
+        }
+        result.setHeaders(compareHeaders(left.getHeaders(), right.getHeaders(), ignoreHeaders));
+        
+        JsonDiff diff = new JsonDiff(ignorePaths, arrayKeys, MAX_CHANGES, MAX_VALUE_CHARS);
+        JsonNode leftBody = parse(left.getBody());
+        JsonNode rightBody = leftBody != null ? parse(right.getBody()) : null;
+        if (leftBody != null && rightBody != null) {
+            result.setBodyFormat(DiffResult.JSON);
+            diff.diff(leftBody, rightBody);
+        } else {
+            // Line by line, with the same alignment as JSON arrays
+            result.setBodyFormat(DiffResult.TEXT);
+            diff.diff(lines(left.getBody()), lines(right.getBody()));
+        }
+        result.setBody(diff.getChanges());
+        result.setAdded(diff.getAdded());
+        result.setRemoved(diff.getRemoved());
+        result.setChanged(diff.getChanged());
+        result.setTruncated(diff.isTruncated());
+        
+        result.setTimings(compareTimings(left, right));
+        result.setIdentical(left.getStatus() == right.getStatus() && result.getHeaders().isEmpty()
+            && diff.getAdded() + diff.getRemoved() + diff.getChanged() == 0);
+        result.setDiffMs(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        return result;
+    }
+    
+    private List<DiffChange> compareHeaders(Map<String, String> left, Map<String, String> right,
+                                            List<String> ignoreHeaders) {
+        Set<String> ignored = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+        ignored.addAll(ignoreHeaders);
+        Map<String, String> leftHeaders = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        Map<String, String> rightHeaders = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        if (left != null) {
+            leftHeaders.putAll(left);
+        }
+        if (right != null) {
+            rightHeaders.putAll(right);
+        }
+        
+        List<DiffChange> changes = new ArrayList<>();
+        for (Map.Entry<String, String> header : leftHeaders.entrySet()) {
+            if (ignored.contains(header.getKey())) {
+                continue;
+            }
+            String other = rightHeaders.get(header.getKey());
+            if (other == null) {
+                changes.add(new DiffChange(DiffChange.REMOVED, "/" + header.getKey(), text(header.getValue()), null));
+            } else if (!other.equals(header.getValue())) {
+                changes.add(new DiffChange(DiffChange.CHANGED, "/" + header.getKey(), text(header.getValue()), text(other)));
+            }
+        }
+        for (Map.Entry<String, String> header : rightHeaders.entrySet()) {
+            if (!ignored.contains(header.getKey()) && !leftHeaders.containsKey(header.getKey())) {
+                changes.add(new DiffChange(DiffChange.ADDED, "/" + header.getKey(), null, text(header.getValue())));
+            }
+        }
+        return changes;
+    }
+    
+    private static List<TimingDelta> compareTimings(ApiResponse left, ApiResponse right) {
+        List<TimingDelta> timings = new ArrayList<>();
+        timings.add(new TimingDelta("responseTimeMs", left.getResponseTime(), right.getResponseTime()));
+        timings.add(new TimingDelta("sizeBytes", left.getSize(), right.getSize()));
+        PhaseTimings l = left.getTimings();
+        PhaseTimings r = right.getTimings();
+        if (l != null && r != null) {
+            timings.add(new TimingDelta("poolWaitMs", millis(l.getPoolWaitNanos()), millis(r.getPoolWaitNanos())));
+            timings.add(new TimingDelta("dnsMs", millis(l.getDnsNanos()), millis(r.getDnsNanos())));
+            timings.add(new TimingDelta("connectMs", millis(l.getConnectNanos()), millis(r.getConnectNanos())));
+            timings.add(new TimingDelta("tlsMs", millis(l.getTlsNanos()), millis(r.getTlsNanos())));
+            timings.add(new TimingDelta("requestWriteMs", millis(l.getRequestWriteNanos()), millis(r.getRequestWriteNanos())));
+            timings.add(new TimingDelta("ttfbMs", millis(l.getTtfbNanos()), millis(r.getTtfbNanos())));
+            timings.add(new TimingDelta("downloadMs", millis(l.getDownloadNanos()), millis(r.getDownloadNanos())));
+            timings.add(new TimingDelta("totalMs", millis(l.getTotalNanos()), millis(r.getTotalNanos())));
+        }
+        return timings;
+    }
+    
+    private static double millis(long nanos) {
+        return Math.round(nanos / 1000.0) / 1000.0;
+    }
+    
+    /**
+     * The body as a JSON tree, or null when it is empty or not JSON
+     */
+    private JsonNode parse(String body) {
+        if (body == null || body.trim().isEmpty()) {
+            return null;
+        }
+        try {
+            return objectMapper.readTree(body);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+    
+    private static JsonNode lines(String body) {
+        ArrayNode lines = JsonNodeFactory.instance.arrayNode();
+        if (body != null && !body.isEmpty()) {
+            int from = 0;
+            for (int newline; (newline = body.indexOf('\n', from)) >= 0; from = newline + 1) {
+                lines.add(body.substring(from, newline));
+            }
+            lines.add(body.substring(from));
+        }
+        return lines;
+    }
+    
+    private static JsonNode text(String value) {
+        return value != null ? TextNode.valueOf(value) : null;
+    }
+    
+    private static ApiResponse toResponse(SecurityLogger.LogEntry entry) {
+        ApiResponse response = new ApiResponse();
+        response.setStatus(entry.responseStatus);
+        response.setHeaders(entry.responseHeaders);
+        response.setBody(entry.responseBody);
+        response.setResponseTime(entry.responseTime);
+        response.setSize(entry.responseBody != null ? entry.responseBody.length() : 0);
+        response.setTimings(entry.timings);
+        return response;
+    }
+    
+    private static List<String> split(String value) {
+        List<String> values = new ArrayList<>();
+        for (String part : value.split(",")) {
+            if (!part.trim().isEmpty()) {
+                values.add(part.trim());
+            }
+        }
+        return Collections.unmodifiableList(values);
+    }
+}
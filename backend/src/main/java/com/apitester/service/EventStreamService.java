@@ -0,0 +1,526 @@
+package com.apitester.service;
+
+import com.apitester.config.AppConfig;
+import com.apitester.model.ApiRequest;
+import com.apitester.model.ApiResponse;
+import com.apitester.model.PhaseTimings;
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Relays an upstream response to the browser as Server-Sent Events while it arrives, with
+ * the timing of each piece, for performance-testing chunked and long-lived APIs (SSE
+ * feeds, slow NDJSON exports). The body is framed one of three ways:
+ * chunks (each read that returned bytes, i.e. what the network delivered),
+ * lines (each complete line, e.g. NDJSON records) or
+ * events (each upstream SSE event, parsed per the EventSource rules).
+ * The framing follows the upstream Content-Type unless the caller names one.
+ *
+ * A stream sends a head event once the upstream headers arrive, one event per frame, and
+ * a summary with time to first byte, the gaps between chunks and between frames, and the
+ * upstream phase timings. Each stream holds a worker thread while the upstream is read;
+ * the number of streams is bounded by apitester.sse.maxStreams.
+ */
+public class EventStreamService {
+    
+    public static final String CHUNKS = "chunks";
+    public static final String LINES = "lines";
+    public static final String EVENTS = "events";
+    
+    private static final int MAX_STREAMS = AppConfig.getInt("sse.maxStreams", 32);
+    private static final int HEARTBEAT_SECONDS = AppConfig.getInt("sse.heartbeatSeconds", 15);
+    private static final int MAX_FRAME_CHARS = AppConfig.getInt("sse.maxFrameChars", 1048576);
+    private static final int READ_BUFFER_SIZE = 8192;
+    
+    // Gaps are recorded in microseconds, up to one hour, with 3 significant digits
+    private static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.HOURS.toMicros(1);
+    private static final int SIGNIFICANT_DIGITS = 3;
+    
+    private static EventStreamService instance;
+    private final ApiRequestService apiRequestService;
+    private final ExecutorService executor;
+    private final ScheduledExecutorService heartbeats;
+    
+    private EventStreamService() {
+        this.apiRequestService = ApiRequestService.getInstance();
+        
+        // No queue: a stream that cannot get a worker now is refused rather than left waiting
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(0, MAX_STREAMS, 60, TimeUnit.SECONDS, new SynchronousQueue<>(),
+            runnable -> {
+                Thread thread = new Thread(runnable, "StreamWorker-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        this.heartbeats = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "StreamHeartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+    
+    public static synchronized EventStreamService getInstance() {
+        if (instance == null) {
+            instance = new EventStreamService();
+        }
+        return instance;
+    }
+    
+    /**
+     * Stop the shared instance's workers and heartbeat, if it was ever created. A worker
+     * blocked on an upstream read ends when ApiRequestService closes its clients.
+     */
+    public static synchronized void shutdownInstance() {
+        if (instance != null) {
+            instance.executor.shutdownNow();
+            instance.heartbeats.shutdownNow();
+            instance = null;
+        }
+    }
+    
+    /**
+     * Where the events of one stream go, e.g. the servlet response. Calls for one stream
+     * may come from its worker and from the heartbeat thread.
+     */
+    public interface EventSink {
+        /**
+         * Send one event whose data is the JSON form of data
+         */
+        void send(String event, Object data) throws IOException;
+        
+        /**
+         * Send an SSE comment, which keeps idle connections open and is not seen by EventSource
+         */
+        void comment(String text) throws IOException;
+        
+        /**
+         * The stream is over; called once, after the summary
+         */
+        void close();
+    }
+    
+    /**
+     * Framing for an explicit choice, else for the upstream Content-Type
+     *
+     * @throws IllegalArgumentException for an unknown framing
+     */
+    public static String framingFor(String requested, String contentType) {
+        if (requested != null && !requested.trim().isEmpty()) {
+            String framing = requested.trim().toLowerCase();
+            if (!framing.equals(CHUNKS) && !framing.equals(LINES) && !framing.equals(EVENTS)) {
+                throw new IllegalArgumentException("framing must be chunks, lines or events, got " + requested);
+            }
+            return framing;
+        }
+        String type = contentType != null ? contentType.toLowerCase() : "";
+        if (type.startsWith("text/event-stream")) {
+            return EVENTS;
+        }
+        if (type.contains("ndjson") || type.contains("jsonl") || type.contains("json-seq") || type.startsWith("text/plain")
+                || type.startsWith("text/csv")) {
+            return LINES;
+        }
+        return CHUNKS;
+    }
+    
+    /**
+     * Run the stream on a worker of its own; the sink is closed when it ends
+     *
+     * @throws RejectedExecutionException when apitester.sse.maxStreams streams are already running
+     */
+    public void start(final ApiRequest apiRequest, final String sessionId, final String framing, final EventSink sink) {
+        if (framing != null) {
+            framingFor(framing, null);
+        }
+        executor.execute(() -> stream(apiRequest, sessionId, framing, sink));
+    }
+    
+    /**
+     * Run the stream on the calling thread and close the sink when it ends
+     *
+     * @param framing chunks, lines or events, or null to follow the upstream Content-Type
+     */
+    public void stream(ApiRequest apiRequest, String sessionId, String framing, final EventSink sink) {
+        final Relay relay = new Relay(framing, sink);
+        ScheduledFuture<?> heartbeat = heartbeats.scheduleAtFixedRate(relay::heartbeat,
+            HEARTBEAT_SECONDS, HEARTBEAT_SECONDS, TimeUnit.SECONDS);
+        try {
+            ApiResponse response = apiRequestService.processRequestStreaming(apiRequest, sessionId, relay);
+            if (relay.sinkFailed) {
+                // The browser went away; nothing left to tell it
+                return;
+            }
+            relay.summary.totalMs = relay.sinceStart(System.nanoTime());
+            if (response.getStatus() == 0) {
+                // Failed before the head or mid-body; the head event, if any, has the upstream status
+                relay.summary.status = relay.head != null ? relay.head.status : 0;
+                relay.summary.statusText = relay.head != null ? relay.head.statusText : response.getStatusText();
+                relay.summary.error = response.getBody();
+            } else {
+                relay.summary.status = response.getStatus();
+                relay.summary.statusText = response.getStatusText();
+                relay.summary.timings = response.getTimings();
+                relay.summary.assertionsPassed = response.getAssertionsPassed();
+            }
+            relay.summary.chunkGaps = LoadTestService.toLatency(relay.chunkGaps);
+            if (relay.frameGaps != null) {
+                relay.summary.frameGaps = LoadTestService.toLatency(relay.frameGaps);
+            }
+            relay.send("summary", relay.summary);
+        } catch (IOException e) {
+            // The browser went away; nothing left to tell it
+        } finally {
+            heartbeat.cancel(false);
+            sink.close();
+        }
+    }
+    
+    private static double millis(long nanos) {
+        return Math.round(nanos / 1000.0) / 1000.0;
+    }
+    
+    /**
+     * Turns one upstream response into events as it is read
+     */
+    private static final class Relay implements StreamingResponseHandler {
+        private final String requestedFraming;
+        private final EventSink sink;
+        private final long startNanos = System.nanoTime();
+        private volatile long lastSendNanos = startNanos;
+        volatile boolean sinkFailed;
+        final Histogram chunkGaps = new Histogram(HIGHEST_TRACKABLE_MICROS, SIGNIFICANT_DIGITS);
+        Histogram frameGaps;
+        final Summary summary = new Summary();
+        Head head;
+        
+        private String framing;
+        private long lastChunkNanos;
+        private long lastFrameNanos;
+        private final StringBuilder pending = new StringBuilder();
+        private String eventType;
+        private String eventId;
+        private final StringBuilder eventData = new StringBuilder();
+        private boolean eventHasData;
+        
+        Relay(String requestedFraming, EventSink sink) {
+            this.requestedFraming = requestedFraming;
+            this.sink = sink;
+        }
+        
+        @Override
+        public void onHead(ApiResponse response) throws IOException {
+            long now = System.nanoTime();
+            framing = framingFor(requestedFraming, header(response.getHeaders(), "Content-Type"));
+            if (!framing.equals(CHUNKS)) {
+                frameGaps = new Histogram(HIGHEST_TRACKABLE_MICROS, SIGNIFICANT_DIGITS);
+            }
+            head = new Head();
+            head.status = response.getStatus();
+            head.statusText = response.getStatusText();
+            head.protocol = response.getProtocol();
+            head.headers = response.getHeaders();
+            head.framing = framing;
+            head.ttfbMs = sinceStart(now);
+            summary.framing = framing;
+            summary.ttfbMs = head.ttfbMs;
+            lastChunkNanos = now;
+            lastFrameNanos = now;
+            send("head", head);
+        }
+        
+        @Override
+        public void onBody(InputStream body, Charset charset) throws IOException {
+            CharsetDecoder decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            byte[] buffer = new byte[READ_BUFFER_SIZE];
+            ByteBuffer undecoded = ByteBuffer.allocate(READ_BUFFER_SIZE + 16);
+            CharBuffer decoded = CharBuffer.allocate(READ_BUFFER_SIZE + 16);
+            int read;
+            while ((read = body.read(buffer)) != -1) {
+                if (read == 0) {
+                    continue;
+                }
+                long now = System.nanoTime();
+                if (summary.chunks == 0) {
+                    summary.firstByteMs = sinceStart(now);
+                }
+                record(chunkGaps, now - lastChunkNanos);
+                double gapMs = millis(now - lastChunkNanos);
+                lastChunkNanos = now;
+                summary.chunks++;
+                summary.bytes += read;
+                
+                // Decode what is complete; a character split across reads waits for the rest
+                undecoded.put(buffer, 0, read);
+                undecoded.flip();
+                decoder.decode(undecoded, decoded, false);
+                undecoded.compact();
+                decoded.flip();
+                String text = decoded.toString();
+                decoded.clear();
+                
+                if (framing.equals(CHUNKS)) {
+                    Chunk chunk = new Chunk();
+                    chunk.seq = summary.chunks;
+                    chunk.offsetMs = sinceStart(now);
+                    chunk.gapMs = gapMs;
+                    chunk.bytes = read;
+                    chunk.data = text;
+                    send("chunk", chunk);
+                } else {
+                    frame(text, now);
+                }
+            }
+            
+            // A character still split at the end of the body is cut short: it decodes to U+FFFD
+            long now = System.nanoTime();
+            undecoded.flip();
+            decoder.decode(undecoded, decoded, true);
+            decoder.flush(decoded);
+            decoded.flip();
+            String rest = decoded.toString();
+            if (!rest.isEmpty()) {
+                if (framing.equals(CHUNKS)) {
+                    // Its bytes were counted with the last read, so this only completes that chunk's data
+                    Chunk chunk = new Chunk();
+                    chunk.seq = summary.chunks;
+                    chunk.offsetMs = sinceStart(now);
+                    chunk.data = rest;
+                    send("chunk", chunk);
+                } else {
+                    frame(rest, now);
+                }
+            }
+            if (!framing.equals(CHUNKS)) {
+                // The body ended without a final newline or blank line
+                if (pending.length() > 0) {
+                    line(pending.toString(), now);
+                    pending.setLength(0);
+                }
+                if (framing.equals(EVENTS)) {
+                    dispatch(now);
+                }
+            }
+        }
+        
+        /**
+         * Split decoded text into lines; a line longer than maxFrameChars is cut there
+         */
+        private void frame(String text, long now) throws IOException {
+            int from = 0;
+            int newline;
+            while ((newline = text.indexOf('\n', from)) >= 0) {
+                pending.append(text, from, newline);
+                from = newline + 1;
+                int length = pending.length();
+                line(pending.substring(0, length > 0 && pending.charAt(length - 1) == '\r' ? length - 1 : length), now);
+                pending.setLength(0);
+            }
+            pending.append(text, from, text.length());
+            if (pending.length() >= MAX_FRAME_CHARS) {
+                line(pending.toString(), now);
+                pending.setLength(0);
+            }
+        }
+        
+        private void line(String line, long now) throws IOException {
+            if (framing.equals(LINES)) {
+                if (line.isEmpty()) {
+                    return;
+                }
+                Line frame = new Line();
+                frame.seq = ++summary.frames;
+                frame.offsetMs = sinceStart(now);
+                frame.gapMs = frameGap(now);
+                frame.data = line;
+                send("line", frame);
+                return;
+            }
+            
+            // EventSource rules: a blank line dispatches, "field: value" sets a field, ":" is a comment
+            if (line.isEmpty()) {
+                dispatch(now);
+                return;
+            }
+            if (line.startsWith(":")) {
+                return;
+            }
+            int colon = line.indexOf(':');
+            String field = colon >= 0 ? line.substring(0, colon) : line;
+            String value = colon >= 0 ? line.substring(colon + 1) : "";
+            if (value.startsWith(" ")) {
+                value = value.substring(1);
+            }
+            switch (field) {
+                case "data":
+                    if (eventHasData) {
+                        eventData.append('\n');
+                    }
+                    eventData.append(value);
+                    eventHasData = true;
+                    if (eventData.length() >= MAX_FRAME_CHARS) {
+                        dispatch(now);
+                    }
+                    break;
+                case "event":
+                    eventType = value;
+                    break;
+                case "id":
+                    eventId = value;
+                    break;
+                default:
+                    // retry and unknown fields do not concern the relay
+            }
+        }
+        
+        private void dispatch(long now) throws IOException {
+            if (eventHasData) {
+                Event event = new Event();
+                event.seq = ++summary.frames;
+                event.offsetMs = sinceStart(now);
+                event.gapMs = frameGap(now);
+                event.event = eventType != null && !eventType.isEmpty() ? eventType : "message";
+                event.id = eventId;
+                event.data = eventData.toString();
+                send("event", event);
+            }
+            eventType = null;
+            eventData.setLength(0);
+            eventHasData = false;
+        }
+        
+        private double frameGap(long now) {
+            long gap = now - lastFrameNanos;
+            lastFrameNanos = now;
+            record(frameGaps, gap);
+            return millis(gap);
+        }
+        
+        void send(String event, Object data) throws IOException {
+            try {
+                sink.send(event, data);
+            } catch (IOException e) {
+                sinkFailed = true;
+                throw e;
+            }
+            lastSendNanos = System.nanoTime();
+        }
+        
+        /**
+         * Keep the connection alive through proxies while the upstream is quiet
+         */
+        void heartbeat() {
+            if (!sinkFailed && System.nanoTime() - lastSendNanos >= TimeUnit.SECONDS.toNanos(HEARTBEAT_SECONDS)) {
+                try {
+                    sink.comment("keepalive");
+                    lastSendNanos = System.nanoTime();
+                } catch (IOException e) {
+                    // The worker finds out on its next send
+                }
+            }
+        }
+        
+        double sinceStart(long now) {
+            return millis(now - startNanos);
+        }
+        
+        private static void record(Histogram histogram, long nanos) {
+            histogram.recordValue(Math.min(TimeUnit.NANOSECONDS.toMicros(nanos), HIGHEST_TRACKABLE_MICROS));
+        }
+        
+        private static String header(Map<String, String> headers, String name) {
+            if (headers != null) {
+                for (Map.Entry<String, String> header : headers.entrySet()) {
+                    if (header.getKey().equalsIgnoreCase(name)) {
+                        return header.getValue();
+                    }
+                }
+            }
+            return null;
+        }
+    }
+    
+    /**
+     * First event: the upstream status and headers, and how long they took
+     */
+    public static class Head {
+        public int status;
+        public String statusText;
+        public String protocol;
+        public Map<String, String> headers;
+        public String framing;
+        public double ttfbMs;
+    }
+    
+    /**
+     * What one read of the upstream body returned. Times are from the start of the
+     * request; the gap is from the previous chunk, or from the head for the first.
+     */
+    public static class Chunk {
+        public long seq;
+        public double offsetMs;
+        public double gapMs;
+        public int bytes;
+        public String data;
+    }
+    
+    /**
+     * One line of the body, without its line break; empty lines are skipped
+     */
+    public static class Line {
+        public long seq;
+        public double offsetMs;
+        public double gapMs;
+        public String data;
+    }
+    
+    /**
+     * One upstream SSE event, timed when its closing blank line arrived
+     */
+    public static class Event {
+        public long seq;
+        public double offsetMs;
+        public double gapMs;
+        public String event;
+        public String id;
+        public String data;
+    }
+    
+    /**
+     * Last event of a stream
+     */
+    public static class Summary {
+        public int status;
+        public String statusText;
+        public String error;
+        public Boolean assertionsPassed;
+        public String framing;
+        public double ttfbMs;
+        public double firstByteMs;
+        public double totalMs;
+        public long bytes;
+        public long chunks;
+        public long frames;
+        public LoadTestService.Latency chunkGaps;
+        public LoadTestService.Latency frameGaps;
+        public PhaseTimings timings;
+    }
+}
@@ -0,0 +1,94 @@
+package com.apitester.service;
+
+import org.HdrHistogram.Histogram;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Recent response latency per upstream host, for picking hedge delays. Each host
+ * keeps the current window and the one before it; percentiles are read from the
+ * current window once it has enough samples, else from the previous one, so a
+ * host's figures follow changes in its latency within a window or two.
+ */
+public class HostLatencyTracker {
+    
+    private static final long HIGHEST_TRACKABLE_MILLIS = TimeUnit.MINUTES.toMillis(10);
+    
+    private final long windowMillis;
+    private final int minSamples;
+    private final int maxHosts;
+    private final ConcurrentHashMap<String, Window> hosts = new ConcurrentHashMap<>();
+    
+    public HostLatencyTracker(long windowMillis, int minSamples, int maxHosts) {
+        this.windowMillis = windowMillis;
+        this.minSamples = Math.max(1, minSamples);
+        this.maxHosts = maxHosts;
+    }
+    
+    /**
+     * Record the latency of one completed exchange with the host
+     */
+    public void record(String host, long millis) {
+        Window window = hosts.get(host);
+        if (window == null) {
+            if (hosts.size() >= maxHosts) {
+                return;
+            }
+            window = hosts.computeIfAbsent(host, key -> new Window());
+        }
+        window.record(Math.max(0, Math.min(millis, HIGHEST_TRACKABLE_MILLIS)), System.currentTimeMillis());
+    }
+    
+    /**
+     * Latency at the given percentile for the host, or -1 while there are too few samples
+     */
+    public long percentile(String host, double percentile) {
+        Window window = hosts.get(host);
+        return window != null ? window.percentile(percentile, System.currentTimeMillis()) : -1;
+    }
+    
+    public int getTrackedHosts() {
+        return hosts.size();
+    }
+    
+    private class Window {
+        
+        private Histogram current = new Histogram(HIGHEST_TRACKABLE_MILLIS, 2);
+        private Histogram previous = new Histogram(HIGHEST_TRACKABLE_MILLIS, 2);
+        private long windowStart = System.currentTimeMillis();
+        
+        synchronized void record(long millis, long now) {
+            rotate(now);
+            current.recordValue(millis);
+        }
+        
+        synchronized long percentile(double percentile, long now) {
+            rotate(now);
+            if (current.getTotalCount() >= minSamples) {
+                return current.getValueAtPercentile(percentile);
+            }
+            if (previous.getTotalCount() >= minSamples) {
+                return previous.getValueAtPercentile(percentile);
+            }
+            return -1;
+        }
+        
+        private void rotate(long now) {
+            if (now - windowStart < windowMillis) {
+                return;
+            }
+            if (now - windowStart < 2 * windowMillis) {
+                Histogram recycled = previous;
+                recycled.reset();
+                previous = current;
+                current = recycled;
+            } else {
+                // A host idle for two windows has nothing recent to report
+                previous.reset();
+                current.reset();
+            }
+            windowStart = now;
+        }
+    }
+}
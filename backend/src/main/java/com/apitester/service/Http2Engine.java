@@ -0,0 +1,339 @@
+package com.apitester.service;
+
+import com.apitester.model.ApiResponse;
+import org.apache.hc.client5.http.async.methods.SimpleHttpRequest;
+import org.apache.hc.client5.http.async.methods.SimpleHttpResponse;
+import org.apache.hc.client5.http.async.methods.SimpleRequestProducer;
+import org.apache.hc.client5.http.async.methods.SimpleResponseConsumer;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.config.TlsConfig;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.client5.http.impl.async.HttpAsyncClients;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManager;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManagerBuilder;
+import org.apache.hc.client5.http.protocol.HttpClientContext;
+import org.apache.hc.client5.http.ssl.ClientTlsStrategyBuilder;
+import org.apache.hc.client5.http.ssl.NoopHostnameVerifier;
+import org.apache.hc.core5.concurrent.FutureCallback;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.ProtocolVersion;
+import org.apache.hc.core5.http.impl.EnglishReasonPhraseCatalog;
+import org.apache.hc.core5.http.nio.ssl.TlsStrategy;
+import org.apache.hc.core5.http2.HttpVersionPolicy;
+import org.apache.hc.core5.io.CloseMode;
+import org.apache.hc.core5.pool.PoolStats;
+import org.apache.hc.core5.reactor.IOReactorConfig;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.conn.DnsResolver;
+import org.apache.http.util.EntityUtils;
+
+import javax.net.ssl.SSLContext;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Upstream engine on Apache HttpClient 5 that speaks HTTP/2 when the server offers
+ * it through ALPN and HTTP/1.1 otherwise. Concurrent requests to an HTTP/2 host are
+ * multiplexed over one connection instead of needing a TCP and TLS handshake each.
+ *
+ * Requests are built with the HttpClient 4 types the rest of the service uses and
+ * converted here, so the response cache and coalescing work the same for both engines.
+ * ALPN needs Java 8u252 or later; older runtimes negotiate HTTP/1.1.
+ */
+public class Http2Engine implements HttpEngine {
+    
+    // Connection-specific headers are not allowed in HTTP/2 requests; the client sets the rest
+    private static final String[] SKIPPED_HEADERS = {
+        "Connection", "Keep-Alive", "Proxy-Connection", "Transfer-Encoding", "Upgrade", "Host", "Content-Length"
+    };
+    
+    private final PoolingAsyncClientConnectionManager connectionManager;
+    private final CloseableHttpAsyncClient client;
+    private final HttpVersionPolicy versionPolicy;
+    private final RequestConfig defaultRequestConfig;
+    
+    private final AtomicLong http2Exchanges = new AtomicLong();
+    private final AtomicLong http1Exchanges = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    
+    /**
+     * @param sslContext context for TLS connections, or null for the JSSE default
+     * @param dnsResolver resolver shared with the HttpClient 4 engines
+     * @param versionPolicy NEGOTIATE to use ALPN, FORCE_HTTP_2 to also speak HTTP/2
+     *                      over plain connections (prior knowledge), FORCE_HTTP_1 to disable it
+     */
+    public Http2Engine(SSLContext sslContext, final DnsResolver dnsResolver, HttpVersionPolicy versionPolicy,
+                       int maxConnTotal, int maxConnPerRoute, int connectTimeoutMs, int readTimeoutMs,
+                       String userAgent) {
+        this.versionPolicy = versionPolicy;
+        
+        TlsStrategy tlsStrategy = sslContext != null
+            ? ClientTlsStrategyBuilder.create()
+                .setSslContext(sslContext)
+                .setTlsVersions("TLSv1.2", "TLSv1.1", "TLSv1")  // Same protocol set as the other clients
+                .setHostnameVerifier(NoopHostnameVerifier.INSTANCE)
+                .buildAsync()
+            : ClientTlsStrategyBuilder.create().useSystemProperties().buildAsync();
+        
+        this.connectionManager = PoolingAsyncClientConnectionManagerBuilder.create()
+            .setTlsStrategy(tlsStrategy)
+            .setDnsResolver(new org.apache.hc.client5.http.DnsResolver() {
+                @Override
+                public InetAddress[] resolve(String host) throws UnknownHostException {
+                    return dnsResolver.resolve(host);
+                }
+                
+                @Override
+                public String resolveCanonicalHostname(String host) throws UnknownHostException {
+                    return InetAddress.getByName(host).getCanonicalHostName();
+                }
+            })
+            // Lease HTTP/2 connections to several exchanges at once instead of one at a time
+            .setMessageMultiplexing(true)
+            .setMaxConnTotal(maxConnTotal)
+            .setMaxConnPerRoute(maxConnPerRoute)
+            .setDefaultConnectionConfig(ConnectionConfig.custom()
+                .setConnectTimeout(connectTimeoutMs, TimeUnit.MILLISECONDS)
+                .setSocketTimeout(readTimeoutMs, TimeUnit.MILLISECONDS)
+                .build())
+            // The client builder's own version policy setter is deprecated; this one governs ALPN
+            .setDefaultTlsConfig(TlsConfig.custom()
+                .setVersionPolicy(versionPolicy)
+                .build())
+            .build();
+        
+        this.defaultRequestConfig = RequestConfig.custom()
+            .setConnectionRequestTimeout(connectTimeoutMs, TimeUnit.MILLISECONDS)
+            .setResponseTimeout(readTimeoutMs, TimeUnit.MILLISECONDS)
+            .setRedirectsEnabled(true)
+            .setMaxRedirects(5)
+            .setCircularRedirectsAllowed(false)
+            .build();
+        
+        this.client = HttpAsyncClients.custom()
+            .setConnectionManager(connectionManager)
+            .setIOReactorConfig(IOReactorConfig.custom()
+                .setSoTimeout(readTimeoutMs, TimeUnit.MILLISECONDS)
+                // Timeouts are checked once per select interval (1 s by default); per-request ones can be shorter
+                .setSelectInterval(TimeValue.ofMilliseconds(100))
+                .build())
+            .setDefaultRequestConfig(defaultRequestConfig)
+            .setUserAgent(userAgent)
+            .disableCookieManagement()
+            .build();
+        this.client.start();
+    }
+    
+    @Override
+    public String getName() {
+        return "http2";
+    }
+    
+    @Override
+    public ApiResponse execute(HttpRequestBase httpRequest, long startTime) throws IOException {
+        return HttpEngine.await(executeAsync(httpRequest, startTime));
+    }
+    
+    @Override
+    public boolean isNonBlocking() {
+        return true;
+    }
+    
+    /**
+     * Execute the request and buffer the response. The future completes on an
+     * I/O reactor thread with the body already read; cancelling it cancels the exchange.
+     */
+    @Override
+    public CompletableFuture<ApiResponse> executeAsync(HttpRequestBase httpRequest, final long startTime) {
+        final CompletableFuture<ApiResponse> execution = new CompletableFuture<>();
+        final SimpleHttpRequest request;
+        try {
+            request = toSimpleRequest(httpRequest);
+            request.setConfig(toRequestConfig(httpRequest.getConfig()));
+        } catch (IOException e) {
+            execution.completeExceptionally(e);
+            return execution;
+        }
+        
+        final HttpClientContext context = HttpClientContext.create();
+        final Future<SimpleHttpResponse> exchange = client.execute(SimpleRequestProducer.create(request),
+            SimpleResponseConsumer.create(), context,
+            new FutureCallback<SimpleHttpResponse>() {
+                @Override
+                public void completed(SimpleHttpResponse response) {
+                    ProtocolVersion version = context.getProtocolVersion();
+                    if (version != null && version.getMajor() >= 2) {
+                        http2Exchanges.incrementAndGet();
+                    } else {
+                        http1Exchanges.incrementAndGet();
+                    }
+                    try {
+                        execution.complete(toApiResponse(response, version, System.currentTimeMillis() - startTime));
+                    } catch (IOException e) {
+                        failures.incrementAndGet();
+                        execution.completeExceptionally(e);
+                    }
+                }
+                
+                @Override
+                public void failed(Exception e) {
+                    failures.incrementAndGet();
+                    execution.completeExceptionally(e);
+                }
+                
+                @Override
+                public void cancelled() {
+                    failures.incrementAndGet();
+                    execution.completeExceptionally(new CancellationException("Request cancelled"));
+                }
+            });
+        execution.whenComplete((response, failure) -> {
+            if (execution.isCancelled()) {
+                exchange.cancel(true);
+            }
+        });
+        return execution;
+    }
+    
+    private static SimpleHttpRequest toSimpleRequest(HttpRequestBase httpRequest) throws IOException {
+        SimpleHttpRequest request = SimpleHttpRequest.create(httpRequest.getMethod(), httpRequest.getURI());
+        for (org.apache.http.Header header : httpRequest.getAllHeaders()) {
+            if (!isSkipped(header.getName())) {
+                request.addHeader(header.getName(), header.getValue());
+            }
+        }
+        
+        if (httpRequest instanceof HttpEntityEnclosingRequest) {
+            HttpEntity entity = ((HttpEntityEnclosingRequest) httpRequest).getEntity();
+            if (entity != null) {
+                ContentType contentType = entity.getContentType() != null
+                    ? ContentType.parse(entity.getContentType().getValue())
+                    : ContentType.APPLICATION_OCTET_STREAM;
+                request.setBody(EntityUtils.toByteArray(entity), contentType);
+            }
+        }
+        return request;
+    }
+    
+    /**
+     * The request's own timeouts (see RequestTimeouts) on top of the engine's defaults
+     */
+    @SuppressWarnings("deprecation")  // Per-request connect timeouts are still honoured, and the deadline backs them up
+    private RequestConfig toRequestConfig(org.apache.http.client.config.RequestConfig config) {
+        if (config == null) {
+            return defaultRequestConfig;
+        }
+        RequestConfig.Builder builder = RequestConfig.copy(defaultRequestConfig);
+        if (config.getConnectionRequestTimeout() > 0) {
+            builder.setConnectionRequestTimeout(config.getConnectionRequestTimeout(), TimeUnit.MILLISECONDS);
+        }
+        if (config.getConnectTimeout() > 0) {
+            builder.setConnectTimeout(config.getConnectTimeout(), TimeUnit.MILLISECONDS);
+        }
+        if (config.getSocketTimeout() > 0) {
+            builder.setResponseTimeout(config.getSocketTimeout(), TimeUnit.MILLISECONDS);
+        }
+        return builder.build();
+    }
+    
+    private static boolean isSkipped(String name) {
+        for (String skipped : SKIPPED_HEADERS) {
+            if (skipped.equalsIgnoreCase(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private static ApiResponse toApiResponse(SimpleHttpResponse response, ProtocolVersion version, long responseTime)
+            throws IOException {
+        Map<String, String> headers = new HashMap<>();
+        for (Header header : response.getHeaders()) {
+            headers.put(header.getName(), header.getValue());
+        }
+        
+        // Same rule as the other engines: declared charset, else UTF-8
+        byte[] encoded = response.getBodyBytes() != null ? response.getBodyBytes() : new byte[0];
+        Header contentEncoding = response.getFirstHeader("Content-Encoding");
+        byte[] bytes = new DecodingInputStream(new ByteArrayInputStream(encoded),
+            contentEncoding != null ? contentEncoding.getValue() : null).readAll();
+        ContentType contentType = response.getContentType();
+        Charset charset = contentType != null && contentType.getCharset() != null
+            ? contentType.getCharset() : StandardCharsets.UTF_8;
+        
+        // HTTP/2 has no reason phrase
+        String statusText = response.getReasonPhrase();
+        if (statusText == null || statusText.isEmpty()) {
+            statusText = EnglishReasonPhraseCatalog.INSTANCE.getReason(response.getCode(), Locale.ENGLISH);
+        }
+        
+        ApiResponse apiResponse = new ApiResponse();
+        apiResponse.setStatus(response.getCode());
+        apiResponse.setStatusText(statusText);
+        apiResponse.setHeaders(headers);
+        apiResponse.setBody(new String(bytes, charset));
+        apiResponse.setResponseTime(responseTime);
+        apiResponse.setSize(bytes.length);
+        apiResponse.setCompressedSize(encoded.length);
+        apiResponse.setProtocol(protocolName(version));
+        return apiResponse;
+    }
+    
+    /**
+     * "HTTP/2" or "HTTP/1.1", as reported in ApiResponse.protocol
+     */
+    static String protocolName(ProtocolVersion version) {
+        if (version == null) {
+            return null;
+        }
+        return version.getMajor() >= 2 ? version.getProtocol() + "/" + version.getMajor() : version.toString();
+    }
+    
+    @Override
+    public void shutdown() {
+        client.close(CloseMode.GRACEFUL);
+    }
+    
+    public EngineStatistics getStatistics() {
+        EngineStatistics statistics = new EngineStatistics();
+        statistics.versionPolicy = versionPolicy.name();
+        statistics.http2Exchanges = http2Exchanges.get();
+        statistics.http1Exchanges = http1Exchanges.get();
+        statistics.failures = failures.get();
+        PoolStats total = connectionManager.getTotalStats();
+        statistics.leasedConnections = total.getLeased();
+        statistics.availableConnections = total.getAvailable();
+        statistics.pendingConnections = total.getPending();
+        return statistics;
+    }
+    
+    /**
+     * HTTP/2 engine statistics structure
+     */
+    public static class EngineStatistics {
+        public String versionPolicy;
+        public long http2Exchanges;
+        public long http1Exchanges;
+        public long failures;
+        public int leasedConnections;
+        public int availableConnections;
+        public int pendingConnections;
+    }
+}
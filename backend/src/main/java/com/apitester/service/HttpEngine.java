@@ -0,0 +1,78 @@
+package com.apitester.service;
+
+import com.apitester.model.ApiResponse;
+import org.apache.http.client.methods.HttpRequestBase;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Sends an upstream request and buffers the response into an ApiResponse.
+ * {@link ApiRequestService} builds every request as an HttpClient 4 request (so the
+ * response cache can add conditional headers to it) and hands it to the engine picked
+ * by the "engine" setting, or to the HTTP/2 engine when the request asks for it.
+ *
+ * Implementations are thread-safe and shared by all requests.
+ */
+public interface HttpEngine {
+    
+    /**
+     * Name used in the "engine" setting and in benchmark output
+     */
+    String getName();
+    
+    /**
+     * Execute the request and buffer the response on the calling thread
+     *
+     * @param startTime wall-clock time the caller started the request, for ApiResponse.responseTime
+     */
+    ApiResponse execute(HttpRequestBase httpRequest, long startTime) throws IOException;
+    
+    /**
+     * Execute the request without holding the calling thread, where the engine can.
+     * Blocking engines run the request on the calling thread and return a completed future.
+     */
+    default CompletableFuture<ApiResponse> executeAsync(HttpRequestBase httpRequest, long startTime) {
+        CompletableFuture<ApiResponse> execution = new CompletableFuture<>();
+        try {
+            execution.complete(execute(httpRequest, startTime));
+        } catch (IOException | RuntimeException e) {
+            execution.completeExceptionally(e);
+        }
+        return execution;
+    }
+    
+    /**
+     * Whether {@link #executeAsync} returns before the response arrives. Cancelling
+     * such a future abandons the exchange.
+     */
+    default boolean isNonBlocking() {
+        return false;
+    }
+    
+    void shutdown();
+    
+    /**
+     * Wait for an execution on the calling thread and rethrow its failure the way a
+     * blocking engine would have thrown it
+     */
+    static ApiResponse await(CompletableFuture<ApiResponse> execution) throws IOException {
+        try {
+            return execution.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the upstream response");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package com.apitester.service;
+
+import com.apitester.model.PhaseTimings;
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpHost;
+import org.apache.http.config.Registry;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ConnectionRequest;
+import org.apache.http.conn.DnsResolver;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.protocol.BasicHttpContext;
+
+import java.io.IOException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Pooling connection manager that applies per-host route limits and records
+ * how long callers wait to lease a connection, so pools can be sized from data.
+ */
+public class InstrumentedConnectionManager extends PoolingHttpClientConnectionManager {
+    
+    private static final Logger logger = Logger.getLogger(InstrumentedConnectionManager.class.getName());
+    
+    private final Map<String, Integer> hostLimits;
+    private final Set<HttpRoute> configuredRoutes = ConcurrentHashMap.newKeySet();
+    private final ConcurrentHashMap<HttpRoute, LeaseStats> leaseStats = new ConcurrentHashMap<>();
+    
+    /**
+     * @param dnsResolver resolver used when opening new connections
+     * @param hostLimits max connections per route keyed by "host" or "host:port"
+     */
+    public InstrumentedConnectionManager(Registry<ConnectionSocketFactory> registry, DnsResolver dnsResolver,
+                                         Map<String, Integer> hostLimits) {
+        super(registry, null, dnsResolver);
+        this.hostLimits = hostLimits;
+    }
+    
+    @Override
+    public ConnectionRequest requestConnection(final HttpRoute route, Object state) {
+        applyHostLimit(route);
+        final ConnectionRequest delegate = super.requestConnection(route, state);
+        final LeaseStats stats = leaseStats.computeIfAbsent(route, r -> new LeaseStats());
+        
+        return new ConnectionRequest() {
+            @Override
+            public HttpClientConnection get(long timeout, TimeUnit timeUnit)
+                    throws InterruptedException, ExecutionException, ConnectionPoolTimeoutException {
+                long start = System.nanoTime();
+                try {
+                    HttpClientConnection connection = delegate.get(timeout, timeUnit);
+                    long waitNanos = System.nanoTime() - start;
+                    stats.record(waitNanos);
+                    
+                    PhaseTimings timings = PhaseTimer.current();
+                    if (timings != null) {
+                        timings.setPoolWaitNanos(timings.getPoolWaitNanos() + waitNanos);
+                    }
+                    return connection;
+                } catch (ConnectionPoolTimeoutException e) {
+                    stats.timeouts.incrementAndGet();
+                    throw e;
+                }
+            }
+            
+            @Override
+            public boolean cancel() {
+                return delegate.cancel();
+            }
+        };
+    }
+    
+    /**
+     * Routes are created on demand, so host-specific limits are applied the first
+     * time a route is seen rather than up front.
+     */
+    private void applyHostLimit(HttpRoute route) {
+        if (hostLimits.isEmpty() || configuredRoutes.contains(route)) {
+            return;
+        }
+        String host = route.getTargetHost().getHostName().toLowerCase();
+        Integer limit = hostLimits.get(host + ":" + route.getTargetHost().getPort());
+        if (limit == null) {
+            limit = hostLimits.get(host);
+        }
+        if (limit != null) {
+            setMaxPerRoute(route, limit);
+        }
+        configuredRoutes.add(route);
+    }
+    
+    /**
+     * Open connections to an HTTPS host and park them in the pool, so the first
+     * requests to it find a connection whose TCP and TLS handshakes are already done.
+     * The connections are leased together so that each one is a separate socket.
+     *
+     * @param keepAliveMs how long the parked connections stay reusable
+     * @return number of connections opened
+     */
+    public int warmUp(String host, int port, int connections, int connectTimeoutMs, long keepAliveMs) {
+        HttpRoute route = new HttpRoute(new HttpHost(host, port, "https"), null, true);
+        applyHostLimit(route);
+        
+        List<HttpClientConnection> leased = new ArrayList<>();
+        int opened = 0;
+        try {
+            for (int i = 0; i < connections; i++) {
+                HttpClientConnection connection = super.requestConnection(route, null)
+                    .get(connectTimeoutMs, TimeUnit.MILLISECONDS);
+                leased.add(connection);
+                if (!connection.isOpen()) {
+                    connect(connection, route, connectTimeoutMs, new BasicHttpContext());
+                    routeComplete(connection, route, new BasicHttpContext());
+                    opened++;
+                }
+            }
+        } catch (IOException | InterruptedException | ExecutionException e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            logger.warning("Connection warm-up for " + host + ":" + port + " stopped: " + e.getMessage());
+        } finally {
+            for (HttpClientConnection connection : leased) {
+                // Closed connections are dropped by the pool; open ones become available
+                releaseConnection(connection, null, keepAliveMs, TimeUnit.MILLISECONDS);
+            }
+        }
+        return opened;
+    }
+    
+    /**
+     * Snapshot of the pool: totals plus leased/available/pending and lease-wait
+     * latency for every route that has been used
+     */
+    public PoolStatistics getStatistics() {
+        PoolStatistics statistics = new PoolStatistics();
+        PoolStats total = getTotalStats();
+        statistics.leased = total.getLeased();
+        statistics.available = total.getAvailable();
+        statistics.pending = total.getPending();
+        statistics.maxTotal = total.getMax();
+        statistics.defaultMaxPerRoute = getDefaultMaxPerRoute();
+        
+        for (Map.Entry<HttpRoute, LeaseStats> entry : leaseStats.entrySet()) {
+            HttpRoute route = entry.getKey();
+            PoolStats stats = getStats(route);
+            LeaseStats lease = entry.getValue();
+            
+            RouteStatistics routeStatistics = new RouteStatistics();
+            routeStatistics.route = route.getTargetHost().toURI();
+            routeStatistics.leased = stats.getLeased();
+            routeStatistics.available = stats.getAvailable();
+            routeStatistics.pending = stats.getPending();
+            routeStatistics.max = stats.getMax();
+            routeStatistics.leaseCount = lease.count.get();
+            routeStatistics.leaseTimeouts = lease.timeouts.get();
+            routeStatistics.leaseWaitAvgMs = lease.count.get() > 0
+                ? lease.totalNanos.get() / (double) lease.count.get() / 1_000_000.0 : 0;
+            routeStatistics.leaseWaitMaxMs = lease.maxNanos.get() / 1_000_000.0;
+            statistics.routes.add(routeStatistics);
+            
+            statistics.leaseCount += routeStatistics.leaseCount;
+            statistics.leaseTimeouts += routeStatistics.leaseTimeouts;
+        }
+        return statistics;
+    }
+    
+    private static class LeaseStats {
+        final AtomicLong count = new AtomicLong();
+        final AtomicLong totalNanos = new AtomicLong();
+        final AtomicLong maxNanos = new AtomicLong();
+        final AtomicLong timeouts = new AtomicLong();
+        
+        void record(long nanos) {
+            count.incrementAndGet();
+            totalNanos.addAndGet(nanos);
+            maxNanos.accumulateAndGet(nanos, Math::max);
+        }
+    }
+    
+    /**
+     * Pool statistics structure
+     */
+    public static class PoolStatistics {
+        public int leased;
+        public int available;
+        public int pending;
+        public int maxTotal;
+        public int defaultMaxPerRoute;
+        public long leaseCount;
+        public long leaseTimeouts;
+        public List<RouteStatistics> routes = new ArrayList<>();
+    }
+    
+    /**
+     * Per-route pool statistics structure
+     */
+    public static class RouteStatistics {
+        public String route;
+        public int leased;
+        public int available;
+        public int pending;
+        public int max;
+        public long leaseCount;
+        public long leaseTimeouts;
+        public double leaseWaitAvgMs;
+        public double leaseWaitMaxMs;
+    }
+}
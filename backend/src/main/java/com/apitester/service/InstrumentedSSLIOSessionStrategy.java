@@ -0,0 +1,50 @@
+package com.apitester.service;
+
+import org.apache.http.HttpHost;
+import org.apache.http.nio.conn.ssl.SSLIOSessionStrategy;
+import org.apache.http.nio.reactor.IOSession;
+import org.apache.http.nio.reactor.ssl.SSLIOSession;
+
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLSession;
+import java.io.IOException;
+
+/**
+ * SSL strategy for the non-blocking client that records full versus resumed
+ * handshakes. The handshake starts in upgrade and completes, on a reactor
+ * thread, just before verifySession is called.
+ */
+public class InstrumentedSSLIOSessionStrategy extends SSLIOSessionStrategy {
+    
+    private static final String HANDSHAKE_START_MILLIS = "apitester.tls.startMillis";
+    private static final String HANDSHAKE_START_NANOS = "apitester.tls.startNanos";
+    
+    private final TlsSessionMetrics tlsMetrics;
+    
+    public InstrumentedSSLIOSessionStrategy(SSLContext sslContext, String[] supportedProtocols,
+                                            String[] supportedCipherSuites, HostnameVerifier hostnameVerifier,
+                                            TlsSessionMetrics tlsMetrics) {
+        super(sslContext, supportedProtocols, supportedCipherSuites, hostnameVerifier);
+        this.tlsMetrics = tlsMetrics;
+    }
+    
+    @Override
+    public SSLIOSession upgrade(HttpHost host, IOSession iosession) throws IOException {
+        iosession.setAttribute(HANDSHAKE_START_MILLIS, System.currentTimeMillis());
+        iosession.setAttribute(HANDSHAKE_START_NANOS, System.nanoTime());
+        return super.upgrade(host, iosession);
+    }
+    
+    @Override
+    protected void verifySession(HttpHost host, IOSession iosession, SSLSession sslsession) throws SSLException {
+        Object startMillis = iosession.removeAttribute(HANDSHAKE_START_MILLIS);
+        Object startNanos = iosession.removeAttribute(HANDSHAKE_START_NANOS);
+        if (startMillis instanceof Long && startNanos instanceof Long) {
+            tlsMetrics.record(host.getHostName(), host.getPort(), sslsession,
+                (Long) startMillis, System.nanoTime() - (Long) startNanos);
+        }
+        super.verifySession(host, iosession, sslsession);
+    }
+}
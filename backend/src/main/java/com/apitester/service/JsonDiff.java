@@ -0,0 +1,438 @@
+package com.apitester.service;
+
+import com.apitester.model.DiffChange;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.TextNode;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Structural diff of two JSON trees, in time linear in their size (n log n for the middle
+ * of an array whose elements moved), so large documents cannot blow up quadratically.
+ *
+ * Objects are compared field by field. Arrays are aligned before their elements are
+ * compared: the common prefix and suffix match as they are; in the middle, elements are
+ * matched by an identifying field when every element there has a distinct one
+ * (arrayKeys), otherwise by anchoring on elements that occur exactly once on each side,
+ * in the same order (as patience diff does), and pairing the elements between anchors
+ * by position. An element inserted near the front of a long array is therefore one
+ * addition, not a change at every index after it. Numbers compare by value.
+ */
+final class JsonDiff {
+    
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    
+    private final List<String[]> ignorePaths = new ArrayList<>();
+    private final List<String> arrayKeys;
+    private final int maxChanges;
+    private final int maxValueChars;
+    private final List<DiffChange> changes = new ArrayList<>();
+    private final Comparator<JsonNode> valueComparator = (a, b) -> valueEquals(a, b) ? 0 : 1;
+    private int added;
+    private int removed;
+    private int changed;
+    
+    JsonDiff(List<String> ignorePaths, List<String> arrayKeys, int maxChanges, int maxValueChars) {
+        if (ignorePaths != null) {
+            for (String pointer : ignorePaths) {
+                if (pointer == null || !pointer.startsWith("/")) {
+                    throw new IllegalArgumentException("ignorePaths entries must be JSON pointers, got " + pointer);
+                }
+                String[] segments = pointer.substring(1).split("/", -1);
+                for (int i = 0; i < segments.length; i++) {
+                    segments[i] = segments[i].replace("~1", "/").replace("~0", "~");
+                }
+                this.ignorePaths.add(segments);
+            }
+        }
+        this.arrayKeys = arrayKeys;
+        this.maxChanges = maxChanges;
+        this.maxValueChars = maxValueChars;
+    }
+    
+    void diff(JsonNode left, JsonNode right) {
+        compare(left, right, Path.ROOT, Path.ROOT);
+    }
+    
+    List<DiffChange> getChanges() {
+        return changes;
+    }
+    
+    int getAdded() {
+        return added;
+    }
+    
+    int getRemoved() {
+        return removed;
+    }
+    
+    int getChanged() {
+        return changed;
+    }
+    
+    boolean isTruncated() {
+        return added + removed + changed > changes.size();
+    }
+    
+    private void compare(JsonNode left, JsonNode right, Path leftPath, Path rightPath) {
+        if (isIgnored(rightPath)) {
+            return;
+        }
+        if (left.isObject() && right.isObject()) {
+            Iterator<Map.Entry<String, JsonNode>> fields = left.fields();
+            while (fields.hasNext()) {
+                Map.Entry<String, JsonNode> field = fields.next();
+                JsonNode other = right.get(field.getKey());
+                if (other == null) {
+                    removed(leftPath.child(field.getKey()), field.getValue());
+                } else {
+                    compare(field.getValue(), other, leftPath.child(field.getKey()), rightPath.child(field.getKey()));
+                }
+            }
+            fields = right.fields();
+            while (fields.hasNext()) {
+                Map.Entry<String, JsonNode> field = fields.next();
+                if (!left.has(field.getKey())) {
+                    added(rightPath.child(field.getKey()), field.getValue());
+                }
+            }
+        } else if (left.isArray() && right.isArray()) {
+            compareArrays(left, right, leftPath, rightPath);
+        } else if (!valueEquals(left, right)) {
+            record(DiffChange.CHANGED, rightPath, leftPath, left, right);
+        }
+    }
+    
+    private void compareArrays(JsonNode left, JsonNode right, Path leftPath, Path rightPath) {
+        int start = 0;
+        int leftEnd = left.size();
+        int rightEnd = right.size();
+        while (start < leftEnd && start < rightEnd && same(left.get(start), right.get(start))) {
+            start++;
+        }
+        while (leftEnd > start && rightEnd > start && same(left.get(leftEnd - 1), right.get(rightEnd - 1))) {
+            leftEnd--;
+            rightEnd--;
+        }
+        if (start == leftEnd || start == rightEnd) {
+            // Pure insertion or deletion
+            gap(left, right, start, leftEnd, start, rightEnd, leftPath, rightPath);
+        } else if (!alignByKey(left, right, start, leftEnd, rightEnd, leftPath, rightPath)) {
+            alignByAnchors(left, right, start, leftEnd, rightEnd, leftPath, rightPath);
+        }
+    }
+    
+    /**
+     * Match elements on the first of arrayKeys that every element in the middle of both
+     * arrays has, with a distinct scalar value on each side
+     */
+    private boolean alignByKey(JsonNode left, JsonNode right, int start, int leftEnd, int rightEnd,
+                               Path leftPath, Path rightPath) {
+        if (arrayKeys == null) {
+            return false;
+        }
+        for (String key : arrayKeys) {
+            Map<String, Integer> leftIndex = index(left, start, leftEnd, key);
+            Map<String, Integer> rightIndex = leftIndex != null ? index(right, start, rightEnd, key) : null;
+            if (rightIndex == null) {
+                continue;
+            }
+            for (int i = start; i < leftEnd; i++) {
+                Integer j = rightIndex.get(left.get(i).get(key).asText());
+                if (j == null) {
+                    removed(leftPath.child(i), left.get(i));
+                } else {
+                    compare(left.get(i), right.get(j), leftPath.child(i), rightPath.child(j));
+                }
+            }
+            for (int j = start; j < rightEnd; j++) {
+                if (!leftIndex.containsKey(right.get(j).get(key).asText())) {
+                    added(rightPath.child(j), right.get(j));
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+    
+    private static Map<String, Integer> index(JsonNode array, int start, int end, String key) {
+        Map<String, Integer> index = new HashMap<>();
+        for (int i = start; i < end; i++) {
+            JsonNode id = array.get(i).get(key);
+            if (id == null || !id.isValueNode() || id.isNull() || index.put(id.asText(), i) != null) {
+                return null;
+            }
+        }
+        return index;
+    }
+    
+    /**
+     * Anchor on elements that occur once on each side, keeping the longest run of them
+     * that is in the same order on both, and pair up what lies between anchors
+     */
+    private void alignByAnchors(JsonNode left, JsonNode right, int start, int leftEnd, int rightEnd,
+                                Path leftPath, Path rightPath) {
+        // hash -> {count left, count right, index left, index right}
+        Map<Integer, int[]> occurrences = new HashMap<>();
+        int[] leftHashes = new int[leftEnd - start];
+        for (int i = start; i < leftEnd; i++) {
+            leftHashes[i - start] = left.get(i).hashCode();
+            int[] occurrence = occurrences.computeIfAbsent(leftHashes[i - start], hash -> new int[4]);
+            occurrence[0]++;
+            occurrence[2] = i;
+        }
+        for (int j = start; j < rightEnd; j++) {
+            int[] occurrence = occurrences.get(right.get(j).hashCode());
+            if (occurrence != null) {
+                occurrence[1]++;
+                occurrence[3] = j;
+            }
+        }
+        
+        // Unique pairs in left order; their right indexes' longest increasing run are the anchors
+        int[] candidates = new int[leftHashes.length];
+        int[] candidateLeft = new int[leftHashes.length];
+        int count = 0;
+        for (int i = start; i < leftEnd; i++) {
+            int[] occurrence = occurrences.get(leftHashes[i - start]);
+            if (occurrence[0] == 1 && occurrence[1] == 1 && same(left.get(i), right.get(occurrence[3]))) {
+                candidateLeft[count] = i;
+                candidates[count++] = occurrence[3];
+            }
+        }
+        int[] anchors = longestIncreasing(candidates, count);
+        
+        int leftFrom = start;
+        int rightFrom = start;
+        for (int anchor : anchors) {
+            gap(left, right, leftFrom, candidateLeft[anchor], rightFrom, candidates[anchor], leftPath, rightPath);
+            leftFrom = candidateLeft[anchor] + 1;
+            rightFrom = candidates[anchor] + 1;
+        }
+        gap(left, right, leftFrom, leftEnd, rightFrom, rightEnd, leftPath, rightPath);
+    }
+    
+    /**
+     * Positions (into values) of a longest strictly increasing subsequence, by patience sorting
+     */
+    private static int[] longestIncreasing(int[] values, int count) {
+        int[] tails = new int[count];
+        int[] previous = new int[count];
+        int length = 0;
+        for (int k = 0; k < count; k++) {
+            int low = 0;
+            int high = length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (values[tails[middle]] < values[k]) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            previous[k] = low > 0 ? tails[low - 1] : -1;
+            tails[low] = k;
+            if (low == length) {
+                length++;
+            }
+        }
+        int[] run = new int[length];
+        for (int k = length > 0 ? tails[length - 1] : -1, at = length - 1; k >= 0; k = previous[k], at--) {
+            run[at] = k;
+        }
+        return run;
+    }
+    
+    /**
+     * Unmatched stretch between alignment points: pair by position, the rest was added or removed
+     */
+    private void gap(JsonNode left, JsonNode right, int leftFrom, int leftTo, int rightFrom, int rightTo,
+                     Path leftPath, Path rightPath) {
+        int paired = Math.min(leftTo - leftFrom, rightTo - rightFrom);
+        for (int k = 0; k < paired; k++) {
+            compare(left.get(leftFrom + k), right.get(rightFrom + k),
+                leftPath.child(leftFrom + k), rightPath.child(rightFrom + k));
+        }
+        for (int i = leftFrom + paired; i < leftTo; i++) {
+            removed(leftPath.child(i), left.get(i));
+        }
+        for (int j = rightFrom + paired; j < rightTo; j++) {
+            added(rightPath.child(j), right.get(j));
+        }
+    }
+    
+    private boolean same(JsonNode left, JsonNode right) {
+        return left.equals(valueComparator, right);
+    }
+    
+    private static boolean valueEquals(JsonNode left, JsonNode right) {
+        if (left.isNumber() && right.isNumber()) {
+            if (left.isIntegralNumber() && right.isIntegralNumber()) {
+                return left.isBigInteger() || right.isBigInteger()
+                    ? left.bigIntegerValue().equals(right.bigIntegerValue())
+                    : left.longValue() == right.longValue();
+            }
+            return left.decimalValue().compareTo(right.decimalValue()) == 0;
+        }
+        return left.equals(right);
+    }
+    
+    /**
+     * Only a path exactly as deep as an ignore pattern needs checking: deeper paths are
+     * never reached once their ancestor was ignored
+     */
+    private boolean isIgnored(Path path) {
+        for (String[] pattern : ignorePaths) {
+            if (pattern.length == path.depth && path.matches(pattern)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private void added(Path path, JsonNode value) {
+        if (!isIgnored(path)) {
+            record(DiffChange.ADDED, path, null, null, value);
+        }
+    }
+    
+    private void removed(Path path, JsonNode value) {
+        if (!isIgnored(path)) {
+            record(DiffChange.REMOVED, path, null, value, null);
+        }
+    }
+    
+    private void record(String op, Path path, Path fromPath, JsonNode left, JsonNode right) {
+        if (DiffChange.ADDED.equals(op)) {
+            added++;
+        } else if (DiffChange.REMOVED.equals(op)) {
+            removed++;
+        } else {
+            changed++;
+        }
+        if (changes.size() >= maxChanges) {
+            return;
+        }
+        DiffChange change = new DiffChange(op, path.toString(), preview(left), preview(right));
+        if (fromPath != null) {
+            String from = fromPath.toString();
+            if (!from.equals(change.getPath())) {
+                change.setFromPath(from);
+            }
+        }
+        change.setTruncated(change.getLeft() != left || change.getRight() != right);
+        changes.add(change);
+    }
+    
+    /**
+     * The value itself, or the start of its JSON text when that is longer than maxValueChars
+     */
+    private JsonNode preview(JsonNode value) {
+        if (value == null) {
+            return null;
+        }
+        if (value.isTextual()) {
+            String text = value.textValue();
+            return text.length() <= maxValueChars ? value : TextNode.valueOf(text.substring(0, maxValueChars) + "...");
+        }
+        if (value.isValueNode()) {
+            return value;
+        }
+        BoundedWriter out = new BoundedWriter(maxValueChars);
+        try {
+            MAPPER.writeValue(out, value);
+            return value;
+        } catch (IOException e) {
+            return TextNode.valueOf(out.text.substring(0, maxValueChars) + "...");
+        }
+    }
+    
+    /**
+     * Gives up once the limit is passed, so previewing a large subtree costs only the limit
+     */
+    private static final class BoundedWriter extends Writer {
+        private final StringBuilder text = new StringBuilder();
+        private final int limit;
+        
+        BoundedWriter(int limit) {
+            this.limit = limit;
+        }
+        
+        @Override
+        public void write(char[] buffer, int offset, int length) throws IOException {
+            text.append(buffer, offset, Math.min(length, limit + 1 - text.length()));
+            if (text.length() > limit) {
+                throw new IOException("Value longer than " + limit + " characters");
+            }
+        }
+        
+        @Override
+        public void flush() {
+        }
+        
+        @Override
+        public void close() {
+        }
+    }
+    
+    /**
+     * A location in one of the trees, as a chain of segments; turned into a JSON pointer
+     * only for the changes that are reported
+     */
+    private static final class Path {
+        static final Path ROOT = new Path(null, null, -1);
+        
+        final Path parent;
+        final String field;
+        final int index;
+        final int depth;
+        
+        private Path(Path parent, String field, int index) {
+            this.parent = parent;
+            this.field = field;
+            this.index = index;
+            this.depth = parent == null ? 0 : parent.depth + 1;
+        }
+        
+        Path child(String field) {
+            return new Path(this, field, -1);
+        }
+        
+        Path child(int index) {
+            return new Path(this, null, index);
+        }
+        
+        boolean matches(String[] pattern) {
+            for (Path path = this; path.parent != null; path = path.parent) {
+                String segment = pattern[path.depth - 1];
+                if (!segment.equals("*") && !segment.equals(path.field != null ? path.field : String.valueOf(path.index))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        
+        @Override
+        public String toString() {
+            String[] segments = new String[depth];
+            for (Path path = this; path.parent != null; path = path.parent) {
+                segments[path.depth - 1] = path.field != null
+                    ? path.field.replace("~", "~0").replace("/", "~1")
+                    : String.valueOf(path.index);
+            }
+            StringBuilder pointer = new StringBuilder();
+            for (String segment : segments) {
+                pointer.append('/').append(segment);
+            }
+            return pointer.toString();
+        }
+    }
+}
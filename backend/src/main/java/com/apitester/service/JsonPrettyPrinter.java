@@ -0,0 +1,131 @@
+package com.apitester.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Reformats JSON with indentation by copying it token by token from a parser to a
+ * generator, in one pass and without building a tree, so memory stays at the two
+ * small buffers however large the document is. Numbers are copied as written and
+ * duplicate keys are kept.
+ *
+ * Output is written as the input is read, so invalid input cannot simply be discarded:
+ * when a token fails to parse, the rest of the text from the end of the last token
+ * written is copied unchanged. That boundary is found in the text itself rather than
+ * from the parser, which has read ahead of what it has returned (past the colon and
+ * into the value after a field name, for one). Nothing of the input is lost, and text
+ * that is not JSON at all comes out as it went in.
+ */
+public final class JsonPrettyPrinter {
+    
+    private static final JsonFactory FACTORY = new JsonFactory()
+        .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+        // A document cut off by invalid input must not be closed with brackets it never had
+        .disable(JsonGenerator.Feature.AUTO_CLOSE_JSON_CONTENT);
+    
+    private JsonPrettyPrinter() {}
+    
+    /**
+     * Write text to out, reformatted if it is JSON
+     *
+     * @return whether all of the text was valid JSON
+     */
+    public static boolean print(String text, Writer out) throws IOException {
+        JsonGenerator generator = FACTORY.createGenerator(out);
+        generator.useDefaultPrettyPrinter();
+        int copiedTo = 0;
+        try (JsonParser parser = FACTORY.createParser(text)) {
+            JsonToken token;
+            while ((token = parser.nextToken()) != null) {
+                int start = (int) parser.getTokenLocation().getCharOffset();
+                copy(token, parser, generator);
+                copiedTo = endOf(text, start, token);
+            }
+            return true;
+        } catch (JsonProcessingException e) {
+            // Everything up to the last good token is out, bar the separator after it; send the rest as it is
+            generator.flush();
+            out.write(text, copiedTo, text.length() - copiedTo);
+            return false;
+        } finally {
+            generator.close();
+        }
+    }
+    
+    /**
+     * Offset just past the token starting at start. Separators after it (comma, colon)
+     * belong to the next token, which the generator writes along with that token.
+     */
+    static int endOf(String text, int start, JsonToken token) {
+        int i = start;
+        switch (token) {
+            case FIELD_NAME:
+            case VALUE_STRING:
+                for (i++; i < text.length(); i++) {
+                    char c = text.charAt(i);
+                    if (c == '\\') {
+                        i++;
+                    } else if (c == '"') {
+                        return i + 1;
+                    }
+                }
+                return text.length();
+            case VALUE_NUMBER_INT:
+            case VALUE_NUMBER_FLOAT:
+            case VALUE_TRUE:
+            case VALUE_FALSE:
+            case VALUE_NULL:
+                while (i < text.length() && (Character.isLetterOrDigit(text.charAt(i))
+                        || text.charAt(i) == '.' || text.charAt(i) == '-' || text.charAt(i) == '+')) {
+                    i++;
+                }
+                return i;
+            default:
+                // Brackets
+                return start + 1;
+        }
+    }
+    
+    private static void copy(JsonToken token, JsonParser parser, JsonGenerator generator) throws IOException {
+        switch (token) {
+            case START_OBJECT:
+                generator.writeStartObject();
+                break;
+            case END_OBJECT:
+                generator.writeEndObject();
+                break;
+            case START_ARRAY:
+                generator.writeStartArray();
+                break;
+            case END_ARRAY:
+                generator.writeEndArray();
+                break;
+            case FIELD_NAME:
+                generator.writeFieldName(parser.getCurrentName());
+                break;
+            case VALUE_STRING:
+                generator.writeString(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength());
+                break;
+            case VALUE_NUMBER_INT:
+            case VALUE_NUMBER_FLOAT:
+                // As written upstream: no rounding through double, no 1.50 -> 1.5
+                generator.writeNumber(parser.getText());
+                break;
+            case VALUE_TRUE:
+            case VALUE_FALSE:
+                generator.writeBoolean(token == JsonToken.VALUE_TRUE);
+                break;
+            case VALUE_NULL:
+                generator.writeNull();
+                break;
+            default:
+                generator.copyCurrentEvent(parser);
+        }
+    }
+}
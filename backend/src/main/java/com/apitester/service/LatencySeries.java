@@ -0,0 +1,241 @@
+package com.apitester.service;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Fixed-size ring of time slots, each holding the runs, failures and a coarse latency
+ * histogram of one slotMillis period; the slot for a time is reused once slotCount
+ * periods have passed. Histograms count latencies in quarter-octave buckets (each about
+ * 19% wide, the last one open-ended), so percentiles read from them are within about
+ * 10% of the true value. Memory is allocated once: about 150 bytes per slot.
+ *
+ * Not thread-safe; callers synchronize.
+ */
+class LatencySeries {
+    
+    static final int BUCKETS = 64;
+    private static final int MAX_COUNT = Character.MAX_VALUE;
+    private static final int FORMAT = 1;
+    
+    private final long slotMillis;
+    private final int slotCount;
+    /** Period number (time / slotMillis) each slot holds, -1 while unused */
+    private final long[] periods;
+    private final int[] runs;
+    private final int[] failures;
+    private final long[] latencySums;
+    private final int[] latencyMax;
+    /** BUCKETS counters per slot; char is an unsigned 16-bit counter that saturates */
+    private final char[] histograms;
+    
+    LatencySeries(long slotMillis, int slotCount) {
+        this.slotMillis = slotMillis;
+        this.slotCount = slotCount;
+        this.periods = new long[slotCount];
+        this.runs = new int[slotCount];
+        this.failures = new int[slotCount];
+        this.latencySums = new long[slotCount];
+        this.latencyMax = new int[slotCount];
+        this.histograms = new char[slotCount * BUCKETS];
+        Arrays.fill(periods, -1);
+    }
+    
+    long getSlotMillis() {
+        return slotMillis;
+    }
+    
+    /**
+     * Oldest time the series can still hold data for, given the current time
+     */
+    long retainedSince(long nowMillis) {
+        return (nowMillis / slotMillis - slotCount + 1) * slotMillis;
+    }
+    
+    /**
+     * Record a run; the latency goes into the histogram of successful runs only
+     */
+    void record(long timeMillis, long latencyMillis, boolean success) {
+        int slot = slotFor(timeMillis / slotMillis);
+        runs[slot]++;
+        if (!success) {
+            failures[slot]++;
+            return;
+        }
+        int latency = (int) Math.min(latencyMillis, Integer.MAX_VALUE);
+        latencySums[slot] += latency;
+        latencyMax[slot] = Math.max(latencyMax[slot], latency);
+        int index = slot * BUCKETS + bucket(latency);
+        if (histograms[index] < MAX_COUNT) {
+            histograms[index]++;
+        }
+    }
+    
+    /**
+     * Add the slots between from (inclusive) and to (exclusive) to the summary
+     */
+    void addTo(Summary summary, long fromMillis, long toMillis) {
+        long firstPeriod = Math.max(fromMillis / slotMillis, toMillis / slotMillis - slotCount);
+        long lastPeriod = (toMillis - 1) / slotMillis;
+        for (long period = firstPeriod; period <= lastPeriod; period++) {
+            int slot = (int) (period % slotCount);
+            if (periods[slot] != period) {
+                continue;
+            }
+            summary.runs += runs[slot];
+            summary.failures += failures[slot];
+            summary.latencySum += latencySums[slot];
+            summary.latencyMax = Math.max(summary.latencyMax, latencyMax[slot]);
+            for (int bucket = 0; bucket < BUCKETS; bucket++) {
+                summary.histogram[bucket] += histograms[slot * BUCKETS + bucket];
+            }
+        }
+    }
+    
+    private int slotFor(long period) {
+        int slot = (int) (period % slotCount);
+        if (periods[slot] != period) {
+            periods[slot] = period;
+            runs[slot] = 0;
+            failures[slot] = 0;
+            latencySums[slot] = 0;
+            latencyMax[slot] = 0;
+            Arrays.fill(histograms, slot * BUCKETS, (slot + 1) * BUCKETS, (char) 0);
+        }
+        return slot;
+    }
+    
+    /**
+     * Histogram bucket of a latency: 0 for under 1 ms, then four buckets per doubling
+     */
+    static int bucket(int latencyMillis) {
+        if (latencyMillis < 1) {
+            return 0;
+        }
+        int bucket = 1 + (int) (4 * Math.log(latencyMillis) / Math.log(2));
+        return Math.min(bucket, BUCKETS - 1);
+    }
+    
+    /**
+     * Representative latency of a bucket: the geometric middle of its range
+     */
+    static double bucketValue(int bucket) {
+        if (bucket == 0) {
+            return 0.5;
+        }
+        return Math.pow(2, (bucket - 0.5) / 4);
+    }
+    
+    /**
+     * Write the slots in use; unused slots take no space
+     */
+    void write(DataOutputStream out) throws IOException {
+        int used = 0;
+        for (long period : periods) {
+            if (period >= 0) {
+                used++;
+            }
+        }
+        out.writeInt(FORMAT);
+        out.writeLong(slotMillis);
+        out.writeInt(slotCount);
+        out.writeInt(used);
+        for (int slot = 0; slot < slotCount; slot++) {
+            if (periods[slot] < 0) {
+                continue;
+            }
+            out.writeLong(periods[slot]);
+            out.writeInt(runs[slot]);
+            out.writeInt(failures[slot]);
+            out.writeLong(latencySums[slot]);
+            out.writeInt(latencyMax[slot]);
+            for (int bucket = 0; bucket < BUCKETS; bucket++) {
+                out.writeChar(histograms[slot * BUCKETS + bucket]);
+            }
+        }
+    }
+    
+    /**
+     * Read slots written by {@link #write}; a series written with another slot size is
+     * skipped, and slots beyond this series' length are dropped
+     */
+    void read(DataInputStream in) throws IOException {
+        if (in.readInt() != FORMAT) {
+            throw new IOException("Unknown series format");
+        }
+        long writtenSlotMillis = in.readLong();
+        in.readInt();
+        int used = in.readInt();
+        for (int i = 0; i < used; i++) {
+            long period = in.readLong();
+            int slotRuns = in.readInt();
+            int slotFailures = in.readInt();
+            long slotLatencySum = in.readLong();
+            int slotLatencyMax = in.readInt();
+            char[] slotHistogram = new char[BUCKETS];
+            for (int bucket = 0; bucket < BUCKETS; bucket++) {
+                slotHistogram[bucket] = in.readChar();
+            }
+            if (writtenSlotMillis != slotMillis) {
+                continue;
+            }
+            int slot = (int) (period % slotCount);
+            if (period < periods[slot]) {
+                continue;  // Older than what the slot already holds
+            }
+            periods[slot] = period;
+            runs[slot] = slotRuns;
+            failures[slot] = slotFailures;
+            latencySums[slot] = slotLatencySum;
+            latencyMax[slot] = slotLatencyMax;
+            System.arraycopy(slotHistogram, 0, histograms, slot * BUCKETS, BUCKETS);
+        }
+    }
+    
+    /**
+     * Runs, failures and merged latency histogram over a window
+     */
+    static class Summary {
+        long runs;
+        long failures;
+        long latencySum;
+        int latencyMax;
+        final long[] histogram = new long[BUCKETS];
+        
+        long successes() {
+            return runs - failures;
+        }
+        
+        double availability() {
+            return runs > 0 ? successes() / (double) runs : 0;
+        }
+        
+        double meanMillis() {
+            return successes() > 0 ? latencySum / (double) successes() : 0;
+        }
+        
+        /**
+         * Latency at the percentile, from the histogram; never above the slowest run
+         */
+        double percentile(double percentile) {
+            long total = 0;
+            for (long count : histogram) {
+                total += count;
+            }
+            if (total == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(percentile / 100 * total);
+            long seen = 0;
+            for (int bucket = 0; bucket < BUCKETS; bucket++) {
+                seen += histogram[bucket];
+                if (seen >= Math.max(1, rank)) {
+                    return Math.min(bucketValue(bucket), latencyMax);
+                }
+            }
+            return latencyMax;
+        }
+    }
+}
@@ -0,0 +1,311 @@
+package com.apitester.service;
+
+import com.apitester.config.AppConfig;
+import com.apitester.logging.SecurityLogger;
+import com.apitester.model.ApiRequest;
+import com.apitester.model.ApiResponse;
+import com.apitester.model.LoadTestRequest;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs a single ApiRequest repeatedly from the backend and reports the latency
+ * distribution. Requests go through ApiRequestService.executeUnlogged so that
+ * per-request log I/O does not throttle the test; one aggregate summary is logged.
+ */
+public class LoadTestService {
+    
+    private static final int MAX_CONCURRENCY = AppConfig.getInt("loadtest.maxConcurrency", 200);
+    private static final int MAX_DURATION_SECONDS = AppConfig.getInt("loadtest.maxDurationSeconds", 300);
+    private static final long MAX_ITERATIONS = AppConfig.getLong("loadtest.maxIterations", 1000000);
+    private static final int MAX_RUNNING = AppConfig.getInt("loadtest.maxRunning", 1);
+    private static final int DRAIN_SECONDS = AppConfig.getInt("loadtest.drainSeconds", 5);
+    
+    // Latencies are recorded in microseconds, up to 10 minutes, with 3 significant digits
+    private static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.MINUTES.toMicros(10);
+    private static final int SIGNIFICANT_DIGITS = 3;
+    
+    private static LoadTestService instance;
+    private final ApiRequestService apiRequestService;
+    private final SecurityLogger securityLogger;
+    private final ObjectMapper objectMapper;
+    private final Semaphore runningTests;
+    
+    private LoadTestService() {
+        this.apiRequestService = ApiRequestService.getInstance();
+        this.securityLogger = SecurityLogger.getInstance();
+        this.objectMapper = new ObjectMapper();
+        this.runningTests = new Semaphore(MAX_RUNNING);
+    }
+    
+    public static synchronized LoadTestService getInstance() {
+        if (instance == null) {
+            instance = new LoadTestService();
+        }
+        return instance;
+    }
+    
+    /**
+     * Run a load test and block until it finishes.
+     *
+     * With ratePerSecond set (open model), request i is scheduled at start + i / rate and
+     * its latency is measured from that intended start, so a slow upstream that makes
+     * requests queue is not hidden (coordinated omission). Without a rate, each worker
+     * sends back-to-back and latency is measured from the actual send.
+     *
+     * @throws IllegalArgumentException if the definition is invalid
+     * @throws IllegalStateException if the maximum number of concurrent load tests is running
+     */
+    public LoadTestResult run(LoadTestRequest spec, String sessionId) throws InterruptedException {
+        validate(spec);
+        if (!runningTests.tryAcquire()) {
+            throw new IllegalStateException("A load test is already running");
+        }
+        try {
+            LoadTestResult result = execute(spec);
+            logSummary(spec, sessionId, result);
+            return result;
+        } finally {
+            runningTests.release();
+        }
+    }
+    
+    private void validate(LoadTestRequest spec) {
+        if (spec == null || spec.getRequest() == null || spec.getRequest().getUrl() == null) {
+            throw new IllegalArgumentException("A request with a url is required");
+        }
+        if (spec.getIterations() <= 0 && spec.getDurationSeconds() <= 0) {
+            throw new IllegalArgumentException("Specify iterations or durationSeconds");
+        }
+        if (spec.getIterations() > MAX_ITERATIONS) {
+            throw new IllegalArgumentException("iterations exceeds the maximum of " + MAX_ITERATIONS);
+        }
+        if (spec.getDurationSeconds() > MAX_DURATION_SECONDS) {
+            throw new IllegalArgumentException("durationSeconds exceeds the maximum of " + MAX_DURATION_SECONDS);
+        }
+    }
+    
+    private LoadTestResult execute(LoadTestRequest spec) throws InterruptedException {
+        final ApiRequest apiRequest = spec.getRequest();
+        final int concurrency = Math.max(1, Math.min(spec.getConcurrency() > 0 ? spec.getConcurrency() : 1, MAX_CONCURRENCY));
+        final long limit = spec.getIterations() > 0 ? spec.getIterations() : Long.MAX_VALUE;
+        final boolean openModel = spec.getRatePerSecond() > 0;
+        final long intervalNanos = openModel ? (long) (TimeUnit.SECONDS.toNanos(1) / spec.getRatePerSecond()) : 0;
+        
+        final Recorder recorder = new Recorder(HIGHEST_TRACKABLE_MICROS, SIGNIFICANT_DIGITS);
+        final Map<Integer, LongAdder> statusCounts = new ConcurrentHashMap<>();
+        final LongAdder intervalErrors = new LongAdder();
+        final LongAdder totalErrors = new LongAdder();
+        final AtomicLong issued = new AtomicLong();
+        
+        final long startNanos = System.nanoTime();
+        // An iteration count against a slow upstream is still bounded by loadtest.maxDurationSeconds
+        final long deadlineNanos = startNanos + TimeUnit.SECONDS.toNanos(
+            spec.getDurationSeconds() > 0 ? spec.getDurationSeconds() : MAX_DURATION_SECONDS);
+        
+        AtomicInteger threadNumber = new AtomicInteger();
+        ExecutorService workers = Executors.newFixedThreadPool(concurrency, runnable -> {
+            Thread thread = new Thread(runnable, "LoadTest-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        
+        for (int i = 0; i < concurrency; i++) {
+            workers.execute(() -> {
+                while (!Thread.currentThread().isInterrupted()) {
+                    long index = issued.getAndIncrement();
+                    if (index >= limit) {
+                        break;
+                    }
+                    long intendedStart = openModel ? startNanos + index * intervalNanos : System.nanoTime();
+                    if (intendedStart >= deadlineNanos) {
+                        break;
+                    }
+                    while (openModel && System.nanoTime() < intendedStart) {
+                        LockSupport.parkNanos(intendedStart - System.nanoTime());
+                    }
+                    
+                    ApiResponse response = apiRequestService.executeUnlogged(apiRequest);
+                    long latencyMicros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - intendedStart);
+                    
+                    recorder.recordValue(Math.min(latencyMicros, HIGHEST_TRACKABLE_MICROS));
+                    statusCounts.computeIfAbsent(response.getStatus(), s -> new LongAdder()).increment();
+                    if (isError(response)) {
+                        intervalErrors.increment();
+                        totalErrors.increment();
+                    }
+                }
+            });
+        }
+        workers.shutdown();
+        
+        // Sample the recorder once per second for the time series while the workers run
+        LoadTestResult result = new LoadTestResult();
+        Histogram total = new Histogram(HIGHEST_TRACKABLE_MICROS, SIGNIFICANT_DIGITS);
+        Histogram interval = null;
+        int second = 0;
+        boolean finished = false;
+        while (!finished) {
+            long nextTick = startNanos + TimeUnit.SECONDS.toNanos(second + 1);
+            long waitNanos = Math.max(0, nextTick - System.nanoTime());
+            finished = workers.awaitTermination(waitNanos, TimeUnit.NANOSECONDS);
+            if (!finished && System.nanoTime() >= deadlineNanos) {
+                // Duration elapsed: let in-flight requests drain, then stop waiting for stragglers
+                if (!workers.awaitTermination(DRAIN_SECONDS, TimeUnit.SECONDS)) {
+                    workers.shutdownNow();
+                }
+                finished = true;
+            }
+            
+            interval = recorder.getIntervalHistogram(interval);
+            total.add(interval);
+            long errors = intervalErrors.sumThenReset();
+            if (interval.getTotalCount() > 0 || !finished) {
+                result.timeSeries.add(toPoint(second, interval, errors));
+            }
+            second++;
+        }
+        
+        long elapsedNanos = System.nanoTime() - startNanos;
+        result.mode = openModel ? "open" : "closed";
+        result.concurrency = concurrency;
+        result.targetRatePerSecond = spec.getRatePerSecond();
+        result.requests = total.getTotalCount();
+        result.durationMs = TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+        result.throughputPerSecond = elapsedNanos > 0 ? total.getTotalCount() / (elapsedNanos / 1e9) : 0;
+        result.latency = toLatency(total);
+        result.errors = totalErrors.sum();
+        result.cutShort = spec.getIterations() > 0 && result.requests < spec.getIterations();
+        for (Map.Entry<Integer, LongAdder> entry : new TreeMap<>(statusCounts).entrySet()) {
+            result.statusCounts.put(String.valueOf(entry.getKey()), entry.getValue().sum());
+        }
+        return result;
+    }
+    
+    /**
+     * Transport failures (status 0), 4xx/5xx responses and failed assertions count as errors
+     */
+    private static boolean isError(ApiResponse response) {
+        return response.getStatus() == 0 || response.getStatus() >= 400
+            || Boolean.FALSE.equals(response.getAssertionsPassed());
+    }
+    
+    static Latency toLatency(Histogram histogram) {
+        Latency latency = new Latency();
+        if (histogram.getTotalCount() == 0) {
+            return latency;
+        }
+        latency.minMs = histogram.getMinValue() / 1000.0;
+        latency.meanMs = histogram.getMean() / 1000.0;
+        latency.stdDevMs = histogram.getStdDeviation() / 1000.0;
+        latency.p50Ms = histogram.getValueAtPercentile(50.0) / 1000.0;
+        latency.p90Ms = histogram.getValueAtPercentile(90.0) / 1000.0;
+        latency.p99Ms = histogram.getValueAtPercentile(99.0) / 1000.0;
+        latency.p999Ms = histogram.getValueAtPercentile(99.9) / 1000.0;
+        latency.maxMs = histogram.getMaxValue() / 1000.0;
+        return latency;
+    }
+    
+    private static TimeSeriesPoint toPoint(int second, Histogram interval, long errors) {
+        TimeSeriesPoint point = new TimeSeriesPoint();
+        point.second = second;
+        point.requests = interval.getTotalCount();
+        point.errors = errors;
+        if (interval.getTotalCount() > 0) {
+            point.p50Ms = interval.getValueAtPercentile(50.0) / 1000.0;
+            point.p99Ms = interval.getValueAtPercentile(99.0) / 1000.0;
+            point.maxMs = interval.getMaxValue() / 1000.0;
+        }
+        return point;
+    }
+    
+    private void logSummary(LoadTestRequest spec, String sessionId, LoadTestResult result) {
+        try {
+            // The time series is left out to keep the log entry small
+            Map<String, Object> summary = new TreeMap<>();
+            summary.put("mode", result.mode);
+            summary.put("concurrency", result.concurrency);
+            summary.put("requests", result.requests);
+            summary.put("errors", result.errors);
+            summary.put("cutShort", result.cutShort);
+            summary.put("durationMs", result.durationMs);
+            summary.put("throughputPerSecond", result.throughputPerSecond);
+            summary.put("latency", result.latency);
+            summary.put("statusCounts", result.statusCounts);
+            
+            ApiRequest apiRequest = spec.getRequest();
+            securityLogger.logApiRequest(
+                sessionId,
+                "LOADTEST " + apiRequest.getMethod(),
+                apiRequest.getUrl(),
+                apiRequest.getHeaders(),
+                apiRequest.getBody(),
+                result.errors == 0 ? 200 : 207,
+                objectMapper.writeValueAsString(summary),
+                null,
+                result.durationMs
+            );
+        } catch (Exception e) {
+            securityLogger.logError(sessionId, "LOADTEST_LOG", e.getMessage(), e);
+        }
+    }
+    
+    /**
+     * Load-test result structure
+     */
+    public static class LoadTestResult {
+        public String mode;
+        public int concurrency;
+        public double targetRatePerSecond;
+        public long requests;
+        public long errors;
+        // The iterations did not all run before the duration (or loadtest.maxDurationSeconds) ran out
+        public boolean cutShort;
+        public long durationMs;
+        public double throughputPerSecond;
+        public Latency latency;
+        public Map<String, Long> statusCounts = new TreeMap<>();
+        public List<TimeSeriesPoint> timeSeries = new ArrayList<>();
+    }
+    
+    /**
+     * Latency distribution in milliseconds
+     */
+    public static class Latency {
+        public double minMs;
+        public double meanMs;
+        public double stdDevMs;
+        public double p50Ms;
+        public double p90Ms;
+        public double p99Ms;
+        public double p999Ms;
+        public double maxMs;
+    }
+    
+    /**
+     * One second of the run
+     */
+    public static class TimeSeriesPoint {
+        public int second;
+        public long requests;
+        public long errors;
+        public double p50Ms;
+        public double p99Ms;
+        public double maxMs;
+    }
+}
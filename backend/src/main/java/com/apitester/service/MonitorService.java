@@ -0,0 +1,547 @@
+package com.apitester.service;
+
+import com.apitester.config.AppConfig;
+import com.apitester.model.ApiResponse;
+import com.apitester.model.AssertionResult;
+import com.apitester.model.Monitor;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * Runs synthetic monitors on a small, fixed pool of threads, through the shared
+ * ApiRequestService client without logging each run. Every run's outcome and latency
+ * go into two fixed-size series per monitor: one-minute slots for the last
+ * monitor.minuteSlots minutes, and one-hour slots, the downsampled history, for the last
+ * monitor.hourSlots hours. Definitions and series are kept under monitor.dataDir, so
+ * monitors carry on after a restart; series are written every monitor.flushSeconds.
+ *
+ * A monitor's next run is planned when the previous one ends, so a slow upstream
+ * never has runs of one monitor piling up; runs that fall due meanwhile are skipped.
+ */
+public class MonitorService {
+    
+    private static final Logger logger = Logger.getLogger(MonitorService.class.getName());
+    
+    private static final int MAX_MONITORS = AppConfig.getInt("monitor.max", 50);
+    private static final int THREADS = AppConfig.getInt("monitor.threads", 4);
+    private static final int MIN_INTERVAL_SECONDS = AppConfig.getInt("monitor.minIntervalSeconds", 10);
+    private static final int MINUTE_SLOTS = AppConfig.getInt("monitor.minuteSlots", 24 * 60);
+    private static final int HOUR_SLOTS = AppConfig.getInt("monitor.hourSlots", 30 * 24);
+    private static final int FLUSH_SECONDS = AppConfig.getInt("monitor.flushSeconds", 60);
+    private static final int MAX_POINTS = 1000;
+    // First runs are spread over up to this long, so monitors loaded at startup don't all fire at once
+    private static final long MAX_INITIAL_JITTER_MILLIS = 10000;
+    private static final String DEFINITIONS_FILE = "monitors.json";
+    
+    private static MonitorService instance;
+    
+    private final ApiRequestService apiRequestService;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ScheduledThreadPoolExecutor scheduler;
+    private final Map<String, ScheduledMonitor> monitors = new ConcurrentHashMap<>();
+    private final File dataDir;
+    private final ZoneId zone = ZoneId.systemDefault();
+    private volatile boolean shutdown;
+    
+    private MonitorService() {
+        this.apiRequestService = ApiRequestService.getInstance();
+        this.dataDir = new File(AppConfig.getString("monitor.dataDir", defaultDataDir()));
+        
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.scheduler = new ScheduledThreadPoolExecutor(Math.max(1, THREADS), runnable -> {
+            Thread thread = new Thread(runnable, "MonitorWorker-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.setRemoveOnCancelPolicy(true);
+        
+        load();
+        scheduler.scheduleWithFixedDelay(this::flush, FLUSH_SECONDS, FLUSH_SECONDS, TimeUnit.SECONDS);
+    }
+    
+    public static synchronized MonitorService getInstance() {
+        if (instance == null) {
+            instance = new MonitorService();
+        }
+        return instance;
+    }
+    
+    private static String defaultDataDir() {
+        // Next to the request logs
+        return System.getProperty("catalina.base") != null
+            ? System.getProperty("catalina.base") + "/webapps/api-tester/logs/monitors" : "logs/monitors";
+    }
+    
+    /**
+     * Validate and start a new monitor; returns it with its id assigned
+     *
+     * @throws IllegalArgumentException when the definition is invalid
+     * @throws IllegalStateException when monitor.max monitors exist already
+     */
+    public Monitor create(Monitor monitor) {
+        ScheduledMonitor scheduled = new ScheduledMonitor(monitor);
+        synchronized (this) {
+            if (monitors.size() >= MAX_MONITORS) {
+                throw new IllegalStateException("There are already " + MAX_MONITORS + " monitors");
+            }
+            String id;
+            do {
+                id = UUID.randomUUID().toString().substring(0, 8);
+            } while (monitors.containsKey(id));
+            monitor.setId(id);
+            monitor.setCreatedAt(System.currentTimeMillis());
+            monitors.put(id, scheduled);
+            saveDefinitions();
+        }
+        scheduled.scheduleFirst();
+        logger.info("Created monitor " + monitor.getId() + " (" + monitor.getName() + ")");
+        return monitor;
+    }
+    
+    /**
+     * Stop a monitor and delete its series; false when there is no such monitor
+     */
+    public boolean delete(String id) {
+        ScheduledMonitor scheduled;
+        synchronized (this) {
+            scheduled = monitors.remove(id);
+            if (scheduled == null) {
+                return false;
+            }
+            saveDefinitions();
+        }
+        scheduled.cancel();
+        if (!seriesFile(id).delete() && seriesFile(id).exists()) {
+            logger.warning("Could not delete the series of monitor " + id);
+        }
+        return true;
+    }
+    
+    public List<MonitorState> list() {
+        List<MonitorState> states = new ArrayList<>();
+        for (ScheduledMonitor scheduled : monitors.values()) {
+            states.add(scheduled.getState());
+        }
+        states.sort(Comparator.comparingLong(state -> state.monitor.getCreatedAt()));
+        return states;
+    }
+    
+    /**
+     * Definition and latest run of a monitor; null when there is no such monitor
+     */
+    public MonitorState get(String id) {
+        ScheduledMonitor scheduled = monitors.get(id);
+        return scheduled != null ? scheduled.getState() : null;
+    }
+    
+    /**
+     * Availability and latency of a monitor between two times (epoch milliseconds),
+     * widened to whole slots; with a step, also as a series of points that far apart.
+     * The one-minute series answers when it still covers the start of the window,
+     * the hourly one otherwise. Returns null when there is no such monitor.
+     */
+    public MonitorWindow getWindow(String id, long fromMillis, long toMillis, long stepMillis) {
+        ScheduledMonitor scheduled = monitors.get(id);
+        if (scheduled == null) {
+            return null;
+        }
+        if (toMillis <= fromMillis) {
+            throw new IllegalArgumentException("The window must end after it starts");
+        }
+        return scheduled.getWindow(fromMillis, toMillis, stepMillis);
+    }
+    
+    /**
+     * Stop all monitors and write their series
+     */
+    public synchronized void shutdown() {
+        if (shutdown) {
+            return;
+        }
+        shutdown = true;
+        scheduler.shutdownNow();
+        flush();
+    }
+    
+    /**
+     * Shut the shared instance down, if it was ever created
+     */
+    public static synchronized void shutdownInstance() {
+        if (instance != null) {
+            instance.shutdown();
+            instance = null;
+        }
+    }
+    
+    private void run(ScheduledMonitor scheduled) {
+        if (scheduled.cancelled || shutdown) {
+            return;
+        }
+        try {
+            long started = System.currentTimeMillis();
+            ApiResponse response = apiRequestService.executeUnlogged(scheduled.monitor.getRequest());
+            scheduled.record(started, response);
+        } catch (RuntimeException e) {
+            logger.warning("Monitor " + scheduled.monitor.getId() + " failed to run: " + e);
+        } finally {
+            scheduled.scheduleNext();
+        }
+    }
+    
+    private void load() {
+        File definitions = new File(dataDir, DEFINITIONS_FILE);
+        if (!definitions.isFile()) {
+            return;
+        }
+        List<Monitor> saved;
+        try {
+            saved = objectMapper.readValue(definitions, new TypeReference<List<Monitor>>() {});
+        } catch (IOException e) {
+            logger.warning("Could not read monitors from " + definitions + ": " + e.getMessage());
+            return;
+        }
+        for (Monitor monitor : saved) {
+            if (monitor.getId() == null || !monitor.getId().matches("[A-Za-z0-9-]+")) {
+                continue;
+            }
+            try {
+                ScheduledMonitor scheduled = new ScheduledMonitor(monitor);
+                scheduled.readSeries();
+                monitors.put(monitor.getId(), scheduled);
+                scheduled.scheduleFirst();
+            } catch (IllegalArgumentException e) {
+                logger.warning("Skipping monitor " + monitor.getId() + ": " + e.getMessage());
+            }
+        }
+        logger.info("Loaded " + monitors.size() + " monitors from " + definitions);
+    }
+    
+    /**
+     * Rewrite the definitions file; called with the service locked
+     */
+    private void saveDefinitions() {
+        List<Monitor> definitions = new ArrayList<>();
+        for (ScheduledMonitor scheduled : monitors.values()) {
+            definitions.add(scheduled.monitor);
+        }
+        definitions.sort(Comparator.comparingLong(Monitor::getCreatedAt));
+        try {
+            File target = new File(dataDir, DEFINITIONS_FILE);
+            File temp = prepareWrite(target);
+            objectMapper.writerWithDefaultPrettyPrinter().writeValue(temp, definitions);
+            Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            logger.warning("Could not save monitors: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Write the series of every monitor that ran since the last flush
+     */
+    private void flush() {
+        for (ScheduledMonitor scheduled : monitors.values()) {
+            try {
+                scheduled.writeSeries();
+            } catch (IOException e) {
+                logger.warning("Could not save the series of monitor " + scheduled.monitor.getId() + ": " + e.getMessage());
+            }
+        }
+    }
+    
+    private File seriesFile(String id) {
+        return new File(dataDir, id + ".series");
+    }
+    
+    private File prepareWrite(File target) throws IOException {
+        if (!dataDir.isDirectory() && !dataDir.mkdirs()) {
+            throw new IOException("Cannot create " + dataDir);
+        }
+        return new File(dataDir, target.getName() + ".tmp");
+    }
+    
+    /**
+     * A monitor with its schedule, series and latest run
+     */
+    private class ScheduledMonitor {
+        
+        final Monitor monitor;
+        final CronSchedule cron;
+        final long intervalMillis;
+        final LatencySeries minutes = new LatencySeries(TimeUnit.MINUTES.toMillis(1), MINUTE_SLOTS);
+        final LatencySeries hours = new LatencySeries(TimeUnit.HOURS.toMillis(1), HOUR_SLOTS);
+        volatile boolean cancelled;
+        private ScheduledFuture<?> future;
+        private long nextRunAt;
+        private boolean dirty;
+        private long runs;
+        private long failures;
+        private long lastRunAt;
+        private int lastStatus;
+        private long lastLatencyMs;
+        private Boolean lastSuccess;
+        private String lastError;
+        
+        ScheduledMonitor(Monitor monitor) {
+            if (monitor.getRequest() == null || monitor.getRequest().getUrl() == null
+                    || monitor.getRequest().getUrl().trim().isEmpty()) {
+                throw new IllegalArgumentException("A monitor needs a request with a url");
+            }
+            boolean hasCron = monitor.getCron() != null && !monitor.getCron().trim().isEmpty();
+            if (hasCron == (monitor.getIntervalSeconds() != null)) {
+                throw new IllegalArgumentException("Set either intervalSeconds or cron");
+            }
+            long now = System.currentTimeMillis();
+            if (hasCron) {
+                this.cron = new CronSchedule(monitor.getCron(), zone);
+                this.intervalMillis = 0;
+                // Here rather than when scheduling, so an expression that never matches is refused before
+                // the monitor is registered or saved
+                this.nextRunAt = cron.next(now);
+            } else {
+                int minInterval = Math.max(1, MIN_INTERVAL_SECONDS);
+                if (monitor.getIntervalSeconds() < minInterval) {
+                    throw new IllegalArgumentException("intervalSeconds must be at least " + minInterval);
+                }
+                this.cron = null;
+                this.intervalMillis = TimeUnit.SECONDS.toMillis(monitor.getIntervalSeconds());
+                this.nextRunAt = now + ThreadLocalRandom.current().nextLong(Math.min(intervalMillis, MAX_INITIAL_JITTER_MILLIS));
+            }
+            if (monitor.getRequest().getMethod() == null) {
+                monitor.getRequest().setMethod("GET");
+            }
+            if (monitor.getName() == null || monitor.getName().trim().isEmpty()) {
+                monitor.setName(monitor.getRequest().getMethod() + " " + monitor.getRequest().getUrl());
+            }
+            this.monitor = monitor;
+        }
+        
+        /**
+         * Schedule the first run, at the time worked out when the monitor was constructed
+         */
+        synchronized void scheduleFirst() {
+            schedule(System.currentTimeMillis());
+        }
+        
+        synchronized void scheduleNext() {
+            if (cancelled || shutdown) {
+                return;
+            }
+            long now = System.currentTimeMillis();
+            if (cron != null) {
+                nextRunAt = cron.next(now);
+            } else {
+                // Keep to the original grid; runs missed while this one was slow are skipped
+                do {
+                    nextRunAt += intervalMillis;
+                } while (nextRunAt <= now);
+            }
+            schedule(now);
+        }
+        
+        private void schedule(long now) {
+            if (!shutdown) {
+                future = scheduler.schedule(() -> run(this), Math.max(0, nextRunAt - now), TimeUnit.MILLISECONDS);
+            }
+        }
+        
+        synchronized void cancel() {
+            cancelled = true;
+            if (future != null) {
+                future.cancel(false);
+            }
+        }
+        
+        synchronized void record(long startedAt, ApiResponse response) {
+            boolean success = isSuccess(response.getStatus()) && !Boolean.FALSE.equals(response.getAssertionsPassed());
+            minutes.record(startedAt, response.getResponseTime(), success);
+            hours.record(startedAt, response.getResponseTime(), success);
+            dirty = true;
+            runs++;
+            if (!success) {
+                failures++;
+            }
+            lastRunAt = startedAt;
+            lastStatus = response.getStatus();
+            lastLatencyMs = response.getResponseTime();
+            lastSuccess = success;
+            lastError = response.getStatus() == 0 ? response.getBody() : failedAssertion(response);
+        }
+        
+        private String failedAssertion(ApiResponse response) {
+            if (response.getAssertions() != null) {
+                for (AssertionResult result : response.getAssertions()) {
+                    if (!result.isPassed()) {
+                        return "Assertion failed: " + result.getDescription()
+                            + (result.getActual() != null ? " (was " + result.getActual() + ")" : "");
+                    }
+                }
+            }
+            return null;
+        }
+        
+        private boolean isSuccess(int status) {
+            List<Integer> expected = monitor.getExpectedStatus();
+            if (expected == null || expected.isEmpty()) {
+                return status >= 200 && status < 400;
+            }
+            return expected.contains(status);
+        }
+        
+        synchronized MonitorState getState() {
+            MonitorState state = new MonitorState();
+            state.monitor = monitor;
+            state.nextRunAt = nextRunAt;
+            state.runs = runs;
+            state.failures = failures;
+            state.lastRunAt = lastRunAt;
+            state.lastStatus = lastStatus;
+            state.lastLatencyMs = lastLatencyMs;
+            state.lastSuccess = lastSuccess;
+            state.lastError = lastError;
+            return state;
+        }
+        
+        synchronized MonitorWindow getWindow(long fromMillis, long toMillis, long stepMillis) {
+            LatencySeries series = fromMillis >= minutes.retainedSince(System.currentTimeMillis()) ? minutes : hours;
+            MonitorWindow window = new MonitorWindow();
+            window.id = monitor.getId();
+            window.name = monitor.getName();
+            window.from = fromMillis;
+            window.to = toMillis;
+            window.resolutionSeconds = TimeUnit.MILLISECONDS.toSeconds(series.getSlotMillis());
+            LatencySeries.Summary summary = new LatencySeries.Summary();
+            series.addTo(summary, fromMillis, toMillis);
+            window.total = new SeriesPoint();
+            window.total.time = fromMillis;
+            window.total.fill(summary);
+            
+            if (stepMillis > 0) {
+                // Steps are whole slots
+                long step = Math.max(1, Math.round(stepMillis / (double) series.getSlotMillis())) * series.getSlotMillis();
+                if ((toMillis - fromMillis) / step > MAX_POINTS) {
+                    throw new IllegalArgumentException("The window holds more than " + MAX_POINTS + " steps");
+                }
+                window.stepSeconds = TimeUnit.MILLISECONDS.toSeconds(step);
+                window.points = new ArrayList<>();
+                for (long start = fromMillis - fromMillis % step; start < toMillis; start += step) {
+                    LatencySeries.Summary pointSummary = new LatencySeries.Summary();
+                    series.addTo(pointSummary, start, start + step);
+                    SeriesPoint point = new SeriesPoint();
+                    point.time = start;
+                    point.fill(pointSummary);
+                    window.points.add(point);
+                }
+            }
+            return window;
+        }
+        
+        void writeSeries() throws IOException {
+            File target = seriesFile(monitor.getId());
+            synchronized (this) {
+                if (!dirty || cancelled) {
+                    return;
+                }
+                File temp = prepareWrite(target);
+                try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+                    minutes.write(out);
+                    hours.write(out);
+                }
+                Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                dirty = false;
+            }
+        }
+        
+        synchronized void readSeries() {
+            File file = seriesFile(monitor.getId());
+            if (!file.isFile()) {
+                return;
+            }
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+                minutes.read(in);
+                hours.read(in);
+            } catch (IOException e) {
+                logger.warning("Could not read the series of monitor " + monitor.getId() + ": " + e.getMessage());
+            }
+        }
+    }
+    
+    /**
+     * Monitor definition with its latest run
+     */
+    public static class MonitorState {
+        public Monitor monitor;
+        public long nextRunAt;
+        public long runs;
+        public long failures;
+        public long lastRunAt;
+        public int lastStatus;
+        public long lastLatencyMs;
+        public Boolean lastSuccess;
+        public String lastError;
+    }
+    
+    /**
+     * Runs, availability and latency percentiles of a time range; latencies cover
+     * successful runs only
+     */
+    public static class SeriesPoint {
+        public long time;
+        public long runs;
+        public long failures;
+        public double availability;
+        public double p50Ms;
+        public double p95Ms;
+        public double p99Ms;
+        public double meanMs;
+        public long maxMs;
+        
+        void fill(LatencySeries.Summary summary) {
+            runs = summary.runs;
+            failures = summary.failures;
+            availability = summary.availability();
+            p50Ms = summary.percentile(50);
+            p95Ms = summary.percentile(95);
+            p99Ms = summary.percentile(99);
+            meanMs = summary.meanMillis();
+            maxMs = summary.latencyMax;
+        }
+    }
+    
+    /**
+     * Monitor statistics over a window, in total and optionally at points every stepSeconds
+     */
+    public static class MonitorWindow {
+        public String id;
+        public String name;
+        public long from;
+        public long to;
+        public long resolutionSeconds;
+        public SeriesPoint total;
+        public long stepSeconds;
+        public List<SeriesPoint> points;
+    }
+}
@@ -0,0 +1,32 @@
+package com.apitester.service;
+
+import com.apitester.model.PhaseTimings;
+
+/**
+ * Binds a PhaseTimings to the thread running a blocking exchange, so the DNS
+ * resolver, socket factories, pool and request executor hooks can record into it.
+ * The blocking client performs all of those steps on the calling thread.
+ */
+final class PhaseTimer {
+    
+    private static final ThreadLocal<PhaseTimings> CURRENT = new ThreadLocal<>();
+    
+    private PhaseTimer() {}
+    
+    static PhaseTimings begin() {
+        PhaseTimings timings = new PhaseTimings();
+        CURRENT.set(timings);
+        return timings;
+    }
+    
+    static void end() {
+        CURRENT.remove();
+    }
+    
+    /**
+     * Timings of the exchange on this thread, or null when none is being timed
+     */
+    static PhaseTimings current() {
+        return CURRENT.get();
+    }
+}
@@ -0,0 +1,35 @@
+package com.apitester.service;
+
+import java.io.IOException;
+
+/**
+ * A request was not sent because its host's rate limit has no permit free within
+ * the configured maximum wait
+ */
+public class RateLimitExceededException extends IOException {
+    
+    private final String target;
+    private final long retryAfterMs;
+    
+    public RateLimitExceededException(String target, double permitsPerSecond, int burst, long retryAfterMs,
+                                      long maxWaitMs) {
+        super("Client rate limit for " + target + " (" + permitsPerSecond + "/s, burst " + burst
+            + ") exceeded: next permit in " + retryAfterMs + " ms, maximum wait " + maxWaitMs + " ms");
+        this.target = target;
+        this.retryAfterMs = retryAfterMs;
+    }
+    
+    /**
+     * The rule that refused the request: host, host:port, or either with a path prefix
+     */
+    public String getTarget() {
+        return target;
+    }
+    
+    /**
+     * How long until the rule would have had a permit
+     */
+    public long getRetryAfterMs() {
+        return retryAfterMs;
+    }
+}
@@ -0,0 +1,73 @@
+package com.apitester.service;
+
+import com.apitester.model.ApiResponse;
+import org.apache.http.client.methods.HttpRequestBase;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Engine decorator that takes a {@link RateLimiter} permit for each request before
+ * handing it to the wrapped engine. Non-blocking engines stay non-blocking: their
+ * requests wait for the permit on the limiter's timer, not on the calling thread.
+ */
+class RateLimitedEngine implements HttpEngine {
+    
+    private final HttpEngine engine;
+    private final RateLimiter rateLimiter;
+    
+    RateLimitedEngine(HttpEngine engine, RateLimiter rateLimiter) {
+        this.engine = engine;
+        this.rateLimiter = rateLimiter;
+    }
+    
+    @Override
+    public String getName() {
+        return engine.getName();
+    }
+    
+    @Override
+    public ApiResponse execute(HttpRequestBase httpRequest, long startTime) throws IOException {
+        rateLimiter.acquire(httpRequest.getURI());
+        return engine.execute(httpRequest, startTime);
+    }
+    
+    @Override
+    public CompletableFuture<ApiResponse> executeAsync(final HttpRequestBase httpRequest, final long startTime) {
+        if (!engine.isNonBlocking()) {
+            return HttpEngine.super.executeAsync(httpRequest, startTime);
+        }
+        final CompletableFuture<ApiResponse> execution = new CompletableFuture<>();
+        rateLimiter.acquireAsync(httpRequest.getURI()).whenComplete((permit, failure) -> {
+            if (failure != null) {
+                execution.completeExceptionally(failure);
+            } else if (!execution.isCancelled()) {
+                CompletableFuture<ApiResponse> exchange = engine.executeAsync(httpRequest, startTime);
+                exchange.whenComplete((response, exchangeFailure) -> {
+                    if (exchangeFailure != null) {
+                        execution.completeExceptionally(exchangeFailure);
+                    } else {
+                        execution.complete(response);
+                    }
+                });
+                // Cancelling this future cancels the exchange, as with the wrapped engine
+                execution.whenComplete((response, exchangeFailure) -> {
+                    if (execution.isCancelled()) {
+                        exchange.cancel(true);
+                    }
+                });
+            }
+        });
+        return execution;
+    }
+    
+    @Override
+    public boolean isNonBlocking() {
+        return engine.isNonBlocking();
+    }
+    
+    @Override
+    public void shutdown() {
+        engine.shutdown();
+    }
+}
@@ -0,0 +1,316 @@
+package com.apitester.service;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Client-side rate limits for upstream hosts, so testers stay within partner API quotas.
+ * Each rule covers a host (or host:port), optionally narrowed to a path prefix, and owns
+ * a token bucket of "rate" permits per second holding up to "burst" permits. A request
+ * is counted against the most specific matching rule only; hosts without a rule are
+ * not limited.
+ *
+ * A request that finds the bucket empty reserves the next free permit and waits for it,
+ * unless that is more than maxWaitMs away: then it fails at once with
+ * {@link RateLimitExceededException}, and no permit is used. maxWaitMs 0 always fails fast.
+ */
+public class RateLimiter {
+    
+    private final long maxWaitNanos;
+    private final Map<String, List<Rule>> rulesByHost = new ConcurrentHashMap<>();
+    private final List<Rule> rules = new ArrayList<>();
+    private volatile boolean portRules;
+    private volatile ScheduledExecutorService timer;
+    
+    public RateLimiter(long maxWaitMs) {
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, maxWaitMs));
+    }
+    
+    /**
+     * Add a rule before the limiter is used
+     *
+     * @param target host, host:port, or either followed by a path prefix, e.g. "api.example.com/v1/search"
+     * @param permitsPerSecond sustained rate
+     * @param burst permits available at once after an idle period (at least 1)
+     */
+    public synchronized void addRule(String target, double permitsPerSecond, int burst) {
+        int slash = target.indexOf('/');
+        String host = (slash >= 0 ? target.substring(0, slash) : target).toLowerCase();
+        String pathPrefix = slash >= 0 ? target.substring(slash) : "";
+        Rule rule = new Rule(host + pathPrefix, pathPrefix, new TokenBucket(permitsPerSecond, Math.max(1, burst)));
+        rules.add(rule);
+        
+        // Longest path prefix first, so the first match is the most specific
+        List<Rule> hostRules = new ArrayList<>(rulesByHost.getOrDefault(host, Collections.<Rule>emptyList()));
+        hostRules.add(rule);
+        hostRules.sort((a, b) -> Integer.compare(b.pathPrefix.length(), a.pathPrefix.length()));
+        rulesByHost.put(host, hostRules);
+        portRules |= host.indexOf(':') >= 0;
+    }
+    
+    public boolean isEnabled() {
+        return !rulesByHost.isEmpty();
+    }
+    
+    /**
+     * Take a permit for the request, waiting on the calling thread when one is due
+     * within maxWaitMs
+     */
+    public void acquire(URI uri) throws IOException {
+        Rule rule = ruleFor(uri);
+        if (rule == null) {
+            return;
+        }
+        long waitNanos = rule.reserve(maxWaitNanos);
+        if (waitNanos == 0) {
+            return;
+        }
+        
+        rule.waiting.incrementAndGet();
+        try {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a rate limit permit for " + rule.target);
+        } finally {
+            rule.waiting.decrementAndGet();
+        }
+    }
+    
+    /**
+     * Take a permit for the request without holding the calling thread: the future
+     * completes once the permit is due, or fails with RateLimitExceededException
+     */
+    public CompletableFuture<Void> acquireAsync(URI uri) {
+        CompletableFuture<Void> permit = new CompletableFuture<>();
+        Rule rule = ruleFor(uri);
+        if (rule == null) {
+            permit.complete(null);
+            return permit;
+        }
+        
+        long waitNanos;
+        try {
+            waitNanos = rule.reserve(maxWaitNanos);
+        } catch (RateLimitExceededException e) {
+            permit.completeExceptionally(e);
+            return permit;
+        }
+        if (waitNanos == 0) {
+            permit.complete(null);
+            return permit;
+        }
+        
+        final Rule waitingRule = rule;
+        waitingRule.waiting.incrementAndGet();
+        timer().schedule(() -> {
+            waitingRule.waiting.decrementAndGet();
+            permit.complete(null);
+        }, waitNanos, TimeUnit.NANOSECONDS);
+        return permit;
+    }
+    
+    /**
+     * Wrap an engine so every request it sends takes a permit first; engines are
+     * returned as they are when there are no rules
+     */
+    public HttpEngine limit(HttpEngine engine) {
+        return isEnabled() ? new RateLimitedEngine(engine, this) : engine;
+    }
+    
+    private Rule ruleFor(URI uri) {
+        if (rulesByHost.isEmpty() || uri.getHost() == null) {
+            return null;
+        }
+        String host = uri.getHost().toLowerCase();
+        String path = uri.getRawPath() != null && !uri.getRawPath().isEmpty() ? uri.getRawPath() : "/";
+        Rule hostMatch = match(rulesByHost.get(host), path);
+        if (!portRules) {
+            return hostMatch;
+        }
+        
+        int port = uri.getPort() >= 0 ? uri.getPort() : ("https".equalsIgnoreCase(uri.getScheme()) ? 443 : 80);
+        Rule match = match(rulesByHost.get(host + ":" + port), path);
+        if (match == null || (hostMatch != null && hostMatch.pathPrefix.length() > match.pathPrefix.length())) {
+            match = hostMatch;
+        }
+        return match;
+    }
+    
+    private static Rule match(List<Rule> hostRules, String path) {
+        if (hostRules != null) {
+            for (Rule rule : hostRules) {
+                if (path.startsWith(rule.pathPrefix)) {
+                    return rule;
+                }
+            }
+        }
+        return null;
+    }
+    
+    private ScheduledExecutorService timer() {
+        ScheduledExecutorService current = timer;
+        if (current == null) {
+            synchronized (this) {
+                if (timer == null) {
+                    timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                        Thread thread = new Thread(runnable, "RateLimitTimer");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                }
+                current = timer;
+            }
+        }
+        return current;
+    }
+    
+    public void shutdown() {
+        if (timer != null) {
+            timer.shutdownNow();
+        }
+    }
+    
+    public RateLimitStatistics getStatistics() {
+        RateLimitStatistics statistics = new RateLimitStatistics();
+        statistics.maxWaitMs = TimeUnit.NANOSECONDS.toMillis(maxWaitNanos);
+        synchronized (this) {
+            for (Rule rule : rules) {
+                RuleStatistics ruleStatistics = new RuleStatistics();
+                ruleStatistics.permitsPerSecond = rule.bucket.permitsPerSecond;
+                ruleStatistics.burst = rule.bucket.burst;
+                ruleStatistics.permitted = rule.permitted.get();
+                ruleStatistics.delayed = rule.delayed.get();
+                ruleStatistics.throttled = rule.throttled.get();
+                ruleStatistics.waiting = rule.waiting.get();
+                ruleStatistics.averageWaitMs = ruleStatistics.delayed > 0
+                    ? TimeUnit.NANOSECONDS.toMicros(rule.waitNanos.get()) / 1000.0 / ruleStatistics.delayed : 0;
+                statistics.rules.put(rule.target, ruleStatistics);
+                
+                statistics.permitted += ruleStatistics.permitted;
+                statistics.delayed += ruleStatistics.delayed;
+                statistics.throttled += ruleStatistics.throttled;
+                statistics.waiting += ruleStatistics.waiting;
+            }
+        }
+        return statistics;
+    }
+    
+    /**
+     * A rate limit rule and its counters
+     */
+    private static class Rule {
+        final String target;
+        final String pathPrefix;
+        final TokenBucket bucket;
+        final AtomicLong permitted = new AtomicLong();
+        final AtomicLong delayed = new AtomicLong();
+        final AtomicLong throttled = new AtomicLong();
+        final AtomicLong waitNanos = new AtomicLong();
+        final AtomicInteger waiting = new AtomicInteger();
+        
+        Rule(String target, String pathPrefix, TokenBucket bucket) {
+            this.target = target;
+            this.pathPrefix = pathPrefix;
+            this.bucket = bucket;
+        }
+        
+        /**
+         * Reserve a permit and return how long to wait for it
+         */
+        long reserve(long maxWaitNanos) throws RateLimitExceededException {
+            long waitNanos = bucket.reserve(maxWaitNanos);
+            if (waitNanos < 0) {
+                throttled.incrementAndGet();
+                throw new RateLimitExceededException(target, bucket.permitsPerSecond, bucket.burst,
+                    TimeUnit.NANOSECONDS.toMillis(-waitNanos), TimeUnit.NANOSECONDS.toMillis(maxWaitNanos));
+            }
+            permitted.incrementAndGet();
+            if (waitNanos > 0) {
+                delayed.incrementAndGet();
+                this.waitNanos.addAndGet(waitNanos);
+            }
+            return waitNanos;
+        }
+    }
+    
+    /**
+     * Lock-free token bucket, kept as the time at which the bucket will be full again
+     * minus its burst allowance (the "generic cell rate algorithm"): one CAS per permit,
+     * and no refill thread. Waiting callers are served in the order they reserved.
+     */
+    public static class TokenBucket {
+        private final double permitsPerSecond;
+        private final int burst;
+        private final long intervalNanos;
+        private final long toleranceNanos;
+        private final AtomicLong nextFreeNanos;
+        
+        public TokenBucket(double permitsPerSecond, int burst) {
+            this.permitsPerSecond = permitsPerSecond;
+            this.burst = burst;
+            this.intervalNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond));
+            this.toleranceNanos = intervalNanos * (burst - 1);
+            this.nextFreeNanos = new AtomicLong(System.nanoTime());
+        }
+        
+        /**
+         * Reserve the next permit. Returns the nanoseconds until it is due (0 when one is
+         * available now), or, when that exceeds maxWaitNanos, minus the wait and reserves nothing.
+         */
+        public long reserve(long maxWaitNanos) {
+            while (true) {
+                // Read the clock after the state, on every try: other threads move the state
+                // along with the clock, so an older reading would show a wait that is not there
+                long next = nextFreeNanos.get();
+                long now = System.nanoTime();
+                long start = next - now > 0 ? next : now;  // nanoTime values compare by difference
+                long waitNanos = Math.max(0, start - toleranceNanos - now);
+                if (waitNanos > maxWaitNanos) {
+                    return -waitNanos;
+                }
+                if (nextFreeNanos.compareAndSet(next, start + intervalNanos)) {
+                    return waitNanos;
+                }
+            }
+        }
+    }
+    
+    /**
+     * Rate limit statistics structure
+     */
+    public static class RateLimitStatistics {
+        public long maxWaitMs;
+        public long permitted;
+        public long delayed;
+        public long throttled;
+        public int waiting;
+        public Map<String, RuleStatistics> rules = new LinkedHashMap<>();
+    }
+    
+    /**
+     * Per-rule statistics structure
+     */
+    public static class RuleStatistics {
+        public double permitsPerSecond;
+        public int burst;
+        public long permitted;
+        public long delayed;
+        public long throttled;
+        public int waiting;
+        public double averageWaitMs;
+    }
+}
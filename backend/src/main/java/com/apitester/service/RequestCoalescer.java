@@ -0,0 +1,151 @@
+package com.apitester.service;
+
+import com.apitester.config.AppConfig;
+import com.apitester.model.ApiRequest;
+import com.apitester.model.ApiResponse;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import java.util.HashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Single-flight execution of identical GET/HEAD requests: while one request for a
+ * method, URL and header set is in flight, later identical requests wait for its
+ * result instead of opening their own upstream connection. Requests that would be
+ * executed differently (protocol, cache bypass, retry, hedge or timeout policy) are
+ * not identical, so a follower never receives a response its own request would not
+ * have produced.
+ */
+public class RequestCoalescer {
+    
+    private static final ObjectWriter POLICY_WRITER = new ObjectMapper().writer();
+    
+    private final boolean enabledByDefault;
+    private final ConcurrentHashMap<String, CompletableFuture<ApiResponse>> inFlight = new ConcurrentHashMap<>();
+    
+    private final AtomicLong executions = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    
+    public RequestCoalescer() {
+        this(AppConfig.getBoolean("coalesce.enabled", false));
+    }
+    
+    public RequestCoalescer(boolean enabledByDefault) {
+        this.enabledByDefault = enabledByDefault;
+    }
+    
+    /**
+     * Only idempotent, body-less methods are coalesced; ApiRequest.coalesce overrides
+     * the configured default either way
+     */
+    public boolean shouldCoalesce(ApiRequest apiRequest) {
+        String method = apiRequest.getMethod() != null ? apiRequest.getMethod().toUpperCase() : "GET";
+        if (!method.equals("GET") && !method.equals("HEAD")) {
+            return false;
+        }
+        return apiRequest.getCoalesce() != null ? apiRequest.getCoalesce() : enabledByDefault;
+    }
+    
+    /**
+     * Key identifying identical requests: method, URL, all non-blank request headers, and
+     * whatever changes how the leader executes: protocol, cache bypass and the retry,
+     * hedge and timeout policies
+     */
+    public static String key(ApiRequest apiRequest, String url) {
+        String method = apiRequest.getMethod() != null ? apiRequest.getMethod().toUpperCase() : "GET";
+        StringBuilder key = new StringBuilder(method).append(' ')
+            .append(ResponseCache.cacheKey(url, ResponseCache.normalizeHeaders(apiRequest.getHeaders())));
+        String protocol = apiRequest.getProtocol() != null ? apiRequest.getProtocol().trim().toLowerCase() : "";
+        key.append("\n").append(protocol.equals("h2") ? "http2" : protocol);
+        if (apiRequest.isBypassCache()) {
+            key.append("\nbypassCache");
+        }
+        if (apiRequest.getRetry() != null || apiRequest.getHedge() != null || apiRequest.getTimeouts() != null) {
+            try {
+                key.append("\n").append(POLICY_WRITER.writeValueAsString(apiRequest.getRetry()))
+                    .append(POLICY_WRITER.writeValueAsString(apiRequest.getHedge()))
+                    .append(POLICY_WRITER.writeValueAsString(apiRequest.getTimeouts()));
+            } catch (JsonProcessingException e) {
+                // Not expected for plain policy objects; a key of its own means no coalescing
+                key.append("\n").append(System.identityHashCode(apiRequest));
+            }
+        }
+        return key.toString();
+    }
+    
+    /**
+     * Join the in-flight execution for the key, or start one with {@code call} if there
+     * is none. The caller that starts the execution receives its response as is; every
+     * joining caller receives its own copy marked as coalesced. Failures reach all callers.
+     */
+    public CompletableFuture<ApiResponse> join(final String key, Supplier<CompletableFuture<ApiResponse>> call) {
+        final CompletableFuture<ApiResponse> shared = new CompletableFuture<>();
+        CompletableFuture<ApiResponse> existing = inFlight.putIfAbsent(key, shared);
+        if (existing != null) {
+            coalesced.incrementAndGet();
+            return existing.thenApply(RequestCoalescer::copyForFollower);
+        }
+        
+        executions.incrementAndGet();
+        CompletableFuture<ApiResponse> execution;
+        try {
+            execution = call.get();
+        } catch (RuntimeException e) {
+            execution = new CompletableFuture<>();
+            execution.completeExceptionally(e);
+        }
+        
+        // Stop accepting joiners before publishing, so nobody joins a finished execution
+        execution.whenComplete((response, failure) -> {
+            inFlight.remove(key, shared);
+            if (failure != null) {
+                shared.completeExceptionally(failure);
+            } else {
+                shared.complete(response);
+            }
+        });
+        return shared;
+    }
+    
+    private static ApiResponse copyForFollower(ApiResponse response) {
+        ApiResponse copy = new ApiResponse(response.getStatus(), response.getStatusText(),
+            response.getHeaders() != null ? new HashMap<>(response.getHeaders()) : null,
+            response.getBody(), response.getResponseTime(), response.getSize());
+        copy.setCompressedSize(response.getCompressedSize());
+        copy.setBodyTruncated(response.isBodyTruncated());
+        copy.setCacheStatus(response.getCacheStatus());
+        copy.setTimings(response.getTimings());
+        copy.setProtocol(response.getProtocol());
+        copy.setAttempts(response.getAttempts());
+        copy.setAttemptTimings(response.getAttemptTimings());
+        copy.setCoalesced(true);
+        return copy;
+    }
+    
+    public CoalescingStatistics getStatistics() {
+        CoalescingStatistics statistics = new CoalescingStatistics();
+        statistics.enabledByDefault = enabledByDefault;
+        statistics.inFlight = inFlight.size();
+        statistics.executions = executions.get();
+        statistics.coalesced = coalesced.get();
+        long total = statistics.executions + statistics.coalesced;
+        statistics.coalesceRatio = total > 0 ? statistics.coalesced / (double) total : 0;
+        return statistics;
+    }
+    
+    /**
+     * Coalescing statistics structure
+     */
+    public static class CoalescingStatistics {
+        public boolean enabledByDefault;
+        public int inFlight;
+        public long executions;
+        public long coalesced;
+        public double coalesceRatio;
+    }
+}
@@ -0,0 +1,46 @@
+package com.apitester.service;
+
+import java.net.SocketTimeoutException;
+
+/**
+ * A request ran out of time, with the phase whose limit it hit:
+ * waiting for a pooled connection, connecting, the TLS handshake, waiting
+ * for the response, or the request's end-to-end deadline
+ */
+public class RequestTimeoutException extends SocketTimeoutException {
+    
+    public static final String POOL = "pool";
+    public static final String CONNECT = "connect";
+    public static final String TLS = "tls";
+    public static final String READ = "read";
+    public static final String DEADLINE = "deadline";
+    
+    private final String phase;
+    private final long limitMs;
+    
+    // Set once the timeout has been counted in the timeout statistics
+    boolean counted;
+    
+    public RequestTimeoutException(String phase, long limitMs, String message, Throwable cause) {
+        super(message + " (" + phase + " timeout, " + limitMs + " ms)");
+        this.phase = phase;
+        this.limitMs = limitMs;
+        if (cause != null) {
+            initCause(cause);
+        }
+    }
+    
+    /**
+     * pool, connect, tls, read or deadline
+     */
+    public String getPhase() {
+        return phase;
+    }
+    
+    /**
+     * The limit that was reached
+     */
+    public long getLimitMs() {
+        return limitMs;
+    }
+}
@@ -0,0 +1,376 @@
+package com.apitester.service;
+
+import com.apitester.config.AppConfig;
+import com.apitester.model.ApiRequest;
+import com.apitester.model.ApiResponse;
+import com.apitester.model.TimeoutPolicy;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-request timeouts. Each request gets a {@link Deadline} from its timeout policy,
+ * capped by timeout.maxConnectMs, timeout.maxReadMs and timeout.maxTotalMs:
+ *
+ * - Connect, read and pool-lease timeouts go on every upstream request as its own
+ *   RequestConfig, shortened to the time left before the deadline.
+ * - The end-to-end deadline covers redirects, retries and hedges: no attempt or
+ *   backoff starts after it, and an exchange still running when it passes is aborted
+ *   (blocking engines) or cancelled (non-blocking engines).
+ *
+ * Failures caused by a timeout are reported as {@link RequestTimeoutException} naming
+ * the phase that ran out of time.
+ */
+public class RequestTimeouts {
+    
+    private final RequestConfig defaults;
+    private final long defaultTotalMs = AppConfig.getLong("timeout.totalMs", 90000);
+    private final long maxConnectMs = AppConfig.getLong("timeout.maxConnectMs", 30000);
+    private final long maxReadMs = AppConfig.getLong("timeout.maxReadMs", 90000);
+    private final long maxTotalMs = AppConfig.getLong("timeout.maxTotalMs", 90000);
+    private final ScheduledThreadPoolExecutor timer;
+    
+    private final AtomicLong poolTimeouts = new AtomicLong();
+    private final AtomicLong connectTimeouts = new AtomicLong();
+    private final AtomicLong tlsTimeouts = new AtomicLong();
+    private final AtomicLong readTimeouts = new AtomicLong();
+    private final AtomicLong deadlinesExceeded = new AtomicLong();
+    
+    /**
+     * @param defaults the clients' default request configuration, whose connect, read and
+     *                 pool-lease timeouts apply to requests that do not set their own
+     */
+    public RequestTimeouts(RequestConfig defaults) {
+        this.defaults = defaults;
+        this.timer = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "DeadlineTimer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Most exchanges finish long before their deadline; drop their cancelled aborts at once
+        this.timer.setRemoveOnCancelPolicy(true);
+    }
+    
+    /**
+     * Start the clock for a request
+     */
+    public Deadline start(ApiRequest apiRequest) {
+        TimeoutPolicy policy = apiRequest.getTimeouts();
+        long connectMs = cap(policy != null ? policy.getConnectMs() : null, defaults.getConnectTimeout(), maxConnectMs);
+        long readMs = cap(policy != null ? policy.getReadMs() : null, defaults.getSocketTimeout(), maxReadMs);
+        long totalMs = cap(policy != null ? policy.getTotalMs() : null, defaultTotalMs, maxTotalMs);
+        return new Deadline((int) connectMs, (int) readMs, totalMs);
+    }
+    
+    /**
+     * The requested value, else the default, at most the cap; values of 0 or less mean
+     * no limit and become the cap (when there is one)
+     */
+    private static long cap(Long requested, long defaultValue, long max) {
+        long value = requested != null ? requested : defaultValue;
+        if (max <= 0) {
+            return Math.max(0, value);
+        }
+        return value > 0 ? Math.min(value, max) : max;
+    }
+    
+    /**
+     * Execute one upstream exchange within the deadline, on the calling thread
+     */
+    public ApiResponse execute(HttpEngine engine, HttpRequestBase httpRequest, Deadline deadline, long startTime)
+            throws IOException {
+        try {
+            deadline.apply(httpRequest);
+            if (!deadline.isBounded()) {
+                return engine.execute(httpRequest, startTime);
+            }
+            
+            if (engine.isNonBlocking()) {
+                CompletableFuture<ApiResponse> execution = engine.executeAsync(httpRequest, startTime);
+                try {
+                    return execution.get(deadline.remainingNanos(), TimeUnit.NANOSECONDS);
+                } catch (TimeoutException e) {
+                    execution.cancel(true);
+                    throw deadline.exceeded(null);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    CircuitBreakingEngine.abandon(httpRequest);
+                    execution.cancel(true);
+                    throw new InterruptedIOException("Interrupted while waiting for the upstream response");
+                } catch (ExecutionException e) {
+                    throw classify(e.getCause(), deadline);
+                }
+            }
+            
+            ScheduledFuture<?> abort = onExpiry(deadline, httpRequest::abort);
+            try {
+                return engine.execute(httpRequest, startTime);
+            } finally {
+                abort.cancel(false);
+            }
+        } catch (IOException e) {
+            throw classify(e, deadline);
+        }
+    }
+    
+    /**
+     * Execute one upstream exchange within the deadline without holding the calling
+     * thread; the future fails with the deadline's RequestTimeoutException when it passes
+     */
+    public CompletableFuture<ApiResponse> executeAsync(HttpEngine engine, HttpRequestBase httpRequest,
+                                                       final Deadline deadline, long startTime) {
+        final CompletableFuture<ApiResponse> bounded = new CompletableFuture<>();
+        try {
+            deadline.apply(httpRequest);
+        } catch (RequestTimeoutException e) {
+            bounded.completeExceptionally(classify(e, deadline));
+            return bounded;
+        }
+        final CompletableFuture<ApiResponse> execution = engine.executeAsync(httpRequest, startTime);
+        final ScheduledFuture<?> expiry = deadline.isBounded()
+            ? onExpiry(deadline, () -> {
+                if (bounded.completeExceptionally(classify(deadline.exceeded(null), deadline))) {
+                    execution.cancel(true);
+                }
+            })
+            : null;
+        execution.whenComplete((response, failure) -> {
+            if (expiry != null) {
+                expiry.cancel(false);
+            }
+            if (failure == null) {
+                bounded.complete(response);
+            } else {
+                try {
+                    bounded.completeExceptionally(classify(failure, deadline));
+                } catch (RuntimeException e) {
+                    bounded.completeExceptionally(e);
+                }
+            }
+        });
+        bounded.whenComplete((response, failure) -> {
+            if (bounded.isCancelled()) {
+                // Cancelled by the caller, not by the deadline
+                CircuitBreakingEngine.abandon(httpRequest);
+                execution.cancel(true);
+            }
+        });
+        return bounded;
+    }
+    
+    /**
+     * Run the action when the deadline passes, unless the returned future is cancelled first
+     */
+    ScheduledFuture<?> onExpiry(Deadline deadline, Runnable action) {
+        return timer.schedule(action, deadline.remainingNanos(), TimeUnit.NANOSECONDS);
+    }
+    
+    /**
+     * The failure of an exchange, as a RequestTimeoutException when a timeout caused it
+     */
+    public IOException classify(Throwable failure, Deadline deadline) {
+        if (failure instanceof CompletionException && failure.getCause() != null) {
+            failure = failure.getCause();
+        }
+        if (failure instanceof RequestTimeoutException) {
+            count((RequestTimeoutException) failure);
+            return (RequestTimeoutException) failure;
+        }
+        
+        RequestTimeoutException timeout = null;
+        if (deadline != null && deadline.isBounded() && deadline.isExpired()) {
+            // Whatever gave way when the deadline passed: an aborted exchange, or a timeout shortened to fit it
+            timeout = deadline.exceeded(failure);
+        } else if (failure instanceof ConnectionPoolTimeoutException
+                || failure instanceof org.apache.hc.core5.http.ConnectionRequestTimeoutException
+                || failure instanceof org.apache.hc.core5.util.DeadlineTimeoutException
+                || (failure instanceof TimeoutException && String.valueOf(failure.getMessage()).contains("lease"))) {
+            timeout = new RequestTimeoutException(RequestTimeoutException.POOL,
+                deadline != null ? deadline.appliedLeaseMs : defaults.getConnectionRequestTimeout(),
+                "Timed out waiting for a pooled connection", failure);
+        } else if (failure instanceof ConnectTimeoutException
+                || failure instanceof org.apache.hc.client5.http.ConnectTimeoutException
+                || (failure instanceof SocketTimeoutException && "connect timed out".equals(failure.getMessage()))) {
+            timeout = new RequestTimeoutException(RequestTimeoutException.CONNECT,
+                deadline != null ? deadline.appliedConnectMs : defaults.getConnectTimeout(),
+                "Timed out connecting to the upstream", failure);
+        } else if (failure instanceof SocketTimeoutException) {
+            timeout = new RequestTimeoutException(RequestTimeoutException.READ,
+                deadline != null ? deadline.appliedReadMs : defaults.getSocketTimeout(),
+                "Timed out waiting for the upstream response", failure);
+        }
+        
+        if (timeout != null) {
+            count(timeout);
+            return timeout;
+        }
+        if (failure instanceof IOException) {
+            return (IOException) failure;
+        }
+        if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        }
+        return new IOException(failure);
+    }
+    
+    private void count(RequestTimeoutException timeout) {
+        if (timeout.counted) {
+            return;
+        }
+        timeout.counted = true;
+        switch (timeout.getPhase()) {
+            case RequestTimeoutException.POOL:
+                poolTimeouts.incrementAndGet();
+                break;
+            case RequestTimeoutException.CONNECT:
+                connectTimeouts.incrementAndGet();
+                break;
+            case RequestTimeoutException.TLS:
+                tlsTimeouts.incrementAndGet();
+                break;
+            case RequestTimeoutException.READ:
+                readTimeouts.incrementAndGet();
+                break;
+            default:
+                deadlinesExceeded.incrementAndGet();
+        }
+    }
+    
+    public void shutdown() {
+        timer.shutdownNow();
+    }
+    
+    public TimeoutStatistics getStatistics() {
+        TimeoutStatistics statistics = new TimeoutStatistics();
+        statistics.defaultConnectMs = defaults.getConnectTimeout();
+        statistics.defaultReadMs = defaults.getSocketTimeout();
+        statistics.defaultPoolLeaseMs = defaults.getConnectionRequestTimeout();
+        statistics.defaultTotalMs = defaultTotalMs;
+        statistics.maxConnectMs = maxConnectMs;
+        statistics.maxReadMs = maxReadMs;
+        statistics.maxTotalMs = maxTotalMs;
+        statistics.poolTimeouts = poolTimeouts.get();
+        statistics.connectTimeouts = connectTimeouts.get();
+        statistics.tlsTimeouts = tlsTimeouts.get();
+        statistics.readTimeouts = readTimeouts.get();
+        statistics.deadlinesExceeded = deadlinesExceeded.get();
+        statistics.pendingDeadlines = timer.getQueue().size();
+        return statistics;
+    }
+    
+    /**
+     * Timeouts of one request and the time left before its deadline
+     */
+    public class Deadline {
+        
+        private final int connectMs;
+        private final int readMs;
+        private final long totalMs;
+        private final long expiresAtNanos;
+        
+        // Last values put on an upstream request, for reporting which limit was hit
+        private volatile long appliedConnectMs;
+        private volatile long appliedReadMs;
+        private volatile long appliedLeaseMs;
+        
+        Deadline(int connectMs, int readMs, long totalMs) {
+            this.connectMs = connectMs;
+            this.readMs = readMs;
+            this.totalMs = totalMs;
+            this.expiresAtNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(totalMs);
+            this.appliedConnectMs = connectMs;
+            this.appliedReadMs = readMs;
+            this.appliedLeaseMs = defaults.getConnectionRequestTimeout();
+        }
+        
+        /**
+         * Whether the request has an end-to-end deadline
+         */
+        public boolean isBounded() {
+            return totalMs > 0;
+        }
+        
+        public boolean isExpired() {
+            return isBounded() && expiresAtNanos - System.nanoTime() <= 0;
+        }
+        
+        /**
+         * Nanoseconds left before the deadline; Long.MAX_VALUE when there is none
+         */
+        public long remainingNanos() {
+            return isBounded() ? Math.max(0, expiresAtNanos - System.nanoTime()) : Long.MAX_VALUE;
+        }
+        
+        public long remainingMillis() {
+            return isBounded() ? TimeUnit.NANOSECONDS.toMillis(remainingNanos()) : Long.MAX_VALUE;
+        }
+        
+        /**
+         * Give the upstream request its own timeouts, shortened to the time left
+         */
+        public void apply(HttpRequestBase httpRequest) throws RequestTimeoutException {
+            if (isExpired()) {
+                throw exceeded(null);
+            }
+            long remainingMs = Math.max(1, remainingMillis());
+            int connect = shorten(connectMs, remainingMs);
+            int read = shorten(readMs, remainingMs);
+            int lease = shorten(defaults.getConnectionRequestTimeout(), remainingMs);
+            appliedConnectMs = connect;
+            appliedReadMs = read;
+            appliedLeaseMs = lease;
+            httpRequest.setConfig(RequestConfig.copy(defaults)
+                .setConnectTimeout(connect)
+                .setSocketTimeout(read)
+                .setConnectionRequestTimeout(lease)
+                .build());
+        }
+        
+        /**
+         * A timeout, at most the time left; 0 and less (no timeout) become the time left
+         */
+        private int shorten(int timeoutMs, long remainingMs) {
+            if (!isBounded()) {
+                return timeoutMs;
+            }
+            return (int) (timeoutMs > 0 ? Math.min(timeoutMs, remainingMs) : Math.min(remainingMs, Integer.MAX_VALUE));
+        }
+        
+        public RequestTimeoutException exceeded(Throwable cause) {
+            return new RequestTimeoutException(RequestTimeoutException.DEADLINE, totalMs,
+                "Request deadline exceeded", cause);
+        }
+    }
+    
+    /**
+     * Timeout settings and counters structure
+     */
+    public static class TimeoutStatistics {
+        public int defaultConnectMs;
+        public int defaultReadMs;
+        public int defaultPoolLeaseMs;
+        public long defaultTotalMs;
+        public long maxConnectMs;
+        public long maxReadMs;
+        public long maxTotalMs;
+        public long poolTimeouts;
+        public long connectTimeouts;
+        public long tlsTimeouts;
+        public long readTimeouts;
+        public long deadlinesExceeded;
+        public int pendingDeadlines;
+    }
+}
@@ -0,0 +1,524 @@
+package com.apitester.service;
+
+import com.apitester.config.AppConfig;
+import com.apitester.model.ApiRequest;
+import com.apitester.model.ApiResponse;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.utils.DateUtils;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory HTTP cache for proxied GET requests, following the RFC 7234
+ * freshness and validation rules.
+ *
+ * Entries are keyed by URL plus every request header, so a stored response is only
+ * reused for an identical request. This makes Vary hold trivially and keeps responses
+ * for different credentials apart. The cache is bounded by the approximate bytes of the
+ * stored bodies and headers and evicts least recently used entries first. Stale entries
+ * with an ETag or Last-Modified are revalidated with a conditional request.
+ */
+public class ResponseCache {
+    
+    public static final String HIT = "HIT";
+    public static final String MISS = "MISS";
+    public static final String REVALIDATED = "REVALIDATED";
+    public static final String BYPASS = "BYPASS";
+    
+    // Status codes that may be cached without explicit freshness (RFC 7231 section 6.1)
+    private static final int[] CACHEABLE_STATUS = {200, 203, 204, 300, 301, 404, 405, 410, 414, 501};
+    
+    private final boolean enabled;
+    private final long maxBytes;
+    private final long maxEntryBytes;
+    private final long heuristicMaxMs;
+    
+    // Access-ordered, so iteration starts at the least recently used entry
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private long currentBytes;
+    
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong revalidated = new AtomicLong();
+    private final AtomicLong bypassed = new AtomicLong();
+    private final AtomicLong stores = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+    
+    public ResponseCache() {
+        this(AppConfig.getBoolean("cache.enabled", false),
+             AppConfig.getLong("cache.maxBytes", 16L * 1024 * 1024),
+             AppConfig.getLong("cache.maxEntryBytes", 1024L * 1024),
+             AppConfig.getLong("cache.heuristicMaxSeconds", 3600) * 1000);
+    }
+    
+    public ResponseCache(boolean enabled, long maxBytes, long maxEntryBytes, long heuristicMaxMs) {
+        this.enabled = enabled;
+        this.maxBytes = maxBytes;
+        this.maxEntryBytes = Math.min(maxEntryBytes, maxBytes);
+        this.heuristicMaxMs = heuristicMaxMs;
+    }
+    
+    /**
+     * Decide how the cache takes part in a request. Unsafe methods invalidate any
+     * stored responses for the URL, as their effect may have changed them.
+     */
+    public Lookup lookup(ApiRequest apiRequest, String url) {
+        String method = apiRequest.getMethod() != null ? apiRequest.getMethod().toUpperCase() : "GET";
+        if (!enabled || url == null) {
+            return Lookup.NONE;
+        }
+        if (!method.equals("GET")) {
+            invalidateIfUnsafe(method, url);
+            return Lookup.NONE;
+        }
+        
+        Map<String, String> requestHeaders = normalizeHeaders(apiRequest.getHeaders());
+        Map<String, String> requestDirectives = cacheControl(requestHeaders.get("cache-control"));
+        
+        // The caller manages caching itself, or asked us not to take part
+        if (apiRequest.isBypassCache() || requestDirectives.containsKey("no-store")
+                || requestHeaders.containsKey("if-none-match") || requestHeaders.containsKey("if-modified-since")
+                || requestHeaders.containsKey("range")) {
+            bypassed.incrementAndGet();
+            return Lookup.BYPASSED;
+        }
+        
+        String key = cacheKey(url, requestHeaders);
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(key);
+        }
+        if (entry == null) {
+            return new Lookup(key, null, false);
+        }
+        
+        long now = System.currentTimeMillis();
+        long age = entry.currentAge(now);
+        boolean fresh = age < entry.freshnessLifetime;
+        
+        // Request directives can only make a stored response less acceptable
+        if (requestDirectives.containsKey("no-cache") || "no-cache".equalsIgnoreCase(requestHeaders.get("pragma"))) {
+            fresh = false;
+        }
+        long requestMaxAge = parseSeconds(requestDirectives.get("max-age"));
+        if (requestMaxAge >= 0 && age > requestMaxAge * 1000) {
+            fresh = false;
+        }
+        long minFresh = parseSeconds(requestDirectives.get("min-fresh"));
+        if (minFresh >= 0 && entry.freshnessLifetime - age < minFresh * 1000) {
+            fresh = false;
+        }
+        
+        return new Lookup(key, entry, fresh);
+    }
+    
+    /**
+     * Build the response for a fresh lookup
+     */
+    public ApiResponse hit(Lookup lookup, long responseTime) {
+        hits.incrementAndGet();
+        return lookup.entry.toApiResponse(HIT, responseTime, System.currentTimeMillis());
+    }
+    
+    /**
+     * Add If-None-Match / If-Modified-Since when a stale entry can be revalidated
+     */
+    public void addConditionalHeaders(Lookup lookup, HttpRequestBase httpRequest) {
+        if (lookup.entry == null) {
+            return;
+        }
+        String etag = header(lookup.entry.headers, "ETag");
+        String lastModified = header(lookup.entry.headers, "Last-Modified");
+        if (etag != null) {
+            httpRequest.setHeader("If-None-Match", etag);
+        }
+        if (lastModified != null) {
+            httpRequest.setHeader("If-Modified-Since", lastModified);
+        }
+    }
+    
+    /**
+     * Feed the network response back into the cache. A 304 for a revalidated entry
+     * refreshes it and returns the stored body; any other response replaces the
+     * entry when it is storable.
+     *
+     * @param requestTime wall-clock time the request was sent
+     * @param responseTime wall-clock time the response was received
+     */
+    public ApiResponse update(Lookup lookup, ApiResponse networkResponse, long requestTime, long responseTime) {
+        if (lookup == Lookup.NONE) {
+            return networkResponse;
+        }
+        if (lookup == Lookup.BYPASSED) {
+            networkResponse.setCacheStatus(BYPASS);
+            return networkResponse;
+        }
+        
+        if (networkResponse.getStatus() == 304 && lookup.entry != null) {
+            Map<String, String> merged = new HashMap<>(lookup.entry.headers);
+            for (Map.Entry<String, String> header : networkResponse.getHeaders().entrySet()) {
+                if (header.getKey().equalsIgnoreCase("Content-Length")) {
+                    continue;
+                }
+                removeHeader(merged, header.getKey());
+                merged.put(header.getKey(), header.getValue());
+            }
+            Entry refreshed = newEntry(lookup.entry.status, lookup.entry.statusText, merged,
+                lookup.entry.body, lookup.entry.size, requestTime, responseTime);
+            if (refreshed != null) {
+                put(lookup.key, refreshed);
+            } else {
+                remove(lookup.key);
+            }
+            
+            revalidated.incrementAndGet();
+            Entry served = refreshed != null ? refreshed : lookup.entry;
+            ApiResponse revalidatedResponse = served.toApiResponse(REVALIDATED, networkResponse.getResponseTime(), responseTime);
+            revalidatedResponse.setProtocol(networkResponse.getProtocol());
+            revalidatedResponse.setCompressedSize(networkResponse.getCompressedSize());
+            revalidatedResponse.setAttempts(networkResponse.getAttempts());
+            revalidatedResponse.setAttemptTimings(networkResponse.getAttemptTimings());
+            return revalidatedResponse;
+        }
+        
+        misses.incrementAndGet();
+        Entry entry = isStorable(networkResponse)
+            ? newEntry(networkResponse.getStatus(), networkResponse.getStatusText(), networkResponse.getHeaders(),
+                       networkResponse.getBody(), networkResponse.getSize(), requestTime, responseTime)
+            : null;
+        if (entry != null) {
+            put(lookup.key, entry);
+            stores.incrementAndGet();
+        } else if (lookup.entry != null) {
+            remove(lookup.key);
+        }
+        networkResponse.setCacheStatus(MISS);
+        return networkResponse;
+    }
+    
+    /**
+     * Drop every stored response for a URL after a POST, PUT, PATCH or DELETE to it
+     */
+    public void invalidateIfUnsafe(String method, String url) {
+        if (!enabled || url == null || method == null) {
+            return;
+        }
+        String upper = method.toUpperCase();
+        if (upper.equals("GET") || upper.equals("HEAD") || upper.equals("OPTIONS")) {
+            return;
+        }
+        String prefix = url + "\n";
+        synchronized (this) {
+            Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<String, Entry> stored = iterator.next();
+                if (stored.getKey().startsWith(prefix)) {
+                    currentBytes -= stored.getValue().bytes;
+                    iterator.remove();
+                    invalidations.incrementAndGet();
+                }
+            }
+        }
+    }
+    
+    public synchronized void clear() {
+        entries.clear();
+        currentBytes = 0;
+    }
+    
+    private boolean isStorable(ApiResponse response) {
+        if (response.getStatus() == 0 || response.isBodyTruncated()) {
+            return false;
+        }
+        boolean cacheableStatus = false;
+        for (int status : CACHEABLE_STATUS) {
+            cacheableStatus |= status == response.getStatus();
+        }
+        Map<String, String> directives = cacheControl(header(response.getHeaders(), "Cache-Control"));
+        if (directives.containsKey("no-store") || "*".equals(header(response.getHeaders(), "Vary"))) {
+            return false;
+        }
+        // Other statuses need explicit freshness information to be stored
+        return cacheableStatus || directives.containsKey("max-age") || directives.containsKey("s-maxage")
+            || header(response.getHeaders(), "Expires") != null;
+    }
+    
+    private Entry newEntry(int status, String statusText, Map<String, String> headers, String body, int size,
+                           long requestTime, long responseTime) {
+        Map<String, String> directives = cacheControl(header(headers, "Cache-Control"));
+        Date date = parseDate(header(headers, "Date"));
+        long dateValue = date != null ? date.getTime() : responseTime;
+        
+        // Initial age (RFC 7234 section 4.2.3)
+        long apparentAge = Math.max(0, responseTime - dateValue);
+        long ageValue = Math.max(0, parseSeconds(header(headers, "Age"))) * 1000;
+        long correctedAgeValue = ageValue + (responseTime - requestTime);
+        long initialAge = Math.max(apparentAge, correctedAgeValue);
+        
+        long freshnessLifetime = freshnessLifetime(directives, headers, dateValue);
+        boolean hasValidator = header(headers, "ETag") != null || header(headers, "Last-Modified") != null;
+        if (freshnessLifetime <= 0 && !hasValidator) {
+            // Could never be served without going upstream again
+            return null;
+        }
+        
+        long bytes = (body != null ? size : 0);
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            bytes += header.getKey().length() + (header.getValue() != null ? header.getValue().length() : 0);
+        }
+        if (bytes > maxEntryBytes) {
+            return null;
+        }
+        return new Entry(status, statusText, new HashMap<>(headers), body, size, bytes,
+            freshnessLifetime, initialAge, responseTime);
+    }
+    
+    /**
+     * Freshness lifetime in milliseconds (RFC 7234 section 4.2.1). no-cache stores the
+     * response but forces revalidation on every use.
+     */
+    private long freshnessLifetime(Map<String, String> directives, Map<String, String> headers, long dateValue) {
+        if (directives.containsKey("no-cache")) {
+            return 0;
+        }
+        long sMaxAge = parseSeconds(directives.get("s-maxage"));
+        if (sMaxAge >= 0) {
+            return sMaxAge * 1000;
+        }
+        long maxAge = parseSeconds(directives.get("max-age"));
+        if (maxAge >= 0) {
+            return maxAge * 1000;
+        }
+        String expiresHeader = header(headers, "Expires");
+        if (expiresHeader != null) {
+            // An invalid Expires means already expired
+            Date expires = parseDate(expiresHeader);
+            return expires != null ? Math.max(0, expires.getTime() - dateValue) : 0;
+        }
+        // Heuristic: 10% of the time since last modification, capped
+        Date lastModified = parseDate(header(headers, "Last-Modified"));
+        if (lastModified != null && dateValue > lastModified.getTime()) {
+            return Math.min((dateValue - lastModified.getTime()) / 10, heuristicMaxMs);
+        }
+        return 0;
+    }
+    
+    private synchronized void put(String key, Entry entry) {
+        Entry previous = entries.put(key, entry);
+        if (previous != null) {
+            currentBytes -= previous.bytes;
+        }
+        currentBytes += entry.bytes;
+        
+        Iterator<Entry> eldest = entries.values().iterator();
+        while (currentBytes > maxBytes && eldest.hasNext()) {
+            currentBytes -= eldest.next().bytes;
+            eldest.remove();
+            evictions.incrementAndGet();
+        }
+    }
+    
+    private synchronized void remove(String key) {
+        Entry previous = entries.remove(key);
+        if (previous != null) {
+            currentBytes -= previous.bytes;
+        }
+    }
+    
+    /**
+     * Lower-cased header names with trimmed values, skipping the blank headers that
+     * are never sent upstream. Sorted, so equal requests produce equal keys.
+     */
+    static Map<String, String> normalizeHeaders(Map<String, String> headers) {
+        Map<String, String> normalized = new TreeMap<>();
+        if (headers != null) {
+            for (Map.Entry<String, String> header : headers.entrySet()) {
+                if (header.getKey() != null && !header.getKey().trim().isEmpty() &&
+                    header.getValue() != null && !header.getValue().trim().isEmpty()) {
+                    normalized.put(header.getKey().trim().toLowerCase(), header.getValue().trim());
+                }
+            }
+        }
+        return normalized;
+    }
+    
+    static String cacheKey(String url, Map<String, String> normalizedHeaders) {
+        StringBuilder key = new StringBuilder(url).append('\n');
+        for (Map.Entry<String, String> header : normalizedHeaders.entrySet()) {
+            key.append(header.getKey()).append(':').append(header.getValue()).append('\n');
+        }
+        return key.toString();
+    }
+    
+    /**
+     * Parse a Cache-Control header into lower-cased directive names and unquoted values
+     */
+    private static Map<String, String> cacheControl(String value) {
+        Map<String, String> directives = new HashMap<>();
+        if (value == null) {
+            return directives;
+        }
+        for (String part : value.split(",")) {
+            String directive = part.trim();
+            if (directive.isEmpty()) {
+                continue;
+            }
+            int equals = directive.indexOf('=');
+            if (equals < 0) {
+                directives.put(directive.toLowerCase(), "");
+            } else {
+                String argument = directive.substring(equals + 1).trim();
+                if (argument.length() >= 2 && argument.startsWith("\"") && argument.endsWith("\"")) {
+                    argument = argument.substring(1, argument.length() - 1);
+                }
+                directives.put(directive.substring(0, equals).trim().toLowerCase(), argument);
+            }
+        }
+        return directives;
+    }
+    
+    /**
+     * Delta-seconds value, or -1 when absent or invalid
+     */
+    private static long parseSeconds(String value) {
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+    
+    private static Date parseDate(String value) {
+        return value != null ? DateUtils.parseDate(value) : null;
+    }
+    
+    private static String header(Map<String, String> headers, String name) {
+        if (headers == null) {
+            return null;
+        }
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            if (name.equalsIgnoreCase(header.getKey())) {
+                return header.getValue();
+            }
+        }
+        return null;
+    }
+    
+    private static void removeHeader(Map<String, String> headers, String name) {
+        headers.keySet().removeIf(key -> key.equalsIgnoreCase(name));
+    }
+    
+    public CacheStatistics getStatistics() {
+        CacheStatistics statistics = new CacheStatistics();
+        synchronized (this) {
+            statistics.entries = entries.size();
+            statistics.bytes = currentBytes;
+        }
+        statistics.enabled = enabled;
+        statistics.maxBytes = maxBytes;
+        statistics.hits = hits.get();
+        statistics.misses = misses.get();
+        statistics.revalidated = revalidated.get();
+        statistics.bypassed = bypassed.get();
+        statistics.stores = stores.get();
+        statistics.evictions = evictions.get();
+        statistics.invalidations = invalidations.get();
+        long lookups = statistics.hits + statistics.misses + statistics.revalidated;
+        statistics.hitRatio = lookups > 0 ? (statistics.hits + statistics.revalidated) / (double) lookups : 0;
+        return statistics;
+    }
+    
+    /**
+     * Outcome of a cache lookup, carried through to update()
+     */
+    public static class Lookup {
+        // The cache does not take part (disabled, or not a GET)
+        static final Lookup NONE = new Lookup(null, null, false);
+        // The cache was deliberately skipped for this request
+        static final Lookup BYPASSED = new Lookup(null, null, false);
+        
+        private final String key;
+        private final Entry entry;
+        private final boolean fresh;
+        
+        private Lookup(String key, Entry entry, boolean fresh) {
+            this.key = key;
+            this.entry = entry;
+            this.fresh = fresh;
+        }
+        
+        /**
+         * True when the stored response can be served without contacting the upstream
+         */
+        public boolean isFresh() {
+            return fresh;
+        }
+    }
+    
+    private static class Entry {
+        final int status;
+        final String statusText;
+        final Map<String, String> headers;
+        final String body;
+        final int size;
+        final long bytes;
+        final long freshnessLifetime;
+        final long initialAge;
+        final long responseTime;
+        
+        Entry(int status, String statusText, Map<String, String> headers, String body, int size, long bytes,
+              long freshnessLifetime, long initialAge, long responseTime) {
+            this.status = status;
+            this.statusText = statusText;
+            this.headers = headers;
+            this.body = body;
+            this.size = size;
+            this.bytes = bytes;
+            this.freshnessLifetime = freshnessLifetime;
+            this.initialAge = initialAge;
+            this.responseTime = responseTime;
+        }
+        
+        long currentAge(long now) {
+            return initialAge + Math.max(0, now - responseTime);
+        }
+        
+        ApiResponse toApiResponse(String cacheStatus, long elapsed, long now) {
+            Map<String, String> responseHeaders = new HashMap<>(headers);
+            removeHeader(responseHeaders, "Age");
+            responseHeaders.put("Age", String.valueOf(currentAge(now) / 1000));
+            
+            ApiResponse apiResponse = new ApiResponse(status, statusText, responseHeaders, body, elapsed, size);
+            apiResponse.setCacheStatus(cacheStatus);
+            return apiResponse;
+        }
+    }
+    
+    /**
+     * Cache statistics structure
+     */
+    public static class CacheStatistics {
+        public boolean enabled;
+        public int entries;
+        public long bytes;
+        public long maxBytes;
+        public long hits;
+        public long misses;
+        public long revalidated;
+        public long bypassed;
+        public long stores;
+        public long evictions;
+        public long invalidations;
+        public double hitRatio;
+    }
+}
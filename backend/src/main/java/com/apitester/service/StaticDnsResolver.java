@@ -0,0 +1,46 @@
+package com.apitester.service;
+
+import org.apache.http.conn.DnsResolver;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Stub resolver with fixed host-to-address mappings, for tests and local setups.
+ * Hosts without a mapping go to the fallback resolver, or fail when there is none.
+ */
+public class StaticDnsResolver implements DnsResolver {
+    
+    private final Map<String, InetAddress[]> hosts = new ConcurrentHashMap<>();
+    private final DnsResolver fallback;
+    
+    public StaticDnsResolver(DnsResolver fallback) {
+        this.fallback = fallback;
+    }
+    
+    /**
+     * @param addresses IP literals; they are never looked up
+     */
+    public void add(String host, String... addresses) throws UnknownHostException {
+        InetAddress[] resolved = new InetAddress[addresses.length];
+        for (int i = 0; i < addresses.length; i++) {
+            byte[] raw = InetAddress.getByName(addresses[i].trim()).getAddress();
+            resolved[i] = InetAddress.getByAddress(host, raw);
+        }
+        hosts.put(host.toLowerCase(), resolved);
+    }
+    
+    @Override
+    public InetAddress[] resolve(String host) throws UnknownHostException {
+        InetAddress[] addresses = hosts.get(host.toLowerCase());
+        if (addresses != null) {
+            return addresses.clone();
+        }
+        if (fallback == null) {
+            throw new UnknownHostException(host);
+        }
+        return fallback.resolve(host);
+    }
+}
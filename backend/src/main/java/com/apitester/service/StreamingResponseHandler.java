@@ -0,0 +1,27 @@
+package com.apitester.service;
+
+import com.apitester.model.ApiResponse;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+
+/**
+ * Receives an upstream response as it arrives instead of as a buffered String.
+ * Used by {@link ApiRequestService#processRequestStreaming} to copy bodies
+ * straight to the servlet output stream.
+ */
+public interface StreamingResponseHandler {
+    
+    /**
+     * Called once the upstream status line and headers are known, before any
+     * body bytes. The body, size and truncation fields are not yet set.
+     */
+    void onHead(ApiResponse head) throws IOException;
+    
+    /**
+     * Called with the upstream body. Implementations should read it to the end;
+     * the service counts the bytes read and keeps a bounded prefix for logging.
+     */
+    void onBody(InputStream body, Charset charset) throws IOException;
+}
@@ -0,0 +1,32 @@
+package com.apitester.service;
+
+import com.apitester.model.PhaseTimings;
+import org.apache.http.conn.DnsResolver;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+/**
+ * Records how long host name resolution takes for the exchange being timed
+ */
+public class TimingDnsResolver implements DnsResolver {
+    
+    private final DnsResolver delegate;
+    
+    public TimingDnsResolver(DnsResolver delegate) {
+        this.delegate = delegate;
+    }
+    
+    @Override
+    public InetAddress[] resolve(String host) throws UnknownHostException {
+        long start = System.nanoTime();
+        try {
+            return delegate.resolve(host);
+        } finally {
+            PhaseTimings timings = PhaseTimer.current();
+            if (timings != null) {
+                timings.setDnsNanos(timings.getDnsNanos() + System.nanoTime() - start);
+            }
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.apitester.service;
+
+import com.apitester.model.PhaseTimings;
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpException;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpRequestExecutor;
+
+import java.io.IOException;
+
+/**
+ * Request executor that records request write time and time to the response head
+ */
+public class TimingRequestExecutor extends HttpRequestExecutor {
+    
+    @Override
+    protected HttpResponse doSendRequest(HttpRequest request, HttpClientConnection conn, HttpContext context)
+            throws IOException, HttpException {
+        long start = System.nanoTime();
+        try {
+            return super.doSendRequest(request, conn, context);
+        } finally {
+            PhaseTimings timings = PhaseTimer.current();
+            if (timings != null) {
+                timings.setRequestWriteNanos(timings.getRequestWriteNanos() + System.nanoTime() - start);
+            }
+        }
+    }
+    
+    @Override
+    protected HttpResponse doReceiveResponse(HttpRequest request, HttpClientConnection conn, HttpContext context)
+            throws HttpException, IOException {
+        long start = System.nanoTime();
+        try {
+            return super.doReceiveResponse(request, conn, context);
+        } finally {
+            PhaseTimings timings = PhaseTimer.current();
+            if (timings != null) {
+                timings.setTtfbNanos(timings.getTtfbNanos() + System.nanoTime() - start);
+            }
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.apitester.service;
+
+import com.apitester.model.PhaseTimings;
+import org.apache.http.HttpHost;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.protocol.HttpContext;
+
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocket;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+
+/**
+ * SSL socket factory that records TCP connect and TLS handshake time separately,
+ * and whether the handshake resumed a cached session. The handshake runs in
+ * createLayeredSocket, which connectSocket calls once the TCP connection is up.
+ * A handshake that times out fails with a RequestTimeoutException of phase "tls".
+ */
+public class TimingSSLSocketFactory extends SSLConnectionSocketFactory {
+    
+    private final TlsSessionMetrics tlsMetrics;
+    
+    public TimingSSLSocketFactory(SSLContext sslContext, String[] supportedProtocols,
+                                  String[] supportedCipherSuites, HostnameVerifier hostnameVerifier,
+                                  TlsSessionMetrics tlsMetrics) {
+        super(sslContext, supportedProtocols, supportedCipherSuites, hostnameVerifier);
+        this.tlsMetrics = tlsMetrics;
+    }
+    
+    @Override
+    public Socket connectSocket(int connectTimeout, Socket socket, HttpHost host, InetSocketAddress remoteAddress,
+                                InetSocketAddress localAddress, HttpContext context) throws IOException {
+        PhaseTimings timings = PhaseTimer.current();
+        long tlsBefore = timings != null ? timings.getTlsNanos() : 0;
+        long start = System.nanoTime();
+        try {
+            return super.connectSocket(connectTimeout, socket, host, remoteAddress, localAddress, context);
+        } finally {
+            if (timings != null) {
+                long tls = timings.getTlsNanos() - tlsBefore;
+                timings.setConnectNanos(timings.getConnectNanos() + System.nanoTime() - start - tls);
+                timings.setConnectionReused(false);
+            }
+        }
+    }
+    
+    @Override
+    public Socket createLayeredSocket(Socket socket, String target, int port, HttpContext context) throws IOException {
+        long startMillis = System.currentTimeMillis();
+        long start = System.nanoTime();
+        Socket layered = null;
+        try {
+            layered = super.createLayeredSocket(socket, target, port, context);
+            return layered;
+        } catch (SocketTimeoutException e) {
+            // The handshake runs under the connect timeout; report it as its own phase
+            throw new RequestTimeoutException(RequestTimeoutException.TLS, handshakeTimeout(socket),
+                "TLS handshake with " + target + ":" + port + " timed out", e);
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            boolean resumed = false;
+            if (layered instanceof SSLSocket) {
+                resumed = tlsMetrics.record(target, port, ((SSLSocket) layered).getSession(), startMillis, elapsed);
+            }
+            PhaseTimings timings = PhaseTimer.current();
+            if (timings != null) {
+                timings.setTlsNanos(timings.getTlsNanos() + elapsed);
+                timings.setTlsResumed(resumed);
+            }
+        }
+    }
+    
+    private static int handshakeTimeout(Socket socket) {
+        try {
+            return socket.getSoTimeout();
+        } catch (SocketException e) {
+            return 0;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,42 @@
+package com.apitester.service;
+
+import com.apitester.model.PhaseTimings;
+import org.apache.http.HttpHost;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.protocol.HttpContext;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+
+/**
+ * Records TCP connect time for plain connections
+ */
+public class TimingSocketFactory implements ConnectionSocketFactory {
+    
+    private final ConnectionSocketFactory delegate;
+    
+    public TimingSocketFactory(ConnectionSocketFactory delegate) {
+        this.delegate = delegate;
+    }
+    
+    @Override
+    public Socket createSocket(HttpContext context) throws IOException {
+        return delegate.createSocket(context);
+    }
+    
+    @Override
+    public Socket connectSocket(int connectTimeout, Socket socket, HttpHost host, InetSocketAddress remoteAddress,
+                                InetSocketAddress localAddress, HttpContext context) throws IOException {
+        long start = System.nanoTime();
+        try {
+            return delegate.connectSocket(connectTimeout, socket, host, remoteAddress, localAddress, context);
+        } finally {
+            PhaseTimings timings = PhaseTimer.current();
+            if (timings != null) {
+                timings.setConnectNanos(timings.getConnectNanos() + System.nanoTime() - start);
+                timings.setConnectionReused(false);
+            }
+        }
+    }
+}
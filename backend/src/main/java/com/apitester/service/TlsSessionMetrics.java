@@ -0,0 +1,119 @@
+package com.apitester.service;
+
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSessionContext;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts full versus resumed TLS handshakes per host for both HTTP clients.
+ *
+ * JSSE does not say whether a handshake resumed a session, so a session created
+ * before the handshake started is taken to be a resumed one.
+ */
+public class TlsSessionMetrics {
+    
+    private final SSLSessionContext sessionContext;
+    private final ConcurrentHashMap<String, HostStats> hosts = new ConcurrentHashMap<>();
+    private final AtomicLong warmupConnections = new AtomicLong();
+    private final AtomicLong warmupFailures = new AtomicLong();
+    
+    /**
+     * @param sessionContext client session cache being measured, or null when unknown
+     */
+    public TlsSessionMetrics(SSLSessionContext sessionContext) {
+        this.sessionContext = sessionContext;
+    }
+    
+    /**
+     * Record a completed handshake
+     *
+     * @param startMillis wall-clock time at which the handshake started
+     * @param handshakeNanos how long the handshake took
+     * @return whether the handshake resumed a cached session
+     */
+    public boolean record(String host, int port, SSLSession session, long startMillis, long handshakeNanos) {
+        boolean resumed = session != null && session.getCreationTime() < startMillis;
+        HostStats stats = hosts.computeIfAbsent(host.toLowerCase() + ":" + port, key -> new HostStats());
+        if (resumed) {
+            stats.resumed.incrementAndGet();
+            stats.resumedNanos.addAndGet(handshakeNanos);
+        } else {
+            stats.full.incrementAndGet();
+            stats.fullNanos.addAndGet(handshakeNanos);
+        }
+        return resumed;
+    }
+    
+    void recordWarmup(int opened, int failed) {
+        warmupConnections.addAndGet(opened);
+        warmupFailures.addAndGet(failed);
+    }
+    
+    public TlsStatistics getStatistics() {
+        TlsStatistics statistics = new TlsStatistics();
+        if (sessionContext != null) {
+            statistics.sessionCacheSize = sessionContext.getSessionCacheSize();
+            statistics.sessionTimeoutSeconds = sessionContext.getSessionTimeout();
+            statistics.cachedSessions = Collections.list(sessionContext.getIds()).size();
+        }
+        statistics.warmupConnections = warmupConnections.get();
+        statistics.warmupFailures = warmupFailures.get();
+        
+        for (Map.Entry<String, HostStats> entry : hosts.entrySet()) {
+            HostStats stats = entry.getValue();
+            HostStatistics hostStatistics = new HostStatistics();
+            hostStatistics.host = entry.getKey();
+            hostStatistics.fullHandshakes = stats.full.get();
+            hostStatistics.resumedHandshakes = stats.resumed.get();
+            hostStatistics.fullHandshakeAvgMs = hostStatistics.fullHandshakes > 0
+                ? stats.fullNanos.get() / (double) hostStatistics.fullHandshakes / 1_000_000.0 : 0;
+            hostStatistics.resumedHandshakeAvgMs = hostStatistics.resumedHandshakes > 0
+                ? stats.resumedNanos.get() / (double) hostStatistics.resumedHandshakes / 1_000_000.0 : 0;
+            long handshakes = hostStatistics.fullHandshakes + hostStatistics.resumedHandshakes;
+            hostStatistics.resumptionRatio = handshakes > 0 ? hostStatistics.resumedHandshakes / (double) handshakes : 0;
+            statistics.hosts.add(hostStatistics);
+            
+            statistics.fullHandshakes += hostStatistics.fullHandshakes;
+            statistics.resumedHandshakes += hostStatistics.resumedHandshakes;
+        }
+        return statistics;
+    }
+    
+    private static class HostStats {
+        final AtomicLong full = new AtomicLong();
+        final AtomicLong resumed = new AtomicLong();
+        final AtomicLong fullNanos = new AtomicLong();
+        final AtomicLong resumedNanos = new AtomicLong();
+    }
+    
+    /**
+     * TLS session statistics structure
+     */
+    public static class TlsStatistics {
+        public int sessionCacheSize;
+        public int sessionTimeoutSeconds;
+        public int cachedSessions;
+        public long fullHandshakes;
+        public long resumedHandshakes;
+        public long warmupConnections;
+        public long warmupFailures;
+        public List<HostStatistics> hosts = new ArrayList<>();
+    }
+    
+    /**
+     * Per-host handshake statistics structure
+     */
+    public static class HostStatistics {
+        public String host;
+        public long fullHandshakes;
+        public long resumedHandshakes;
+        public double fullHandshakeAvgMs;
+        public double resumedHandshakeAvgMs;
+        public double resumptionRatio;
+    }
+}
@@ -0,0 +1,151 @@
+package com.apitester.service;
+
+import com.apitester.model.ApiResponse;
+import com.apitester.model.PhaseTimings;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.entity.ContentType;
+
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocketFactory;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Engine on the JDK's HttpURLConnection, with no pool of its own: connections are
+ * kept alive by the JDK (http.keepAlive, at most http.maxConnections idle ones per
+ * host). Host names go through the JDK resolver rather than the DNS cache, and
+ * HttpURLConnection rejects PATCH requests.
+ */
+public class UrlConnectionEngine implements HttpEngine {
+    
+    private final SSLSocketFactory sslSocketFactory;
+    private final int connectTimeoutMs;
+    private final int readTimeoutMs;
+    private final String userAgent;
+    
+    /**
+     * @param sslContext context for HTTPS connections, or null for the JSSE default
+     */
+    public UrlConnectionEngine(SSLContext sslContext, int connectTimeoutMs, int readTimeoutMs, String userAgent) {
+        this.sslSocketFactory = sslContext != null ? sslContext.getSocketFactory() : null;
+        this.connectTimeoutMs = connectTimeoutMs;
+        this.readTimeoutMs = readTimeoutMs;
+        this.userAgent = userAgent;
+    }
+    
+    @Override
+    public String getName() {
+        return "urlconnection";
+    }
+    
+    @Override
+    public ApiResponse execute(HttpRequestBase httpRequest, long startTime) throws IOException {
+        PhaseTimings timings = new PhaseTimings();
+        long exchangeStart = System.nanoTime();
+        
+        HttpURLConnection connection = (HttpURLConnection) httpRequest.getURI().toURL().openConnection();
+        if (connection instanceof HttpsURLConnection && sslSocketFactory != null) {
+            // Same trust and hostname rules as the other clients
+            ((HttpsURLConnection) connection).setSSLSocketFactory(sslSocketFactory);
+            ((HttpsURLConnection) connection).setHostnameVerifier((hostname, session) -> true);
+        }
+        connection.setRequestMethod(httpRequest.getMethod());
+        // A request's own timeouts (see RequestTimeouts) replace the engine's
+        RequestConfig config = httpRequest.getConfig();
+        connection.setConnectTimeout(config != null && config.getConnectTimeout() > 0
+            ? config.getConnectTimeout() : connectTimeoutMs);
+        connection.setReadTimeout(config != null && config.getSocketTimeout() > 0
+            ? config.getSocketTimeout() : readTimeoutMs);
+        // Aborting the request (at its deadline) closes the connection
+        final HttpURLConnection cancellable = connection;
+        httpRequest.setCancellable(() -> {
+            cancellable.disconnect();
+            return true;
+        });
+        connection.setInstanceFollowRedirects(true);
+        connection.setUseCaches(false);
+        connection.setRequestProperty("User-Agent", userAgent);
+        for (Header header : httpRequest.getAllHeaders()) {
+            connection.setRequestProperty(header.getName(), header.getValue());
+        }
+        
+        HttpEntity entity = httpRequest instanceof HttpEntityEnclosingRequest
+            ? ((HttpEntityEnclosingRequest) httpRequest).getEntity() : null;
+        if (entity != null) {
+            if (entity.getContentType() != null) {
+                connection.setRequestProperty("Content-Type", entity.getContentType().getValue());
+            }
+            connection.setDoOutput(true);
+            if (entity.getContentLength() >= 0) {
+                connection.setFixedLengthStreamingMode(entity.getContentLength());
+            }
+            try (OutputStream out = connection.getOutputStream()) {
+                entity.writeTo(out);
+            }
+        }
+        
+        int status = connection.getResponseCode();
+        long downloadStart = System.nanoTime();
+        InputStream in = status >= 400 ? connection.getErrorStream() : connection.getInputStream();
+        // Closing the body hands the connection back to the JDK keep-alive cache; disconnect() would close it
+        DecodingInputStream body = new DecodingInputStream(in != null ? in : new ByteArrayInputStream(new byte[0]),
+            connection.getContentEncoding());
+        byte[] bytes = body.readAll();
+        long exchangeEnd = System.nanoTime();
+        timings.setDownloadNanos(exchangeEnd - downloadStart);
+        timings.setTotalNanos(exchangeEnd - exchangeStart);
+        
+        // Index 0 is the status line; iterating by index keeps repeated headers in wire order
+        Map<String, String> headers = new HashMap<>();
+        for (int i = 1; connection.getHeaderField(i) != null; i++) {
+            String name = connection.getHeaderFieldKey(i);
+            if (name != null) {
+                headers.put(name, connection.getHeaderField(i));
+            }
+        }
+        
+        String statusLine = connection.getHeaderField(0);
+        String contentType = connection.getContentType();
+        Charset charset = StandardCharsets.UTF_8;
+        if (contentType != null) {
+            try {
+                Charset declared = ContentType.parse(contentType).getCharset();
+                if (declared != null) {
+                    charset = declared;
+                }
+            } catch (RuntimeException e) {
+                // Malformed or unsupported charset; keep UTF-8 like the other engines
+            }
+        }
+        
+        ApiResponse apiResponse = new ApiResponse();
+        apiResponse.setStatus(status);
+        apiResponse.setStatusText(connection.getResponseMessage());
+        apiResponse.setHeaders(headers);
+        apiResponse.setBody(new String(bytes, charset));
+        apiResponse.setResponseTime(System.currentTimeMillis() - startTime);
+        apiResponse.setSize(bytes.length);
+        apiResponse.setCompressedSize(body.getEncodedCount());
+        int space = statusLine != null ? statusLine.indexOf(' ') : -1;
+        apiResponse.setProtocol(space > 0 ? statusLine.substring(0, space) : "HTTP/1.1");
+        apiResponse.setTimings(timings);
+        return apiResponse;
+    }
+    
+    @Override
+    public void shutdown() {
+        // Kept-alive connections belong to the JDK and close when idle
+    }
+}
@@ -1,33 +1,54 @@
 package com.apitester.servlet;
 
+import com.apitester.config.AppConfig;
 import com.apitester.model.ApiRequest;
 import com.apitester.model.ApiResponse;
 import com.apitester.service.ApiRequestService;
+import com.apitester.service.JsonPrettyPrinter;
+import com.apitester.service.StreamingResponseHandler;
 import com.apitester.logging.SecurityLogger;
 import com.apitester.logging.SessionManager;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
 
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
 import javax.servlet.ServletException;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
 
-@WebServlet({"/api/request", "/api/raw-request"})
+@WebServlet(urlPatterns = {"/api/request", "/api/raw-request"}, asyncSupported = true)
 public class ApiRequestServlet extends HttpServlet {
     
+    // Upper bound for an async exchange: pool lease + connect + read timeouts plus headroom
+    private static final long ASYNC_TIMEOUT = 95000;
+    private static final int STREAM_BUFFER_SIZE = 8192;
+    
+    private static final ObjectReader REQUEST_READER = JsonCodec.readerFor(ApiRequest.class);
+    private static final ObjectWriter RESPONSE_WRITER = JsonCodec.writerFor(ApiResponse.class);
+    
     private ApiRequestService apiRequestService;
-    private ObjectMapper objectMapper;
     private SecurityLogger securityLogger;
     private SessionManager sessionManager;
-        
+    
     @Override
     public void init() throws ServletException {
-        apiRequestService = new ApiRequestService();
-        objectMapper = new ObjectMapper();
+        apiRequestService = ApiRequestService.getInstance();
         securityLogger = SecurityLogger.getInstance();
         sessionManager = SessionManager.getInstance();
     }
@@ -51,69 +72,244 @@ public class ApiRequestServlet extends HttpServlet {
                 response.setHeader("X-Session-ID", sessionId);
             }
             
-            StringBuilder requestBody = new StringBuilder();
-            String line;
-            while ((line = request.getReader().readLine()) != null) {
-                requestBody.append(line);
-            }
+            ApiRequest apiRequest = JsonCodec.read(request, REQUEST_READER);
             
-            ApiRequest apiRequest = objectMapper.readValue(requestBody.toString(), ApiRequest.class);
-            ApiResponse apiResponse = apiRequestService.processRequest(apiRequest, sessionId);
-            
-            // Set response content type
-            response.setContentType("application/json");
-            response.setCharacterEncoding("UTF-8");
+            // Streaming runs on the blocking client so bytes can be copied as they arrive
+            if (isStreamingRequested(request)) {
+                processStreaming(request, response, apiRequest, sessionId);
+                return;
+            }
             
-            // Check if this is a raw request endpoint
-            String requestURI = request.getRequestURI();
-            boolean isRawRequest = requestURI.endsWith("/raw-request");
+            if (isAsyncExecution(request)) {
+                processAsync(request, response, apiRequest, sessionId);
+                return;
+            }
             
-            PrintWriter out = response.getWriter();
+            ApiResponse apiResponse = apiRequestService.processRequest(apiRequest, sessionId);
+            writeApiResponse(request, response, apiResponse);
             
-            if (isRawRequest) {
-                // For raw requests, return only the response body as proper JSON
-                response.setStatus(apiResponse.getStatus());
-                
-                // Add original response headers as custom headers with prefix
-                if (apiResponse.getHeaders() != null) {
-                    for (Map.Entry<String, String> header : apiResponse.getHeaders().entrySet()) {
-                        String headerName = "X-Original-" + header.getKey().replace(" ", "-");
-                        response.setHeader(headerName, header.getValue());
+        } catch (Exception e) {
+            writeError(response, sessionId, e);
+        }
+    }
+    
+    /**
+     * Streaming is requested with the X-Stream-Response header or the stream query
+     * parameter; /api/raw-request can also stream by default (apitester.stream.raw).
+     */
+    private boolean isStreamingRequested(HttpServletRequest request) {
+        String flag = request.getHeader("X-Stream-Response");
+        if (flag == null) {
+            flag = request.getParameter("stream");
+        }
+        if (flag != null) {
+            return Boolean.parseBoolean(flag.trim());
+        }
+        return request.getRequestURI().endsWith("/raw-request") && AppConfig.getBoolean("stream.raw", false);
+    }
+    
+    /**
+     * Copy the upstream body straight to the servlet output stream. The raw endpoint
+     * passes the bytes through unchanged; the wrapped endpoint writes the ApiResponse
+     * JSON incrementally, encoding the body field while it streams.
+     */
+    private void processStreaming(HttpServletRequest request, final HttpServletResponse response,
+                                  ApiRequest apiRequest, String sessionId) throws IOException {
+        final boolean isRawRequest = request.getRequestURI().endsWith("/raw-request");
+        final JsonGenerator[] generator = new JsonGenerator[1];
+        
+        ApiResponse summary = apiRequestService.processRequestStreaming(apiRequest, sessionId,
+            new StreamingResponseHandler() {
+                @Override
+                public void onHead(ApiResponse head) throws IOException {
+                    if (isRawRequest) {
+                        response.setStatus(head.getStatus());
+                        String contentType = "application/json";
+                        for (Map.Entry<String, String> header : head.getHeaders().entrySet()) {
+                            String headerName = "X-Original-" + header.getKey().replace(" ", "-");
+                            response.setHeader(headerName, header.getValue());
+                            if ("Content-Type".equalsIgnoreCase(header.getKey())) {
+                                contentType = header.getValue();
+                            }
+                        }
+                        response.setContentType(contentType);
+                    } else {
+                        response.setContentType("application/json");
+                        response.setCharacterEncoding("UTF-8");
+                        generator[0] = JsonCodec.createGenerator(response.getOutputStream());
+                        generator[0].writeStartObject();
+                        generator[0].writeNumberField("status", head.getStatus());
+                        generator[0].writeStringField("statusText", head.getStatusText());
+                        generator[0].writeObjectField("headers", head.getHeaders());
                     }
                 }
                 
-                // Try to parse and reformat the JSON for better presentation
-                String responseBody = apiResponse.getBody();
-                try {
-                    // Parse the JSON string and write it back as formatted JSON
-                    Object jsonObject = objectMapper.readValue(responseBody, Object.class);
-                    String formattedJson = objectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(jsonObject);
-                    out.print(formattedJson);
-                } catch (Exception jsonException) {
-                    // If it's not valid JSON, return as is
-                    out.print(responseBody);
+                @Override
+                public void onBody(InputStream body, Charset charset) throws IOException {
+                    if (isRawRequest) {
+                        OutputStream out = response.getOutputStream();
+                        byte[] buffer = new byte[STREAM_BUFFER_SIZE];
+                        int read;
+                        while ((read = body.read(buffer)) != -1) {
+                            out.write(buffer, 0, read);
+                        }
+                        out.flush();
+                    } else {
+                        generator[0].writeFieldName("body");
+                        generator[0].writeString(new InputStreamReader(body, charset), -1);
+                    }
+                }
+            });
+        
+        if (generator[0] != null) {
+            try {
+                // Fields only known once the body has been consumed
+                generator[0].writeNumberField("responseTime", summary.getResponseTime());
+                generator[0].writeNumberField("size", summary.getSize());
+                if (summary.getAssertions() != null) {
+                    generator[0].writeObjectField("assertions", summary.getAssertions());
+                    generator[0].writeObjectField("assertionsPassed", summary.getAssertionsPassed());
+                }
+                generator[0].writeEndObject();
+                generator[0].close();
+            } catch (IOException e) {
+                // The upstream failed mid-body; the response is already committed
+                securityLogger.logError(sessionId, "STREAMING_ERROR", e.getMessage(), e);
+            }
+        } else if (!response.isCommitted()) {
+            // Failed before the upstream head arrived: answer like the buffered path
+            writeApiResponse(request, response, summary);
+        }
+    }
+    
+    /**
+     * Async execution is used when enabled globally (apitester.async.enabled) or
+     * requested with the X-Execution-Mode header, and every filter in the chain supports it.
+     */
+    private boolean isAsyncExecution(HttpServletRequest request) {
+        if (!request.isAsyncSupported()) {
+            return false;
+        }
+        String mode = request.getHeader("X-Execution-Mode");
+        if (mode != null) {
+            return "async".equalsIgnoreCase(mode.trim());
+        }
+        return AppConfig.getBoolean("async.enabled", false);
+    }
+    
+    /**
+     * Hand the upstream call to the non-blocking client and release the container
+     * thread. The response is written from a container thread once the upstream
+     * exchange completes, or a 504 is sent if the async context times out first.
+     */
+    private void processAsync(final HttpServletRequest request, final HttpServletResponse response,
+                              ApiRequest apiRequest, final String sessionId) {
+        final AsyncContext asyncContext = request.startAsync();
+        asyncContext.setTimeout(ASYNC_TIMEOUT);
+        final AtomicBoolean finished = new AtomicBoolean(false);
+        
+        asyncContext.addListener(new AsyncListener() {
+            @Override
+            public void onTimeout(AsyncEvent event) throws IOException {
+                if (finished.compareAndSet(false, true)) {
+                    response.setStatus(HttpServletResponse.SC_GATEWAY_TIMEOUT);
+                    response.setContentType("application/json");
+                    JsonCodec.writeError(response, "Upstream request timed out");
+                    asyncContext.complete();
                 }
-            } else {
-                // For regular requests, return the full ApiResponse object
-                out.print(objectMapper.writeValueAsString(apiResponse));
             }
-            out.flush();
             
-        } catch (Exception e) {
-            // Log the error
-            if (sessionId != null) {
-                securityLogger.logError(sessionId, "SERVLET_ERROR", e.getMessage(), e);
+            @Override
+            public void onError(AsyncEvent event) {
+                if (finished.compareAndSet(false, true)) {
+                    securityLogger.logError(sessionId, "ASYNC_SERVLET_ERROR",
+                        String.valueOf(event.getThrowable()), null);
+                    asyncContext.complete();
+                }
             }
             
-            response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
-            response.setContentType("application/json");
+            @Override
+            public void onComplete(AsyncEvent event) {
+                // Nothing to clean up
+            }
             
-            PrintWriter out = response.getWriter();
-            out.print("{ \"error\": \"" + e.getMessage() + "\" }");
+            @Override
+            public void onStartAsync(AsyncEvent event) {
+                // Not re-dispatched
+            }
+        });
+        
+        apiRequestService.processRequestAsync(apiRequest, sessionId, asyncContext::start)
+            .whenComplete((apiResponse, error) -> {
+                if (!finished.compareAndSet(false, true)) {
+                    return;
+                }
+                try {
+                    if (error != null) {
+                        writeError(response, sessionId, error instanceof Exception
+                            ? (Exception) error : new RuntimeException(error));
+                    } else {
+                        writeApiResponse(request, response, apiResponse);
+                    }
+                } catch (Exception e) {
+                    securityLogger.logError(sessionId, "ASYNC_SERVLET_ERROR", e.getMessage(), e);
+                } finally {
+                    asyncContext.complete();
+                }
+            });
+    }
+    
+    private void writeApiResponse(HttpServletRequest request, HttpServletResponse response,
+                                  ApiResponse apiResponse) throws IOException {
+        // Set response content type
+        response.setContentType("application/json");
+        response.setCharacterEncoding("UTF-8");
+        
+        // Check if this is a raw request endpoint
+        String requestURI = request.getRequestURI();
+        boolean isRawRequest = requestURI.endsWith("/raw-request");
+        
+        if (isRawRequest) {
+            // For raw requests, return only the response body as proper JSON
+            response.setStatus(apiResponse.getStatus());
+            
+            // Add original response headers as custom headers with prefix
+            if (apiResponse.getHeaders() != null) {
+                for (Map.Entry<String, String> header : apiResponse.getHeaders().entrySet()) {
+                    String headerName = "X-Original-" + header.getKey().replace(" ", "-");
+                    response.setHeader(headerName, header.getValue());
+                }
+            }
+            if (apiResponse.getCacheStatus() != null) {
+                response.setHeader("X-Cache", apiResponse.getCacheStatus());
+            }
+            
+            // Reformat JSON for better presentation in one streaming pass; anything else goes out as is
+            String responseBody = apiResponse.getBody();
+            Writer out = new OutputStreamWriter(response.getOutputStream(), StandardCharsets.UTF_8);
+            if (responseBody != null) {
+                JsonPrettyPrinter.print(responseBody, out);
+            } else {
+                out.write("null");
+            }
             out.flush();
+        } else {
+            // For regular requests, return the full ApiResponse object
+            JsonCodec.write(response, RESPONSE_WRITER, apiResponse);
         }
     }
     
+    private void writeError(HttpServletResponse response, String sessionId, Exception e) throws IOException {
+        // Log the error
+        if (sessionId != null) {
+            securityLogger.logError(sessionId, "SERVLET_ERROR", e.getMessage(), e);
+        }
+        
+        response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+        response.setContentType("application/json");
+        JsonCodec.writeError(response, e.getMessage());
+    }
+    
     @Override
     protected void doOptions(HttpServletRequest request, HttpServletResponse response) 
             throws ServletException, IOException {
@@ -175,22 +371,19 @@ public class ApiRequestServlet extends HttpServlet {
             apiInfo.setSize(0);
             
             // Write JSON response
-            try (PrintWriter out = response.getWriter()) {
-                String jsonResponse = objectMapper.writeValueAsString(apiInfo);
-                out.write(jsonResponse);
+            try {
+                JsonCodec.write(response, RESPONSE_WRITER, apiInfo);
             } catch (Exception e) {
                 response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
-                try (PrintWriter out = response.getWriter()) {
-                    out.write("{\"error\": \"Failed to generate API info: " + e.getMessage() + "\"}");
-                }
+                JsonCodec.writeError(response, "Failed to generate API info: " + e.getMessage());
             }
         }
     }
-
+    
     private void setCORSHeaders(HttpServletResponse response) {
         response.setHeader("Access-Control-Allow-Origin", "*");
         response.setHeader("Access-Control-Allow-Methods", "GET, POST, PUT, DELETE, OPTIONS");
-        response.setHeader("Access-Control-Allow-Headers", "Content-Type, Authorization, X-Session-ID");
+        response.setHeader("Access-Control-Allow-Headers", "Content-Type, Authorization, X-Session-ID, X-Execution-Mode, X-Stream-Response");
         response.setHeader("Access-Control-Max-Age", "3600");
         response.setHeader("Access-Control-Expose-Headers", "X-Session-ID");
     }
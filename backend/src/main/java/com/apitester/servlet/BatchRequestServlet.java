@@ -0,0 +1,131 @@
+package com.apitester.servlet;
+
+import com.apitester.logging.SecurityLogger;
+import com.apitester.logging.SessionManager;
+import com.apitester.model.ApiRequest;
+import com.apitester.model.BatchSummary;
+import com.apitester.service.BatchService;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import javax.servlet.ServletException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs an array of ApiRequests in parallel and streams each ApiResponse back
+ * as NDJSON in completion order, followed by a summary line.
+ */
+@WebServlet("/api/batch")
+public class BatchRequestServlet extends HttpServlet {
+    
+    private static final ObjectReader REQUESTS_READER = JsonCodec.readerFor(new TypeReference<List<ApiRequest>>() {});
+    
+    private BatchService batchService;
+    private SecurityLogger securityLogger;
+    private SessionManager sessionManager;
+    
+    @Override
+    public void init() throws ServletException {
+        batchService = BatchService.getInstance();
+        securityLogger = SecurityLogger.getInstance();
+        sessionManager = SessionManager.getInstance();
+    }
+    
+    @Override
+    protected void doPost(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        
+        setCORSHeaders(response);
+        
+        String sessionId = request.getHeader("X-Session-ID");
+        if (sessionId == null) {
+            sessionId = sessionManager.generateSessionId();
+        } else {
+            sessionId = sessionManager.getOrCreateSessionId(sessionId);
+        }
+        response.setHeader("X-Session-ID", sessionId);
+        
+        List<ApiRequest> requests;
+        try {
+            requests = JsonCodec.read(request, REQUESTS_READER);
+        } catch (Exception e) {
+            writeError(response, HttpServletResponse.SC_BAD_REQUEST, "Expected a JSON array of requests: " + e.getMessage());
+            return;
+        }
+        
+        if (requests == null || requests.isEmpty()) {
+            writeError(response, HttpServletResponse.SC_BAD_REQUEST, "Batch must contain at least one request");
+            return;
+        }
+        if (requests.size() > batchService.getMaxItems()) {
+            writeError(response, HttpServletResponse.SC_BAD_REQUEST,
+                "Batch exceeds the maximum of " + batchService.getMaxItems() + " requests");
+            return;
+        }
+        
+        int concurrency = parseInt(request.getParameter("concurrency"), 0);
+        
+        response.setContentType("application/x-ndjson");
+        response.setCharacterEncoding("UTF-8");
+        final OutputStream out = response.getOutputStream();
+        
+        try {
+            // A write to a disconnected client throws, which stops the batch
+            BatchSummary summary = batchService.execute(requests, concurrency, sessionId,
+                item -> JsonCodec.writeLine(out, item));
+            
+            JsonCodec.writeLine(out, summary);
+            
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            securityLogger.logError(sessionId, "BATCH_INTERRUPTED", e.getMessage(), e);
+        } catch (Exception e) {
+            securityLogger.logError(sessionId, "BATCH_ERROR", e.getMessage(), e);
+            Map<String, String> error = new LinkedHashMap<>();
+            error.put("type", "error");
+            error.put("error", e.getMessage());
+            try {
+                JsonCodec.writeLine(out, error);
+            } catch (IOException ignored) {
+                // Client already gone
+            }
+        }
+    }
+    
+    @Override
+    protected void doOptions(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        setCORSHeaders(response);
+        response.setStatus(HttpServletResponse.SC_OK);
+    }
+    
+    private void writeError(HttpServletResponse response, int status, String message) throws IOException {
+        response.setStatus(status);
+        response.setContentType("application/json");
+        JsonCodec.writeError(response, message);
+    }
+    
+    private void setCORSHeaders(HttpServletResponse response) {
+        response.setHeader("Access-Control-Allow-Origin", "*");
+        response.setHeader("Access-Control-Allow-Methods", "POST, OPTIONS");
+        response.setHeader("Access-Control-Allow-Headers", "Content-Type, Authorization, X-Session-ID");
+        response.setHeader("Access-Control-Max-Age", "3600");
+        response.setHeader("Access-Control-Expose-Headers", "X-Session-ID");
+    }
+    
+    private int parseInt(String value, int defaultValue) {
+        try {
+            return value != null ? Integer.parseInt(value) : defaultValue;
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.apitester.servlet;
+
+import com.apitester.logging.SecurityLogger;
+import com.apitester.logging.SessionManager;
+import com.apitester.model.ApiCollection;
+import com.apitester.model.CollectionSummary;
+import com.apitester.service.CollectionRunner;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import javax.servlet.ServletException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collections;
+
+/**
+ * Runs a collection of dependent requests and streams each step result back as NDJSON
+ * in completion order, followed by a summary line. The collection is checked before
+ * anything runs, so a bad collection gets a 400 rather than a partial stream.
+ */
+@WebServlet("/api/collection")
+public class CollectionServlet extends HttpServlet {
+    
+    private static final ObjectReader COLLECTION_READER = JsonCodec.readerFor(ApiCollection.class);
+    
+    private CollectionRunner collectionRunner;
+    private SecurityLogger securityLogger;
+    private SessionManager sessionManager;
+    
+    @Override
+    public void init() throws ServletException {
+        collectionRunner = CollectionRunner.getInstance();
+        securityLogger = SecurityLogger.getInstance();
+        sessionManager = SessionManager.getInstance();
+    }
+    
+    @Override
+    protected void doPost(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        
+        setCORSHeaders(response);
+        
+        String sessionId = request.getHeader("X-Session-ID");
+        if (sessionId == null) {
+            sessionId = sessionManager.generateSessionId();
+        } else {
+            sessionId = sessionManager.getOrCreateSessionId(sessionId);
+        }
+        response.setHeader("X-Session-ID", sessionId);
+        
+        CollectionRunner.Plan plan;
+        try {
+            ApiCollection collection = JsonCodec.read(request, COLLECTION_READER);
+            if (collection == null) {
+                throw new IllegalArgumentException("Expected a collection");
+            }
+            String concurrency = request.getParameter("concurrency");
+            if (concurrency != null) {
+                collection.setConcurrency(parseInt(concurrency, 0));
+            }
+            plan = collectionRunner.plan(collection);
+        } catch (IllegalArgumentException e) {
+            writeError(response, HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+            return;
+        } catch (Exception e) {
+            writeError(response, HttpServletResponse.SC_BAD_REQUEST, "Expected a JSON collection: " + e.getMessage());
+            return;
+        }
+        
+        response.setContentType("application/x-ndjson");
+        response.setCharacterEncoding("UTF-8");
+        final OutputStream out = response.getOutputStream();
+        
+        try {
+            // A write to a disconnected client throws, which stops the run
+            CollectionSummary summary = collectionRunner.run(plan, sessionId, step -> JsonCodec.writeLine(out, step));
+            
+            JsonCodec.writeLine(out, summary);
+            
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            securityLogger.logError(sessionId, "COLLECTION_INTERRUPTED", e.getMessage(), e);
+        } catch (Exception e) {
+            securityLogger.logError(sessionId, "COLLECTION_ERROR", e.getMessage(), e);
+            try {
+                JsonCodec.writeLine(out, Collections.singletonMap("error", String.valueOf(e.getMessage())));
+            } catch (IOException ignored) {
+                // Client already gone
+            }
+        }
+    }
+    
+    @Override
+    protected void doOptions(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        setCORSHeaders(response);
+        response.setStatus(HttpServletResponse.SC_OK);
+    }
+    
+    private void writeError(HttpServletResponse response, int status, String message) throws IOException {
+        response.setStatus(status);
+        response.setContentType("application/json");
+        JsonCodec.writeError(response, message);
+    }
+    
+    private void setCORSHeaders(HttpServletResponse response) {
+        response.setHeader("Access-Control-Allow-Origin", "*");
+        response.setHeader("Access-Control-Allow-Methods", "POST, OPTIONS");
+        response.setHeader("Access-Control-Allow-Headers", "Content-Type, Authorization, X-Session-ID");
+        response.setHeader("Access-Control-Max-Age", "3600");
+        response.setHeader("Access-Control-Expose-Headers", "X-Session-ID");
+    }
+    
+    private int parseInt(String value, int defaultValue) {
+        try {
+            return value != null ? Integer.parseInt(value) : defaultValue;
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.apitester.servlet;
+
+import com.apitester.logging.SecurityLogger;
+import com.apitester.logging.SessionManager;
+import com.apitester.model.DiffRequest;
+import com.apitester.model.DiffResult;
+import com.apitester.service.DiffService;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import javax.servlet.ServletException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Runs two requests (or takes two logged responses) and returns a structural diff of
+ * their status, headers, bodies and timings.
+ */
+@WebServlet("/api/diff")
+public class DiffServlet extends HttpServlet {
+    
+    private static final ObjectReader DIFF_READER = JsonCodec.readerFor(DiffRequest.class);
+    
+    private DiffService diffService;
+    private SecurityLogger securityLogger;
+    private SessionManager sessionManager;
+    
+    @Override
+    public void init() throws ServletException {
+        diffService = DiffService.getInstance();
+        securityLogger = SecurityLogger.getInstance();
+        sessionManager = SessionManager.getInstance();
+    }
+    
+    @Override
+    protected void doPost(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        
+        setCORSHeaders(response);
+        
+        String sessionId = request.getHeader("X-Session-ID");
+        if (sessionId == null) {
+            sessionId = sessionManager.generateSessionId();
+        } else {
+            sessionId = sessionManager.getOrCreateSessionId(sessionId);
+        }
+        response.setHeader("X-Session-ID", sessionId);
+        
+        DiffRequest diffRequest;
+        try {
+            diffRequest = JsonCodec.read(request, DIFF_READER);
+            if (diffRequest == null) {
+                throw new IllegalArgumentException("Expected a diff request");
+            }
+        } catch (Exception e) {
+            writeError(response, HttpServletResponse.SC_BAD_REQUEST, "Expected a JSON diff request: " + e.getMessage());
+            return;
+        }
+        
+        try {
+            DiffResult result = diffService.diff(diffRequest, sessionId);
+            response.setContentType("application/json");
+            JsonCodec.write(response, result);
+            
+        } catch (IllegalArgumentException e) {
+            writeError(response, HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            securityLogger.logError(sessionId, "DIFF_INTERRUPTED", e.getMessage(), e);
+            writeError(response, HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Diff interrupted");
+        } catch (ExecutionException e) {
+            securityLogger.logError(sessionId, "DIFF_ERROR", String.valueOf(e.getCause()), e);
+            writeError(response, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, String.valueOf(e.getCause()));
+        }
+    }
+    
+    @Override
+    protected void doOptions(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        setCORSHeaders(response);
+        response.setStatus(HttpServletResponse.SC_OK);
+    }
+    
+    private void writeError(HttpServletResponse response, int status, String message) throws IOException {
+        response.setStatus(status);
+        response.setContentType("application/json");
+        JsonCodec.writeError(response, message);
+    }
+    
+    private void setCORSHeaders(HttpServletResponse response) {
+        response.setHeader("Access-Control-Allow-Origin", "*");
+        response.setHeader("Access-Control-Allow-Methods", "POST, OPTIONS");
+        response.setHeader("Access-Control-Allow-Headers", "Content-Type, Authorization, X-Session-ID");
+        response.setHeader("Access-Control-Max-Age", "3600");
+        response.setHeader("Access-Control-Expose-Headers", "X-Session-ID");
+    }
+}
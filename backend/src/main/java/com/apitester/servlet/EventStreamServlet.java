@@ -0,0 +1,255 @@
+package com.apitester.servlet;
+
+import com.apitester.config.AppConfig;
+import com.apitester.logging.SecurityLogger;
+import com.apitester.logging.SessionManager;
+import com.apitester.model.ApiRequest;
+import com.apitester.service.EventStreamService;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Relays an upstream response to the browser as Server-Sent Events while it arrives.
+ * GET takes the request as JSON in the request parameter, for EventSource; POST takes
+ * it as the body, for fetch. The container thread is released at once; the stream runs
+ * on an EventStreamService worker and ends with a summary event.
+ */
+@WebServlet(urlPatterns = "/api/stream", asyncSupported = true)
+public class EventStreamServlet extends HttpServlet {
+    
+    // Upper bound for one stream; a feed that never ends is cut here
+    private static final long MAX_DURATION_MILLIS = AppConfig.getInt("sse.maxDurationSeconds", 600) * 1000L;
+    
+    private static final ObjectReader REQUEST_READER = JsonCodec.readerFor(ApiRequest.class);
+    
+    private EventStreamService eventStreamService;
+    private SecurityLogger securityLogger;
+    private SessionManager sessionManager;
+    
+    @Override
+    public void init() throws ServletException {
+        eventStreamService = EventStreamService.getInstance();
+        securityLogger = SecurityLogger.getInstance();
+        sessionManager = SessionManager.getInstance();
+    }
+    
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        
+        setCORSHeaders(response);
+        
+        // EventSource cannot send headers, so the session comes as a parameter
+        String sessionId = resolveSessionId(request.getParameter("sessionId"));
+        response.setHeader("X-Session-ID", sessionId);
+        
+        ApiRequest apiRequest;
+        try {
+            String json = request.getParameter("request");
+            if (json == null || json.trim().isEmpty()) {
+                throw new IllegalArgumentException("missing request parameter");
+            }
+            apiRequest = REQUEST_READER.readValue(json);
+        } catch (Exception e) {
+            writeError(response, HttpServletResponse.SC_BAD_REQUEST, "Expected a JSON request: " + e.getMessage());
+            return;
+        }
+        stream(request, response, apiRequest, sessionId);
+    }
+    
+    @Override
+    protected void doPost(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        
+        setCORSHeaders(response);
+        
+        String sessionId = resolveSessionId(request.getHeader("X-Session-ID"));
+        response.setHeader("X-Session-ID", sessionId);
+        
+        ApiRequest apiRequest;
+        try {
+            apiRequest = JsonCodec.read(request, REQUEST_READER);
+        } catch (Exception e) {
+            writeError(response, HttpServletResponse.SC_BAD_REQUEST, "Expected a JSON request: " + e.getMessage());
+            return;
+        }
+        stream(request, response, apiRequest, sessionId);
+    }
+    
+    private void stream(HttpServletRequest request, HttpServletResponse response, ApiRequest apiRequest,
+                        String sessionId) throws IOException {
+        if (apiRequest == null || apiRequest.getUrl() == null || apiRequest.getUrl().trim().isEmpty()) {
+            writeError(response, HttpServletResponse.SC_BAD_REQUEST, "URL is required");
+            return;
+        }
+        String framing = request.getParameter("framing");
+        try {
+            EventStreamService.framingFor(framing, null);
+        } catch (IllegalArgumentException e) {
+            writeError(response, HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+            return;
+        }
+        
+        if (!request.isAsyncSupported()) {
+            // A filter in the chain is not async: hold the container thread for the stream
+            startEventStream(response);
+            eventStreamService.stream(apiRequest, sessionId, framing, new ResponseSink(response, null));
+            return;
+        }
+        
+        final AsyncContext asyncContext = request.startAsync();
+        asyncContext.setTimeout(MAX_DURATION_MILLIS);
+        final ResponseSink sink = new ResponseSink(response, asyncContext);
+        asyncContext.addListener(new AsyncListener() {
+            @Override
+            public void onTimeout(AsyncEvent event) {
+                // The worker stops at its next send
+                sink.close();
+            }
+            
+            @Override
+            public void onError(AsyncEvent event) {
+                securityLogger.logError(sessionId, "STREAM_SERVLET_ERROR", String.valueOf(event.getThrowable()), null);
+                sink.close();
+            }
+            
+            @Override
+            public void onComplete(AsyncEvent event) {
+                // Nothing to clean up
+            }
+            
+            @Override
+            public void onStartAsync(AsyncEvent event) {
+                // Not re-dispatched
+            }
+        });
+        
+        try {
+            eventStreamService.start(apiRequest, sessionId, framing, sink);
+        } catch (RejectedExecutionException e) {
+            // Nothing has been committed yet, so this can still be a plain error
+            writeError(response, HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Too many streams open, try again later");
+            sink.close();
+            return;
+        }
+        startEventStream(response);
+    }
+    
+    /**
+     * Commit the event stream headers, so the browser's EventSource opens before the upstream answers
+     */
+    private static void startEventStream(HttpServletResponse response) throws IOException {
+        synchronized (response) {
+            if (response.isCommitted()) {
+                return;
+            }
+            response.setStatus(HttpServletResponse.SC_OK);
+            response.setContentType("text/event-stream");
+            response.setCharacterEncoding("UTF-8");
+            response.setHeader("Cache-Control", "no-cache");
+            // Keep nginx and similar proxies from buffering the stream
+            response.setHeader("X-Accel-Buffering", "no");
+            response.flushBuffer();
+        }
+    }
+    
+    /**
+     * Writes events to the response. Sends are serialized on the response, which the
+     * worker and the heartbeat thread share; once a write fails or the stream is closed,
+     * every send fails so the worker stops reading the upstream.
+     */
+    private static final class ResponseSink implements EventStreamService.EventSink {
+        private final HttpServletResponse response;
+        private final AsyncContext asyncContext;
+        private final AtomicBoolean closed = new AtomicBoolean(false);
+        
+        ResponseSink(HttpServletResponse response, AsyncContext asyncContext) {
+            this.response = response;
+            this.asyncContext = asyncContext;
+        }
+        
+        @Override
+        public void send(String event, Object data) throws IOException {
+            synchronized (response) {
+                ServletOutputStream out = output();
+                JsonCodec.writeEvent(out, event, data);
+            }
+        }
+        
+        @Override
+        public void comment(String text) throws IOException {
+            synchronized (response) {
+                ServletOutputStream out = output();
+                out.write((": " + text + "\n\n").getBytes(StandardCharsets.UTF_8));
+                out.flush();
+            }
+        }
+        
+        private ServletOutputStream output() throws IOException {
+            if (closed.get()) {
+                throw new IOException("Event stream closed");
+            }
+            // The worker may get here before the servlet thread has committed the headers
+            startEventStream(response);
+            try {
+                return response.getOutputStream();
+            } catch (IllegalStateException e) {
+                throw new IOException("Event stream closed", e);
+            }
+        }
+        
+        @Override
+        public void close() {
+            if (closed.compareAndSet(false, true) && asyncContext != null) {
+                synchronized (response) {
+                    try {
+                        asyncContext.complete();
+                    } catch (IllegalStateException e) {
+                        // Already completed by the container after a timeout or error
+                    }
+                }
+            }
+        }
+    }
+    
+    private String resolveSessionId(String sessionId) {
+        if (sessionId == null) {
+            return sessionManager.generateSessionId();
+        }
+        return sessionManager.getOrCreateSessionId(sessionId);
+    }
+    
+    @Override
+    protected void doOptions(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        setCORSHeaders(response);
+        response.setStatus(HttpServletResponse.SC_OK);
+    }
+    
+    private void writeError(HttpServletResponse response, int status, String message) throws IOException {
+        response.setStatus(status);
+        response.setContentType("application/json");
+        JsonCodec.writeError(response, message);
+    }
+    
+    private void setCORSHeaders(HttpServletResponse response) {
+        response.setHeader("Access-Control-Allow-Origin", "*");
+        response.setHeader("Access-Control-Allow-Methods", "GET, POST, OPTIONS");
+        response.setHeader("Access-Control-Allow-Headers", "Content-Type, Authorization, X-Session-ID");
+        response.setHeader("Access-Control-Max-Age", "3600");
+        response.setHeader("Access-Control-Expose-Headers", "X-Session-ID");
+    }
+}
@@ -0,0 +1,100 @@
+package com.apitester.servlet;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+/**
+ * The one Jackson configuration behind every servlet. Readers and writers are built
+ * once per type and shared (they are immutable and thread-safe), so a request costs no
+ * mapper, serializer lookup or configuration copy. Bodies are parsed straight from the
+ * request InputStream and written as UTF-8 bytes straight to the response OutputStream:
+ * no request String, no response String and no char-to-byte pass through a PrintWriter.
+ *
+ * A response written through here must not also use getWriter().
+ */
+public final class JsonCodec {
+    
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    static {
+        // Servlet streams belong to the container; NDJSON writes many values to one stream
+        MAPPER.getFactory().disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    }
+    
+    private static final ObjectWriter WRITER = MAPPER.writer();
+    private static final byte[] NEWLINE = {'\n'};
+    private static final byte[] EVENT_END = {'\n', '\n'};
+    
+    private JsonCodec() {}
+    
+    public static ObjectReader readerFor(Class<?> type) {
+        return MAPPER.readerFor(type);
+    }
+    
+    public static ObjectReader readerFor(TypeReference<?> type) {
+        return MAPPER.readerFor(type);
+    }
+    
+    /**
+     * Writer with the root serializer resolved up front, for a type written on every request
+     */
+    public static ObjectWriter writerFor(Class<?> type) {
+        return MAPPER.writerFor(type);
+    }
+    
+    /**
+     * Generator for responses assembled field by field
+     */
+    public static JsonGenerator createGenerator(OutputStream out) throws IOException {
+        return MAPPER.getFactory().createGenerator(out);
+    }
+    
+    public static <T> T read(HttpServletRequest request, ObjectReader reader) throws IOException {
+        return reader.readValue(request.getInputStream());
+    }
+    
+    public static void write(HttpServletResponse response, Object value) throws IOException {
+        write(response, WRITER, value);
+    }
+    
+    public static void write(HttpServletResponse response, ObjectWriter writer, Object value) throws IOException {
+        response.setCharacterEncoding("UTF-8");
+        writer.writeValue(response.getOutputStream(), value);
+    }
+    
+    /**
+     * Write {"error": message}
+     */
+    public static void writeError(HttpServletResponse response, String message) throws IOException {
+        write(response, Collections.singletonMap("error", message));
+    }
+    
+    /**
+     * Write one NDJSON line and flush it to the client
+     */
+    public static void writeLine(OutputStream out, Object value) throws IOException {
+        WRITER.writeValue(out, value);
+        out.write(NEWLINE);
+        out.flush();
+    }
+    
+    /**
+     * Write one Server-Sent Event with value as its data and flush it to the client.
+     * The JSON is written without line breaks, so it always fits one data line.
+     */
+    public static void writeEvent(OutputStream out, String event, Object value) throws IOException {
+        out.write(("event: " + event + "\ndata: ").getBytes(StandardCharsets.UTF_8));
+        WRITER.writeValue(out, value);
+        out.write(EVENT_END);
+        out.flush();
+    }
+}
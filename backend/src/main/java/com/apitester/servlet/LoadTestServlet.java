@@ -0,0 +1,98 @@
+package com.apitester.servlet;
+
+import com.apitester.logging.SecurityLogger;
+import com.apitester.logging.SessionManager;
+import com.apitester.model.LoadTestRequest;
+import com.apitester.service.LoadTestService;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import javax.servlet.ServletException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Runs a load test against a single request and returns the latency
+ * distribution, status breakdown and per-second time series as JSON.
+ */
+@WebServlet("/api/loadtest")
+public class LoadTestServlet extends HttpServlet {
+    
+    private static final ObjectReader DEFINITION_READER = JsonCodec.readerFor(LoadTestRequest.class);
+    
+    private LoadTestService loadTestService;
+    private SecurityLogger securityLogger;
+    private SessionManager sessionManager;
+    
+    @Override
+    public void init() throws ServletException {
+        loadTestService = LoadTestService.getInstance();
+        securityLogger = SecurityLogger.getInstance();
+        sessionManager = SessionManager.getInstance();
+    }
+    
+    @Override
+    protected void doPost(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        
+        setCORSHeaders(response);
+        
+        String sessionId = request.getHeader("X-Session-ID");
+        if (sessionId == null) {
+            sessionId = sessionManager.generateSessionId();
+        } else {
+            sessionId = sessionManager.getOrCreateSessionId(sessionId);
+        }
+        response.setHeader("X-Session-ID", sessionId);
+        
+        LoadTestRequest loadTestRequest;
+        try {
+            loadTestRequest = JsonCodec.read(request, DEFINITION_READER);
+        } catch (Exception e) {
+            writeError(response, HttpServletResponse.SC_BAD_REQUEST, "Invalid load test definition: " + e.getMessage());
+            return;
+        }
+        
+        try {
+            LoadTestService.LoadTestResult result = loadTestService.run(loadTestRequest, sessionId);
+            response.setContentType("application/json");
+            response.setCharacterEncoding("UTF-8");
+            JsonCodec.write(response, result);
+            
+        } catch (IllegalArgumentException e) {
+            writeError(response, HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+        } catch (IllegalStateException e) {
+            writeError(response, 429, e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            securityLogger.logError(sessionId, "LOADTEST_INTERRUPTED", e.getMessage(), e);
+            writeError(response, HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Load test interrupted");
+        } catch (Exception e) {
+            securityLogger.logError(sessionId, "LOADTEST_ERROR", e.getMessage(), e);
+            writeError(response, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, e.getMessage());
+        }
+    }
+    
+    @Override
+    protected void doOptions(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        setCORSHeaders(response);
+        response.setStatus(HttpServletResponse.SC_OK);
+    }
+    
+    private void writeError(HttpServletResponse response, int status, String message) throws IOException {
+        response.setStatus(status);
+        response.setContentType("application/json");
+        JsonCodec.writeError(response, message);
+    }
+    
+    private void setCORSHeaders(HttpServletResponse response) {
+        response.setHeader("Access-Control-Allow-Origin", "*");
+        response.setHeader("Access-Control-Allow-Methods", "POST, OPTIONS");
+        response.setHeader("Access-Control-Allow-Headers", "Content-Type, Authorization, X-Session-ID");
+        response.setHeader("Access-Control-Max-Age", "3600");
+        response.setHeader("Access-Control-Expose-Headers", "X-Session-ID");
+    }
+}
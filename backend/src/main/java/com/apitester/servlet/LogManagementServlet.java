@@ -2,7 +2,6 @@ package com.apitester.servlet;
 
 import com.apitester.logging.LogViewer;
 import com.apitester.logging.SecurityLogger;
-import com.fasterxml.jackson.databind.ObjectMapper;
 
 import javax.servlet.ServletException;
 import javax.servlet.annotation.WebServlet;
@@ -10,9 +9,9 @@ import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
-import java.io.PrintWriter;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
@@ -21,7 +20,6 @@ import java.util.concurrent.ConcurrentHashMap;
 public class LogManagementServlet extends HttpServlet {
     
     private LogViewer logViewer;
-    private ObjectMapper objectMapper;
     private SecurityLogger securityLogger;
     
     // Simple security constants
@@ -31,7 +29,6 @@ public class LogManagementServlet extends HttpServlet {
     @Override
     public void init() throws ServletException {
         logViewer = new LogViewer();
-        objectMapper = new ObjectMapper();
         securityLogger = SecurityLogger.getInstance();
     }
     
@@ -47,31 +44,29 @@ public class LogManagementServlet extends HttpServlet {
         String sessionId = request.getHeader("X-Session-ID");
         
         try {
-            PrintWriter out = response.getWriter();
-            
             if (pathInfo == null || pathInfo.equals("/")) {
                 // Get recent logs
                 int limit = parseInt(request.getParameter("limit"), 50);
                 List<SecurityLogger.LogEntry> logs = logViewer.getRecentLogs(limit);
-                out.print(objectMapper.writeValueAsString(logs));
+                JsonCodec.write(response, logs);
                 
             } else if (pathInfo.equals("/all")) {
                 // Get ALL logs (for debugging session issues)
                 System.out.println("LogManagementServlet: Fetching all logs");
                 List<SecurityLogger.LogEntry> logs = logViewer.getRecentLogs(1000); // Get up to 1000 logs
                 System.out.println("LogManagementServlet: Retrieved " + logs.size() + " total logs");
-                out.print(objectMapper.writeValueAsString(logs));
+                JsonCodec.write(response, logs);
                 
             } else if (pathInfo.equals("/stats")) {
                 // Get log statistics
                 LogViewer.LogStatistics stats = logViewer.getLogStatistics();
-                out.print(objectMapper.writeValueAsString(stats));
+                JsonCodec.write(response, stats);
                 
             } else if (pathInfo.equals("/errors")) {
                 // Get error logs
                 int limit = parseInt(request.getParameter("limit"), 20);
                 List<SecurityLogger.ErrorLogEntry> errorLogs = logViewer.getErrorLogs(limit);
-                out.print(objectMapper.writeValueAsString(errorLogs));
+                JsonCodec.write(response, errorLogs);
                 
             } else if (pathInfo.equals("/session")) {
                 // Get logs by session ID
@@ -80,11 +75,11 @@ public class LogManagementServlet extends HttpServlet {
                 if (targetSessionId != null) {
                     List<SecurityLogger.LogEntry> logs = logViewer.getLogsBySessionId(targetSessionId);
                     System.out.println("LogManagementServlet: Found " + logs.size() + " logs for session: " + targetSessionId);
-                    out.print(objectMapper.writeValueAsString(logs));
+                    JsonCodec.write(response, logs);
                 } else {
                     System.out.println("LogManagementServlet: No sessionId parameter provided");
                     response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
-                    out.print("{ \"error\": \"sessionId parameter is required\" }");
+                    JsonCodec.writeError(response, "sessionId parameter is required");
                 }
                 
             } else if (pathInfo.equals("/decrypted")) {
@@ -97,7 +92,7 @@ public class LogManagementServlet extends HttpServlet {
                 
                 if (!isAuthorizedForDecryption(authHeader, adminKey, request)) {
                     response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
-                    out.print("{ \"error\": \"Unauthorized access to encrypted logs. Admin privileges required.\" }");
+                    JsonCodec.writeError(response, "Unauthorized access to encrypted logs. Admin privileges required.");
                     
                     // Log unauthorized access attempt
                     if (sessionId != null) {
@@ -111,7 +106,7 @@ public class LogManagementServlet extends HttpServlet {
                 String clientIP = request.getRemoteAddr();
                 if (!checkRateLimit(clientIP)) {
                     response.setStatus(429); // 429 Too Many Requests
-                    out.print("{ \"error\": \"Rate limit exceeded. Too many decryption requests.\" }");
+                    JsonCodec.writeError(response, "Rate limit exceeded. Too many decryption requests.");
                     return;
                 }
                 
@@ -127,11 +122,11 @@ public class LogManagementServlet extends HttpServlet {
                             null, "", 200, "Decrypted logs accessed successfully", null, 0);
                     }
                     
-                    out.print(objectMapper.writeValueAsString(logs));
+                    JsonCodec.write(response, logs);
                 } catch (Exception e) {
                     System.out.println("LogManagementServlet: Error decrypting logs: " + e.getMessage());
                     response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
-                    out.print("{ \"error\": \"Failed to decrypt logs: " + e.getMessage() + "\" }");
+                    JsonCodec.writeError(response, "Failed to decrypt logs: " + e.getMessage());
                 }
                 
             } else if (pathInfo.equals("/daterange")) {
@@ -145,28 +140,24 @@ public class LogManagementServlet extends HttpServlet {
                     Date endDate = dateFormat.parse(endDateStr);
                     
                     List<SecurityLogger.LogEntry> logs = logViewer.getLogsByDateRange(startDate, endDate);
-                    out.print(objectMapper.writeValueAsString(logs));
+                    JsonCodec.write(response, logs);
                 } else {
                     response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
-                    out.print("{ \"error\": \"startDate and endDate parameters are required\" }");
+                    JsonCodec.writeError(response, "startDate and endDate parameters are required");
                 }
                 
             } else {
                 response.setStatus(HttpServletResponse.SC_NOT_FOUND);
-                out.print("{ \"error\": \"Log endpoint not found\" }");
+                JsonCodec.writeError(response, "Log endpoint not found");
             }
             
-            out.flush();
-            
         } catch (Exception e) {
             if (sessionId != null) {
                 securityLogger.logError(sessionId, "LOG_SERVLET_ERROR", e.getMessage(), e);
             }
             
             response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
-            PrintWriter out = response.getWriter();
-            out.print("{ \"error\": \"" + e.getMessage() + "\" }");
-            out.flush();
+            JsonCodec.writeError(response, e.getMessage());
         }
     }
     
@@ -182,30 +173,27 @@ public class LogManagementServlet extends HttpServlet {
         String sessionId = request.getHeader("X-Session-ID");
         
         try {
-            PrintWriter out = response.getWriter();
-            
             if (pathInfo != null && pathInfo.equals("/cleanup")) {
                 // Clean old logs
                 int daysToKeep = parseInt(request.getParameter("daysToKeep"), 30);
                 logViewer.cleanOldLogs(daysToKeep);
-                out.print("{ \"message\": \"Log cleanup completed\", \"daysKept\": " + daysToKeep + " }");
+                Map<String, Object> result = new LinkedHashMap<>();
+                result.put("message", "Log cleanup completed");
+                result.put("daysKept", daysToKeep);
+                JsonCodec.write(response, result);
                 
             } else {
                 response.setStatus(HttpServletResponse.SC_NOT_FOUND);
-                out.print("{ \"error\": \"Log operation not found\" }");
+                JsonCodec.writeError(response, "Log operation not found");
             }
             
-            out.flush();
-            
         } catch (Exception e) {
             if (sessionId != null) {
                 securityLogger.logError(sessionId, "LOG_SERVLET_POST_ERROR", e.getMessage(), e);
             }
             
             response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
-            PrintWriter out = response.getWriter();
-            out.print("{ \"error\": \"" + e.getMessage() + "\" }");
-            out.flush();
+            JsonCodec.writeError(response, e.getMessage());
         }
     }
     
@@ -0,0 +1,118 @@
+package com.apitester.servlet;
+
+import com.apitester.service.ApiRequestService;
+
+import javax.servlet.ServletException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Read-only runtime metrics of the proxy's client stack
+ */
+@WebServlet("/api/metrics/*")
+public class MetricsServlet extends HttpServlet {
+    
+    private ApiRequestService apiRequestService;
+    
+    @Override
+    public void init() throws ServletException {
+        apiRequestService = ApiRequestService.getInstance();
+    }
+    
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        
+        setCORSHeaders(response);
+        response.setContentType("application/json");
+        response.setCharacterEncoding("UTF-8");
+        
+        String pathInfo = request.getPathInfo();
+        
+        try {
+            if (pathInfo == null || pathInfo.equals("/")) {
+                // All metrics in one document
+                Map<String, Object> metrics = new LinkedHashMap<>();
+                metrics.put("pool", apiRequestService.getPoolStatistics());
+                metrics.put("cache", apiRequestService.getCacheStatistics());
+                metrics.put("coalescing", apiRequestService.getCoalescingStatistics());
+                metrics.put("dns", apiRequestService.getDnsStatistics());
+                metrics.put("tls", apiRequestService.getTlsStatistics());
+                metrics.put("http2", apiRequestService.getHttp2Statistics());
+                metrics.put("retries", apiRequestService.getRetryStatistics());
+                metrics.put("ratelimit", apiRequestService.getRateLimitStatistics());
+                metrics.put("breakers", apiRequestService.getCircuitBreakerStatistics());
+                metrics.put("timeouts", apiRequestService.getTimeoutStatistics());
+                JsonCodec.write(response, metrics);
+                
+            } else if (pathInfo.equals("/pool")) {
+                // Connection pool: leased/available/pending per route and lease-wait latency
+                JsonCodec.write(response, apiRequestService.getPoolStatistics());
+                
+            } else if (pathInfo.equals("/cache")) {
+                // Response cache: hit/miss/revalidation counters and size
+                JsonCodec.write(response, apiRequestService.getCacheStatistics());
+                
+            } else if (pathInfo.equals("/coalescing")) {
+                // Request coalescing: upstream executions versus requests that joined one in flight
+                JsonCodec.write(response, apiRequestService.getCoalescingStatistics());
+                
+            } else if (pathInfo.equals("/dns")) {
+                // DNS cache: hits, misses, background refreshes and lookup latency
+                JsonCodec.write(response, apiRequestService.getDnsStatistics());
+                
+            } else if (pathInfo.equals("/tls")) {
+                // TLS: full versus resumed handshakes per host, session cache and warm-up
+                JsonCodec.write(response, apiRequestService.getTlsStatistics());
+                
+            } else if (pathInfo.equals("/http2")) {
+                // HTTP/2 engine: exchanges per negotiated protocol and its connections
+                JsonCodec.write(response, apiRequestService.getHttp2Statistics());
+                
+            } else if (pathInfo.equals("/retries")) {
+                // Retries and hedged requests: attempts sent, hedges and how often they won
+                JsonCodec.write(response, apiRequestService.getRetryStatistics());
+                
+            } else if (pathInfo.equals("/ratelimit")) {
+                // Client-side rate limits: permitted, delayed and throttled requests per rule
+                JsonCodec.write(response, apiRequestService.getRateLimitStatistics());
+                
+            } else if (pathInfo.equals("/breakers")) {
+                // Circuit breakers: state of each host's circuit and its recent failure and slow-call rates
+                JsonCodec.write(response, apiRequestService.getCircuitBreakerStatistics());
+                
+            } else if (pathInfo.equals("/timeouts")) {
+                // Timeouts: defaults and caps, and how many requests timed out in each phase
+                JsonCodec.write(response, apiRequestService.getTimeoutStatistics());
+                
+            } else {
+                response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+                JsonCodec.writeError(response, "Metrics endpoint not found");
+            }
+            
+        } catch (Exception e) {
+            response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            JsonCodec.writeError(response, e.getMessage());
+        }
+    }
+    
+    @Override
+    protected void doOptions(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        setCORSHeaders(response);
+        response.setStatus(HttpServletResponse.SC_OK);
+    }
+    
+    private void setCORSHeaders(HttpServletResponse response) {
+        response.setHeader("Access-Control-Allow-Origin", "*");
+        response.setHeader("Access-Control-Allow-Methods", "GET, OPTIONS");
+        response.setHeader("Access-Control-Allow-Headers", "Content-Type, Authorization, X-Session-ID");
+        response.setHeader("Access-Control-Max-Age", "3600");
+        response.setHeader("Access-Control-Expose-Headers", "X-Session-ID");
+    }
+}
@@ -0,0 +1,197 @@
+package com.apitester.servlet;
+
+import com.apitester.model.Monitor;
+import com.apitester.service.MonitorService;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import javax.servlet.ServletException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Synthetic monitors:
+ *
+ * - GET /api/monitors lists monitors with their latest run; POST creates one
+ * - GET /api/monitors/{id} shows one monitor; DELETE removes it
+ * - GET /api/monitors/{id}/stats?window=24h&step=1h reports availability and latency
+ *   percentiles over a window. from and to take epoch milliseconds or a duration back
+ *   from now (30s, 15m, 6h, 7d); window is the length before to, 1h by default.
+ *
+ * Loaded on startup, so saved monitors resume without waiting for a request.
+ */
+@WebServlet(urlPatterns = "/api/monitors/*", loadOnStartup = 1)
+public class MonitorServlet extends HttpServlet {
+    
+    private static final ObjectReader MONITOR_READER = JsonCodec.readerFor(Monitor.class);
+    
+    private MonitorService monitorService;
+    
+    @Override
+    public void init() throws ServletException {
+        monitorService = MonitorService.getInstance();
+    }
+    
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        
+        setCORSHeaders(response);
+        response.setContentType("application/json");
+        response.setCharacterEncoding("UTF-8");
+        
+        String[] path = splitPath(request.getPathInfo());
+        try {
+            Object result;
+            if (path.length == 0) {
+                // All monitors with their latest run
+                result = monitorService.list();
+            } else if (path.length == 1) {
+                // One monitor
+                result = monitorService.get(path[0]);
+            } else if (path.length == 2 && path[1].equals("stats")) {
+                // Availability and latency over a window
+                long now = System.currentTimeMillis();
+                long to = parseTime(request.getParameter("to"), now, now);
+                long window = parseDuration(request.getParameter("window"), TimeUnit.HOURS.toMillis(1));
+                long from = parseTime(request.getParameter("from"), to - window, now);
+                long step = parseDuration(request.getParameter("step"), 0);
+                result = monitorService.getWindow(path[0], from, to, step);
+            } else {
+                writeError(response, HttpServletResponse.SC_NOT_FOUND, "Unknown monitor endpoint");
+                return;
+            }
+            
+            if (result == null) {
+                writeError(response, HttpServletResponse.SC_NOT_FOUND, "No monitor " + path[0]);
+                return;
+            }
+            JsonCodec.write(response, result);
+            
+        } catch (IllegalArgumentException e) {
+            writeError(response, HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+        }
+    }
+    
+    @Override
+    protected void doPost(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        
+        setCORSHeaders(response);
+        if (splitPath(request.getPathInfo()).length != 0) {
+            writeError(response, HttpServletResponse.SC_NOT_FOUND, "Monitors are created with POST /api/monitors");
+            return;
+        }
+        
+        Monitor monitor;
+        try {
+            monitor = JsonCodec.read(request, MONITOR_READER);
+        } catch (Exception e) {
+            writeError(response, HttpServletResponse.SC_BAD_REQUEST, "Expected a JSON monitor: " + e.getMessage());
+            return;
+        }
+        
+        try {
+            Monitor created = monitorService.create(monitor);
+            response.setStatus(HttpServletResponse.SC_CREATED);
+            response.setContentType("application/json");
+            response.setCharacterEncoding("UTF-8");
+            JsonCodec.write(response, created);
+        } catch (IllegalArgumentException e) {
+            writeError(response, HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+        } catch (IllegalStateException e) {
+            writeError(response, HttpServletResponse.SC_CONFLICT, e.getMessage());
+        }
+    }
+    
+    @Override
+    protected void doDelete(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        
+        setCORSHeaders(response);
+        String[] path = splitPath(request.getPathInfo());
+        if (path.length != 1) {
+            writeError(response, HttpServletResponse.SC_NOT_FOUND, "Monitors are deleted with DELETE /api/monitors/{id}");
+        } else if (!monitorService.delete(path[0])) {
+            writeError(response, HttpServletResponse.SC_NOT_FOUND, "No monitor " + path[0]);
+        } else {
+            response.setStatus(HttpServletResponse.SC_NO_CONTENT);
+        }
+    }
+    
+    @Override
+    protected void doOptions(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        setCORSHeaders(response);
+        response.setStatus(HttpServletResponse.SC_OK);
+    }
+    
+    private static String[] splitPath(String pathInfo) {
+        if (pathInfo == null || pathInfo.equals("/")) {
+            return new String[0];
+        }
+        return pathInfo.substring(1).split("/");
+    }
+    
+    /**
+     * Epoch milliseconds, or a duration back from now
+     */
+    private static long parseTime(String value, long defaultValue, long now) {
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        if (value.trim().matches("\\d{10,}")) {
+            return Long.parseLong(value.trim());
+        }
+        return now - parseDuration(value, 0);
+    }
+    
+    /**
+     * Duration such as 30s, 15m, 6h or 7d, in milliseconds
+     */
+    private static long parseDuration(String value, long defaultValue) {
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        String trimmed = value.trim().toLowerCase();
+        TimeUnit unit;
+        switch (trimmed.charAt(trimmed.length() - 1)) {
+            case 's':
+                unit = TimeUnit.SECONDS;
+                break;
+            case 'm':
+                unit = TimeUnit.MINUTES;
+                break;
+            case 'h':
+                unit = TimeUnit.HOURS;
+                break;
+            case 'd':
+                unit = TimeUnit.DAYS;
+                break;
+            default:
+                throw new IllegalArgumentException("Invalid duration " + value + ", expected e.g. 30s, 15m, 6h or 7d");
+        }
+        try {
+            return unit.toMillis(Long.parseLong(trimmed.substring(0, trimmed.length() - 1)));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid duration " + value + ", expected e.g. 30s, 15m, 6h or 7d");
+        }
+    }
+    
+    private void writeError(HttpServletResponse response, int status, String message) throws IOException {
+        response.setStatus(status);
+        response.setContentType("application/json");
+        JsonCodec.writeError(response, message);
+    }
+    
+    private void setCORSHeaders(HttpServletResponse response) {
+        response.setHeader("Access-Control-Allow-Origin", "*");
+        response.setHeader("Access-Control-Allow-Methods", "GET, POST, DELETE, OPTIONS");
+        response.setHeader("Access-Control-Allow-Headers", "Content-Type, Authorization, X-Session-ID");
+        response.setHeader("Access-Control-Max-Age", "3600");
+        response.setHeader("Access-Control-Expose-Headers", "X-Session-ID");
+    }
+}
@@ -0,0 +1,107 @@
+package com.apitester.servlet;
+
+import com.apitester.logging.SecurityLogger;
+import com.apitester.logging.SessionManager;
+import com.apitester.model.ApiRequest;
+import com.apitester.model.ApiResponse;
+import com.apitester.service.ApiRequestService;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import javax.servlet.ServletException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Sends the body of this request upstream as it arrives, for files, protobuf, multipart
+ * forms and other payloads that do not fit in ApiRequest.body. The rest of the upstream
+ * request (url, method, headers, timeouts) comes as ApiRequest JSON in the X-Api-Request
+ * header; the method defaults to POST, and the body keeps this request's Content-Type,
+ * multipart boundary included. Answers with the ApiResponse, like /api/request.
+ */
+@WebServlet("/api/upload")
+public class UploadServlet extends HttpServlet {
+    
+    private static final ObjectReader REQUEST_READER = JsonCodec.readerFor(ApiRequest.class);
+    private static final ObjectWriter RESPONSE_WRITER = JsonCodec.writerFor(ApiResponse.class);
+    
+    private ApiRequestService apiRequestService;
+    private SecurityLogger securityLogger;
+    private SessionManager sessionManager;
+    
+    @Override
+    public void init() throws ServletException {
+        apiRequestService = ApiRequestService.getInstance();
+        securityLogger = SecurityLogger.getInstance();
+        sessionManager = SessionManager.getInstance();
+    }
+    
+    @Override
+    protected void doPost(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        
+        setCORSHeaders(response);
+        
+        String sessionId = request.getHeader("X-Session-ID");
+        if (sessionId == null) {
+            sessionId = sessionManager.generateSessionId();
+        } else {
+            sessionId = sessionManager.getOrCreateSessionId(sessionId);
+        }
+        response.setHeader("X-Session-ID", sessionId);
+        
+        String definition = request.getHeader("X-Api-Request");
+        if (definition == null || definition.trim().isEmpty()) {
+            writeError(response, HttpServletResponse.SC_BAD_REQUEST,
+                "The X-Api-Request header must hold the upstream request as JSON");
+            return;
+        }
+        ApiRequest apiRequest;
+        try {
+            apiRequest = REQUEST_READER.readValue(definition);
+        } catch (Exception e) {
+            writeError(response, HttpServletResponse.SC_BAD_REQUEST, "Invalid X-Api-Request header: " + e.getMessage());
+            return;
+        }
+        if (apiRequest.getMethod() == null) {
+            apiRequest.setMethod("POST");
+        }
+        
+        try {
+            ApiResponse apiResponse = apiRequestService.processUpload(apiRequest, request.getInputStream(),
+                request.getContentLengthLong(), request.getContentType(), sessionId);
+            
+            response.setContentType("application/json");
+            response.setCharacterEncoding("UTF-8");
+            JsonCodec.write(response, RESPONSE_WRITER, apiResponse);
+            
+        } catch (Exception e) {
+            securityLogger.logError(sessionId, "UPLOAD_ERROR", e.getMessage(), e);
+            writeError(response, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, e.getMessage());
+        }
+    }
+    
+    @Override
+    protected void doOptions(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        setCORSHeaders(response);
+        response.setStatus(HttpServletResponse.SC_OK);
+    }
+    
+    private void writeError(HttpServletResponse response, int status, String message) throws IOException {
+        response.setStatus(status);
+        response.setContentType("application/json");
+        JsonCodec.writeError(response, message);
+    }
+    
+    private void setCORSHeaders(HttpServletResponse response) {
+        response.setHeader("Access-Control-Allow-Origin", "*");
+        response.setHeader("Access-Control-Allow-Methods", "POST, OPTIONS");
+        response.setHeader("Access-Control-Allow-Headers", "Content-Type, Authorization, X-Session-ID, X-Api-Request");
+        response.setHeader("Access-Control-Max-Age", "3600");
+        response.setHeader("Access-Control-Expose-Headers", "X-Session-ID");
+    }
+}
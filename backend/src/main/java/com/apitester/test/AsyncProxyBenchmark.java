@@ -0,0 +1,117 @@
+package com.apitester.test;
+
+import com.apitester.model.ApiRequest;
+import com.apitester.model.ApiResponse;
+import com.apitester.service.ApiRequestService;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Benchmark comparing how many concurrent slow upstream requests one node can hold
+ * with blocking vs async execution.
+ *
+ * A fixed pool of "worker" threads stands in for the servlet container's connector
+ * pool. In blocking mode each request occupies a worker for the whole upstream
+ * round-trip; in async mode the worker only hands the request to the non-blocking client.
+ *
+ * Usage: AsyncProxyBenchmark [requests=400] [upstreamDelayMs=1000] [workerThreads=50]
+ */
+public class AsyncProxyBenchmark {
+    
+    public static void main(String[] args) throws Exception {
+        int requests = args.length > 0 ? Integer.parseInt(args[0]) : 400;
+        int delayMs = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        int workers = args.length > 2 ? Integer.parseInt(args[2]) : 50;
+        
+        // Let the async client open as many connections to the stub as there are requests
+        System.setProperty("apitester.async.maxConnTotal", String.valueOf(requests));
+        System.setProperty("apitester.async.maxConnPerRoute", String.valueOf(requests));
+        
+        System.out.println("=== Async Proxy Benchmark ===");
+        System.out.println("Requests: " + requests + ", upstream delay: " + delayMs + " ms, worker threads: " + workers);
+        
+        try (StubServer stub = new StubServer()) {
+            ApiRequestService service = new ApiRequestService();
+            ApiRequest apiRequest = new ApiRequest(stub.url("/slow?delay=" + delayMs), "GET", null, null);
+            ExecutorService workerPool = Executors.newFixedThreadPool(workers);
+            
+            try {
+                // Warm up connections and class loading
+                service.processRequest(new ApiRequest(stub.url("/warmup"), "GET", null, null));
+                service.processRequestAsync(new ApiRequest(stub.url("/warmup"), "GET", null, null), null, Runnable::run).get();
+                
+                stub.resetStatistics();
+                Result blocking = runBlocking(service, apiRequest, workerPool, requests);
+                blocking.peakInFlight = stub.getPeakActiveRequests();
+                
+                stub.resetStatistics();
+                Result async = runAsync(service, apiRequest, workerPool, requests);
+                async.peakInFlight = stub.getPeakActiveRequests();
+                
+                System.out.println();
+                System.out.printf("%-10s %12s %12s %14s %10s%n", "mode", "wall (ms)", "req/s", "peak in-flight", "failures");
+                blocking.print("blocking");
+                async.print("async");
+            } finally {
+                workerPool.shutdownNow();
+                service.shutdown();
+            }
+        }
+    }
+    
+    private static Result runBlocking(ApiRequestService service, ApiRequest apiRequest,
+                                      ExecutorService workerPool, int requests) throws Exception {
+        long start = System.nanoTime();
+        List<Future<ApiResponse>> futures = new ArrayList<>(requests);
+        for (int i = 0; i < requests; i++) {
+            futures.add(workerPool.submit(() -> service.processRequest(apiRequest)));
+        }
+        Result result = new Result();
+        for (Future<ApiResponse> future : futures) {
+            result.count(future.get());
+        }
+        result.wallNanos = System.nanoTime() - start;
+        return result;
+    }
+    
+    private static Result runAsync(ApiRequestService service, ApiRequest apiRequest,
+                                   ExecutorService workerPool, int requests) throws Exception {
+        long start = System.nanoTime();
+        List<Future<CompletableFuture<ApiResponse>>> submissions = new ArrayList<>(requests);
+        for (int i = 0; i < requests; i++) {
+            // The worker returns as soon as the request is handed off, like a servlet after startAsync()
+            submissions.add(workerPool.submit(() -> service.processRequestAsync(apiRequest, null, workerPool)));
+        }
+        Result result = new Result();
+        for (Future<CompletableFuture<ApiResponse>> submission : submissions) {
+            result.count(submission.get().get());
+        }
+        result.wallNanos = System.nanoTime() - start;
+        return result;
+    }
+    
+    private static class Result {
+        long wallNanos;
+        int completed;
+        int failures;
+        int peakInFlight;
+        
+        void count(ApiResponse response) {
+            completed++;
+            if (response.getStatus() != 200) {
+                failures++;
+            }
+        }
+        
+        void print(String mode) {
+            double wallMs = wallNanos / 1_000_000.0;
+            System.out.printf("%-10s %12.0f %12.1f %14d %10d%n",
+                mode, wallMs, completed / (wallMs / 1000.0), peakInFlight, failures);
+        }
+    }
+}
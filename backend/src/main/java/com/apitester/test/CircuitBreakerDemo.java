@@ -0,0 +1,73 @@
+package com.apitester.test;
+
+import com.apitester.model.ApiRequest;
+import com.apitester.model.ApiResponse;
+import com.apitester.service.ApiRequestService;
+import com.apitester.service.CircuitBreaker;
+
+import java.util.Map;
+
+/**
+ * Walks one host's circuit breaker through its states against a local StubServer:
+ * a slow, failing upstream opens the circuit, after which requests fail at once; once
+ * the open period is over and the upstream is healthy again, probe requests close it.
+ *
+ * The breaker is configured here for a short demo (minCalls 10, openMs 1000) unless
+ * the apitester.breaker.* system properties are set.
+ *
+ * Usage: CircuitBreakerDemo [failingDelayMs=200]
+ */
+public class CircuitBreakerDemo {
+    
+    public static void main(String[] args) throws Exception {
+        int failingDelayMs = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        setDefault("apitester.breaker.enabled", "true");
+        setDefault("apitester.breaker.minCalls", "10");
+        setDefault("apitester.breaker.openMs", "1000");
+        
+        System.out.println("=== Circuit Breaker Demo ===");
+        ApiRequestService service = new ApiRequestService();
+        try (StubServer stub = new StubServer()) {
+            String failingUrl = stub.url("/down?delay=" + failingDelayMs + "&status=503");
+            String healthyUrl = stub.url("/up");
+            
+            System.out.printf("%-10s %-24s %6s %10s   %s%n", "request", "upstream", "status", "time (ms)", "circuit");
+            int sent = 0;
+            for (int i = 0; i < 15; i++) {
+                send(service, ++sent, "failing, " + failingDelayMs + " ms", failingUrl);
+            }
+            long openMs = service.getCircuitBreakerStatistics().openMs;
+            System.out.println("... waiting " + openMs + " ms for the circuit to half-open");
+            Thread.sleep(openMs + 50);
+            for (int i = 0; i < 5; i++) {
+                send(service, ++sent, "healthy", healthyUrl);
+            }
+            
+            System.out.println();
+            CircuitBreaker.BreakerStatistics statistics = service.getCircuitBreakerStatistics();
+            for (Map.Entry<String, CircuitBreaker.CircuitStatistics> host : statistics.hosts.entrySet()) {
+                System.out.println(host.getKey() + ": " + host.getValue().state + ", opened "
+                    + host.getValue().opened + " time(s), rejected " + host.getValue().rejected + " request(s)");
+            }
+        } finally {
+            service.shutdown();
+        }
+    }
+    
+    private static void send(ApiRequestService service, int number, String upstream, String url) {
+        long start = System.nanoTime();
+        ApiResponse response = service.processRequest(new ApiRequest(url, "GET", null, null));
+        double millis = (System.nanoTime() - start) / 1e6;
+        String state = "";
+        for (CircuitBreaker.CircuitStatistics circuit : service.getCircuitBreakerStatistics().hosts.values()) {
+            state = circuit.state;
+        }
+        System.out.printf("%-10d %-24s %6d %10.1f   %s%n", number, upstream, response.getStatus(), millis, state);
+    }
+    
+    private static void setDefault(String property, String value) {
+        if (System.getProperty(property) == null) {
+            System.setProperty(property, value);
+        }
+    }
+}
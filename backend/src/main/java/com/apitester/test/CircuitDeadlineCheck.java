@@ -0,0 +1,75 @@
+package com.apitester.test;
+
+import com.apitester.model.ApiRequest;
+import com.apitester.model.ApiResponse;
+import com.apitester.model.TimeoutPolicy;
+import com.apitester.service.ApiRequestService;
+import com.apitester.service.CircuitBreaker;
+
+/**
+ * Checks that requests cut off by their own deadline count against the host's circuit:
+ * a stalled StubServer path is called with a short timeouts.totalMs until the circuit
+ * opens, after which requests must fail at once without waiting for the deadline.
+ *
+ * The breaker is configured here for a short check (minCalls 5) unless the
+ * apitester.breaker.* system properties are set.
+ *
+ * Usage: CircuitDeadlineCheck [totalMs=100]
+ */
+public class CircuitDeadlineCheck {
+    
+    public static void main(String[] args) throws Exception {
+        long totalMs = args.length > 0 ? Long.parseLong(args[0]) : 100;
+        setDefault("apitester.breaker.enabled", "true");
+        setDefault("apitester.breaker.minCalls", "5");
+        setDefault("apitester.breaker.openMs", "60000");
+        
+        System.out.println("=== Circuit Deadline Check (totalMs " + totalMs + ") ===");
+        ApiRequestService service = new ApiRequestService();
+        try (StubServer stub = new StubServer()) {
+            String stalledUrl = stub.url("/stalled?delay=" + (totalMs * 50));
+            int minCalls = Integer.getInteger("apitester.breaker.minCalls", 5);
+            
+            String state = "";
+            for (int i = 1; i <= minCalls * 2 && !state.equals(CircuitBreaker.OPEN); i++) {
+                ApiRequest request = new ApiRequest(stalledUrl, "GET", null, null);
+                request.setTimeouts(new TimeoutPolicy(null, null, totalMs));
+                long start = System.nanoTime();
+                ApiResponse response = service.processRequest(request);
+                state = state(service);
+                System.out.printf("request %-3d status %3d  %7.1f ms   %s%n", i, response.getStatus(),
+                    (System.nanoTime() - start) / 1e6, state);
+            }
+            if (!state.equals(CircuitBreaker.OPEN)) {
+                throw new IllegalStateException("Deadline expiries did not open the circuit: " + state);
+            }
+            
+            ApiRequest request = new ApiRequest(stalledUrl, "GET", null, null);
+            request.setTimeouts(new TimeoutPolicy(null, null, totalMs));
+            long start = System.nanoTime();
+            service.processRequest(request);
+            double millis = (System.nanoTime() - start) / 1e6;
+            if (millis >= totalMs) {
+                throw new IllegalStateException("Request to an open circuit still waited " + millis + " ms");
+            }
+            System.out.printf("open circuit: rejected in %.1f ms%n", millis);
+            System.out.println("OK");
+        } finally {
+            service.shutdown();
+        }
+    }
+    
+    private static String state(ApiRequestService service) {
+        String state = "";
+        for (CircuitBreaker.CircuitStatistics circuit : service.getCircuitBreakerStatistics().hosts.values()) {
+            state = circuit.state;
+        }
+        return state;
+    }
+    
+    private static void setDefault(String property, String value) {
+        if (System.getProperty(property) == null) {
+            System.setProperty(property, value);
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package com.apitester.test;
+
+import com.apitester.config.AppConfig;
+import com.apitester.filter.GzipFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Checks that GzipFilter delivers what a servlet flushes while the body is still under
+ * apitester.gzip.minSize, as the NDJSON progress lines of /api/batch and /api/collection
+ * need: each flushed line must reach the container before the response completes. Also
+ * checks that unflushed small bodies still go out as they are and large ones compressed.
+ *
+ * The request and response are stand-ins for the container's; the response records what
+ * reaches its output stream.
+ *
+ * Usage: GzipFlushCheck
+ */
+public class GzipFlushCheck {
+    
+    private static final int MIN_SIZE = AppConfig.getInt("gzip.minSize", 1024);
+    
+    public static void main(String[] args) throws Exception {
+        System.out.println("=== Gzip Flush Check (minSize " + MIN_SIZE + ") ===");
+        GzipFilter filter = new GzipFilter();
+        
+        // Flushed progress lines go out at once, uncompressed
+        final ContainerResponse streamed = new ContainerResponse();
+        filter.doFilter(request(), streamed.proxy, (FilterChain) (request, response) -> {
+            response.setContentType("application/x-ndjson");
+            ServletOutputStream out = response.getOutputStream();
+            for (int i = 1; i <= 3; i++) {
+                String line = "{\"progress\":" + i + "}\n";
+                out.write(line.getBytes(StandardCharsets.UTF_8));
+                if (i < 3) {
+                    out.flush();
+                } else {
+                    response.flushBuffer();
+                }
+                if (!streamed.text().endsWith(line)) {
+                    throw new IllegalStateException("Flushed line " + i + " was not delivered: " + streamed.text());
+                }
+            }
+        });
+        expect(streamed, null, "{\"progress\":1}\n{\"progress\":2}\n{\"progress\":3}\n");
+        System.out.println("flushed NDJSON lines:   delivered one by one, identity");
+        
+        // A small body that is never flushed is still sent as it is
+        String small = repeat("s", MIN_SIZE / 2);
+        ContainerResponse smallResponse = new ContainerResponse();
+        filter.doFilter(request(), smallResponse.proxy, (FilterChain) (request, response) -> {
+            response.setContentType("application/json");
+            response.getOutputStream().write(small.getBytes(StandardCharsets.UTF_8));
+        });
+        expect(smallResponse, null, small);
+        System.out.println("small body:             identity");
+        
+        // A body over the threshold is compressed, flushes included
+        String large = repeat("{\"field\":\"value\"},", MIN_SIZE / 8);
+        ContainerResponse largeResponse = new ContainerResponse();
+        filter.doFilter(request(), largeResponse.proxy, (FilterChain) (request, response) -> {
+            response.setContentType("application/json");
+            ServletOutputStream out = response.getOutputStream();
+            out.write(large.getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            out.write(large.getBytes(StandardCharsets.UTF_8));
+        });
+        expect(largeResponse, "gzip", large + large);
+        System.out.println("large body:             gzip, " + largeResponse.body.size() + " of "
+            + (2 * large.length()) + " bytes");
+        
+        System.out.println("OK");
+    }
+    
+    private static void expect(ContainerResponse response, String encoding, String body) throws IOException {
+        String actualEncoding = response.headers.get("Content-Encoding");
+        if (encoding == null ? actualEncoding != null : !encoding.equals(actualEncoding)) {
+            throw new IllegalStateException("Expected Content-Encoding " + encoding + ", got " + actualEncoding);
+        }
+        String actual = encoding == null ? response.text() : gunzip(response.body.toByteArray());
+        if (!actual.equals(body)) {
+            throw new IllegalStateException("Body differs: " + actual);
+        }
+    }
+    
+    private static String gunzip(byte[] bytes) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+    
+    private static String repeat(String text, int times) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < times; i++) {
+            builder.append(text);
+        }
+        return builder.toString();
+    }
+    
+    private static HttpServletRequest request() {
+        return (HttpServletRequest) Proxy.newProxyInstance(GzipFlushCheck.class.getClassLoader(),
+            new Class<?>[] {HttpServletRequest.class}, (proxy, method, methodArgs) -> {
+                switch (method.getName()) {
+                    case "getMethod":
+                        return "POST";
+                    case "getHeader":
+                        return "Accept-Encoding".equalsIgnoreCase((String) methodArgs[0]) ? "gzip" : null;
+                    case "isAsyncStarted":
+                        return false;
+                    default:
+                        throw new UnsupportedOperationException(method.getName());
+                }
+            });
+    }
+    
+    /**
+     * Stand-in for the container's response: keeps headers and records the bytes written
+     */
+    private static final class ContainerResponse {
+        final Map<String, String> headers = new LinkedHashMap<>();
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        String contentType;
+        boolean committed;
+        final HttpServletResponse proxy;
+        
+        ContainerResponse() {
+            final ServletOutputStream sink = new ServletOutputStream() {
+                @Override
+                public void write(int b) {
+                    committed = true;
+                    body.write(b);
+                }
+                
+                @Override
+                public void write(byte[] buffer, int offset, int length) {
+                    committed = true;
+                    body.write(buffer, offset, length);
+                }
+                
+                @Override
+                public boolean isReady() {
+                    return true;
+                }
+                
+                @Override
+                public void setWriteListener(WriteListener writeListener) {
+                    throw new UnsupportedOperationException();
+                }
+            };
+            proxy = (HttpServletResponse) Proxy.newProxyInstance(GzipFlushCheck.class.getClassLoader(),
+                new Class<?>[] {HttpServletResponse.class}, (p, method, methodArgs) -> {
+                    switch (method.getName()) {
+                        case "getOutputStream":
+                            return sink;
+                        case "setContentType":
+                            contentType = (String) methodArgs[0];
+                            return null;
+                        case "getContentType":
+                            return contentType;
+                        case "getCharacterEncoding":
+                            return "UTF-8";
+                        case "addHeader":
+                        case "setHeader":
+                            if (committed) {
+                                throw new IllegalStateException("Header set after the response was committed");
+                            }
+                            headers.put((String) methodArgs[0], (String) methodArgs[1]);
+                            return null;
+                        case "containsHeader":
+                            return headers.containsKey(methodArgs[0]);
+                        case "isCommitted":
+                            return committed;
+                        case "setContentLengthLong":
+                        case "flushBuffer":
+                            return null;
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+        }
+        
+        String text() {
+            return new String(body.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package com.apitester.test;
+
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.EntityDetails;
+import org.apache.hc.core5.http.HttpRequest;
+import org.apache.hc.core5.http.Message;
+import org.apache.hc.core5.http.URIScheme;
+import org.apache.hc.core5.http.impl.bootstrap.HttpAsyncServer;
+import org.apache.hc.core5.http.nio.AsyncRequestConsumer;
+import org.apache.hc.core5.http.nio.AsyncServerRequestHandler;
+import org.apache.hc.core5.http.nio.entity.DiscardingEntityConsumer;
+import org.apache.hc.core5.http.nio.support.AsyncResponseBuilder;
+import org.apache.hc.core5.http.nio.support.BasicRequestConsumer;
+import org.apache.hc.core5.http.protocol.HttpContext;
+import org.apache.hc.core5.http2.HttpVersionPolicy;
+import org.apache.hc.core5.http2.impl.nio.bootstrap.H2ServerBootstrap;
+import org.apache.hc.core5.io.CloseMode;
+import org.apache.hc.core5.reactor.IOSession;
+import org.apache.hc.core5.reactor.IOSessionListener;
+import org.apache.hc.core5.reactor.ListenerEndpoint;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Local upstream that speaks HTTP/1.1 on one port and cleartext HTTP/2 (prior
+ * knowledge) on another, with the same "delay", "size" and "gzip" query parameters as
+ * {@link StubServer}.
+ * Delays are served from a timer rather than a sleeping thread, so one server can
+ * hold thousands of slow requests. It also counts the connections clients open.
+ */
+public class H2StubServer implements AutoCloseable {
+    
+    private final HttpAsyncServer server;
+    private final ScheduledExecutorService timer;
+    private final int http1Port;
+    private final int http2Port;
+    private final AtomicInteger activeRequests = new AtomicInteger();
+    private final AtomicInteger peakActiveRequests = new AtomicInteger();
+    private final AtomicInteger totalRequests = new AtomicInteger();
+    private final AtomicInteger connections = new AtomicInteger();
+    
+    public H2StubServer() throws Exception {
+        this.timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "stub-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.server = H2ServerBootstrap.bootstrap()
+            .setCanonicalHostName("127.0.0.1")  // Requests for any other authority get 421
+            .setIOSessionListener(new ConnectionCounter())
+            .register("*", new StubHandler())
+            .create();
+        this.server.start();
+        // The version policy of each endpoint is passed as its listener attachment
+        this.http1Port = listen(HttpVersionPolicy.FORCE_HTTP_1);
+        this.http2Port = listen(HttpVersionPolicy.FORCE_HTTP_2);
+    }
+    
+    private int listen(HttpVersionPolicy versionPolicy) throws Exception {
+        ListenerEndpoint endpoint = server.listen(new InetSocketAddress("127.0.0.1", 0), URIScheme.HTTP,
+            versionPolicy, null).get();
+        return ((InetSocketAddress) endpoint.getAddress()).getPort();
+    }
+    
+    /**
+     * URL on the HTTP/1.1 endpoint
+     */
+    public String url(String pathAndQuery) {
+        return "http://127.0.0.1:" + http1Port + pathAndQuery;
+    }
+    
+    /**
+     * URL on the HTTP/2 endpoint; clients must use prior knowledge (no upgrade, no ALPN)
+     */
+    public String h2cUrl(String pathAndQuery) {
+        return "http://127.0.0.1:" + http2Port + pathAndQuery;
+    }
+    
+    /**
+     * Whether the thread belongs to this server (its I/O reactor or delay timer), for
+     * benchmarks that measure what the client side allocates
+     */
+    public static boolean isServerThread(Thread thread) {
+        return thread.getName().startsWith("server-") || thread.getName().equals("stub-timer");
+    }
+    
+    public int getPeakActiveRequests() {
+        return peakActiveRequests.get();
+    }
+    
+    public int getTotalRequests() {
+        return totalRequests.get();
+    }
+    
+    /**
+     * Connections accepted since the last reset
+     */
+    public int getConnections() {
+        return connections.get();
+    }
+    
+    public void resetStatistics() {
+        peakActiveRequests.set(activeRequests.get());
+        totalRequests.set(0);
+        connections.set(0);
+    }
+    
+    private class StubHandler implements AsyncServerRequestHandler<Message<HttpRequest, Void>> {
+        
+        @Override
+        public AsyncRequestConsumer<Message<HttpRequest, Void>> prepare(HttpRequest request, EntityDetails entityDetails,
+                                                                        HttpContext context) {
+            return new BasicRequestConsumer<>(DiscardingEntityConsumer::new);
+        }
+        
+        @Override
+        public void handle(Message<HttpRequest, Void> message, final ResponseTrigger trigger,
+                           final HttpContext context) {
+            int active = activeRequests.incrementAndGet();
+            peakActiveRequests.accumulateAndGet(active, Math::max);
+            totalRequests.incrementAndGet();
+            
+            String query = message.getHead().getRequestUri();
+            int queryStart = query.indexOf('?');
+            query = queryStart >= 0 ? query.substring(queryStart + 1) : null;
+            long delay = StubServer.queryParam(query, "delay", 0);
+            final int size = (int) StubServer.queryParam(query, "size", 64);
+            final boolean gzip = StubServer.queryParam(query, "gzip", 0) == 1;
+            
+            timer.schedule(() -> {
+                try {
+                    byte[] body = StubServer.jsonBody(size);
+                    AsyncResponseBuilder response = AsyncResponseBuilder.create(200);
+                    if (gzip) {
+                        body = StubServer.gzip(body);
+                        response.setHeader("Content-Encoding", "gzip");
+                    }
+                    trigger.submitResponse(response.setEntity(body, ContentType.APPLICATION_JSON).build(), context);
+                } catch (Exception e) {
+                    // The client went away; nothing to answer
+                } finally {
+                    activeRequests.decrementAndGet();
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+    
+    private class ConnectionCounter implements IOSessionListener {
+        
+        @Override
+        public void connected(IOSession session) {
+            connections.incrementAndGet();
+        }
+        
+        @Override
+        public void startTls(IOSession session) {}
+        
+        @Override
+        public void inputReady(IOSession session) {}
+        
+        @Override
+        public void outputReady(IOSession session) {}
+        
+        @Override
+        public void timeout(IOSession session) {}
+        
+        @Override
+        public void exception(IOSession session, Exception ex) {}
+        
+        @Override
+        public void disconnected(IOSession session) {}
+    }
+    
+    @Override
+    public void close() {
+        server.close(CloseMode.IMMEDIATE);
+        timer.shutdownNow();
+    }
+}
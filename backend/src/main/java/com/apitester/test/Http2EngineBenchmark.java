@@ -0,0 +1,127 @@
+package com.apitester.test;
+
+import com.apitester.model.ApiRequest;
+import com.apitester.model.ApiResponse;
+import com.apitester.service.ApiRequestService;
+import org.HdrHistogram.Histogram;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark comparing the HTTP/1.1 client with the HTTP/2 engine against a local
+ * upstream that serves the same responses over both protocols. The same number of worker threads keeps the same number
+ * of requests in flight for each engine; HTTP/1.1 needs a connection per in-flight
+ * request, HTTP/2 multiplexes them over one. "new conns" counts the connections the
+ * upstream accepted during the run, after a warm-up request on each engine.
+ *
+ * The stub is cleartext, so the HTTP/2 engine runs with versionPolicy FORCE_HTTP_2
+ * (prior knowledge) instead of negotiating through ALPN.
+ *
+ * Usage: Http2EngineBenchmark [requests=2000] [concurrency=50] [upstreamDelayMs=20] [bodyBytes=2048]
+ */
+public class Http2EngineBenchmark {
+    
+    public static void main(String[] args) throws Exception {
+        int requests = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int concurrency = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+        int delayMs = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+        int bodyBytes = args.length > 3 ? Integer.parseInt(args[3]) : 2048;
+        
+        // Give HTTP/1.1 enough connections for the concurrency, so pool queueing does not skew it
+        System.setProperty("apitester.pool.maxTotal", String.valueOf(concurrency));
+        System.setProperty("apitester.pool.maxPerRoute", String.valueOf(concurrency));
+        System.setProperty("apitester.http2.versionPolicy", "FORCE_HTTP_2");
+        
+        System.out.println("=== HTTP/2 Engine Benchmark ===");
+        System.out.println("Requests: " + requests + ", concurrency: " + concurrency
+            + ", upstream delay: " + delayMs + " ms, body: " + bodyBytes + " bytes");
+        
+        try (H2StubServer stub = new H2StubServer()) {
+            ApiRequestService service = new ApiRequestService();
+            ExecutorService workerPool = Executors.newFixedThreadPool(concurrency);
+            String pathAndQuery = "/bench?delay=" + delayMs + "&size=" + bodyBytes;
+            
+            try {
+                // Warm up class loading on both engines
+                service.executeUnlogged(request(stub.url("/warmup"), "http1"));
+                service.executeUnlogged(request(stub.h2cUrl("/warmup"), "http2"));
+                
+                stub.resetStatistics();
+                Result http1 = run(service, request(stub.url(pathAndQuery), "http1"), workerPool, requests);
+                http1.connections = stub.getConnections();
+                
+                stub.resetStatistics();
+                Result http2 = run(service, request(stub.h2cUrl(pathAndQuery), "http2"), workerPool, requests);
+                http2.connections = stub.getConnections();
+                
+                System.out.println();
+                System.out.printf("%-8s %-9s %10s %10s %9s %9s %9s %12s %9s%n",
+                    "engine", "protocol", "wall (ms)", "req/s", "p50 (ms)", "p99 (ms)", "max (ms)", "new conns", "failures");
+                http1.print("http1");
+                http2.print("http2");
+            } finally {
+                workerPool.shutdownNow();
+                service.shutdown();
+            }
+        }
+    }
+    
+    private static ApiRequest request(String url, String protocol) {
+        ApiRequest apiRequest = new ApiRequest(url, "GET", null, null);
+        apiRequest.setProtocol(protocol);
+        return apiRequest;
+    }
+    
+    private static Result run(ApiRequestService service, ApiRequest apiRequest,
+                              ExecutorService workerPool, int requests) throws Exception {
+        final Result result = new Result();
+        long start = System.nanoTime();
+        List<Future<?>> futures = new ArrayList<>(requests);
+        for (int i = 0; i < requests; i++) {
+            futures.add(workerPool.submit(() -> {
+                long requestStart = System.nanoTime();
+                ApiResponse response = service.executeUnlogged(apiRequest);
+                result.record(response, System.nanoTime() - requestStart);
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        result.wallNanos = System.nanoTime() - start;
+        return result;
+    }
+    
+    private static class Result {
+        final Histogram latencyMicros = new Histogram(TimeUnit.MINUTES.toMicros(1), 3);
+        long wallNanos;
+        int completed;
+        int failures;
+        int connections;
+        String protocol;
+        
+        synchronized void record(ApiResponse response, long nanos) {
+            completed++;
+            if (response.getStatus() != 200) {
+                failures++;
+            } else if (protocol == null) {
+                protocol = response.getProtocol();
+            }
+            latencyMicros.recordValue(Math.min(TimeUnit.NANOSECONDS.toMicros(nanos), latencyMicros.getHighestTrackableValue()));
+        }
+        
+        void print(String engine) {
+            double wallMs = wallNanos / 1_000_000.0;
+            System.out.printf("%-8s %-9s %10.0f %10.1f %9.2f %9.2f %9.2f %12d %9d%n",
+                engine, protocol, wallMs, completed / (wallMs / 1000.0),
+                latencyMicros.getValueAtPercentile(50) / 1000.0,
+                latencyMicros.getValueAtPercentile(99) / 1000.0,
+                latencyMicros.getMaxValue() / 1000.0,
+                connections, failures);
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package com.apitester.test;
+
+import com.apitester.model.ApiRequest;
+import com.apitester.model.ApiResponse;
+import com.apitester.service.ApiRequestService;
+import org.HdrHistogram.Histogram;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark comparing the upstream engines ("engine" setting) on the same traffic:
+ * throughput, latency percentiles, bytes allocated per request and connections opened.
+ * Each engine runs in its own service instance against the local H2StubServer; the
+ * http2 engine uses its cleartext HTTP/2 endpoint, the others its HTTP/1.1 one.
+ *
+ * Every engine may open as many connections as there are worker threads, so pool
+ * limits do not skew the comparison. Allocation is summed over every client-side thread
+ * (workers and I/O reactors) and excludes the stub's own threads.
+ *
+ * Usage: HttpEngineBenchmark [requests=5000] [concurrency=32] [upstreamDelayMs=5] [bodyBytes=2048]
+ *                            [engines=apache,apache-async,urlconnection,http2]
+ */
+public class HttpEngineBenchmark {
+    
+    private static final com.sun.management.ThreadMXBean THREADS =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    
+    public static void main(String[] args) throws Exception {
+        int requests = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+        int concurrency = args.length > 1 ? Integer.parseInt(args[1]) : 32;
+        int delayMs = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+        int bodyBytes = args.length > 3 ? Integer.parseInt(args[3]) : 2048;
+        String[] engines = (args.length > 4 ? args[4] : "apache,apache-async,urlconnection,http2").split(",");
+        
+        System.setProperty("apitester.pool.maxTotal", String.valueOf(concurrency));
+        System.setProperty("apitester.pool.maxPerRoute", String.valueOf(concurrency));
+        System.setProperty("apitester.async.maxConnTotal", String.valueOf(concurrency));
+        System.setProperty("apitester.async.maxConnPerRoute", String.valueOf(concurrency));
+        System.setProperty("apitester.http2.versionPolicy", "FORCE_HTTP_2");
+        System.setProperty("http.maxConnections", String.valueOf(concurrency));  // JDK keep-alive cache
+        
+        System.out.println("=== HTTP Engine Benchmark ===");
+        System.out.println("Requests: " + requests + ", concurrency: " + concurrency
+            + ", upstream delay: " + delayMs + " ms, body: " + bodyBytes + " bytes");
+        
+        List<Result> results = new ArrayList<>();
+        try (H2StubServer stub = new H2StubServer()) {
+            ExecutorService workerPool = Executors.newFixedThreadPool(concurrency);
+            String pathAndQuery = "/bench?delay=" + delayMs + "&size=" + bodyBytes;
+            try {
+                for (String engine : engines) {
+                    System.setProperty("apitester.engine", engine);
+                    ApiRequestService service = new ApiRequestService();
+                    String url = "http2".equals(engine) ? stub.h2cUrl(pathAndQuery) : stub.url(pathAndQuery);
+                    ApiRequest apiRequest = new ApiRequest(url, "GET", null, null);
+                    try {
+                        // Warm up connections and let the JIT settle before measuring allocation
+                        run(service, apiRequest, workerPool, Math.min(requests, 1000), false);
+                        
+                        stub.resetStatistics();
+                        Result result = run(service, apiRequest, workerPool, requests, true);
+                        result.engine = service.getEngineName();
+                        result.connections = stub.getConnections();
+                        results.add(result);
+                    } finally {
+                        service.shutdown();
+                    }
+                }
+            } finally {
+                workerPool.shutdownNow();
+            }
+        }
+        
+        System.out.println();
+        System.out.printf("%-14s %-9s %9s %9s %8s %8s %8s %8s %12s %9s %9s%n", "engine", "protocol", "wall (ms)",
+            "req/s", "p50 (ms)", "p90 (ms)", "p99 (ms)", "max (ms)", "alloc/req", "new conns", "failures");
+        for (Result result : results) {
+            result.print();
+        }
+    }
+    
+    private static Result run(ApiRequestService service, ApiRequest apiRequest, ExecutorService workerPool,
+                              int requests, boolean measure) throws Exception {
+        final Result result = new Result();
+        Map<Long, Long> allocatedBefore = measure ? allocatedBytes() : null;
+        long start = System.nanoTime();
+        List<Future<?>> futures = new ArrayList<>(requests);
+        for (int i = 0; i < requests; i++) {
+            futures.add(workerPool.submit(() -> {
+                long requestStart = System.nanoTime();
+                ApiResponse response = service.executeUnlogged(apiRequest);
+                result.record(response, System.nanoTime() - requestStart);
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        result.wallNanos = System.nanoTime() - start;
+        
+        if (measure) {
+            long allocated = 0;
+            for (Map.Entry<Long, Long> entry : allocatedBytes().entrySet()) {
+                Long before = allocatedBefore.get(entry.getKey());
+                allocated += entry.getValue() - (before != null ? before : 0);
+            }
+            result.allocatedBytes = allocated;
+        }
+        return result;
+    }
+    
+    /**
+     * Bytes allocated so far by each live client-side thread, by thread id. Threads that
+     * exit during a run lose their count; the engines' pools keep theirs alive.
+     */
+    private static Map<Long, Long> allocatedBytes() {
+        Map<Long, Long> allocated = new HashMap<>();
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (!H2StubServer.isServerThread(thread)) {
+                long bytes = THREADS.getThreadAllocatedBytes(thread.getId());
+                if (bytes >= 0) {
+                    allocated.put(thread.getId(), bytes);
+                }
+            }
+        }
+        return allocated;
+    }
+    
+    private static class Result {
+        final Histogram latencyMicros = new Histogram(TimeUnit.MINUTES.toMicros(1), 3);
+        String engine;
+        String protocol;
+        long wallNanos;
+        long allocatedBytes;
+        int completed;
+        int failures;
+        int connections;
+        
+        synchronized void record(ApiResponse response, long nanos) {
+            completed++;
+            if (response.getStatus() != 200) {
+                failures++;
+            } else if (protocol == null) {
+                protocol = response.getProtocol();
+            }
+            latencyMicros.recordValue(Math.min(TimeUnit.NANOSECONDS.toMicros(nanos), latencyMicros.getHighestTrackableValue()));
+        }
+        
+        void print() {
+            double wallMs = wallNanos / 1_000_000.0;
+            System.out.printf("%-14s %-9s %9.0f %9.1f %8.2f %8.2f %8.2f %8.2f %12s %9d %9d%n",
+                engine, protocol, wallMs, completed / (wallMs / 1000.0),
+                latencyMicros.getValueAtPercentile(50) / 1000.0,
+                latencyMicros.getValueAtPercentile(90) / 1000.0,
+                latencyMicros.getValueAtPercentile(99) / 1000.0,
+                latencyMicros.getMaxValue() / 1000.0,
+                formatBytes(completed > 0 ? allocatedBytes / completed : 0),
+                connections, failures);
+        }
+        
+        private static String formatBytes(long bytes) {
+            return bytes >= 1024 ? String.format("%.1f KB", bytes / 1024.0) : bytes + " B";
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.apitester.test;
+
+import com.apitester.service.JsonPrettyPrinter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Benchmark of the /api/raw-request reformatting: the previous approach (parse the body
+ * into an Object tree, write it back as a pretty-printed String, print that) against
+ * JsonPrettyPrinter's single streaming pass, on generated documents of several sizes.
+ * Reports time and bytes allocated per document on the benchmark thread; the tree
+ * approach also holds the whole tree and the whole formatted String at once, which the
+ * streaming pass never does. Output goes to a Writer that only counts characters.
+ *
+ * Before timing, both approaches must produce the same text for each document, and
+ * truncated or malformed documents must come out in full from the streaming pass.
+ *
+ * Usage: PrettyPrintBenchmark [sizes=10000,1000000,20000000] [seconds=3]
+ */
+public class PrettyPrintBenchmark {
+    
+    private static final com.sun.management.ThreadMXBean THREADS =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    
+    public static void main(String[] args) throws Exception {
+        String[] sizes = (args.length > 0 ? args[0] : "10000,1000000,20000000").split(",");
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+        
+        System.out.println("=== Pretty Print Benchmark ===");
+        System.out.printf("%-10s %-10s %8s %10s %14s %10s%n", "size", "approach", "docs", "ms/doc", "alloc/doc (KB)", "MB/s");
+        
+        for (String size : sizes) {
+            String document = document(Integer.parseInt(size.trim()));
+            check(document);
+            
+            for (String approach : new String[] {"tree", "streaming"}) {
+                // Warm up for a third of the time, then measure
+                run(approach, document, seconds * 1000L / 3);
+                long allocatedBefore = THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+                long start = System.nanoTime();
+                long docs = run(approach, document, seconds * 1000L);
+                long elapsed = System.nanoTime() - start;
+                long allocated = THREADS.getThreadAllocatedBytes(Thread.currentThread().getId()) - allocatedBefore;
+                
+                double msPerDoc = elapsed / 1e6 / docs;
+                System.out.printf("%-10d %-10s %8d %10.3f %14.1f %10.1f%n", document.length(), approach, docs,
+                    msPerDoc, allocated / 1024.0 / docs, document.length() / 1e6 / (msPerDoc / 1000));
+            }
+        }
+    }
+    
+    private static long run(String approach, String document, long millis) throws IOException {
+        CountingWriter out = new CountingWriter();
+        long end = System.nanoTime() + millis * 1_000_000L;
+        long docs = 0;
+        do {
+            if (approach.equals("tree")) {
+                printTree(document, out);
+            } else {
+                JsonPrettyPrinter.print(document, out);
+            }
+            docs++;
+        } while (System.nanoTime() < end);
+        return docs;
+    }
+    
+    /**
+     * What ApiRequestServlet did before: whole tree, whole formatted String
+     */
+    private static void printTree(String body, Writer out) throws IOException {
+        try {
+            Object jsonObject = MAPPER.readValue(body, Object.class);
+            out.write(MAPPER.writerWithDefaultPrettyPrinter().writeValueAsString(jsonObject));
+        } catch (Exception e) {
+            out.write(body);
+        }
+    }
+    
+    private static void check(String document) throws IOException {
+        StringWriter tree = new StringWriter();
+        printTree(document, tree);
+        StringWriter streaming = new StringWriter();
+        JsonPrettyPrinter.print(document, streaming);
+        if (!tree.toString().equals(streaming.toString())) {
+            throw new IllegalStateException("Outputs differ for a document of " + document.length() + " chars");
+        }
+        
+        checkFallback(document.substring(0, document.length() / 2));
+        // Broken mid-document, where the parser has read ahead of the last token it returned
+        checkFallback("{\"a\": \"abc\\q\"}");
+        checkFallback("{\"a\": 1, \"b\": [true, nul], \"c\": 2}");
+        checkFallback("[1, 2 3]");
+        checkFallback("{\"a\": {\"b\": 1.5e}, \"c\": null}");
+        checkFallback("{\"a\" 1}");
+        checkFallback("{\"a\": \"x\", }");
+        checkFallback(document.substring(0, document.length() / 3) + "\\" + document.substring(document.length() / 3));
+        
+        // Not JSON at all: exactly as it went in
+        String text = "<html><body>Bad Gateway</body></html>";
+        StringWriter out = new StringWriter();
+        if (JsonPrettyPrinter.print(text, out) || !out.toString().equals(text)) {
+            throw new IllegalStateException("Text that is not JSON was changed: " + out);
+        }
+    }
+    
+    /**
+     * Invalid JSON must come out with nothing lost: the same text but for indentation
+     */
+    private static void checkFallback(String malformed) throws IOException {
+        StringWriter fallback = new StringWriter();
+        if (JsonPrettyPrinter.print(malformed, fallback)
+                || !fallback.toString().replaceAll("\\s", "").equals(malformed.replaceAll("\\s", ""))) {
+            throw new IllegalStateException("Malformed document did not come out in full: "
+                + (malformed.length() > 200 ? malformed.substring(0, 200) + "..." : malformed) + " -> " + fallback);
+        }
+    }
+    
+    /**
+     * Compact JSON of roughly the requested size: an array of records with nested
+     * objects, arrays, strings, numbers, booleans and nulls
+     */
+    static String document(int size) {
+        StringBuilder sb = new StringBuilder(size + 256);
+        sb.append("{\"total\":0,\"items\":[");
+        for (int i = 0; sb.length() < size; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append("{\"id\":").append(i)
+                .append(",\"name\":\"item ").append(i).append(" \\\"quoted\\\"\"")
+                .append(",\"price\":").append(i % 1000).append('.').append(25)
+                .append(",\"active\":").append(i % 3 == 0)
+                .append(",\"tags\":[\"a\",\"b\",\"c").append(i % 7).append("\"]")
+                .append(",\"owner\":{\"id\":").append(i * 31).append(",\"email\":null}}");
+        }
+        return sb.append("]}").toString();
+    }
+    
+    /**
+     * Discards what is written, keeping a count so the work cannot be optimised away
+     */
+    private static final class CountingWriter extends Writer {
+        long count;
+        
+        @Override
+        public void write(char[] buffer, int offset, int length) {
+            count += length;
+        }
+        
+        @Override
+        public void write(String text, int offset, int length) {
+            count += length;
+        }
+        
+        @Override
+        public void flush() {
+        }
+        
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.apitester.test;
+
+import com.apitester.service.RateLimitExceededException;
+import com.apitester.service.RateLimiter;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Benchmark of the client-side rate limiter:
+ *
+ * - Hot path: threads taking permits at a rate that is never reached, through
+ *   RateLimiter.acquire (rule lookup, bucket and counters), from the lock-free bucket
+ *   alone, and from the same bucket algorithm behind a lock. Contention only shows with
+ *   several CPUs; on one CPU the threads take turns and the lock is never contended.
+ * - Accuracy: threads sending as fast as they can against a 100/s rule with burst 10,
+ *   once queueing (maxWaitMs 200) and once failing fast (maxWaitMs 0); the permitted
+ *   rate should be close to 100/s either way.
+ *
+ * Usage: RateLimiterBenchmark [threads=16] [seconds=3]
+ */
+public class RateLimiterBenchmark {
+    
+    private static final URI TARGET = URI.create("https://api.example.com/v1/items");
+    
+    public static void main(String[] args) throws Exception {
+        final int threads = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+        
+        System.out.println("=== Rate Limiter Benchmark ===");
+        System.out.println("Threads: " + threads + ", duration: " + seconds + " s per run");
+        System.out.println();
+        
+        System.out.printf("%-28s %14s %14s%n", "hot path", "permits/s", "ns/permit");
+        final RateLimiter unreachable = new RateLimiter(0);
+        unreachable.addRule("api.example.com", 1e9, 1_000_000);
+        final RateLimiter.TokenBucket bucket = new RateLimiter.TokenBucket(1e9, 1_000_000);
+        final LockedBucket locked = new LockedBucket(1e9, 1_000_000);
+        for (int round = 0; round < 2; round++) {  // The first round warms up the JIT
+            long limiter = run(threads, seconds, () -> {
+                unreachable.acquire(TARGET);
+                return true;
+            });
+            long lockFree = run(threads, seconds, () -> bucket.reserve(0) >= 0);
+            long withLock = run(threads, seconds, locked::tryAcquire);
+            if (round == 1) {
+                printHotPath("RateLimiter.acquire", limiter, seconds);
+                printHotPath("bucket, lock-free (CAS)", lockFree, seconds);
+                printHotPath("bucket, synchronized", withLock, seconds);
+            }
+        }
+        
+        System.out.println();
+        System.out.printf("%-28s %10s %10s %10s %12s%n", "100/s, burst 10", "permitted", "per second", "throttled",
+            "avg wait ms");
+        for (long maxWaitMs : new long[]{200, 0}) {
+            final RateLimiter limiter = new RateLimiter(maxWaitMs);
+            limiter.addRule("api.example.com/v1", 100, 10);
+            run(threads, seconds, () -> {
+                try {
+                    limiter.acquire(TARGET);
+                } catch (RateLimitExceededException e) {
+                    Thread.sleep(1);  // A real caller would report the error; don't spin
+                }
+                return true;
+            });
+            RateLimiter.RuleStatistics statistics = limiter.getStatistics().rules.get("api.example.com/v1");
+            System.out.printf("%-28s %10d %10.1f %10d %12.2f%n", "maxWaitMs " + maxWaitMs, statistics.permitted,
+                statistics.permitted / (double) seconds, statistics.throttled, statistics.averageWaitMs);
+            limiter.shutdown();
+        }
+    }
+    
+    private interface Permit {
+        boolean take() throws Exception;
+    }
+    
+    /**
+     * Take permits from all threads for the given time; returns the number taken
+     */
+    private static long run(int threads, int seconds, final Permit permit) throws InterruptedException {
+        final AtomicLong taken = new AtomicLong();
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        final CountDownLatch done = new CountDownLatch(threads);
+        List<Thread> workers = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            Thread worker = new Thread(() -> {
+                long count = 0;
+                try {
+                    while (System.nanoTime() - deadline < 0) {
+                        if (permit.take()) {
+                            count++;
+                        }
+                    }
+                } catch (Exception e) {
+                    e.printStackTrace();
+                } finally {
+                    taken.addAndGet(count);
+                    done.countDown();
+                }
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        done.await();
+        return taken.get();
+    }
+    
+    private static void printHotPath(String name, long permits, int seconds) {
+        double perSecond = permits / (double) seconds;
+        System.out.printf("%-28s %14.0f %14.1f%n", name, perSecond, 1e9 / perSecond);
+    }
+    
+    /**
+     * The limiter's bucket algorithm behind a lock, for comparison
+     */
+    private static class LockedBucket {
+        private final long intervalNanos;
+        private final long toleranceNanos;
+        private long nextFreeNanos = System.nanoTime();
+        
+        LockedBucket(double permitsPerSecond, int burst) {
+            this.intervalNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond));
+            this.toleranceNanos = intervalNanos * (burst - 1);
+        }
+        
+        synchronized boolean tryAcquire() {
+            long now = System.nanoTime();
+            long start = nextFreeNanos - now > 0 ? nextFreeNanos : now;
+            if (start - toleranceNanos - now > 0) {
+                return false;
+            }
+            nextFreeNanos = start + intervalNanos;
+            return true;
+        }
+    }
+}
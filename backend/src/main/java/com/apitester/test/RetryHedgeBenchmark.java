@@ -0,0 +1,130 @@
+package com.apitester.test;
+
+import com.apitester.model.ApiRequest;
+import com.apitester.model.ApiResponse;
+import com.apitester.model.HedgePolicy;
+import com.apitester.model.RetryPolicy;
+import com.apitester.service.ApiRequestService;
+import org.HdrHistogram.Histogram;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of retry and hedge policies against a local StubServer with a slow tail
+ * and intermittent errors:
+ *
+ * - Tail latency: a random 5% of responses take slowDelayMs instead of delayMs.
+ *   Compares no policy, hedging at the host's p95 and hedging after a fixed delay.
+ * - Errors: a random 30% of responses are 503. Compares no policy with up to three
+ *   attempts on short backoff.
+ *
+ * Usage: RetryHedgeBenchmark [requests=2000] [concurrency=8] [delayMs=5] [slowDelayMs=200]
+ */
+public class RetryHedgeBenchmark {
+    
+    public static void main(String[] args) throws Exception {
+        int requests = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int concurrency = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        int delayMs = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+        int slowDelayMs = args.length > 3 ? Integer.parseInt(args[3]) : 200;
+        
+        System.out.println("=== Retry and Hedge Benchmark ===");
+        System.out.println("Requests: " + requests + ", concurrency: " + concurrency
+            + ", delay: " + delayMs + " ms, slow delay: " + slowDelayMs + " ms");
+        
+        List<Result> results = new ArrayList<>();
+        ApiRequestService service = new ApiRequestService();
+        ExecutorService workerPool = Executors.newFixedThreadPool(concurrency);
+        try (StubServer stub = new StubServer()) {
+            String slowUrl = stub.url("/slow?delay=" + delayMs + "&slowPercent=5&slowDelay=" + slowDelayMs);
+            String flakyUrl = stub.url("/flaky?delay=" + delayMs + "&status=503&errorPercent=30");
+            
+            // Warm up connections and give the latency tracker samples for the host
+            run(service, "warmup", request(slowUrl, null, null), workerPool, Math.min(requests, 500));
+            
+            results.add(run(service, "slow tail, no policy", request(slowUrl, null, null), workerPool, requests));
+            results.add(run(service, "slow tail, hedge p95", request(slowUrl, null,
+                new HedgePolicy(true, null, 95.0)), workerPool, requests));
+            results.add(run(service, "slow tail, hedge 20ms", request(slowUrl, null,
+                new HedgePolicy(true, 20L, null)), workerPool, requests));
+            results.add(run(service, "503s, no policy", request(flakyUrl, null, null), workerPool, requests));
+            results.add(run(service, "503s, 3 attempts", request(flakyUrl,
+                new RetryPolicy(3, 10L, 100L, Arrays.asList(503)), null), workerPool, requests));
+        } finally {
+            workerPool.shutdownNow();
+            service.shutdown();
+        }
+        
+        System.out.println();
+        System.out.printf("%-24s %8s %8s %8s %8s %8s %13s %9s%n", "scenario", "p50 (ms)", "p95 (ms)",
+            "p99 (ms)", "max (ms)", "ok", "attempts/req", "hedged");
+        for (Result result : results) {
+            result.print();
+        }
+    }
+    
+    private static ApiRequest request(String url, RetryPolicy retry, HedgePolicy hedge) {
+        ApiRequest apiRequest = new ApiRequest(url, "GET", null, null);
+        apiRequest.setRetry(retry);
+        apiRequest.setHedge(hedge);
+        return apiRequest;
+    }
+    
+    private static Result run(ApiRequestService service, String scenario, final ApiRequest apiRequest,
+                              ExecutorService workerPool, int requests) throws Exception {
+        final Result result = new Result(scenario);
+        long hedgesBefore = service.getRetryStatistics().hedges;
+        List<Future<?>> futures = new ArrayList<>(requests);
+        for (int i = 0; i < requests; i++) {
+            futures.add(workerPool.submit(() -> {
+                long start = System.nanoTime();
+                ApiResponse response = service.processRequest(apiRequest);
+                result.record(response, System.nanoTime() - start);
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        result.hedges = service.getRetryStatistics().hedges - hedgesBefore;
+        return result;
+    }
+    
+    private static class Result {
+        final Histogram latencyMicros = new Histogram(TimeUnit.MINUTES.toMicros(1), 3);
+        final String scenario;
+        int completed;
+        int ok;
+        long attempts;
+        long hedges;
+        
+        Result(String scenario) {
+            this.scenario = scenario;
+        }
+        
+        synchronized void record(ApiResponse response, long nanos) {
+            completed++;
+            if (response.getStatus() == 200) {
+                ok++;
+            }
+            attempts += response.getAttempts();
+            latencyMicros.recordValue(Math.min(TimeUnit.NANOSECONDS.toMicros(nanos), latencyMicros.getHighestTrackableValue()));
+        }
+        
+        void print() {
+            System.out.printf("%-24s %8.2f %8.2f %8.2f %8.2f %7.1f%% %13.2f %9d%n", scenario,
+                latencyMicros.getValueAtPercentile(50) / 1000.0,
+                latencyMicros.getValueAtPercentile(95) / 1000.0,
+                latencyMicros.getValueAtPercentile(99) / 1000.0,
+                latencyMicros.getMaxValue() / 1000.0,
+                completed > 0 ? 100.0 * ok / completed : 0,
+                completed > 0 ? attempts / (double) completed : 0,
+                hedges);
+        }
+    }
+}
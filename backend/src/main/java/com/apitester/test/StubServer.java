@@ -0,0 +1,144 @@
+package com.apitester.test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Minimal local upstream for the benchmark classes in this package.
+ * Every path answers with a JSON body; the query parameters "delay" (milliseconds
+ * to wait before answering), "size" (approximate body size in bytes) and "gzip"
+ * (1 to send the body gzip-encoded) shape the response. For tail latency and error
+ * tests, "slowDelay" replaces the delay on a random "slowPercent" of requests, and
+ * "status" is answered on a random "errorPercent" (default all) of requests.
+ */
+public class StubServer implements AutoCloseable {
+    
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final AtomicInteger activeRequests = new AtomicInteger();
+    private final AtomicInteger peakActiveRequests = new AtomicInteger();
+    private final AtomicInteger totalRequests = new AtomicInteger();
+    
+    public StubServer() throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1024);
+        this.executor = Executors.newCachedThreadPool();
+        this.server.setExecutor(executor);
+        this.server.createContext("/", this::handle);
+        this.server.start();
+    }
+    
+    public String url(String pathAndQuery) {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + pathAndQuery;
+    }
+    
+    public int getPeakActiveRequests() {
+        return peakActiveRequests.get();
+    }
+    
+    public int getTotalRequests() {
+        return totalRequests.get();
+    }
+    
+    public void resetStatistics() {
+        peakActiveRequests.set(activeRequests.get());
+        totalRequests.set(0);
+    }
+    
+    private void handle(HttpExchange exchange) throws IOException {
+        int active = activeRequests.incrementAndGet();
+        peakActiveRequests.accumulateAndGet(active, Math::max);
+        totalRequests.incrementAndGet();
+        
+        try {
+            String query = exchange.getRequestURI().getQuery();
+            long delay = queryParam(query, "delay", 0);
+            int size = (int) queryParam(query, "size", 64);
+            int status = 200;
+            if (ThreadLocalRandom.current().nextInt(100) < queryParam(query, "slowPercent", 0)) {
+                delay = queryParam(query, "slowDelay", delay);
+            }
+            if (ThreadLocalRandom.current().nextInt(100) < queryParam(query, "errorPercent", 100)) {
+                status = (int) queryParam(query, "status", 200);
+            }
+            if (delay > 0) {
+                Thread.sleep(delay);
+            }
+            
+            byte[] body = jsonBody(size);
+            if (queryParam(query, "gzip", 0) == 1) {
+                body = gzip(body);
+                exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+            }
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(status, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            activeRequests.decrementAndGet();
+            exchange.close();
+        }
+    }
+    
+    static byte[] jsonBody(int size) {
+        // {"items":["xxxx...",...]} with enough entries to reach roughly the requested size
+        StringBuilder sb = new StringBuilder(size + 32);
+        char[] filler = new char[32];
+        Arrays.fill(filler, 'x');
+        sb.append("{\"items\":[");
+        int index = 0;
+        do {
+            if (index > 0) {
+                sb.append(',');
+            }
+            sb.append("{\"id\":").append(index++).append(",\"value\":\"").append(filler).append("\"}");
+        } while (sb.length() < size - 2);
+        sb.append("]}");
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+    
+    static byte[] gzip(byte[] body) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(body.length / 4 + 32);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(body);
+        }
+        return out.toByteArray();
+    }
+    
+    static long queryParam(String query, String name, long defaultValue) {
+        if (query == null) {
+            return defaultValue;
+        }
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0 && pair.substring(0, eq).equals(name)) {
+                try {
+                    return Long.parseLong(pair.substring(eq + 1));
+                } catch (NumberFormatException e) {
+                    return defaultValue;
+                }
+            }
+        }
+        return defaultValue;
+    }
+    
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}